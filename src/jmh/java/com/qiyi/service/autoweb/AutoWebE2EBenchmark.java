@@ -0,0 +1,427 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import com.qiyi.config.AppConfig;
+import com.qiyi.util.LLMStubs;
+import com.qiyi.util.LLMUtil;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AutoWeb 端到端基准：离线回放录制好的页面与模型响应，按真实链路跑完整任务，统计各阶段耗时、payload 字节与 token。
+ *
+ * <p>链路：PLAN_ONLY payload → 模型（回放）→ parsePlanFromText → prepareStepHtmls（采集 + HTMLCleaner）
+ * → CODEGEN payload → 模型（回放）→ Groovy/WebDSL 执行与表格提取。不依赖线上站点与真实模型，可用于跨提交对比采集与提取速度。</p>
+ *
+ * <p>用例目录（默认 src/jmh/fixtures/autoweb/&lt;case&gt;/）：</p>
+ * <ul>
+ *     <li>case.json：name/userTask/entryPath/captureMode/iterations/expectRows</li>
+ *     <li>pages/：录制的页面（可直接放入快照缓存中的 raw HTML），由本地 HTTP 服务按路径返回</li>
+ *     <li>llm/&lt;MODE&gt;.txt：按 payload 中的 MODE（PLAN_ONLY/CODEGEN…）回放的模型响应，{{BASE_URL}} 替换为本地服务地址</li>
+ * </ul>
+ *
+ * <p>运行：mvn -Pjmh test-compile exec:java -Dexec.mainClass=com.qiyi.service.autoweb.AutoWebE2EBenchmark -Dexec.classpathScope=test，
+ * 结果写入 target/autoweb-e2e.json。可选参数：-Dautoweb.bench.cases=orders（逗号分隔）、-Dautoweb.bench.iterations=N、
+ * -Dautoweb.bench.fixtures=目录、-Dautoweb.bench.out=文件。</p>
+ *
+ * <p>每轮使用新的本地端口，快照缓存按 URL 命中，因此每轮都会真实采集；第一轮为预热，不计入统计。</p>
+ */
+public final class AutoWebE2EBenchmark {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final Pattern MODE_LINE = Pattern.compile("(?m)^\\s*MODE\\s*:\\s*([A-Z_]+)\\s*$");
+    private static final String MODEL = "DEEPSEEK";
+
+    static final class CaseSpec {
+        String name;
+        String userTask;
+        String entryPath = "/";
+        String captureMode = "RAW_HTML";
+        int iterations = 5;
+        int expectRows = -1;
+        transient Path dir;
+    }
+
+    private AutoWebE2EBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Paths.get(System.getProperty("autoweb.bench.fixtures", "src/jmh/fixtures/autoweb"));
+        Path out = Paths.get(System.getProperty("autoweb.bench.out", "target/autoweb-e2e.json"));
+        String only = System.getProperty("autoweb.bench.cases", "");
+        int iterOverride = Integer.getInteger("autoweb.bench.iterations", 0);
+
+        List<CaseSpec> cases = loadCases(fixtures, only);
+        if (cases.isEmpty()) {
+            System.err.println("no fixture cases under " + fixtures.toAbsolutePath());
+            return;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", System.currentTimeMillis());
+        report.put("javaVersion", System.getProperty("java.version"));
+        Map<String, Object> caseReports = new LinkedHashMap<>();
+        report.put("cases", caseReports);
+
+        RecordedLlm llm = new RecordedLlm();
+        LLMStubs.install(llm);
+        try (Playwright playwright = Playwright.create();
+             Browser browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(true))) {
+            for (CaseSpec spec : cases) {
+                int iterations = iterOverride > 0 ? iterOverride : Math.max(1, spec.iterations);
+                CaseStats stats = new CaseStats();
+                // 第 0 轮预热：类加载、Groovy 编译缓存、浏览器首个上下文
+                for (int i = 0; i <= iterations; i++) {
+                    IterationResult r = runOnce(browser, spec, llm);
+                    if (i > 0) stats.add(r);
+                }
+                caseReports.put(spec.name, stats.toReport(iterations));
+                printCase(spec.name, stats);
+            }
+        } finally {
+            LLMStubs.clear();
+        }
+
+        Path parent = out.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.write(out, GSON.toJson(report).getBytes(StandardCharsets.UTF_8));
+        System.out.println("report: " + out.toAbsolutePath());
+    }
+
+    /**
+     * 单轮：启动新端口的本地服务与新的浏览器上下文，按真实链路跑完整个用例。
+     */
+    static IterationResult runOnce(Browser browser, CaseSpec spec, RecordedLlm llm) throws Exception {
+        IterationResult r = new IterationResult();
+        Consumer<String> logger = msg -> {
+        };
+        AutoWebAgent.HtmlCaptureMode mode = AutoWebAgent.HtmlCaptureMode.valueOf(spec.captureMode);
+        try (FixtureServer server = FixtureServer.start(spec.dir.resolve("pages"));
+             BrowserContext context = browser.newContext()) {
+            llm.dir = spec.dir.resolve("llm");
+            llm.baseUrl = server.baseUrl();
+            Page page = context.newPage();
+
+            long t = System.nanoTime();
+            page.navigate(server.baseUrl() + spec.entryPath);
+            r.stage("navigate", t);
+
+            t = System.nanoTime();
+            String planPayload = AutoWebAgent.buildPlanOnlyPayload(page, spec.userTask);
+            r.stage("payload.plan", t);
+            r.bytes("payload.plan", planPayload);
+
+            long llmCharsBefore = llm.promptChars.get();
+            t = System.nanoTime();
+            String planOut = AutoWebAgent.generateGroovyScript(spec.userTask, planPayload, logger, MODEL);
+            r.stage("llm.plan", t);
+            r.tokens("prompt.plan", llm.promptChars.get() - llmCharsBefore);
+
+            t = System.nanoTime();
+            AutoWebAgent.PlanParseResult plan = AutoWebAgent.parsePlanFromText(planOut);
+            r.stage("plan.parse", t);
+            if (plan.steps.isEmpty()) throw new IllegalStateException(spec.name + ": recorded plan has no steps");
+
+            // 单独测一次当前页的原始采集与清洗，便于区分浏览器取内容与 HTMLCleaner 的耗时
+            t = System.nanoTime();
+            String raw = AutoWebAgent.getPageContent(page, mode, true);
+            r.stage("capture.raw", t);
+            r.bytes("page.raw", raw);
+            t = System.nanoTime();
+            String cleaned = AutoWebAgent.cleanCapturedContent(raw, mode);
+            r.stage("clean", t);
+            r.bytes("page.cleaned", cleaned);
+
+            t = System.nanoTime();
+            List<AutoWebAgent.HtmlSnapshot> snapshots = AutoWebAgent.prepareStepHtmls(page, plan.steps, logger, mode);
+            r.stage("prepareStepHtmls", t);
+
+            t = System.nanoTime();
+            String codegenPayload = AutoWebAgent.buildCodegenPayload(page, plan.planText, snapshots);
+            r.stage("payload.codegen", t);
+            r.bytes("payload.codegen", codegenPayload);
+
+            llmCharsBefore = llm.promptChars.get();
+            t = System.nanoTime();
+            String code = AutoWebAgent.generateGroovyScript(spec.userTask, codegenPayload, logger, MODEL);
+            r.stage("llm.codegen", t);
+            r.tokens("prompt.codegen", llm.promptChars.get() - llmCharsBefore);
+
+            groovy.lang.Binding binding = new groovy.lang.Binding();
+            t = System.nanoTime();
+            AutoWebAgent.executeWithGroovy(code, page, logger, binding, null, null);
+            r.stage("execute", t);
+
+            Object result = ((WebDSL) binding.getVariable("web")).getResult();
+            r.rows = countRows(result);
+            r.ok = spec.expectRows < 0 || r.rows == spec.expectRows;
+        } catch (Exception e) {
+            r.ok = false;
+            r.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        return r;
+    }
+
+    private static int countRows(Object result) {
+        if (!(result instanceof Map)) return -1;
+        Object rows = ((Map<?, ?>) result).get("rows");
+        return rows instanceof List ? ((List<?>) rows).size() : -1;
+    }
+
+    static List<CaseSpec> loadCases(Path fixtures, String only) throws IOException {
+        List<CaseSpec> out = new ArrayList<>();
+        if (!Files.isDirectory(fixtures)) return out;
+        List<String> filter = new ArrayList<>();
+        for (String s : only.split(",")) {
+            if (!s.trim().isEmpty()) filter.add(s.trim());
+        }
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(fixtures)) {
+            for (Path d : ds) {
+                if (Files.isRegularFile(d.resolve("case.json"))) dirs.add(d);
+            }
+        }
+        Collections.sort(dirs);
+        for (Path d : dirs) {
+            CaseSpec spec = GSON.fromJson(new String(Files.readAllBytes(d.resolve("case.json")), StandardCharsets.UTF_8), CaseSpec.class);
+            if (spec.name == null || spec.name.trim().isEmpty()) spec.name = d.getFileName().toString();
+            if (!filter.isEmpty() && !filter.contains(spec.name)) continue;
+            spec.dir = d;
+            out.add(spec);
+        }
+        return out;
+    }
+
+    private static void printCase(String name, CaseStats stats) {
+        System.out.println("== " + name + " (ok " + stats.ok + "/" + stats.runs + ")");
+        for (Map.Entry<String, List<Long>> e : stats.stageNanos.entrySet()) {
+            System.out.printf("  %-18s p50=%8.2fms  p90=%8.2fms%n", e.getKey(), percentile(e.getValue(), 50) / 1e6, percentile(e.getValue(), 90) / 1e6);
+        }
+        for (Map.Entry<String, Long> e : stats.bytes.entrySet()) {
+            System.out.printf("  %-18s bytes=%d  approxTokens=%d%n", e.getKey(), e.getValue(), approxTokens(e.getValue()));
+        }
+        for (Map.Entry<String, Long> e : stats.promptTokens.entrySet()) {
+            System.out.printf("  %-18s approxTokens=%d%n", e.getKey(), e.getValue());
+        }
+        if (stats.lastError != null) System.out.println("  lastError: " + stats.lastError);
+    }
+
+    static long percentile(List<Long> values, int p) {
+        if (values == null || values.isEmpty()) return 0L;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int idx = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+    }
+
+    /**
+     * 与 LLMUtil 日志口径一致：按字符数 / 4 估算。
+     */
+    static long approxTokens(long chars) {
+        return chars <= 0 ? 0 : Math.max(1, chars / 4);
+    }
+
+    /**
+     * 单轮结果：阶段耗时（纳秒）、文本字节与 prompt 字符数。
+     */
+    static final class IterationResult {
+        final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        final Map<String, Long> bytes = new LinkedHashMap<>();
+        final Map<String, Long> promptChars = new LinkedHashMap<>();
+        int rows = -1;
+        boolean ok;
+        String error;
+
+        void stage(String name, long beginNanos) {
+            stageNanos.put(name, System.nanoTime() - beginNanos);
+        }
+
+        void bytes(String name, String text) {
+            bytes.put(name, text == null ? 0L : (long) text.getBytes(StandardCharsets.UTF_8).length);
+            promptChars.put(name + ".chars", text == null ? 0L : (long) text.length());
+        }
+
+        void tokens(String name, long chars) {
+            promptChars.put(name, chars);
+        }
+    }
+
+    /**
+     * 多轮汇总：耗时取 p50/p90/min/max，字节与 token 取最后一轮（同一用例各轮应一致）。
+     */
+    static final class CaseStats {
+        final Map<String, List<Long>> stageNanos = new LinkedHashMap<>();
+        final Map<String, Long> bytes = new LinkedHashMap<>();
+        final Map<String, Long> promptTokens = new LinkedHashMap<>();
+        int runs;
+        int ok;
+        int rows = -1;
+        String lastError;
+
+        void add(IterationResult r) {
+            runs++;
+            if (r.ok) ok++;
+            if (r.error != null) lastError = r.error;
+            rows = r.rows;
+            for (Map.Entry<String, Long> e : r.stageNanos.entrySet()) {
+                stageNanos.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+            }
+            bytes.putAll(r.bytes);
+            for (Map.Entry<String, Long> e : r.promptChars.entrySet()) {
+                if (e.getKey().startsWith("prompt.")) promptTokens.put(e.getKey(), approxTokens(e.getValue()));
+            }
+        }
+
+        JsonObject toReport(int iterations) {
+            JsonObject o = new JsonObject();
+            o.addProperty("iterations", iterations);
+            o.addProperty("ok", ok);
+            o.addProperty("rows", rows);
+            if (lastError != null) o.addProperty("lastError", lastError);
+            JsonObject stages = new JsonObject();
+            for (Map.Entry<String, List<Long>> e : stageNanos.entrySet()) {
+                JsonObject s = new JsonObject();
+                List<Long> v = e.getValue();
+                s.addProperty("p50Ms", percentile(v, 50) / 1e6);
+                s.addProperty("p90Ms", percentile(v, 90) / 1e6);
+                s.addProperty("minMs", Collections.min(v) / 1e6);
+                s.addProperty("maxMs", Collections.max(v) / 1e6);
+                stages.add(e.getKey(), s);
+            }
+            o.add("stages", stages);
+            JsonObject b = new JsonObject();
+            for (Map.Entry<String, Long> e : bytes.entrySet()) {
+                JsonObject s = new JsonObject();
+                s.addProperty("bytes", e.getValue());
+                s.addProperty("approxTokens", approxTokens(e.getValue()));
+                b.add(e.getKey(), s);
+            }
+            o.add("payloads", b);
+            JsonObject t = new JsonObject();
+            for (Map.Entry<String, Long> e : promptTokens.entrySet()) t.addProperty(e.getKey(), e.getValue());
+            o.add("promptTokens", t);
+            return o;
+        }
+    }
+
+    /**
+     * 回放模型：按 prompt 中最后一个 MODE 行选择 llm/&lt;MODE&gt;.txt（技能说明里也会出现 MODE 示例，以 payload 中的为准），
+     * 并统计 prompt 字符数。
+     */
+    static final class RecordedLlm implements LLMUtil.LLMProvider {
+        final AtomicLong promptChars = new AtomicLong();
+        volatile Path dir;
+        volatile String baseUrl = "";
+
+        @Override
+        public LLMUtil.ModelType type() {
+            return LLMUtil.ModelType.DEEPSEEK;
+        }
+
+        @Override
+        public boolean isConfigured(AppConfig cfg) {
+            return true;
+        }
+
+        @Override
+        public LLMUtil.LLMResult chat(String prompt) {
+            promptChars.addAndGet(prompt == null ? 0 : prompt.length());
+            String mode = lastMode(prompt);
+            Path f = dir == null ? null : dir.resolve(mode + ".txt");
+            if (f == null || !Files.isRegularFile(f)) {
+                return LLMUtil.LLMResult.fail(LLMUtil.ModelType.DEEPSEEK, "recorded", "no recorded response for MODE=" + mode);
+            }
+            try {
+                String text = new String(Files.readAllBytes(f), StandardCharsets.UTF_8).replace("{{BASE_URL}}", baseUrl);
+                return LLMUtil.LLMResult.ok(text, LLMUtil.ModelType.DEEPSEEK, "recorded", null);
+            } catch (IOException e) {
+                return LLMUtil.LLMResult.fail(LLMUtil.ModelType.DEEPSEEK, "recorded", e.getMessage());
+            }
+        }
+
+        static String lastMode(String prompt) {
+            if (prompt == null) return "";
+            Matcher m = MODE_LINE.matcher(prompt);
+            String mode = "";
+            while (m.find()) mode = m.group(1);
+            return mode;
+        }
+    }
+
+    /**
+     * 本地静态页面服务：127.0.0.1 随机端口，按请求路径返回 pages/ 下的文件（忽略查询串）。
+     */
+    static final class FixtureServer implements AutoCloseable {
+        private final HttpServer server;
+
+        private FixtureServer(HttpServer server) {
+            this.server = server;
+        }
+
+        static FixtureServer start(Path pagesDir) throws IOException {
+            Path root = pagesDir.toAbsolutePath().normalize();
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                String path = exchange.getRequestURI().getPath();
+                Path f = root.resolve(path.replaceFirst("^/+", "")).normalize();
+                byte[] body;
+                int status;
+                if (f.startsWith(root) && Files.isRegularFile(f)) {
+                    body = Files.readAllBytes(f);
+                    status = 200;
+                    exchange.getResponseHeaders().set("Content-Type", contentType(f));
+                } else {
+                    body = "not found".getBytes(StandardCharsets.UTF_8);
+                    status = 404;
+                }
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            server.start();
+            return new FixtureServer(server);
+        }
+
+        String baseUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        private static String contentType(Path f) {
+            String n = f.getFileName().toString();
+            if (n.endsWith(".html") || n.endsWith(".htm")) return "text/html; charset=utf-8";
+            if (n.endsWith(".js")) return "application/javascript; charset=utf-8";
+            if (n.endsWith(".css")) return "text/css; charset=utf-8";
+            if (n.endsWith(".json")) return "application/json; charset=utf-8";
+            return "application/octet-stream";
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.qiyi.service.autoweb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型输出的文本处理基准：代码归一化、静态检查、计划解析。
+ *
+ * <p>运行：mvn -Pjmh test-compile exec:exec -Djmh.includes=GroovyTextBenchmark，结果写入 target/jmh-result.json。
+ * normalizeGeneratedGroovyLegacy 调用测试源码中逐条 replaceAll 的旧实现（LegacyGroovyNormalizer），与 normalizeGeneratedGroovy 对照。
+ * GroovyLinter.check 结果按脚本文本缓存：cold 每次追加不同的尾注释（真实解析），cached 为同一脚本的重复检查。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GroovyTextBenchmark {
+
+    @Param({"3", "12"})
+    public int steps;
+
+    private String generated;
+    private String normalized;
+    private String planText;
+    private long seq;
+
+    @Setup
+    public void setup() {
+        generated = HtmlFixtures.generatedGroovy(steps);
+        normalized = GroovySupport.normalizeGeneratedGroovy(generated);
+        planText = HtmlFixtures.planText(steps);
+        // 夹具本身不可解析时 parsePlanFromText 会走失败分支，测得的就不是正常路径
+        AutoWebAgent.PlanParseResult plan = PlanRoutingSupport.parsePlanFromText(planText);
+        if (!plan.confirmed || plan.steps.size() != steps) {
+            throw new IllegalStateException("plan fixture does not parse into " + steps + " confirmed steps");
+        }
+    }
+
+    @Benchmark
+    public String normalizeGeneratedGroovy() {
+        return GroovySupport.normalizeGeneratedGroovy(generated);
+    }
+
+    @Benchmark
+    public String normalizeGeneratedGroovyLegacy() {
+        return LegacyGroovyNormalizer.normalizeGenerated(generated);
+    }
+
+    @Benchmark
+    public List<String> groovyLinterCheckCold() {
+        return GroovyLinter.check(normalized + "\n// " + (seq++));
+    }
+
+    @Benchmark
+    public List<String> groovyLinterCheckCached() {
+        return GroovyLinter.check(normalized);
+    }
+
+    @Benchmark
+    public AutoWebAgent.PlanParseResult parsePlanFromText() {
+        return PlanRoutingSupport.parsePlanFromText(planText);
+    }
+}
@@ -0,0 +1,55 @@
+package com.qiyi.service.autoweb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTMLCleaner 基准：旧的 DOM 多遍实现 vs 单遍流式实现（不限预算 / 默认预算）。
+ *
+ * <p>运行：mvn -Pjmh test-compile exec:exec -Djmh.includes=HtmlCleanerBenchmark，
+ * 结果写入 target/jmh-result.json。rows=20000 时页面约 12MB。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HtmlCleanerBenchmark {
+
+    @Param({"200", "3000", "20000"})
+    public int rows;
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        html = HtmlFixtures.adminPage(rows);
+    }
+
+    @Benchmark
+    public String domCleaner() {
+        return HTMLCleaner.cleanWithDom(html);
+    }
+
+    @Benchmark
+    public String streamingCleaner() {
+        return StreamingHtmlCleaner.clean(html, 0);
+    }
+
+    @Benchmark
+    public String streamingCleanerWithBudget() {
+        return StreamingHtmlCleaner.clean(html, 125000);
+    }
+}
@@ -0,0 +1,74 @@
+package com.qiyi.service.autoweb;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PayloadSupport 基准：HTMLCleaner.clean 全流程、CODEGEN payload 组装、无表格页面的重复列表容器识别。
+ *
+ * <p>运行：mvn -Pjmh test-compile exec:exec -Djmh.includes=PayloadBenchmark，结果写入 target/jmh-result.json。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PayloadBenchmark {
+
+    @Param({"200", "3000"})
+    public int rows;
+
+    private String html;
+    private String planText;
+    private List<AutoWebAgent.HtmlSnapshot> snapshots;
+    private Document cardListDoc;
+
+    @Setup
+    public void setup() {
+        html = HtmlFixtures.adminPage(rows);
+        planText = HtmlFixtures.planText(3);
+        String cleaned = HTMLCleaner.clean(html);
+        snapshots = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            AutoWebAgent.HtmlSnapshot s = new AutoWebAgent.HtmlSnapshot();
+            s.stepIndex = i;
+            s.url = "https://erp.example.com/order/list?page=" + i;
+            s.entryAction = "点击左侧菜单“订单管理”";
+            s.cleanedHtml = cleaned;
+            snapshots.add(s);
+        }
+        cardListDoc = Jsoup.parse(HtmlFixtures.cardListPage(rows));
+    }
+
+    @Benchmark
+    public String htmlCleanerClean() {
+        return HTMLCleaner.clean(html);
+    }
+
+    @Benchmark
+    public String buildCodegenPayload() {
+        return PayloadSupport.buildCodegenPayload("https://erp.example.com/order/list?page=1", planText, snapshots);
+    }
+
+    @Benchmark
+    public Element pickBestRepeatedListContainer() {
+        return PayloadSupport.pickBestRepeatedListContainer(cardListDoc);
+    }
+}
@@ -0,0 +1,54 @@
+package com.qiyi.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskProcessor prompt 组装基准：全量工具 Schema 的筛选 prompt、注入业务域 skills 的规划 prompt。
+ *
+ * <p>运行：mvn -Pjmh test-compile exec:exec -Djmh.includes=TaskPromptBenchmark，结果写入 target/jmh-result.json。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TaskPromptBenchmark {
+
+    private static final String INPUT = "查一下订单1063063的信息，然后把结果发给张三和研发部";
+
+    private List<String> selected;
+
+    @Setup
+    public void setup() {
+        ToolManager.registerTools();
+        selected = new ArrayList<>();
+        for (String name : Arrays.asList("query_erp_order", "send_message")) {
+            if (ToolManager.contains(name)) selected.add(name);
+        }
+    }
+
+    @Benchmark
+    public String selectionPrompt() {
+        return TaskProcessor.buildSelectionPrompt(INPUT);
+    }
+
+    @Benchmark
+    public String planningPrompt() {
+        return TaskProcessor.buildPlanningPrompt(INPUT, selected);
+    }
+}
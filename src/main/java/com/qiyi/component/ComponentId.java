@@ -7,7 +7,8 @@ package com.qiyi.component;
  */
 public enum ComponentId {
     DINGTALK("dingtalk"),
-    FUTU("futu");
+    FUTU("futu"),
+    BROWSER("browser");
 
     private final String id;
 
@@ -1,5 +1,6 @@
 package com.qiyi.component;
 
+import com.qiyi.component.impl.BrowserSessionPoolComponent;
 import com.qiyi.component.impl.DingTalkComponent;
 import com.qiyi.component.impl.FutuComponent;
 import com.qiyi.util.AppLog;
@@ -17,7 +18,7 @@ import java.util.Map;
  *     <li>负责组件的启动/停止与状态读取</li>
  * </ul>
  *
- * 组件用于承载“可被多个工具复用的外部依赖连接”，例如：钉钉、富途等。
+ * 组件用于承载“可被多个工具复用的外部依赖连接”，例如：钉钉、富途、浏览器会话池等。
  */
 public final class ComponentManager {
     private static final ComponentManager INSTANCE = new ComponentManager();
@@ -36,6 +37,7 @@ public final class ComponentManager {
         AppLog.info("[component] init defaults begin");
         register(new DingTalkComponent());
         register(new FutuComponent());
+        register(new BrowserSessionPoolComponent());
         AppLog.info("[component] init defaults done, count=" + components.size());
     }
 
@@ -0,0 +1,50 @@
+package com.qiyi.component.impl;
+
+import com.qiyi.component.AgentComponent;
+import com.qiyi.component.ComponentId;
+import com.qiyi.component.ComponentStatus;
+import com.qiyi.config.AppConfig;
+import com.qiyi.util.BrowserSessionPool;
+
+public final class BrowserSessionPoolComponent implements AgentComponent {
+    private static final ComponentId ID = ComponentId.BROWSER;
+
+    @Override
+    public ComponentId id() {
+        return ID;
+    }
+
+    @Override
+    public String description() {
+        return "Shared Playwright/CDP browser session pool";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return true;
+    }
+
+    @Override
+    public String configurationHint() {
+        return "Optional config: chrome.debug.port / browser.pool.max.leases / browser.pool.lease.timeout.ms / browser.pool.health.interval.ms";
+    }
+
+    @Override
+    public void start() {
+        BrowserSessionPool.getInstance().start(AppConfig.getInstance().getBrowserPoolHealthIntervalMs());
+    }
+
+    @Override
+    public void stop() {
+        BrowserSessionPool.getInstance().shutdown();
+    }
+
+    @Override
+    public ComponentStatus status() {
+        BrowserSessionPool pool = BrowserSessionPool.getInstance();
+        if (pool.isConnected()) {
+            return ComponentStatus.running(ID.id(), "connected, " + pool.stats());
+        }
+        return ComponentStatus.stopped(ID.id(), "disconnected, " + pool.stats());
+    }
+}
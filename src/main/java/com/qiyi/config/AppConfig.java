@@ -46,10 +46,35 @@ public class AppConfig {
     public static final String KEY_PODCAST_DOWNLOAD_DIR = "podcast.download.dir";
     public static final String KEY_ADMIN_USERS = "podcast.admin.users";
     public static final String KEY_DINGTALK_AGENT_ID = "dingtalk.agent.id";
+    public static final String KEY_DINGTALK_PROGRESS_CARD_ENABLED = "dingtalk.progress.card.enabled";
+    public static final String KEY_DINGTALK_PROGRESS_FLUSH_INTERVAL_MS = "dingtalk.progress.flush.interval.ms";
+    public static final String KEY_DINGTALK_MEDIA_COMPRESS_ENABLED = "dingtalk.media.compress.enabled";
     public static final String KEY_CHROME_DEBUG_PORT = "chrome.debug.port";
+    public static final String KEY_BROWSER_POOL_MAX_LEASES = "browser.pool.max.leases";
+    public static final String KEY_BROWSER_POOL_LEASE_TIMEOUT_MS = "browser.pool.lease.timeout.ms";
+    public static final String KEY_BROWSER_POOL_HEALTH_INTERVAL_MS = "browser.pool.health.interval.ms";
     public static final String KEY_AUTOWEB_VISUAL_PROMPT = "autoweb.visual.prompt";
     public static final String KEY_AUTOWEB_WAIT_FOR_LOAD_STATE_TIMEOUT_MS = "autoweb.waitForLoadState.timeout.ms";
     public static final String KEY_AUTOWEB_DEBUG_FRAME_CAPTURE = "autoweb.debug.frame.capture";
+    public static final String KEY_AUTOWEB_TABLE_BULK_EXTRACT = "autoweb.table.bulk.extract";
+    public static final String KEY_AUTOWEB_EVENT_WAIT = "autoweb.event.wait";
+    public static final String KEY_AUTOWEB_SNAPSHOT_CACHE_MAX_MB = "autoweb.snapshot.cache.max.mb";
+    public static final String KEY_AUTOWEB_CAPTURE_PARALLELISM = "autoweb.capture.parallelism";
+    public static final String KEY_AUTOWEB_REFINE_DOM_DIFF = "autoweb.refine.dom.diff";
+    public static final String KEY_AUTOWEB_CLEAN_TOKEN_BUDGET = "autoweb.clean.token.budget";
+    public static final String KEY_AUTOWEB_GROOVY_SCRIPT_CACHE_SIZE = "autoweb.groovy.script.cache.size";
+    public static final String KEY_AUTOWEB_REPLAY_ENABLED = "autoweb.replay.enabled";
+    public static final String KEY_AUTOWEB_REPLAY_FINGERPRINT_THRESHOLD = "autoweb.replay.fingerprint.threshold";
+    public static final String KEY_AUTOWEB_SELECTOR_MEMORY_ENABLED = "autoweb.selector.memory.enabled";
+    public static final String KEY_AUTOWEB_SESSION_MEMORY_MAX = "autoweb.session.memory.max";
+    public static final String KEY_AUTOWEB_SESSION_IDLE_MS = "autoweb.session.idle.ms";
+    public static final String KEY_AUTOWEB_SESSION_RETENTION_HOURS = "autoweb.session.retention.hours";
+    public static final String KEY_AUTOWEB_VISUAL_MAX_EDGE = "autoweb.visual.max.edge";
+    public static final String KEY_AUTOWEB_VISUAL_MAX_KB = "autoweb.visual.max.kb";
+    public static final String KEY_AUTOWEB_VISUAL_HASH_DISTANCE = "autoweb.visual.hash.distance";
+    public static final String KEY_AUTOWEB_VISUAL_REUSE_MAX_MINUTES = "autoweb.visual.reuse.max.minutes";
+    public static final String KEY_AUTOWEB_ENGINE_THREADS = "autoweb.engine.threads";
+    public static final String KEY_AUTOWEB_ENGINE_QUEUE = "autoweb.engine.queue";
     public static final String KEY_FUTU_OPEND_HOST = "futu.opend.host";
     public static final String KEY_FUTU_OPEND_PORT = "futu.opend.port";
     public static final String KEY_TOOLS_SCAN_PACKAGES = "tools.scan.packages";
@@ -57,10 +82,35 @@ public class AppConfig {
     // Default Values
     public static final String DEFAULT_DOWNLOAD_DIR = "/tmp/podCastItems/";
     public static final int DEFAULT_CHROME_DEBUG_PORT = 9222;
+    public static final int DEFAULT_BROWSER_POOL_MAX_LEASES = 1;
+    public static final long DEFAULT_BROWSER_POOL_LEASE_TIMEOUT_MS = 120000L;
+    public static final long DEFAULT_BROWSER_POOL_HEALTH_INTERVAL_MS = 30000L;
     public static final int DEFAULT_PUBLISH_BATCH_SIZE = 1;
+    public static final boolean DEFAULT_DINGTALK_PROGRESS_CARD_ENABLED = true;
+    public static final long DEFAULT_DINGTALK_PROGRESS_FLUSH_INTERVAL_MS = 3000L;
+    public static final boolean DEFAULT_DINGTALK_MEDIA_COMPRESS_ENABLED = true;
     public static final String DEFAULT_AUTOWEB_VISUAL_PROMPT = "请你提取一下图片里面的页面布局和元素信息，方便大模型理解这个界面的结构和元素，保障对于筛选项和操作按钮的准确和完整，不用给建议，只需要称述实际存在的元素内容，在保障完整性的同时，尽量减少字符数";
     public static final int DEFAULT_AUTOWEB_WAIT_FOR_LOAD_STATE_TIMEOUT_MS = 20000;
     public static final boolean DEFAULT_AUTOWEB_DEBUG_FRAME_CAPTURE = false;
+    public static final boolean DEFAULT_AUTOWEB_TABLE_BULK_EXTRACT = true;
+    public static final boolean DEFAULT_AUTOWEB_EVENT_WAIT = true;
+    public static final int DEFAULT_AUTOWEB_SNAPSHOT_CACHE_MAX_MB = 256;
+    public static final int DEFAULT_AUTOWEB_CAPTURE_PARALLELISM = 3;
+    public static final boolean DEFAULT_AUTOWEB_REFINE_DOM_DIFF = true;
+    public static final int DEFAULT_AUTOWEB_CLEAN_TOKEN_BUDGET = 125000;
+    public static final int DEFAULT_AUTOWEB_GROOVY_SCRIPT_CACHE_SIZE = 256;
+    public static final boolean DEFAULT_AUTOWEB_REPLAY_ENABLED = true;
+    public static final double DEFAULT_AUTOWEB_REPLAY_FINGERPRINT_THRESHOLD = 0.9;
+    public static final boolean DEFAULT_AUTOWEB_SELECTOR_MEMORY_ENABLED = true;
+    public static final int DEFAULT_AUTOWEB_SESSION_MEMORY_MAX = 16;
+    public static final long DEFAULT_AUTOWEB_SESSION_IDLE_MS = 600000L;
+    public static final int DEFAULT_AUTOWEB_SESSION_RETENTION_HOURS = 168;
+    public static final int DEFAULT_AUTOWEB_VISUAL_MAX_EDGE = 1280;
+    public static final int DEFAULT_AUTOWEB_VISUAL_MAX_KB = 200;
+    public static final int DEFAULT_AUTOWEB_VISUAL_HASH_DISTANCE = 6;
+    public static final int DEFAULT_AUTOWEB_VISUAL_REUSE_MAX_MINUTES = 30;
+    public static final int DEFAULT_AUTOWEB_ENGINE_THREADS = 8;
+    public static final int DEFAULT_AUTOWEB_ENGINE_QUEUE = 64;
     public static final String DEFAULT_FUTU_OPEND_HOST = "127.0.0.1";
     public static final int DEFAULT_FUTU_OPEND_PORT = 11111;
 
@@ -161,6 +211,253 @@ public class AppConfig {
         return DEFAULT_AUTOWEB_DEBUG_FRAME_CAPTURE;
     }
 
+    public boolean isAutowebTableBulkExtractEnabled() {
+        String v = getProperty(KEY_AUTOWEB_TABLE_BULK_EXTRACT);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_AUTOWEB_TABLE_BULK_EXTRACT;
+    }
+
+    public boolean isAutowebEventWaitEnabled() {
+        String v = getProperty(KEY_AUTOWEB_EVENT_WAIT);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_AUTOWEB_EVENT_WAIT;
+    }
+
+    public int getAutowebSnapshotCacheMaxMb() {
+        String v = getProperty(KEY_AUTOWEB_SNAPSHOT_CACHE_MAX_MB);
+        if (v != null && !v.isEmpty()) {
+            try {
+                return Integer.parseInt(v.trim());
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb snapshot cache size format, using default: " + DEFAULT_AUTOWEB_SNAPSHOT_CACHE_MAX_MB);
+            }
+        }
+        return DEFAULT_AUTOWEB_SNAPSHOT_CACHE_MAX_MB;
+    }
+
+    public int getAutowebCaptureParallelism() {
+        String v = getProperty(KEY_AUTOWEB_CAPTURE_PARALLELISM);
+        if (v != null && !v.isEmpty()) {
+            try {
+                return Math.max(1, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb capture parallelism format, using default: " + DEFAULT_AUTOWEB_CAPTURE_PARALLELISM);
+            }
+        }
+        return DEFAULT_AUTOWEB_CAPTURE_PARALLELISM;
+    }
+
+    public boolean isAutowebRefineDomDiffEnabled() {
+        String v = getProperty(KEY_AUTOWEB_REFINE_DOM_DIFF);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_AUTOWEB_REFINE_DOM_DIFF;
+    }
+
+    public int getAutowebCleanTokenBudget() {
+        String v = getProperty(KEY_AUTOWEB_CLEAN_TOKEN_BUDGET);
+        if (v != null && !v.isEmpty()) {
+            try {
+                return Integer.parseInt(v.trim());
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb clean token budget format, using default: " + DEFAULT_AUTOWEB_CLEAN_TOKEN_BUDGET);
+            }
+        }
+        return DEFAULT_AUTOWEB_CLEAN_TOKEN_BUDGET;
+    }
+
+    public int getAutowebGroovyScriptCacheSize() {
+        String v = getProperty(KEY_AUTOWEB_GROOVY_SCRIPT_CACHE_SIZE);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb groovy script cache size format, using default: " + DEFAULT_AUTOWEB_GROOVY_SCRIPT_CACHE_SIZE);
+            }
+        }
+        return DEFAULT_AUTOWEB_GROOVY_SCRIPT_CACHE_SIZE;
+    }
+
+    public boolean isAutowebReplayEnabled() {
+        String v = getProperty(KEY_AUTOWEB_REPLAY_ENABLED);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_AUTOWEB_REPLAY_ENABLED;
+    }
+
+    public double getAutowebReplayFingerprintThreshold() {
+        String v = getProperty(KEY_AUTOWEB_REPLAY_FINGERPRINT_THRESHOLD);
+        if (v != null && !v.isEmpty()) {
+            try {
+                double d = Double.parseDouble(v.trim());
+                if (d > 0 && d <= 1) return d;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb replay fingerprint threshold format, using default: " + DEFAULT_AUTOWEB_REPLAY_FINGERPRINT_THRESHOLD);
+            }
+        }
+        return DEFAULT_AUTOWEB_REPLAY_FINGERPRINT_THRESHOLD;
+    }
+
+    public boolean isAutowebSelectorMemoryEnabled() {
+        String v = getProperty(KEY_AUTOWEB_SELECTOR_MEMORY_ENABLED);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_AUTOWEB_SELECTOR_MEMORY_ENABLED;
+    }
+
+    public int getAutowebSessionMemoryMax() {
+        String v = getProperty(KEY_AUTOWEB_SESSION_MEMORY_MAX);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb session memory max format, using default: " + DEFAULT_AUTOWEB_SESSION_MEMORY_MAX);
+            }
+        }
+        return DEFAULT_AUTOWEB_SESSION_MEMORY_MAX;
+    }
+
+    public long getAutowebSessionIdleMs() {
+        String v = getProperty(KEY_AUTOWEB_SESSION_IDLE_MS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                long n = Long.parseLong(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb session idle format, using default: " + DEFAULT_AUTOWEB_SESSION_IDLE_MS);
+            }
+        }
+        return DEFAULT_AUTOWEB_SESSION_IDLE_MS;
+    }
+
+    public int getAutowebSessionRetentionHours() {
+        String v = getProperty(KEY_AUTOWEB_SESSION_RETENTION_HOURS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb session retention format, using default: " + DEFAULT_AUTOWEB_SESSION_RETENTION_HOURS);
+            }
+        }
+        return DEFAULT_AUTOWEB_SESSION_RETENTION_HOURS;
+    }
+
+    public int getAutowebVisualMaxEdge() {
+        String v = getProperty(KEY_AUTOWEB_VISUAL_MAX_EDGE);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb visual max edge format, using default: " + DEFAULT_AUTOWEB_VISUAL_MAX_EDGE);
+            }
+        }
+        return DEFAULT_AUTOWEB_VISUAL_MAX_EDGE;
+    }
+
+    public int getAutowebVisualMaxKb() {
+        String v = getProperty(KEY_AUTOWEB_VISUAL_MAX_KB);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb visual max kb format, using default: " + DEFAULT_AUTOWEB_VISUAL_MAX_KB);
+            }
+        }
+        return DEFAULT_AUTOWEB_VISUAL_MAX_KB;
+    }
+
+    public int getAutowebVisualHashDistance() {
+        String v = getProperty(KEY_AUTOWEB_VISUAL_HASH_DISTANCE);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n >= 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb visual hash distance format, using default: " + DEFAULT_AUTOWEB_VISUAL_HASH_DISTANCE);
+            }
+        }
+        return DEFAULT_AUTOWEB_VISUAL_HASH_DISTANCE;
+    }
+
+    public int getAutowebVisualReuseMaxMinutes() {
+        String v = getProperty(KEY_AUTOWEB_VISUAL_REUSE_MAX_MINUTES);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb visual reuse max minutes format, using default: " + DEFAULT_AUTOWEB_VISUAL_REUSE_MAX_MINUTES);
+            }
+        }
+        return DEFAULT_AUTOWEB_VISUAL_REUSE_MAX_MINUTES;
+    }
+
+    public int getAutowebEngineThreads() {
+        String v = getProperty(KEY_AUTOWEB_ENGINE_THREADS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb engine threads format, using default: " + DEFAULT_AUTOWEB_ENGINE_THREADS);
+            }
+        }
+        return DEFAULT_AUTOWEB_ENGINE_THREADS;
+    }
+
+    public int getAutowebEngineQueue() {
+        String v = getProperty(KEY_AUTOWEB_ENGINE_QUEUE);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid autoweb engine queue format, using default: " + DEFAULT_AUTOWEB_ENGINE_QUEUE);
+            }
+        }
+        return DEFAULT_AUTOWEB_ENGINE_QUEUE;
+    }
+
+    public boolean isDingTalkProgressCardEnabled() {
+        String v = getProperty(KEY_DINGTALK_PROGRESS_CARD_ENABLED);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_DINGTALK_PROGRESS_CARD_ENABLED;
+    }
+
+    public long getDingTalkProgressFlushIntervalMs() {
+        String v = getProperty(KEY_DINGTALK_PROGRESS_FLUSH_INTERVAL_MS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                return Long.parseLong(v.trim());
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid dingtalk progress flush interval format, using default: " + DEFAULT_DINGTALK_PROGRESS_FLUSH_INTERVAL_MS);
+            }
+        }
+        return DEFAULT_DINGTALK_PROGRESS_FLUSH_INTERVAL_MS;
+    }
+
+    public boolean isDingTalkMediaCompressEnabled() {
+        String v = getProperty(KEY_DINGTALK_MEDIA_COMPRESS_ENABLED);
+        if (v != null && !v.isEmpty()) {
+            return Boolean.parseBoolean(v.trim());
+        }
+        return DEFAULT_DINGTALK_MEDIA_COMPRESS_ENABLED;
+    }
+
     public String getAliyunOssAccessKeyId() {
         return getProperty(KEY_ALIYUN_OSS_ACCESS_KEY_ID);
     }
@@ -213,6 +510,45 @@ public class AppConfig {
         return DEFAULT_CHROME_DEBUG_PORT;
     }
 
+    public int getBrowserPoolMaxLeases() {
+        String v = getProperty(KEY_BROWSER_POOL_MAX_LEASES);
+        if (v != null && !v.isEmpty()) {
+            try {
+                int n = Integer.parseInt(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid browser pool max leases format, using default: " + DEFAULT_BROWSER_POOL_MAX_LEASES);
+            }
+        }
+        return DEFAULT_BROWSER_POOL_MAX_LEASES;
+    }
+
+    public long getBrowserPoolLeaseTimeoutMs() {
+        String v = getProperty(KEY_BROWSER_POOL_LEASE_TIMEOUT_MS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                long n = Long.parseLong(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid browser pool lease timeout format, using default: " + DEFAULT_BROWSER_POOL_LEASE_TIMEOUT_MS);
+            }
+        }
+        return DEFAULT_BROWSER_POOL_LEASE_TIMEOUT_MS;
+    }
+
+    public long getBrowserPoolHealthIntervalMs() {
+        String v = getProperty(KEY_BROWSER_POOL_HEALTH_INTERVAL_MS);
+        if (v != null && !v.isEmpty()) {
+            try {
+                long n = Long.parseLong(v.trim());
+                if (n > 0) return n;
+            } catch (NumberFormatException e) {
+                AppLog.error("Invalid browser pool health interval format, using default: " + DEFAULT_BROWSER_POOL_HEALTH_INTERVAL_MS);
+            }
+        }
+        return DEFAULT_BROWSER_POOL_HEALTH_INTERVAL_MS;
+    }
+
     public String getFutuOpenDHost() {
         return getProperty(KEY_FUTU_OPEND_HOST, DEFAULT_FUTU_OPEND_HOST);
     }
@@ -3,9 +3,7 @@ package com.qiyi.service.autoweb;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.microsoft.playwright.CDPSession;
 import com.microsoft.playwright.Frame;
 import com.microsoft.playwright.Page;
@@ -364,6 +362,30 @@ public class AutoWebAgent {
         public boolean hasQuestion;
     }
 
+    /**
+     * 分步执行的状态回调（见 {@link #executeSteps}）。
+     *
+     * steps 为本次涉及的步骤：分步执行时只有当前一步，整段执行（代码无 Step 标记）时为全部步骤。
+     * 每个 onStepStart/onStepDone 之后都会调用 onStepFinished，调用方可在其中刷新展示。
+     */
+    public interface StepExecutionListener {
+        /**
+         * @param completed 此前已完成的步骤数
+         * @param wholeScript 是否整段执行
+         */
+        default void onStepStart(java.util.List<PlanStep> steps, int completed, boolean wholeScript) {}
+
+        /**
+         * @param completed 含本次在内已完成的步骤数
+         * @param skipped 步骤无可执行代码，未实际执行
+         */
+        default void onStepDone(java.util.List<PlanStep> steps, int completed, boolean skipped) {}
+
+        default void onStepFailed(java.util.List<PlanStep> steps, String reason) {}
+
+        default void onStepFinished(java.util.List<PlanStep> steps) {}
+    }
+
     /**
      * 步骤 HTML 快照结构。
      * 采集与清洗后的页面内容会写入 autoweb/cache，并在生成 CODEGEN/REFINE_CODE payload 时复用。
@@ -436,13 +458,6 @@ public class AutoWebAgent {
         return HtmlSnapshotDao.writeCachedHtml(stepIndex, url, entryAction, captureMode, a11yInterestingOnly, rawHtml, cleanedHtml);
     }
 
-    private static HtmlSnapshot captureAndCacheSnapshot(int stepIndex, String url, String entryAction, Object pageOrFrame, HtmlCaptureMode captureMode, boolean a11yInterestingOnly) {
-        String rawHtml = "";
-        try { rawHtml = getPageContent(pageOrFrame, captureMode, a11yInterestingOnly); } catch (Exception ignored) {}
-        String cleaned = cleanCapturedContent(rawHtml, captureMode);
-        return writeCachedHtml(stepIndex, url, entryAction, captureMode, a11yInterestingOnly, rawHtml, cleaned);
-    }
-
     static String newDebugTimestamp() {
         return StorageSupport.newDebugTimestamp();
     }
@@ -760,265 +775,337 @@ public class AutoWebAgent {
             boolean a11yInterestingOnly
     ) {
         if (steps == null || steps.isEmpty()) return new java.util.ArrayList<>();
-        synchronized (PLAYWRIGHT_LOCK) {
-            HtmlCaptureMode primaryMode = captureMode == null ? HtmlCaptureMode.RAW_HTML : captureMode;
-            HtmlCaptureMode secondaryMode = (primaryMode == HtmlCaptureMode.ARIA_SNAPSHOT) ? HtmlCaptureMode.RAW_HTML : HtmlCaptureMode.ARIA_SNAPSHOT;
-            java.util.List<HtmlSnapshot> out = new java.util.ArrayList<>();
-            AutoWebAgentUI.FrameState frameState = AutoWebAgentUI.captureFrameState();
-
-            // 同一 URL 的多个 step 只采集一次：避免重复打开页面与重复抓取，节省时间与 token
-            java.util.HashMap<String, HtmlSnapshot> snapshotByUrl = new java.util.HashMap<>();
-            com.microsoft.playwright.BrowserContext ctx = rootPage.context();
-            Page tmp = null;
-            java.util.List<Page> openedPages = new java.util.ArrayList<>();
-            String rootUrl = safePageUrl(rootPage);
-            try {
-                // 统一使用一个临时 Page 进行跨 URL 导航采集，避免污染用户正在操作的 rootPage
-                tmp = ctx.newPage();
-                openedPages.add(tmp);
-                for (PlanStep step : steps) {
-                    if (step == null) continue;
-
-                    String url = normalizeUrlToken(step.targetUrl);
-                    boolean isCurrentPage = (url == null || url.trim().isEmpty() || "CURRENT_PAGE".equalsIgnoreCase(url.trim()));
-                    if (isCurrentPage) {
-                        // 计划里写 CURRENT_PAGE/空地址时，视为“采集当前 rootPage”
-                        url = rootUrl;
-                    }
-                    url = normalizeUrlToken(url);
-                    if (!looksLikeUrl(url)) {
-                        // 不是标准 URL（可能是占位符/标签/UNKNOWN），只能尝试按原样读缓存
-                        HtmlSnapshot cached = readCachedHtml(step.index, url, step.entryAction, primaryMode, a11yInterestingOnly);
-                        if (cached != null) out.add(cached);
-                        continue;
-                    }
+        HtmlCaptureMode primaryMode = captureMode == null ? HtmlCaptureMode.RAW_HTML : captureMode;
+        HtmlCaptureMode secondaryMode = (primaryMode == HtmlCaptureMode.ARIA_SNAPSHOT) ? HtmlCaptureMode.RAW_HTML : HtmlCaptureMode.ARIA_SNAPSHOT;
+        long startedAt = System.currentTimeMillis();
+        String rootUrl = safePageUrl(rootPage);
+
+        // 1) 按 step 顺序规划：缓存命中 / 同 URL 复用 / 采集当前页面 / 打开新页面采集
+        java.util.List<StepCapture> plan = new java.util.ArrayList<>();
+        java.util.List<StepCapture> currentPageCaptures = new java.util.ArrayList<>();
+        java.util.List<StepCapture> remoteCaptures = new java.util.ArrayList<>();
+        // 同一 URL 的多个 step 只采集一次：避免重复打开页面与重复抓取，节省时间与 token
+        java.util.HashMap<String, StepCapture> ownerByUrl = new java.util.HashMap<>();
+        for (PlanStep step : steps) {
+            if (step == null) continue;
+            StepCapture sc = new StepCapture(step);
+            plan.add(sc);
+
+            String url = normalizeUrlToken(step.targetUrl);
+            boolean isCurrentPage = (url == null || url.trim().isEmpty() || "CURRENT_PAGE".equalsIgnoreCase(url.trim()));
+            if (isCurrentPage) {
+                // 计划里写 CURRENT_PAGE/空地址时，视为“采集当前 rootPage”
+                url = rootUrl;
+            }
+            sc.url = normalizeUrlToken(url);
+            if (!looksLikeUrl(sc.url)) {
+                // 不是标准 URL（可能是占位符/标签/UNKNOWN），只能尝试按原样读缓存
+                sc.result = readCachedHtml(step.index, sc.url, step.entryAction, primaryMode, a11yInterestingOnly);
+                continue;
+            }
 
-                    String urlKey = PlanRoutingSupport.stripUrlQuery(url == null ? "" : url.trim());
-                    HtmlSnapshot existing = urlKey.isEmpty() ? null : snapshotByUrl.get(urlKey);
-                    if (existing != null) {
-                        // 同 URL 的 step 直接复用第一次采集的 cleanedHtml，只更新 stepIndex/entryAction
-                        if (uiLogger != null) uiLogger.accept("复用已采集页面: Step " + step.index + " | " + urlKey + " | sameAsStep=" + existing.stepIndex);
-                        HtmlSnapshot clone = new HtmlSnapshot();
-                        clone.stepIndex = step.index;
-                        clone.url = existing.url;
-                        clone.entryAction = step.entryAction;
-                        clone.cacheKey = existing.cacheKey;
-                        clone.cleanedHtml = existing.cleanedHtml;
-                        out.add(clone);
-                        continue;
-                    }
+            sc.urlKey = PlanRoutingSupport.stripUrlQuery(sc.url == null ? "" : sc.url.trim());
+            StepCapture owner = sc.urlKey.isEmpty() ? null : ownerByUrl.get(sc.urlKey);
+            if (owner != null) {
+                sc.sameAs = owner;
+                continue;
+            }
+            if (!sc.urlKey.isEmpty()) ownerByUrl.put(sc.urlKey, sc);
 
-                    if (isCurrentPage) {
-                        // 当前页面：优先走缓存；未命中时从 rootPage 采集，并自动选择最佳 iframe 上下文
-                        HtmlSnapshot cachedPrimary = readCachedHtml(step.index, url, step.entryAction, primaryMode, a11yInterestingOnly);
-                        HtmlSnapshot cachedSecondary = readCachedHtml(step.index, url, step.entryAction, secondaryMode, a11yInterestingOnly);
-                        if (cachedPrimary != null && cachedSecondary != null) {
-                            if (uiLogger != null) uiLogger.accept("命中缓存: Step " + step.index + " | " + urlKey);
-                            if (!urlKey.isEmpty()) snapshotByUrl.putIfAbsent(urlKey, cachedPrimary);
-                            out.add(cachedPrimary);
-                            continue;
-                        }
+            sc.cachedPrimary = readCachedHtml(step.index, sc.url, step.entryAction, primaryMode, a11yInterestingOnly);
+            sc.cachedSecondary = readCachedHtml(step.index, sc.url, step.entryAction, secondaryMode, a11yInterestingOnly);
+            if (sc.cachedPrimary != null && sc.cachedSecondary != null) {
+                if (uiLogger != null) uiLogger.accept("命中缓存: Step " + step.index + " | " + sc.urlKey);
+                sc.result = sc.cachedPrimary;
+                continue;
+            }
+            if (isCurrentPage) {
+                currentPageCaptures.add(sc);
+            } else {
+                if (sc.cachedPrimary != null && uiLogger != null) {
+                    uiLogger.accept("补齐缓存(另一采集模式): Step " + step.index + " | " + sc.urlKey);
+                }
+                remoteCaptures.add(sc);
+            }
+        }
 
-                        // 采集时尽量减少控制台窗口遮挡对页面可见性/布局的影响
-                        AutoWebAgentUI.minimizeFrameIfNeeded(frameState);
-                        if (uiLogger != null) uiLogger.accept("采集当前页面: Step " + step.index + " | " + urlKey);
-                        Object captureContext = rootPage;
-                        try {
-                            ContextWrapper best = null;
-                            boolean debugFrames = AppConfig.getInstance().isAutowebDebugFrameCaptureEnabled();
-                            JsonArray attempts = new JsonArray();
-                            for (int attempt = 0; attempt < 16; attempt++) {
-                                // 页面可能动态加载 iframe：短轮询等待最佳内容上下文出现
-                                ScanResult sr = scanContexts(rootPage);
-                                if (sr != null) best = sr.best;
-                                if (debugFrames) {
-                                    attempts.add(scanAttemptToJson(rootPage, sr, attempt));
-                                }
-                                if (best != null && best.name != null && !"Main Page".equals(best.name)) break;
-                                try { rootPage.waitForTimeout(500); } catch (Exception ignored) {}
-                            }
-                            if (debugFrames) {
-                                saveFrameDiagnostics(step.index, url, urlKey, primaryMode, a11yInterestingOnly, rootPage, attempts, best, uiLogger);
-                            }
-                            if (best != null) {
-                                String ctxUrl = "";
-                                try {
-                                    if (best.context instanceof com.microsoft.playwright.Frame) {
-                                        ctxUrl = ((com.microsoft.playwright.Frame) best.context).url();
-                                    } else if (best.context instanceof Page) {
-                                        ctxUrl = ((Page) best.context).url();
-                                    }
-                                } catch (Exception ignored) {}
-                                if (uiLogger != null) {
-                                    uiLogger.accept("采集 HTML 上下文: Step " + step.index + " | " + best.name + (ctxUrl == null || ctxUrl.trim().isEmpty() ? "" : " | " + ctxUrl.trim()));
-                                }
-                                captureContext = best.context;
-                            } else {
-                                captureContext = rootPage;
+        // 2) 采集：新页面在采集池中并发加载，加载期间先采集当前页面
+        if (!currentPageCaptures.isEmpty() || !remoteCaptures.isEmpty()) {
+            AutoWebAgentUI.FrameState frameState = AutoWebAgentUI.captureFrameState();
+            // 采集时尽量减少控制台窗口遮挡对页面可见性/布局的影响
+            AutoWebAgentUI.minimizeFrameIfNeeded(frameState);
+            int parallelism = Math.max(1, Math.min(remoteCaptures.size(), AppConfig.getInstance().getAutowebCaptureParallelism()));
+            StepCapturePool pool = new StepCapturePool(rootPage.context(), parallelism, uiLogger);
+            try {
+                pool.run(
+                        remoteCaptures,
+                        sc -> sc.url,
+                        (sc, page) -> captureRemoteStep(sc, page, primaryMode, secondaryMode, a11yInterestingOnly, uiLogger),
+                        () -> {
+                            for (StepCapture sc : currentPageCaptures) {
+                                sc.result = captureCurrentPageStep(rootPage, sc, primaryMode, secondaryMode, a11yInterestingOnly, uiLogger);
                             }
-                        } catch (Exception ignored) {
-                            captureContext = rootPage;
                         }
-                        HtmlSnapshot primarySnap = cachedPrimary;
-                        if (primarySnap == null) primarySnap = captureAndCacheSnapshot(step.index, url, step.entryAction, captureContext, primaryMode, a11yInterestingOnly);
-                        if (cachedSecondary == null) captureAndCacheSnapshot(step.index, url, step.entryAction, captureContext, secondaryMode, a11yInterestingOnly);
-                        if (primarySnap != null) {
-                            if (!urlKey.isEmpty()) snapshotByUrl.putIfAbsent(urlKey, primarySnap);
-                            out.add(primarySnap);
-                        }
-                        continue;
-                    }
+                );
+            } finally {
+                pool.close();
+                // 采集结束后恢复控制台窗口状态，避免影响用户后续操作
+                AutoWebAgentUI.restoreFrameIfNeeded(frameState);
+            }
+            if (uiLogger != null) {
+                uiLogger.accept("页面采集完成: steps=" + plan.size()
+                        + ", currentPage=" + currentPageCaptures.size()
+                        + ", newPages=" + remoteCaptures.size()
+                        + ", parallelism=" + (remoteCaptures.isEmpty() ? 0 : parallelism)
+                        + ", elapsedMs=" + (System.currentTimeMillis() - startedAt));
+            }
+        }
 
-                    // 非当前页面：先查缓存，未命中则导航到目标 URL 再采集
-                    HtmlSnapshot cachedPrimary = readCachedHtml(step.index, url, step.entryAction, primaryMode, a11yInterestingOnly);
-                    HtmlSnapshot cachedSecondary = readCachedHtml(step.index, url, step.entryAction, secondaryMode, a11yInterestingOnly);
-                    if (cachedPrimary != null && cachedSecondary != null) {
-                        if (uiLogger != null) uiLogger.accept("命中缓存: Step " + step.index + " | " + urlKey);
-                        if (!urlKey.isEmpty()) snapshotByUrl.putIfAbsent(urlKey, cachedPrimary);
-                        out.add(cachedPrimary);
-                        continue;
-                    }
-                    if (cachedPrimary != null && cachedSecondary == null && uiLogger != null) {
-                        uiLogger.accept("补齐缓存(另一采集模式): Step " + step.index + " | " + urlKey);
-                    }
+        // 3) 按 step 顺序合并结果
+        java.util.List<HtmlSnapshot> out = new java.util.ArrayList<>();
+        for (StepCapture sc : plan) {
+            if (sc.sameAs != null) {
+                HtmlSnapshot existing = sc.sameAs.result;
+                if (existing == null) continue;
+                // 同 URL 的 step 直接复用第一次采集的 cleanedHtml，只更新 stepIndex/entryAction
+                if (uiLogger != null) uiLogger.accept("复用已采集页面: Step " + sc.step.index + " | " + sc.urlKey + " | sameAsStep=" + existing.stepIndex);
+                HtmlSnapshot clone = new HtmlSnapshot();
+                clone.stepIndex = sc.step.index;
+                clone.url = existing.url;
+                clone.entryAction = sc.step.entryAction;
+                clone.cacheKey = existing.cacheKey;
+                clone.cleanedHtml = existing.cleanedHtml;
+                out.add(clone);
+                continue;
+            }
+            if (sc.result != null) out.add(sc.result);
+        }
+        return out;
+    }
 
-                    AutoWebAgentUI.minimizeFrameIfNeeded(frameState);
-                    if (uiLogger != null) uiLogger.accept("采集页面: Step " + step.index + " | " + urlKey);
-                    try {
-                        tmp.navigate(url);
-                    } catch (Exception navEx) {
-                        if (uiLogger != null) uiLogger.accept("打开 URL 失败: " + navEx.getMessage());
-                    }
-                    try {
-                        tmp.waitForLoadState(
-                                com.microsoft.playwright.options.LoadState.NETWORKIDLE,
-                                new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
-                        );
-                    } catch (Exception ignored) {
-                        try {
-                            tmp.waitForLoadState(
-                                    com.microsoft.playwright.options.LoadState.LOAD,
-                                    new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
-                            );
-                        } catch (Exception ignored2) {}
-                    }
-                    // 登录/跳转场景可能带 query 或中间页：用“URL 前缀”方式等待落到目标页面（忽略参数）
-                    boolean stepOk = waitForUrlPrefix(tmp, url, 120000, 2000, uiLogger, "采集页面 Step " + step.index);
-                    if (!stepOk) {
-                        if (cachedPrimary != null) {
-                            if (!urlKey.isEmpty()) snapshotByUrl.putIfAbsent(urlKey, cachedPrimary);
-                            out.add(cachedPrimary);
-                        }
-                        continue;
-                    }
+    /**
+     * 单个 step 的采集状态（规划 → 采集 → 合并）。
+     */
+    private static final class StepCapture {
+        final PlanStep step;
+        String url;
+        String urlKey = "";
+        StepCapture sameAs;
+        HtmlSnapshot cachedPrimary;
+        HtmlSnapshot cachedSecondary;
+        HtmlSnapshot result;
+
+        StepCapture(PlanStep step) {
+            this.step = step;
+        }
+    }
 
-                    String entry = step.entryAction == null ? "" : step.entryAction;
-                    String token = firstQuotedToken(entry);
-                    if (token != null) {
-                        // Entry Action 里常包含引号包裹的“入口按钮/链接”文本：尝试点击进入业务区域
-                        try {
-                            com.microsoft.playwright.Locator loc = tmp.locator("text=" + token).first();
-                            if (loc != null) {
-                                boolean mayOpenNew = entry.contains("新开") || entry.toLowerCase().contains("new tab") || entry.toLowerCase().contains("new window");
-                                if (mayOpenNew) {
-                                    // 若入口动作描述为“新开/新窗口”，则等待新 Page 并切换采集上下文
-                                    try {
-                                        Page newPage = tmp.context().waitForPage(
-                                                new com.microsoft.playwright.BrowserContext.WaitForPageOptions().setTimeout(5000),
-                                                () -> loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000))
-                                        );
-                                        if (newPage != null) {
-                                            Page old = tmp;
-                                            tmp = newPage;
-                                            openedPages.add(tmp);
-                                            try { old.close(); } catch (Exception ignored) {}
-                                            try {
-                                                tmp.waitForLoadState(
-                                                        com.microsoft.playwright.options.LoadState.NETWORKIDLE,
-                                                        new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
-                                                );
-                                            } catch (Exception ignored) {
-                                                try {
-                                                    tmp.waitForLoadState(
-                                                            com.microsoft.playwright.options.LoadState.LOAD,
-                                                            new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
-                                                    );
-                                                } catch (Exception ignored2) {}
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        try { loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000)); } catch (Exception ignored) {}
-                                    }
-                                } else {
-                                    // 普通点击：尽力等待网络空闲，提升采集到稳定 DOM 的概率
-                                    try { loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000)); } catch (Exception ignored) {}
-                                    try {
-                                        tmp.waitForLoadState(
-                                                com.microsoft.playwright.options.LoadState.NETWORKIDLE,
-                                                new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
-                                        );
-                                    } catch (Exception ignored2) {}
-                                }
-                            }
-                        } catch (Exception ignored) {}
-                    }
+    /**
+     * 采集当前 rootPage：自动选择最佳 iframe 上下文。
+     */
+    private static HtmlSnapshot captureCurrentPageStep(
+            Page rootPage,
+            StepCapture sc,
+            HtmlCaptureMode primaryMode,
+            HtmlCaptureMode secondaryMode,
+            boolean a11yInterestingOnly,
+            java.util.function.Consumer<String> uiLogger
+    ) {
+        PlanStep step = sc.step;
+        if (uiLogger != null) uiLogger.accept("采集当前页面: Step " + step.index + " | " + sc.urlKey);
+        Object captureContext = selectCaptureContext(rootPage, step.index, sc.url, sc.urlKey, primaryMode, a11yInterestingOnly, uiLogger);
+        String primaryRaw = sc.cachedPrimary == null ? readPageContentQuietly(captureContext, primaryMode, a11yInterestingOnly) : null;
+        String secondaryRaw = sc.cachedSecondary == null ? readPageContentQuietly(captureContext, secondaryMode, a11yInterestingOnly) : null;
+        return cacheCapturedContents(sc, primaryMode, secondaryMode, a11yInterestingOnly, primaryRaw, secondaryRaw);
+    }
 
-                    Object captureContext = tmp;
-                    try {
-                        ContextWrapper best = null;
-                        boolean debugFrames = AppConfig.getInstance().isAutowebDebugFrameCaptureEnabled();
-                        JsonArray attempts = new JsonArray();
-                        for (int attempt = 0; attempt < 16; attempt++) {
-                            // 采集前同样扫描 iframe：优先选择可见面积最大的内容 frame
-                            ScanResult sr = scanContexts(tmp);
-                            if (sr != null) best = sr.best;
-                            if (debugFrames) {
-                                attempts.add(scanAttemptToJson(tmp, sr, attempt));
-                            }
-                            if (best != null && best.name != null && !"Main Page".equals(best.name)) break;
-                            try { tmp.waitForTimeout(500); } catch (Exception ignored) {}
-                        }
-                        if (debugFrames) {
-                            saveFrameDiagnostics(step.index, url, urlKey, primaryMode, a11yInterestingOnly, tmp, attempts, best, uiLogger);
-                        }
-                        if (best != null) {
-                            String ctxUrl = "";
-                            try {
-                                if (best.context instanceof com.microsoft.playwright.Frame) {
-                                    ctxUrl = ((com.microsoft.playwright.Frame) best.context).url();
-                                } else if (best.context instanceof Page) {
-                                    ctxUrl = ((Page) best.context).url();
-                                }
-                            } catch (Exception ignored) {}
-                            if (uiLogger != null) {
-                                uiLogger.accept("采集 HTML 上下文: Step " + step.index + " | " + best.name + (ctxUrl == null || ctxUrl.trim().isEmpty() ? "" : " | " + ctxUrl.trim()));
-                            }
-                            captureContext = best.context;
-                        } else {
-                            captureContext = tmp;
-                        }
-                    } catch (Exception ignored) {
-                        captureContext = tmp;
+    /**
+     * 采集池中的单个新页面：等待就绪 → 确认落到目标 URL → 入口动作 → 选择上下文并读取内容。
+     * 每个阶段单独持锁；清洗与写缓存在锁外进行。
+     *
+     * @return 采集后可复用的 Page（入口动作打开了新窗口时返回新 Page）
+     */
+    private static Page captureRemoteStep(
+            StepCapture sc,
+            Page tmp,
+            HtmlCaptureMode primaryMode,
+            HtmlCaptureMode secondaryMode,
+            boolean a11yInterestingOnly,
+            java.util.function.Consumer<String> uiLogger
+    ) {
+        PlanStep step = sc.step;
+        String url = sc.url;
+        String urlKey = sc.urlKey;
+        if (tmp == null) {
+            sc.result = sc.cachedPrimary;
+            return null;
+        }
+        if (uiLogger != null) uiLogger.accept("采集页面: Step " + step.index + " | " + urlKey);
+        synchronized (PLAYWRIGHT_LOCK) {
+            waitForNetworkIdleOrLoad(tmp);
+        }
+        // 登录/跳转场景可能带 query 或中间页：用“URL 前缀”方式等待落到目标页面（忽略参数）
+        boolean stepOk = waitForUrlPrefix(tmp, url, 120000, 2000, uiLogger, "采集页面 Step " + step.index);
+        if (!stepOk) {
+            sc.result = sc.cachedPrimary;
+            return tmp;
+        }
+
+        String entry = step.entryAction == null ? "" : step.entryAction;
+        String token = firstQuotedToken(entry);
+        if (token != null) {
+            // Entry Action 里常包含引号包裹的“入口按钮/链接”文本：尝试点击进入业务区域
+            synchronized (PLAYWRIGHT_LOCK) {
+                tmp = runEntryAction(tmp, entry, token);
+            }
+        }
+
+        Object captureContext = selectCaptureContext(tmp, step.index, url, urlKey, primaryMode, a11yInterestingOnly, uiLogger);
+        String primaryRaw = sc.cachedPrimary == null ? readPageContentQuietly(captureContext, primaryMode, a11yInterestingOnly) : null;
+        String secondaryRaw = sc.cachedSecondary == null ? readPageContentQuietly(captureContext, secondaryMode, a11yInterestingOnly) : null;
+        sc.result = cacheCapturedContents(sc, primaryMode, secondaryMode, a11yInterestingOnly, primaryRaw, secondaryRaw);
+        return tmp;
+    }
+
+    private static void waitForNetworkIdleOrLoad(Page page) {
+        try {
+            page.waitForLoadState(
+                    com.microsoft.playwright.options.LoadState.NETWORKIDLE,
+                    new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
+            );
+        } catch (Exception ignored) {
+            try {
+                page.waitForLoadState(
+                        com.microsoft.playwright.options.LoadState.LOAD,
+                        new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
+                );
+            } catch (Exception ignored2) {}
+        }
+    }
+
+    /**
+     * 执行入口动作（点击引号中的入口文本）；描述为“新开/新窗口”时返回新打开的 Page。
+     */
+    private static Page runEntryAction(Page tmp, String entry, String token) {
+        try {
+            com.microsoft.playwright.Locator loc = tmp.locator("text=" + token).first();
+            if (loc == null) return tmp;
+            boolean mayOpenNew = entry.contains("新开") || entry.toLowerCase().contains("new tab") || entry.toLowerCase().contains("new window");
+            if (mayOpenNew) {
+                // 若入口动作描述为“新开/新窗口”，则等待新 Page 并切换采集上下文
+                try {
+                    Page newPage = tmp.context().waitForPage(
+                            new com.microsoft.playwright.BrowserContext.WaitForPageOptions().setTimeout(5000),
+                            () -> loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000))
+                    );
+                    if (newPage != null) {
+                        waitForNetworkIdleOrLoad(newPage);
+                        return newPage;
                     }
-                    HtmlSnapshot primarySnap = cachedPrimary;
-                    if (primarySnap == null) primarySnap = captureAndCacheSnapshot(step.index, url, step.entryAction, captureContext, primaryMode, a11yInterestingOnly);
-                    if (cachedSecondary == null) captureAndCacheSnapshot(step.index, url, step.entryAction, captureContext, secondaryMode, a11yInterestingOnly);
-                    if (primarySnap != null) {
-                        if (!urlKey.isEmpty()) snapshotByUrl.putIfAbsent(urlKey, primarySnap);
-                        out.add(primarySnap);
+                } catch (Exception e) {
+                    try { loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000)); } catch (Exception ignored) {}
+                }
+            } else {
+                // 普通点击：尽力等待网络空闲，提升采集到稳定 DOM 的概率
+                try { loc.click(new com.microsoft.playwright.Locator.ClickOptions().setTimeout(5000)); } catch (Exception ignored) {}
+                try {
+                    tmp.waitForLoadState(
+                            com.microsoft.playwright.options.LoadState.NETWORKIDLE,
+                            new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs())
+                    );
+                } catch (Exception ignored2) {}
+            }
+        } catch (Exception ignored) {}
+        return tmp;
+    }
+
+    /**
+     * 页面可能动态加载 iframe：扫描后等待 frame 事件再重扫（无事件时最多等 500ms），优先选择可见面积最大的内容 frame。
+     */
+    private static Object selectCaptureContext(
+            Page page,
+            int stepIndex,
+            String url,
+            String urlKey,
+            HtmlCaptureMode primaryMode,
+            boolean a11yInterestingOnly,
+            java.util.function.Consumer<String> uiLogger
+    ) {
+        try (FrameScanner.Watcher watcher = FrameScanner.Watcher.attach(page)) {
+            ContextWrapper best = null;
+            boolean debugFrames = AppConfig.getInstance().isAutowebDebugFrameCaptureEnabled();
+            JsonArray attempts = new JsonArray();
+            // 总等待时长与原先 16 次 × 500ms 轮询一致；frame 事件频繁时按时间而不是次数截止
+            long deadline = System.currentTimeMillis() + 16 * FrameScanner.MAX_IDLE_WAIT_MS;
+            for (int attempt = 0; ; attempt++) {
+                int seen = watcher.version();
+                // scanContexts 内部按次持锁；等待事件时分片持锁，其它采集页/UI 可以继续操作浏览器
+                ScanResult sr = scanContexts(page);
+                if (sr != null) best = sr.best;
+                if (debugFrames) {
+                    synchronized (PLAYWRIGHT_LOCK) {
+                        attempts.add(scanAttemptToJson(page, sr, attempt));
                     }
                 }
-            } finally {
-                for (int i = openedPages.size() - 1; i >= 0; i--) {
-                    Page p = openedPages.get(i);
-                    if (p == null) continue;
-                    try { p.close(); } catch (Exception ignored) {}
+                if (best != null && best.name != null && !"Main Page".equals(best.name)) break;
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                watcher.awaitChange(seen, Math.min(FrameScanner.MAX_IDLE_WAIT_MS, remaining));
+                if (CancellationToken.currentCancelled()) break;
+            }
+            String ctxUrl = "";
+            synchronized (PLAYWRIGHT_LOCK) {
+                if (debugFrames) {
+                    saveFrameDiagnostics(stepIndex, url, urlKey, primaryMode, a11yInterestingOnly, page, attempts, best, uiLogger);
                 }
-                // 采集结束后恢复控制台窗口状态，避免影响用户后续操作
-                AutoWebAgentUI.restoreFrameIfNeeded(frameState);
+                if (best == null) return page;
+                try {
+                    if (best.context instanceof com.microsoft.playwright.Frame) {
+                        ctxUrl = ((com.microsoft.playwright.Frame) best.context).url();
+                    } else if (best.context instanceof Page) {
+                        ctxUrl = ((Page) best.context).url();
+                    }
+                } catch (Exception ignored) {}
             }
-            return out;
+            if (uiLogger != null) {
+                uiLogger.accept("采集 HTML 上下文: Step " + stepIndex + " | " + best.name + (ctxUrl == null || ctxUrl.trim().isEmpty() ? "" : " | " + ctxUrl.trim()));
+            }
+            return best.context;
+        } catch (Exception ignored) {
+            return page;
+        }
+    }
+
+    private static String readPageContentQuietly(Object pageOrFrame, HtmlCaptureMode mode, boolean a11yInterestingOnly) {
+        synchronized (PLAYWRIGHT_LOCK) {
+            try {
+                return getPageContent(pageOrFrame, mode, a11yInterestingOnly);
+            } catch (Exception ignored) {
+                return "";
+            }
+        }
+    }
+
+    /**
+     * 清洗并写入缓存（不访问浏览器，无需持锁）；返回主采集模式的快照。
+     */
+    private static HtmlSnapshot cacheCapturedContents(
+            StepCapture sc,
+            HtmlCaptureMode primaryMode,
+            HtmlCaptureMode secondaryMode,
+            boolean a11yInterestingOnly,
+            String primaryRaw,
+            String secondaryRaw
+    ) {
+        PlanStep step = sc.step;
+        HtmlSnapshot primarySnap = sc.cachedPrimary;
+        if (primarySnap == null && primaryRaw != null) {
+            primarySnap = writeCachedHtml(step.index, sc.url, step.entryAction, primaryMode, a11yInterestingOnly, primaryRaw, cleanCapturedContent(primaryRaw, primaryMode));
+        }
+        if (sc.cachedSecondary == null && secondaryRaw != null) {
+            writeCachedHtml(step.index, sc.url, step.entryAction, secondaryMode, a11yInterestingOnly, secondaryRaw, cleanCapturedContent(secondaryRaw, secondaryMode));
         }
+        return primarySnap;
     }
 
     /**
@@ -1242,12 +1329,12 @@ public class AutoWebAgent {
                 if (isMeaningfulAriaSnapshotText(snapText)) return wrapAsJsonText(snapText);
                 String axTree = "";
                 try {
-                    axTree = getA11yFullAxTreeJson(p, a11yInterestingOnly, safePageUrl(p));
+                    axTree = getA11yFullAxTreeText(p, a11yInterestingOnly, safePageUrl(p));
                 } catch (Exception ignored) {
                     axTree = "";
                 }
                 if (axTree != null && !axTree.trim().isEmpty()) {
-                    return wrapAsA11yFallbackJson("", axTree);
+                    return wrapAsAxTreeText(axTree);
                 }
                 String raw = getRawHtmlContent(scoped);
                 return raw == null ? "" : raw;
@@ -1281,191 +1368,20 @@ public class AutoWebAgent {
         return PRETTY_GSON.toJson(o);
     }
 
-    private static String wrapAsA11yFallbackJson(String ariaSnapshotText, String axTreeJsonText) {
-        JsonObject o = new JsonObject();
-        o.addProperty("ariaSnapshotText", ariaSnapshotText == null ? "" : ariaSnapshotText);
-        if (axTreeJsonText != null && !axTreeJsonText.trim().isEmpty()) {
-            try {
-                o.add("axTree", JsonParser.parseString(axTreeJsonText));
-            } catch (Exception ignored) {
-                o.addProperty("axTreeText", axTreeJsonText);
-            }
-        }
-        return PRETTY_GSON.toJson(o);
-    }
-
-    private static String getAxRoleValue(JsonObject node) {
-        if (node == null) return "";
-        try {
-            JsonObject role = node.getAsJsonObject("role");
-            if (role == null) return "";
-            JsonElement v = role.get("value");
-            if (v == null) return "";
-            return v.getAsString();
-        } catch (Exception ignored) {
-            return "";
-        }
-    }
-
-    private static String getAxNodeUrl(JsonObject node) {
-        if (node == null) return "";
-        try {
-            JsonArray props = node.getAsJsonArray("properties");
-            if (props == null) return "";
-            for (JsonElement pe : props) {
-                if (!(pe instanceof JsonObject)) continue;
-                JsonObject p = (JsonObject) pe;
-                JsonElement name = p.get("name");
-                if (name == null) continue;
-                if (!"url".equalsIgnoreCase(name.getAsString())) continue;
-                JsonObject val = p.getAsJsonObject("value");
-                if (val == null) return "";
-                JsonElement vv = val.get("value");
-                return vv == null ? "" : vv.getAsString();
-            }
-        } catch (Exception ignored) {}
-        return "";
-    }
-
-    private static java.util.Set<String> collectAxSubtreeIds(java.util.Map<String, JsonObject> byId, String rootId) {
-        java.util.HashSet<String> out = new java.util.HashSet<>();
-        if (rootId == null || rootId.isEmpty()) return out;
-        java.util.ArrayDeque<String> q = new java.util.ArrayDeque<>();
-        q.add(rootId);
-        while (!q.isEmpty()) {
-            String id = q.poll();
-            if (id == null || id.isEmpty()) continue;
-            if (!out.add(id)) continue;
-            JsonObject n = byId.get(id);
-            if (n == null) continue;
-            try {
-                JsonArray children = n.getAsJsonArray("childIds");
-                if (children == null) continue;
-                for (JsonElement ce : children) {
-                    if (ce == null) continue;
-                    try {
-                        q.add(ce.getAsString());
-                    } catch (Exception ignored) {}
-                }
-            } catch (Exception ignored) {}
-        }
-        return out;
-    }
-
-    private static JsonObject filterAxTreeToLargestRootWebArea(JsonObject result, String expectedUrl) {
-        if (result == null) return null;
-        JsonArray nodes = null;
-        try { nodes = result.getAsJsonArray("nodes"); } catch (Exception ignored) {}
-        if (nodes == null || nodes.isEmpty()) return result;
-
-        java.util.HashMap<String, JsonObject> byId = new java.util.HashMap<>();
-        java.util.ArrayList<String> rootIds = new java.util.ArrayList<>();
-
-        for (JsonElement e : nodes) {
-            if (!(e instanceof JsonObject)) continue;
-            JsonObject n = (JsonObject) e;
-            String id = "";
-            try {
-                JsonElement ide = n.get("nodeId");
-                if (ide != null) id = ide.getAsString();
-            } catch (Exception ignored) {}
-            if (!id.isEmpty()) byId.put(id, n);
-
-            String roleValue = getAxRoleValue(n);
-            boolean isRoot = "RootWebArea".equalsIgnoreCase(roleValue);
-            if (!isRoot) {
-                try {
-                    JsonObject chromeRole = n.getAsJsonObject("chromeRole");
-                    if (chromeRole != null) {
-                        JsonElement v = chromeRole.get("value");
-                        if (v != null && v.getAsInt() == 144) isRoot = true;
-                    }
-                } catch (Exception ignored) {}
-            }
-            if (isRoot && !id.isEmpty()) rootIds.add(id);
-        }
-
-        if (rootIds.isEmpty()) return result;
-
-        String expected = "";
-        try {
-            expected = PlanRoutingSupport.stripUrlQuery(expectedUrl);
-            if (expected == null) expected = "";
-            expected = expected.trim();
-        } catch (Exception ignored) {}
-
-        String bestRootId = null;
-        java.util.Set<String> bestIds = null;
-        boolean bestBad = true;
-        boolean bestMatch = false;
-
-        for (String rid : rootIds) {
-            java.util.Set<String> ids = collectAxSubtreeIds(byId, rid);
-            int size = ids == null ? 0 : ids.size();
-            JsonObject rootNode = byId.get(rid);
-            String url = getAxNodeUrl(rootNode);
-            String urlTrim = url == null ? "" : url.trim();
-            boolean bad = urlTrim.isEmpty() || "about:blank".equalsIgnoreCase(urlTrim);
-            String urlNoQuery = "";
-            try {
-                urlNoQuery = PlanRoutingSupport.stripUrlQuery(urlTrim);
-                if (urlNoQuery == null) urlNoQuery = "";
-                urlNoQuery = urlNoQuery.trim();
-            } catch (Exception ignored) {}
-            boolean match = !expected.isEmpty()
-                    && !urlNoQuery.isEmpty()
-                    && (urlNoQuery.startsWith(expected) || expected.startsWith(urlNoQuery));
-
-            if (bestRootId == null) {
-                bestRootId = rid;
-                bestIds = ids;
-                bestBad = bad;
-                bestMatch = match;
-                continue;
-            }
-            int bestSize = bestIds == null ? 0 : bestIds.size();
-            if (!bestMatch && match) {
-                bestRootId = rid;
-                bestIds = ids;
-                bestBad = bad;
-                bestMatch = true;
-                continue;
-            }
-            if (bestMatch == match && bestBad && !bad) {
-                bestRootId = rid;
-                bestIds = ids;
-                bestBad = bad;
-                bestMatch = match;
-                continue;
-            }
-            if (bestMatch == match && bestBad == bad && size > bestSize) {
-                bestRootId = rid;
-                bestIds = ids;
-                bestBad = bad;
-                bestMatch = match;
-            }
-        }
-
-        if (bestIds == null || bestIds.isEmpty()) return result;
+    /** CDP 无障碍树兜底文本的首行标记，后面直接跟 {@link AxTreeEncoder} 输出的逐行文本 */
+    static final String AX_TREE_TEXT_HEADER = "AX_TREE_TEXT:";
 
-        JsonArray filtered = new JsonArray();
-        for (JsonElement e : nodes) {
-            if (!(e instanceof JsonObject)) continue;
-            JsonObject n = (JsonObject) e;
-            String id = "";
-            try {
-                JsonElement ide = n.get("nodeId");
-                if (ide != null) id = ide.getAsString();
-            } catch (Exception ignored) {}
-            if (!id.isEmpty() && bestIds.contains(id)) filtered.add(n);
-        }
-
-        JsonObject out = result.deepCopy();
-        out.add("nodes", filtered);
-        return out;
+    /**
+     * 无障碍树兜底结果以纯文本段落输出，不再包进 JSON 字符串（避免换行与引号被再次转义）。
+     */
+    static String wrapAsAxTreeText(String axTreeText) {
+        return AX_TREE_TEXT_HEADER + "\n" + (axTreeText == null ? "" : axTreeText);
     }
 
-    private static String getA11yFullAxTreeJson(Page page, boolean interestingOnly, String expectedUrl) {
+    /**
+     * CDP 全量无障碍树兜底：只保留目标 RootWebArea，编码为紧凑的逐行文本（见 {@link AxTreeEncoder}）。
+     */
+    private static String getA11yFullAxTreeText(Page page, boolean interestingOnly, String expectedUrl) {
         if (page == null) return "";
         CDPSession cdp = null;
         try {
@@ -1474,8 +1390,7 @@ public class AutoWebAgent {
             JsonObject params = new JsonObject();
             params.addProperty("interestingOnly", interestingOnly);
             JsonObject result = cdp.send("Accessibility.getFullAXTree", params);
-            JsonObject filtered = filterAxTreeToLargestRootWebArea(result, expectedUrl);
-            return filtered == null ? "" : PRETTY_GSON.toJson(filtered);
+            return AxTreeEncoder.encode(result, expectedUrl);
         } catch (Exception ignored) {
             return "";
         } finally {
@@ -1507,6 +1422,53 @@ public class AutoWebAgent {
         return out;
     }
 
+    /**
+     * 计算页面（或 Frame）的结构指纹，用于判断回放记录是否仍适用于当前页面。
+     *
+     * @param pageOrFrame Page 或 Frame
+     * @return 结构指纹（读取失败时为空页面的指纹）
+     */
+    public static ReplayStore.Fingerprint capturePageFingerprint(Object pageOrFrame) {
+        String raw = getPageContent(pageOrFrame, HtmlCaptureMode.RAW_HTML, true);
+        return ReplayStore.Fingerprint.of(HTMLCleaner.clean(raw));
+    }
+
+    /**
+     * 判断步骤是否在当前页面上执行（targetUrl 为空/CURRENT_PAGE/非 URL，或去掉 query 后与当前地址相同）。
+     *
+     * @param step 计划步骤
+     * @param currentUrl 当前页面地址
+     * @return true 表示不需要打开其它页面即可采集
+     */
+    public static boolean isCurrentPageStep(PlanStep step, String currentUrl) {
+        if (step == null) return true;
+        String url = normalizeUrlToken(step.targetUrl);
+        if (url == null || url.trim().isEmpty() || "CURRENT_PAGE".equalsIgnoreCase(url.trim())) return true;
+        if (!looksLikeUrl(url)) return true;
+        String cur = currentUrl == null ? "" : currentUrl.trim();
+        return PlanRoutingSupport.stripUrlQuery(url).equals(PlanRoutingSupport.stripUrlQuery(cur));
+    }
+
+    /**
+     * 直接采集页面（或 Frame）当前状态，不读写快照缓存（缓存按 URL 命中，无法反映同一页面上操作后的变化）。
+     *
+     * @param pageOrFrame Page 或 Frame
+     * @param step 对应的计划步骤
+     * @param captureMode 采集模式
+     * @return 快照（cacheKey 为空）
+     */
+    public static HtmlSnapshot captureLiveSnapshot(Object pageOrFrame, PlanStep step, HtmlCaptureMode captureMode) {
+        HtmlSnapshot s = new HtmlSnapshot();
+        s.stepIndex = step == null ? 0 : step.index;
+        s.entryAction = step == null ? null : step.entryAction;
+        s.cacheKey = "";
+        Page page = pageOrFrame instanceof Page ? (Page) pageOrFrame
+                : pageOrFrame instanceof com.microsoft.playwright.Frame ? ((com.microsoft.playwright.Frame) pageOrFrame).page() : null;
+        s.url = safePageUrl(page);
+        s.cleanedHtml = cleanCapturedContent(getPageContent(pageOrFrame, captureMode, true), captureMode);
+        return s;
+    }
+
     /**
      * LLM 调用封装函数 (generateGroovyScript)
      * 1. 加载 Prompt 模板 (groovy_script_prompt.txt)
@@ -1703,6 +1665,96 @@ public class AutoWebAgent {
         return out.toString();
     }
 
+    /**
+     * 生成计划（无界面，见 {@link WorkflowSupport#generatePlan}）
+     */
+    public static PlanParseResult generatePlan(String modelName, String promptForLlm, String currentUrl, String entryUrl, String debugTag, java.util.function.Consumer<String> logger) {
+        return WorkflowSupport.generatePlan(modelName, promptForLlm, currentUrl, entryUrl, debugTag, logger);
+    }
+
+    /**
+     * 补充入口信息后修正计划（无界面，见 {@link WorkflowSupport#refinePlan}）
+     */
+    public static PlanParseResult refinePlan(String modelName, String promptForLlm, String currentUrl, String entryInput, java.util.function.Supplier<String> visualDescription, String debugTag, java.util.function.Consumer<String> logger) {
+        return WorkflowSupport.refinePlan(modelName, promptForLlm, currentUrl, entryInput, visualDescription, debugTag, logger);
+    }
+
+    /**
+     * 将计划结果写回会话
+     */
+    public static void applyPlan(ModelSession session, String userPrompt, PlanParseResult parsed) {
+        WorkflowSupport.applyPlan(session, userPrompt, parsed);
+    }
+
+    /**
+     * 按会话中的计划采集 HTML 并生成代码（无界面，见 {@link WorkflowSupport#generateCode}）
+     */
+    public static String generateCode(
+            String modelName,
+            String promptForLlm,
+            String entryUrl,
+            ModelSession session,
+            java.util.function.Function<String, Page> pageProvider,
+            HtmlCaptureMode mode,
+            boolean a11yInterestingOnly,
+            Object captureLock,
+            java.util.function.Supplier<String> visualDescription,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        return WorkflowSupport.generateCode(modelName, promptForLlm, entryUrl, session, pageProvider, mode, a11yInterestingOnly, captureLock, visualDescription, debugTag, logger);
+    }
+
+    /**
+     * 修正已有代码（无界面，见 {@link WorkflowSupport#refineCode}）
+     */
+    public static String refineCode(
+            String modelName,
+            String currentPrompt,
+            String previousCode,
+            String execOutput,
+            String refineHint,
+            String entryUrl,
+            ModelSession session,
+            Page rootPage,
+            HtmlCaptureMode mode,
+            boolean a11yInterestingOnly,
+            java.util.function.Supplier<String> visualDescription,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        return WorkflowSupport.refineCode(modelName, currentPrompt, previousCode, execOutput, refineHint, entryUrl, session, rootPage, mode, a11yInterestingOnly, visualDescription, debugTag, logger);
+    }
+
+    /**
+     * 执行前把根页面带到入口 URL
+     */
+    public static String navigateToExecutionEntry(String modelName, ModelSession session, String currentPrompt, Page rootPage, java.util.function.Consumer<String> logger) {
+        return WorkflowSupport.navigateToExecutionEntry(modelName, session, currentPrompt, rootPage, logger);
+    }
+
+    /**
+     * 按 Step 标记逐步执行脚本（无界面，见 {@link WorkflowSupport#executeSteps}）
+     */
+    public static void executeSteps(
+            String code,
+            java.util.List<PlanStep> steps,
+            Page rootPage,
+            boolean promoteSharedDefs,
+            java.util.function.BooleanSupplier stopped,
+            StepExecutionListener listener,
+            java.util.function.Consumer<String> logger
+    ) {
+        WorkflowSupport.executeSteps(code, steps, rootPage, promoteSharedDefs, stopped, listener, logger);
+    }
+
+    /**
+     * 获取用于分步执行的步骤列表（按步骤序号排序）
+     */
+    public static java.util.List<PlanStep> getStepsForStepExecution(ModelSession session, String code) {
+        return WorkflowSupport.getStepsForStepExecution(session, code);
+    }
+
     public static void executeWithGroovy(String scriptCode, Object pageOrFrame, java.util.function.Consumer<String> logger) throws Exception {
         executeWithGroovy(scriptCode, pageOrFrame, logger, null, null, null);
     }
@@ -1731,6 +1783,9 @@ public class AutoWebAgent {
             saveDebugArtifact(ts, "EXEC", "GROOVY", "script_normalized", normalizedCode, logger);
         }
 
+        // 取消检查点：已取消的任务不再做静态检查与执行
+        CancellationToken.checkCurrent();
+
         // 1. Static Linting
         java.util.List<String> lintErrors = GroovyLinter.check(normalizedCode);
         if (!lintErrors.isEmpty()) {
@@ -1786,9 +1841,18 @@ public class AutoWebAgent {
                 }
             }, true)); // Auto-flush
 
-            groovy.lang.GroovyShell shell = new groovy.lang.GroovyShell(binding, secureGroovyCompilerConfig());
-            shell.evaluate(normalizedCode);
+            // 复用已编译的 Script 类（GroovyLinter.check 时已编译），不再每次新建 GroovyShell 重新编译
+            try {
+                GroovyScriptCache.shared().run(normalizedCode, binding);
+            } finally {
+                dsl.finishSelectorResolution();
+            }
+            // 脚本最后一个 DSL 动作之后才取消的，同样按取消返回，不当作执行成功
+            CancellationToken.checkCurrent();
             if (logger != null) logger.accept("Groovy script executed successfully.");
+        } catch (java.util.concurrent.CancellationException e) {
+            if (logger != null) logger.accept("Groovy execution cancelled: " + e.getMessage());
+            throw e;
         } catch (Exception e) {
             String msg = e.getMessage();
             if (msg == null) msg = "";
@@ -1819,51 +1883,7 @@ public class AutoWebAgent {
     }
 
     static String normalizeGroovyScriptForExecution(String code) {
-        if (code == null) return "";
-        String out = code;
-        out = out.replaceAll("```groovy", "").replaceAll("```java", "").replaceAll("```", "");
-        out = out.replaceFirst("(?s)^\\s*(groovy|java)\\s*\\r?\\n", "");
-
-        out = out.replaceAll("(?m)^\\s*import\\s+static\\s+[^\\r\\n]+\\s*$", "");
-
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.util\\.[A-Za-z0-9_.$]+\\s*$", "import java.util.*");
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.math\\.[A-Za-z0-9_.$]+\\s*$", "import java.math.*");
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.time\\.[A-Za-z0-9_.$]+\\s*$", "import java.time.*");
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.time\\.format\\.[A-Za-z0-9_.$]+\\s*$", "");
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.text\\.[A-Za-z0-9_.$]+\\s*$", "import java.text.*");
-        out = out.replaceAll("(?m)^\\s*import\\s+java\\.util\\.regex\\.[A-Za-z0-9_.$]+\\s*$", "import java.util.regex.*");
-        out = out.replaceAll("(?m)^\\s*import\\s+com\\.google\\.gson\\.[A-Za-z0-9_.$]+\\s*$", "import com.google.gson.*");
-
-        out = out.replaceAll("(?m)^\\s*import\\s+groovy\\.json\\.(JsonOutput|JsonBuilder)\\s*$", "");
-
-        out = out.replaceAll("(?m)^\\s*println\\s+groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\(", "println new groovy.json.JsonBuilder(");
-        out = out.replaceAll("groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\(", "new groovy.json.JsonBuilder(");
-
-        out = out.replaceAll("new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
-        out = out.replaceAll("groovy\\.json\\.JsonBuilder\\s*\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
-        out = out.replaceAll("println\\s+new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "println new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
-
-        out = out.replaceAll("JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
-        out = out.replaceAll("println\\s+JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)", "println new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
-        out = out.replaceAll("JsonOutput\\.toJson\\(([^\\)]*)\\)", "new com.google.gson.Gson().toJson($1)");
-
-        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)", "new java.text.SimpleDateFormat(\"$1\").format(new Date())");
-        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)", "new java.text.SimpleDateFormat('$1').format(new Date())");
-        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)", "new java.text.SimpleDateFormat(\"$2\").format($1)");
-        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)", "new java.text.SimpleDateFormat('$2').format($1)");
-
-        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).minus(java.time.Duration.ofDays($1L)).toEpochMilli())");
-        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).plus(java.time.Duration.ofDays($1L)).toEpochMilli())");
-        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli($1.getTime()).minus(java.time.Duration.ofDays($2L)).toEpochMilli())");
-        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli($1.getTime()).plus(java.time.Duration.ofDays($2L)).toEpochMilli())");
-
-        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalDate\\b", "java.time.LocalDate");
-        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalDateTime\\b", "java.time.LocalDateTime");
-        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalTime\\b", "java.time.LocalTime");
-        out = out.replaceAll("(?<![A-Za-z0-9_\\.])DateTimeFormatter\\b", "java.time.format.DateTimeFormatter");
-        out = out.replaceAll("(?<![A-Za-z0-9_\\.])DateTimeParseException\\b", "java.time.format.DateTimeParseException");
-
-        return out.trim();
+        return GroovyNormalizer.forExecution(code);
     }
 
     static org.codehaus.groovy.control.CompilerConfiguration secureGroovyCompilerConfig() {
@@ -123,7 +123,7 @@ class AutoWebAgentUI {
         java.util.concurrent.ConcurrentHashMap<String, String> executionSummaryByModel = new java.util.concurrent.ConcurrentHashMap<>();
         java.util.concurrent.ConcurrentHashMap<String, Integer> stepCursorByModel = new java.util.concurrent.ConcurrentHashMap<>();
         java.util.concurrent.ConcurrentHashMap<String, Boolean> lastStepExecSingleByModel = new java.util.concurrent.ConcurrentHashMap<>();
-        java.util.concurrent.ConcurrentHashMap<String, Thread> runningThreadByModel = new java.util.concurrent.ConcurrentHashMap<>();
+        java.util.concurrent.ConcurrentHashMap<String, CancellationToken> runningTokenByModel = new java.util.concurrent.ConcurrentHashMap<>();
         java.util.concurrent.atomic.AtomicBoolean tableRefreshing = new java.util.concurrent.atomic.AtomicBoolean(false);
         java.util.concurrent.atomic.AtomicBoolean tabLocked = new java.util.concurrent.atomic.AtomicBoolean(false);
         java.util.concurrent.atomic.AtomicInteger lockedTabIndex = new java.util.concurrent.atomic.AtomicInteger(-1);
@@ -752,6 +752,8 @@ class AutoWebAgentUI {
              });
              AppLog.info(outFinal);
         };
+        Runnable onUiJobRejected = () -> SwingUtilities.invokeLater(() ->
+                setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true));
 
         btnReloadPrompts.addActionListener(e -> {
             GroovySupport.loadPrompts(uiLogger);
@@ -784,11 +786,8 @@ class AutoWebAgentUI {
         btnInterruptExecution.addActionListener(e -> {
             long epoch = uiEpoch.incrementAndGet();
             try {
-                for (java.util.Map.Entry<String, Thread> ent : runningThreadByModel.entrySet()) {
-                    Thread t = ent.getValue();
-                    if (t != null && t.isAlive()) {
-                        try { t.interrupt(); } catch (Exception ignored) {}
-                    }
+                for (CancellationToken token : runningTokenByModel.values()) {
+                    token.cancel("用户中断");
                 }
             } catch (Exception ignored) {}
             try {
@@ -925,10 +924,11 @@ class AutoWebAgentUI {
                 JOptionPane.showMessageDialog(frame, "请先在“用户任务”区域顶部的入口URL输入框中填写入口地址。", "提示", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
-            final String promptForPayload = stripUrlsFromText(currentPrompt);
+            final String promptForPayload = WorkflowSupport.stripUrlsFromText(currentPrompt);
             final String promptForLlm = promptForPayload;
 
             final long planEpoch = uiEpoch.get();
+            final boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
             java.util.List<String> pendingEntryModels = new java.util.ArrayList<>();
             for (String modelName : selectedModels) {
                 ModelSession s = sessionsByModel.get(modelName);
@@ -976,92 +976,27 @@ class AutoWebAgentUI {
                     uiLogger.accept("开始提交入口地址并修正规划...");
                     
                     java.util.List<String> refineModels = new java.util.ArrayList<>(pendingEntryModels);
-                    new Thread(() -> {
+                    submitUiJob("plan-refine", null, () -> {
                         try {
                             if (uiEpoch.get() != planEpoch) return;
                             refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "修正规划前刷新页面");
-                            boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
-                            java.util.concurrent.atomic.AtomicReference<String> visualDescriptionRef = new java.util.concurrent.atomic.AtomicReference<>(null);
-                            Object visualDescriptionLock = new Object();
                             traceVisual("PLAN_REFINE_THREAD_START",
                                     "epochOk=" + (uiEpoch.get() == planEpoch) +
                                             ", models=" + refineModels.size() +
                                             ", useVisualSupplement=" + useVisualSupplement +
                                             ", entryInputLen=" + (entryInput == null ? 0 : entryInput.length()));
-                            java.util.concurrent.ExecutorService ex2 = java.util.concurrent.Executors.newFixedThreadPool(refineModels.size());
-                            java.util.List<java.util.concurrent.Future<?>> fs2 = new java.util.ArrayList<>();
+                            java.util.function.Supplier<String> visualDescription = !useVisualSupplement ? null : memoize(() ->
+                                    capturePlanRefineVisualDescription(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, entryInput, uiLogger));
+                            java.util.List<Runnable> fs2 = new java.util.ArrayList<>();
                             for (String modelName : refineModels) {
-                                fs2.add(ex2.submit(() -> {
+                                fs2.add(() -> {
                                     try {
                                         if (uiEpoch.get() != planEpoch) return;
                                         ModelSession session = sessionsByModel.computeIfAbsent(modelName, k -> new ModelSession());
-                                        traceVisual("PLAN_REFINE_MODEL_START",
-                                                "model=" + modelName +
-                                                        ", useVisualSupplement=" + useVisualSupplement +
-                                                        ", visualRefNull=" + (visualDescriptionRef.get() == null));
                                         uiLogger.accept("阶段开始: model=" + modelName + ", action=PLAN_REFINE");
-                                        uiLogger.accept("PLAN_REFINE Debug: model=" + modelName + ", entryInput='" + entryInput + "'");
-                                        String visualDescriptionFinal = null;
-                                        if (useVisualSupplement) {
-                                            String v = visualDescriptionRef.get();
-                                            if (v == null) {
-                                                synchronized (visualDescriptionLock) {
-                                                    v = visualDescriptionRef.get();
-                                                    if (v == null) {
-                                                        try {
-                                                            traceVisual("PLAN_REFINE_VISUAL_BEGIN", "model=" + modelName);
-                                                            ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
-                                                            refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "PLAN_REFINE 视觉补充截图前刷新页面");
-                                                            Page pageForVisual = rootPageRef.get();
-                                                            String targetUrlForVisual = PlanRoutingSupport.extractFirstUrlFromText(entryInput);
-                                                            if (targetUrlForVisual != null && !targetUrlForVisual.trim().isEmpty()) {
-                                                                traceVisual("PLAN_REFINE_VISUAL_TARGET", "targetUrl=" + PlanRoutingSupport.stripUrlQuery(targetUrlForVisual.trim()));
-                                                                PlanRoutingSupport.ensureRootPageAtUrl(pageForVisual, targetUrlForVisual.trim(), uiLogger);
-                                                            }
-                                                            traceVisual("PLAN_REFINE_VISUAL_PAGE",
-                                                                    "model=" + modelName +
-                                                                            ", pageNull=" + (pageForVisual == null) +
-                                                                            ", pageUrl=" + safePageUrl(pageForVisual));
-                                                            clearVisualCacheForPage(pageForVisual, uiLogger);
-                                                            if (uiLogger != null) uiLogger.accept("视觉补充(PLAN_REFINE): 开始截图");
-                                                            v = buildPageVisualDescription(pageForVisual, uiLogger);
-                                                            int len = v == null ? 0 : v.length();
-                                                            uiLogger.accept("视觉补充(PLAN_REFINE): 已生成页面描述（len=" + len + "）");
-                                                            traceVisual("PLAN_REFINE_VISUAL_DONE", "model=" + modelName + ", descLen=" + len);
-                                                        } catch (Exception ex) {
-                                                            uiLogger.accept("视觉补充(PLAN_REFINE)失败: " + ex.getMessage());
-                                                            traceVisual("PLAN_REFINE_VISUAL_ERROR",
-                                                                    "model=" + modelName + ", err=" + ex.getClass().getName() + ": " + (ex.getMessage() == null ? "" : ex.getMessage()));
-                                                            v = "";
-                                                        }
-                                                        if (v == null) v = "";
-                                                        visualDescriptionRef.set(v);
-                                                    }
-                                                }
-                                            }
-                                            visualDescriptionFinal = v;
-                                        }
-                                        String currentUrlForRefine = entryUrlFinal;
-                                        String payload = buildPlanRefinePayload(currentUrlForRefine, promptForPayload, entryInput, useVisualSupplement ? visualDescriptionFinal : null);
-                                        uiLogger.accept("PLAN_REFINE Payload Hash: " + payload.hashCode() + " | Length: " + payload.length());
-                                        uiLogger.accept("阶段中: model=" + modelName + ", planMode=" + extractModeFromPayload(payload));
-                                        String text = generateGroovyScript(promptForLlm, payload, uiLogger, modelName);
-                                        String finalText = text == null ? "" : text;
+                                        PlanParseResult parsed = refinePlan(modelName, promptForLlm, entryUrlFinal, entryInput, visualDescription, "plan_refine", uiLogger);
                                         if (uiEpoch.get() != planEpoch) return;
-                                        AutoWebAgentUtils.saveDebugCodeVariant(finalText, modelName, "plan_refine", uiLogger);
-                                        PlanParseResult parsed = parsePlanFromText(finalText);
-                                        if (!parsed.confirmed) {
-                                            uiLogger.accept("PLAN_REFINE 未通过: model=" + modelName + " | Confirmed=false. LLM Output:\n" + finalText);
-                                        }
-                                        session.userPrompt = currentPrompt;
-                                        session.planText = parsed.planText;
-                                        session.steps = parsed.steps;
-                                        session.planConfirmed = parsed.confirmed;
-                                        session.lastArtifactType = "PLAN";
-                                        session.htmlPrepared = false;
-                                        session.htmlCaptureMode = null;
-                                        session.htmlA11yInterestingOnly = false;
-                                        session.stepSnapshots.clear();
+                                        applyPlan(session, currentPrompt, parsed);
                                         SwingUtilities.invokeLater(() -> {
                                             int idx = codeTabs.indexOfTab(modelName);
                                             if (idx < 0) {
@@ -1081,12 +1016,9 @@ class AutoWebAgentUI {
                                     } catch (Exception e2) {
                                         uiLogger.accept("PLAN_REFINE 失败: model=" + modelName + ", err=" + e2.getMessage());
                                     }
-                                }));
-                            }
-                            for (java.util.concurrent.Future<?> f2 : fs2) {
-                                try { f2.get(); } catch (Exception ignored2) {}
+                                });
                             }
-                            ex2.shutdown();
+                            AutoWebEngine.shared().runAll(CancellationToken.current(), fs2);
                         } finally {
                             if (uiEpoch.get() == planEpoch) {
                                 setStage.accept("NONE");
@@ -1101,7 +1033,7 @@ class AutoWebAgentUI {
                                 });
                             }
                         }
-                    }).start();
+                    }, uiLogger, onUiJobRejected);
                     return;
                 }
             }
@@ -1120,43 +1052,23 @@ class AutoWebAgentUI {
             }
             if (codeTabs.getTabCount() > 0) codeTabs.setSelectedIndex(0);
 
-            new Thread(() -> {
+            submitUiJob("plan", null, () -> {
                 try {
                     if (uiEpoch.get() != planEpoch) return;
                     uiLogger.accept("规划阶段：仅发送用户任务与提示规则，不采集 HTML。");
                     refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "生成计划前刷新页面");
-                    String currentUrlForPlan = entryUrlFinal;
-                    java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(selectedModels.size());
-                    java.util.List<java.util.concurrent.Future<?>> futures = new java.util.ArrayList<>();
+                    java.util.List<Runnable> futures = new java.util.ArrayList<>();
                     java.util.Set<String> needsEntryModels = java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<>());
                     
                     for (String modelName : selectedModels) {
-                        futures.add(executor.submit(() -> {
+                        futures.add(() -> {
                             try {
                                 if (uiEpoch.get() != planEpoch) return;
                                 uiLogger.accept("阶段开始: model=" + modelName + ", action=PLAN");
-                                boolean hasUrl = entryUrlFinal != null && !entryUrlFinal.trim().isEmpty();
-                                
-                                String payload = hasUrl
-                                        ? buildPlanOnlyPayload(currentUrlForPlan, promptForPayload, entryUrlFinal)
-                                        : buildPlanEntryPayload(currentUrlForPlan, promptForPayload);
-                                uiLogger.accept("阶段中: model=" + modelName + ", planMode=" + extractModeFromPayload(payload));
-                                
-                                String planResult = generateGroovyScript(promptForLlm, payload, uiLogger, modelName);
-                                String finalPlanResult = planResult == null ? "" : planResult;
+                                PlanParseResult parsed = generatePlan(modelName, promptForLlm, entryUrlFinal, entryUrlFinal, "plan", uiLogger);
                                 if (uiEpoch.get() != planEpoch) return;
                                 ModelSession session = sessionsByModel.computeIfAbsent(modelName, k -> new ModelSession());
-                                AutoWebAgentUtils.saveDebugCodeVariant(finalPlanResult, modelName, "plan", uiLogger);
-                                PlanParseResult parsed = parsePlanFromText(finalPlanResult);
-                                session.userPrompt = currentPrompt;
-                                session.planText = parsed.planText;
-                                session.steps = parsed.steps;
-                                session.planConfirmed = parsed.confirmed;
-                                session.lastArtifactType = "PLAN";
-                                session.htmlPrepared = false;
-                                session.htmlCaptureMode = null;
-                                session.htmlA11yInterestingOnly = false;
-                                session.stepSnapshots.clear();
+                                applyPlan(session, currentPrompt, parsed);
 
                                 SwingUtilities.invokeLater(() -> {
                                     int idx = codeTabs.indexOfTab(modelName);
@@ -1193,13 +1105,10 @@ class AutoWebAgentUI {
                                     });
                                 }
                             }
-                        }));
+                        });
                     }
                     
-                    for (java.util.concurrent.Future<?> f : futures) {
-                        try { f.get(); } catch (Exception ignored) {}
-                    }
-                    executor.shutdown();
+                    AutoWebEngine.shared().runAll(CancellationToken.current(), futures);
 
                     java.util.List<String> needList = new java.util.ArrayList<>(needsEntryModels);
                     needList.sort(String::compareTo);
@@ -1234,94 +1143,28 @@ class AutoWebAgentUI {
                     if (uiEpoch.get() != planEpoch) return;
                     uiLogger.accept("开始提交入口地址并修正规划...");
                     refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "修正规划前刷新页面");
-                    String currentUrlForRefine = entryUrlFinal;
-                    boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
-                    java.util.concurrent.atomic.AtomicReference<String> visualDescriptionRef = new java.util.concurrent.atomic.AtomicReference<>(null);
-                    Object visualDescriptionLock = new Object();
                     java.util.List<String> refineModels = new java.util.ArrayList<>(needList);
                     traceVisual("PLAN_REFINE_THREAD_START",
                             "epochOk=" + (uiEpoch.get() == planEpoch) +
                                     ", models=" + refineModels.size() +
                                     ", useVisualSupplement=" + useVisualSupplement +
-                                    ", currentUrlForRefine=" + (currentUrlForRefine == null ? "" : currentUrlForRefine) +
-                                    ", entryInputLen=" + (entryInput == null ? 0 : entryInput.length()));
-                    new Thread(() -> {
+                                    ", currentUrlForRefine=" + entryUrlFinal +
+                                    ", entryInputLen=" + entryInput.length());
+                    submitUiJob("plan-refine", null, () -> {
                         try {
                             if (uiEpoch.get() != planEpoch) return;
-                            java.util.concurrent.ExecutorService ex2 = java.util.concurrent.Executors.newFixedThreadPool(refineModels.size());
-                            java.util.List<java.util.concurrent.Future<?>> fs2 = new java.util.ArrayList<>();
+                            java.util.function.Supplier<String> visualDescription = !useVisualSupplement ? null : memoize(() ->
+                                    capturePlanRefineVisualDescription(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, entryInput, uiLogger));
+                            java.util.List<Runnable> fs2 = new java.util.ArrayList<>();
                             for (String modelName : refineModels) {
-                                fs2.add(ex2.submit(() -> {
+                                fs2.add(() -> {
                                     try {
                                         if (uiEpoch.get() != planEpoch) return;
                                         ModelSession session = sessionsByModel.computeIfAbsent(modelName, k -> new ModelSession());
-                                        traceVisual("PLAN_REFINE_MODEL_START",
-                                                "model=" + modelName +
-                                                        ", useVisualSupplement=" + useVisualSupplement +
-                                                        ", visualRefNull=" + (visualDescriptionRef.get() == null));
                                         uiLogger.accept("阶段开始: model=" + modelName + ", action=PLAN_REFINE");
-                                        uiLogger.accept("PLAN_REFINE Debug: model=" + modelName + ", entryInput='" + entryInput + "'");
-                                        String visualDescriptionFinal = null;
-                                        if (useVisualSupplement) {
-                                            String v = visualDescriptionRef.get();
-                                            if (v == null) {
-                                                synchronized (visualDescriptionLock) {
-                                                    v = visualDescriptionRef.get();
-                                                    if (v == null) {
-                                                        try {
-                                                            traceVisual("PLAN_REFINE_VISUAL_BEGIN", "model=" + modelName);
-                                                            ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
-                                                            refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "PLAN_REFINE 视觉补充截图前刷新页面");
-                                                            Page pageForVisual = rootPageRef.get();
-                                                            String targetUrlForVisual = PlanRoutingSupport.extractFirstUrlFromText(entryInput);
-                                                            if (targetUrlForVisual != null && !targetUrlForVisual.trim().isEmpty()) {
-                                                                traceVisual("PLAN_REFINE_VISUAL_TARGET", "targetUrl=" + PlanRoutingSupport.stripUrlQuery(targetUrlForVisual.trim()));
-                                                                PlanRoutingSupport.ensureRootPageAtUrl(pageForVisual, targetUrlForVisual.trim(), uiLogger);
-                                                            }
-                                                            traceVisual("PLAN_REFINE_VISUAL_PAGE",
-                                                                    "model=" + modelName +
-                                                                            ", pageNull=" + (pageForVisual == null) +
-                                                                            ", pageUrl=" + safePageUrl(pageForVisual));
-                                                            clearVisualCacheForPage(pageForVisual, uiLogger);
-                                                            if (uiLogger != null) uiLogger.accept("视觉补充(PLAN_REFINE): 开始截图");
-                                                            v = buildPageVisualDescription(pageForVisual, uiLogger);
-                                                            int len = v == null ? 0 : v.length();
-                                                            uiLogger.accept("视觉补充(PLAN_REFINE): 已生成页面描述（len=" + len + "）");
-                                                            traceVisual("PLAN_REFINE_VISUAL_DONE", "model=" + modelName + ", descLen=" + len);
-                                                        } catch (Exception ex) {
-                                                            uiLogger.accept("视觉补充(PLAN_REFINE)失败: " + ex.getMessage());
-                                                            traceVisual("PLAN_REFINE_VISUAL_ERROR",
-                                                                    "model=" + modelName + ", err=" + ex.getClass().getName() + ": " + (ex.getMessage() == null ? "" : ex.getMessage()));
-                                                            v = "";
-                                                        }
-                                                        if (v == null) v = "";
-                                                        visualDescriptionRef.set(v);
-                                                    }
-                                                }
-                                            }
-                                            visualDescriptionFinal = v;
-                                        }
-                                        String currentUrlForRefine2 = entryUrlFinal;
-                                        String payload = buildPlanRefinePayload(currentUrlForRefine2, promptForPayload, entryInput, useVisualSupplement ? visualDescriptionFinal : null);
-                                        uiLogger.accept("PLAN_REFINE Payload Hash: " + payload.hashCode() + " | Length: " + payload.length());
-                                        uiLogger.accept("阶段中: model=" + modelName + ", planMode=" + extractModeFromPayload(payload));
-                                        String text = generateGroovyScript(promptForLlm, payload, uiLogger, modelName);
-                                        String finalText = text == null ? "" : text;
+                                        PlanParseResult parsed = refinePlan(modelName, promptForLlm, entryUrlFinal, entryInput, visualDescription, "plan_refine", uiLogger);
                                         if (uiEpoch.get() != planEpoch) return;
-                                        AutoWebAgentUtils.saveDebugCodeVariant(finalText, modelName, "plan_refine", uiLogger);
-                                        PlanParseResult parsed = parsePlanFromText(finalText);
-                                        if (!parsed.confirmed) {
-                                            uiLogger.accept("PLAN_REFINE 未通过: model=" + modelName + " | Confirmed=false. LLM Output:\n" + finalText);
-                                        }
-                                        session.userPrompt = currentPrompt;
-                                        session.planText = parsed.planText;
-                                        session.steps = parsed.steps;
-                                        session.planConfirmed = parsed.confirmed;
-                                        session.lastArtifactType = "PLAN";
-                                        session.htmlPrepared = false;
-                                        session.htmlCaptureMode = null;
-                                        session.htmlA11yInterestingOnly = false;
-                                        session.stepSnapshots.clear();
+                                        applyPlan(session, currentPrompt, parsed);
                                         SwingUtilities.invokeLater(() -> {
                                             int idx = codeTabs.indexOfTab(modelName);
                                             if (idx < 0) {
@@ -1333,12 +1176,9 @@ class AutoWebAgentUI {
                                     } catch (Exception e2) {
                                         uiLogger.accept("PLAN_REFINE 失败: model=" + modelName + ", err=" + e2.getMessage());
                                     }
-                                }));
-                            }
-                            for (java.util.concurrent.Future<?> f2 : fs2) {
-                                try { f2.get(); } catch (Exception ignored2) {}
+                                });
                             }
-                            ex2.shutdown();
+                            AutoWebEngine.shared().runAll(CancellationToken.current(), fs2);
                         } finally {
                             if (uiEpoch.get() == planEpoch) {
                                 setStage.accept("NONE");
@@ -1353,7 +1193,7 @@ class AutoWebAgentUI {
                                 });
                             }
                         }
-                    }).start();
+                    }, uiLogger, onUiJobRejected);
 
                 } catch (Exception ex) {
                     if (uiEpoch.get() == planEpoch) {
@@ -1365,7 +1205,7 @@ class AutoWebAgentUI {
                          uiLogger.accept("发生异常：" + ex.getMessage());
                     }
                 }
-            }).start();
+            }, uiLogger, onUiJobRejected);
         });
 
         btnGetCode.addActionListener(e -> {
@@ -1398,7 +1238,7 @@ class AutoWebAgentUI {
                 return;
             }
             final String entryUrlFinal = entryUrlInput;
-            final String promptForPayload = stripUrlsFromText(currentPrompt);
+            final String promptForPayload = WorkflowSupport.stripUrlsFromText(currentPrompt);
             final String promptForLlm = promptForPayload;
 
             refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "生成代码前刷新页面");
@@ -1483,157 +1323,52 @@ class AutoWebAgentUI {
             if (codeTabs.getTabCount() > 0) codeTabs.setSelectedIndex(0);
 
             boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
+            HtmlCaptureMode captureMode = chkUseA11yTree.isSelected() ? HtmlCaptureMode.ARIA_SNAPSHOT : HtmlCaptureMode.RAW_HTML;
+            boolean a11yInterestingOnly = chkA11yInterestingOnly.isSelected();
 
-            new Thread(() -> {
+            submitUiJob("codegen", null, () -> {
                 try {
-                    int total = selectedModels.size();
-                    int llmThreads = Math.max(1, Math.min(readyModels.size(), selectedModels.size()));
-                    
-                    java.util.concurrent.ExecutorService htmlExecutor = java.util.concurrent.Executors.newSingleThreadExecutor();
-                    java.util.concurrent.ExecutorService llmExecutor = java.util.concurrent.Executors.newFixedThreadPool(llmThreads);
-                    java.util.List<java.util.concurrent.Future<?>> futures = new java.util.ArrayList<>();
-                    java.util.concurrent.atomic.AtomicReference<String> visualDescriptionRef = new java.util.concurrent.atomic.AtomicReference<>(null);
-                    Object visualDescriptionLock = new Object();
-
-                    try {
-                        for (int i = 0; i < total; i++) {
-                            String modelName = selectedModels.get(i);
-                            int order = i + 1;
-
-                            futures.add(llmExecutor.submit(() -> {
-                                ModelSession session = sessionsByModel.get(modelName);
-                                if (!readyModels.contains(modelName)) {
-                                    return;
-                                }
-
-                                try {
-                                    if (session.steps == null || session.steps.isEmpty()) {
-                                        uiLogger.accept(modelName + ": 计划缺少步骤，无法采集 HTML。请重新生成计划。");
-                                        return;
-                                    }
+                    Object htmlCaptureLock = new Object();
+                    java.util.function.Supplier<String> visualDescription = !useVisualSupplement ? null : memoize(() ->
+                            captureCodegenVisualDescription(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger));
+                    java.util.function.Function<String, Page> pageProvider = reason -> refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, reason);
+                    java.util.List<Runnable> futures = new java.util.ArrayList<>();
 
-                                    HtmlCaptureMode modeForSession = chkUseA11yTree.isSelected() ? HtmlCaptureMode.ARIA_SNAPSHOT : HtmlCaptureMode.RAW_HTML;
-                                    boolean a11yInterestingOnlyForSession = chkA11yInterestingOnly.isSelected();
-                                    boolean needPrepare = !session.htmlPrepared
-                                            || session.htmlCaptureMode != modeForSession
-                                            || session.htmlA11yInterestingOnly != a11yInterestingOnlyForSession;
-                                    if (needPrepare) {
-                                        java.util.concurrent.Future<?> htmlFuture = htmlExecutor.submit(() -> {
-                                            uiLogger.accept(modelName + ": 开始按计划采集 HTML（Step 数: " + session.steps.size() + "）...");
-                                            refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "采集 HTML 前刷新页面");
-                                            java.util.List<HtmlSnapshot> snaps = prepareStepHtmls(rootPageRef.get(), session.steps, uiLogger, modeForSession, a11yInterestingOnlyForSession);
-                                            java.util.Map<Integer, HtmlSnapshot> map = new java.util.HashMap<>();
-                                            for (HtmlSnapshot s : snaps) map.put(s.stepIndex, s);
-                                            session.stepSnapshots = map;
-                                            session.htmlPrepared = true;
-                                            session.htmlCaptureMode = modeForSession;
-                                            session.htmlA11yInterestingOnly = a11yInterestingOnlyForSession;
-                                            uiLogger.accept(modelName + ": HTML 采集完成（snapshots=" + session.stepSnapshots.size() + "）");
-                                            return null;
-                                        });
-                                        try { htmlFuture.get(); } catch (Exception ignored) {}
-                                    }
+                    for (String modelName : selectedModels) {
+                        if (!readyModels.contains(modelName)) continue;
+                        futures.add(() -> {
+                            ModelSession session = sessionsByModel.get(modelName);
+                            try {
+                                String finalCode = generateCode(modelName, promptForLlm, entryUrlFinal, session, pageProvider,
+                                        captureMode, a11yInterestingOnly, htmlCaptureLock, visualDescription, "gen", uiLogger);
+                                if (finalCode == null) return;
 
-                                    java.util.List<HtmlSnapshot> snaps = new java.util.ArrayList<>(session.stepSnapshots.values());
-                                    snaps.sort(java.util.Comparator.comparingInt(a -> a.stepIndex));
-                                    
-                                    refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "生成 Payload 前刷新页面");
-                                    String visualDescriptionFinal = null;
-                                    if (useVisualSupplement) {
-                                        String v = visualDescriptionRef.get();
-                                        if (v == null) {
-                                            synchronized (visualDescriptionLock) {
-                                                v = visualDescriptionRef.get();
-                                                if (v == null) {
-                                                    try {
-                                                        ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
-                                                        refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "视觉补充截图前刷新页面");
-                                                        v = buildPageVisualDescription(rootPageRef.get(), uiLogger);
-                                                        int len = v == null ? 0 : v.length();
-                                                        uiLogger.accept("视觉补充(CODEGEN): 已生成页面描述（len=" + len + "）");
-                                                    } catch (Exception ex) {
-                                                        uiLogger.accept("视觉补充(CODEGEN)失败: " + ex.getMessage());
-                                                        v = "";
-                                                    }
-                                                    if (v == null) v = "";
-                                                    visualDescriptionRef.set(v);
-                                                }
-                                            }
-                                        }
-                                        visualDescriptionFinal = v;
-                                    }
-                                    String payload = buildCodegenPayload(entryUrlFinal, session.planText, snaps, useVisualSupplement ? visualDescriptionFinal : null);
-                                    int htmlLen = 0;
-                                    try {
-                                        int h = payload == null ? -1 : payload.indexOf("STEP_HTMLS_CLEANED:");
-                                        if (h >= 0) {
-                                            int start = payload.indexOf('\n', h);
-                                            if (start >= 0 && start + 1 <= payload.length()) {
-                                                htmlLen = payload.substring(start + 1).length();
-                                            }
-                                        }
-                                    } catch (Exception ignored) {}
-                                    HtmlCaptureMode captureModeForLog = chkUseA11yTree.isSelected() ? HtmlCaptureMode.ARIA_SNAPSHOT : HtmlCaptureMode.RAW_HTML;
-                                    uiLogger.accept("将要提交给大模型的 操作页面网页的长度为 " + htmlLen + " ，采集模式为 " + captureModeForLog);
-                                    uiLogger.accept("阶段中: model=" + modelName + ", action=CODEGEN, payloadMode=" + extractModeFromPayload(payload) + ", steps=" + session.steps.size() + ", snapshots=" + snaps.size());
-                                    String generatedCode = generateGroovyScript(promptForLlm, payload, uiLogger, modelName);
-                                    String normalizedCode = normalizeGeneratedGroovy(generatedCode);
-                                    if (normalizedCode != null && !normalizedCode.equals(generatedCode)) {
-                                        java.util.List<String> normalizeErrors = GroovyLinter.check(normalizedCode);
-                                        boolean hasSyntaxIssue = normalizeErrors.stream().anyMatch(e2 -> e2.startsWith("Syntax Error") || e2.startsWith("Parse Error"));
-                                        if (!hasSyntaxIssue) {
-                                            generatedCode = normalizedCode;
-                                        }
+                                SwingUtilities.invokeLater(() -> {
+                                    int idx = codeTabs.indexOfTab(modelName);
+                                    if (idx < 0) {
+                                        codeTabs.addTab(modelName, new JPanel(new BorderLayout()));
+                                        idx = codeTabs.indexOfTab(modelName);
                                     }
-
-                                    generatedCode = repairStepMarkersIfNeeded(
-                                            modelName,
-                                            promptForLlm,
-                                            session,
-                                            rootPageRef.get(),
-                                            snaps,
-                                            useVisualSupplement,
-                                            visualDescriptionFinal,
-                                            generatedCode,
-                                            uiLogger
-                                    );
-
-                                    String finalCode = generatedCode == null ? "" : generatedCode;
-                                    AutoWebAgentUtils.saveDebugCodeVariant(finalCode, modelName, "gen", uiLogger);
-                                    session.lastArtifactType = "CODE";
-
-                                    SwingUtilities.invokeLater(() -> {
-                                        int idx = codeTabs.indexOfTab(modelName);
-                                        if (idx < 0) {
-                                            codeTabs.addTab(modelName, new JPanel(new BorderLayout()));
-                                            idx = codeTabs.indexOfTab(modelName);
-                                        }
-                                        if (idx >= 0) codeTabs.setSelectedIndex(idx);
-                                        latestCodeByModel.put(modelName, finalCode);
-                                        stepStatusByModel.remove(modelName);
-                                        stepCursorByModel.remove(modelName);
-                                        refreshPlanCodePanel.run();
-                                    });
-                                } catch (Exception ex) {
-                                    try {
-                                        uiLogger.accept("CODEGEN 失败: model=" + modelName + ", err=" + ex.getMessage());
-                                        saveDebugArtifact(newDebugTimestamp(), modelName, "CODEGEN", "exception", stackTraceToString(ex), uiLogger);
-                                    } catch (Exception ignored) {}
-                                    SwingUtilities.invokeLater(() -> {
-                                        refreshPlanCodePanel.run();
-                                    });
-                                }
-                            }));
-                        }
-
-                        for (java.util.concurrent.Future<?> f : futures) {
-                            try { f.get(); } catch (Exception ignored) {}
-                        }
-                    } finally {
-                        try { llmExecutor.shutdown(); } catch (Exception ignored) {}
-                        try { htmlExecutor.shutdown(); } catch (Exception ignored) {}
+                                    if (idx >= 0) codeTabs.setSelectedIndex(idx);
+                                    latestCodeByModel.put(modelName, finalCode);
+                                    stepStatusByModel.remove(modelName);
+                                    stepCursorByModel.remove(modelName);
+                                    refreshPlanCodePanel.run();
+                                });
+                            } catch (Exception ex) {
+                                try {
+                                    uiLogger.accept("CODEGEN 失败: model=" + modelName + ", err=" + ex.getMessage());
+                                    saveDebugArtifact(newDebugTimestamp(), modelName, "CODEGEN", "exception", stackTraceToString(ex), uiLogger);
+                                } catch (Exception ignored) {}
+                                SwingUtilities.invokeLater(() -> {
+                                    refreshPlanCodePanel.run();
+                                });
+                            }
+                        });
                     }
 
+                    AutoWebEngine.shared().runAll(CancellationToken.current(), futures);
+
                     setStage.accept("NONE");
                     SwingUtilities.invokeLater(() -> {
                         setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true);
@@ -1646,7 +1381,7 @@ class AutoWebAgentUI {
                     });
                     uiLogger.accept("发生异常：" + ex.getMessage());
                 }
-            }).start();
+            }, uiLogger, onUiJobRejected);
         });
 
         btnRefine.addActionListener(e -> {
@@ -1708,108 +1443,38 @@ class AutoWebAgentUI {
                 }
             }
 
+            if (WorkflowSupport.looksLikePlanOnly(previousCode)) {
+                JOptionPane.showMessageDialog(frame, "当前标签页内容像是“计划”而不是“代码”。请先点击“生成代码”，或重新点击“生成计划”。", "提示", JOptionPane.INFORMATION_MESSAGE);
+                uiLogger.accept("已取消修正：检测到当前标签页为计划文本。");
+                return;
+            }
+            boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
+            HtmlCaptureMode mode = chkUseA11yTree.isSelected() ? HtmlCaptureMode.ARIA_SNAPSHOT : HtmlCaptureMode.RAW_HTML;
+            boolean a11yInterestingOnly = chkA11yInterestingOnly.isSelected();
+
             setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, false);
             outputArea.setText(""); 
             uiLogger.accept("=== UI: 点击修正代码 | model=" + modelName + " ===");
             
-            new Thread(() -> {
+            submitUiJob("refine-code", null, () -> {
                 try {
                     ModelSession session = sessionsByModel.computeIfAbsent(modelName, k -> new ModelSession());
-                    if (session.userPrompt == null || session.userPrompt.trim().isEmpty()) {
-                        session.userPrompt = currentPrompt;
-                    }
-
-                    boolean looksLikePlan = false;
-                    try {
-                        looksLikePlan = previousCode != null
-                                && (previousCode.contains("PLAN_START") || previousCode.contains("PLAN_END"))
-                                && !previousCode.contains("web.");
-                    } catch (Exception ignored) {}
-                    if (looksLikePlan) {
-                        SwingUtilities.invokeLater(() -> {
-                            setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true);
-                            JOptionPane.showMessageDialog(frame, "当前标签页内容像是“计划”而不是“代码”。请先点击“生成代码”，或重新点击“生成计划”。", "提示", JOptionPane.INFORMATION_MESSAGE);
-                        });
-                        uiLogger.accept("已取消修正：检测到当前标签页为计划文本。");
-                        return;
-                    }
-
-                    uiLogger.accept("阶段开始: model=" + modelName + ", action=REFINE_CODE");
-
-                    ContextWrapper workingContext = reloadAndFindContext(rootPageRef.get(), uiLogger);
-                    boolean useVisualSupplement = chkUseVisualSupplement.isSelected();
-                    String visualDescriptionForRefine = "";
-                    if (useVisualSupplement) {
+                    java.util.function.Supplier<String> visualDescription = !useVisualSupplement ? null : () -> {
                         try {
-                            visualDescriptionForRefine = readCachedPageVisualDescription(rootPageRef.get(), uiLogger);
+                            return readCachedPageVisualDescription(rootPageRef.get(), uiLogger);
                         } catch (Exception ex) {
                             uiLogger.accept("视觉补充(REFINE_CODE)失败: " + ex.getMessage());
-                            visualDescriptionForRefine = "";
+                            return "";
                         }
-                    }
-                    final String visualDescriptionForRefineFinal = visualDescriptionForRefine;
-                    String freshHtml = "";
-                    HtmlCaptureMode mode = chkUseA11yTree.isSelected() ? HtmlCaptureMode.ARIA_SNAPSHOT : HtmlCaptureMode.RAW_HTML;
-                    boolean a11yInterestingOnly = chkA11yInterestingOnly.isSelected();
-                    try { freshHtml = getPageContent(workingContext.context, mode, a11yInterestingOnly); } catch (Exception ignored) {}
-                    String freshCleanedHtml = cleanCapturedContent(freshHtml, mode);
-                    AutoWebAgentUtils.saveDebugArtifacts(freshHtml, freshCleanedHtml, null, uiLogger);
-
-                    if (!session.planConfirmed) {
-                        PlanParseResult parsed = parsePlanFromText(previousCode);
-                        if (parsed.steps != null && !parsed.steps.isEmpty() && parsed.confirmed) {
-                            session.planText = parsed.planText;
-                            session.steps = parsed.steps;
-                            session.planConfirmed = true;
-                        }
-                    }
-
-                    if (session.planConfirmed) {
-                        boolean a11yInterestingOnly2 = chkA11yInterestingOnly.isSelected();
-                        boolean needPrepare = !session.htmlPrepared
-                                || session.htmlCaptureMode != mode
-                                || session.htmlA11yInterestingOnly != a11yInterestingOnly2;
-                        if (needPrepare) {
-                            java.util.List<HtmlSnapshot> snaps = prepareStepHtmls(rootPageRef.get(), session.steps, uiLogger, mode, a11yInterestingOnly2);
-                        java.util.Map<Integer, HtmlSnapshot> map = new java.util.HashMap<>();
-                        for (HtmlSnapshot s : snaps) map.put(s.stepIndex, s);
-                        session.stepSnapshots = map;
-                        session.htmlPrepared = true;
-                            session.htmlCaptureMode = mode;
-                            session.htmlA11yInterestingOnly = a11yInterestingOnly2;
-                        }
-                    }
-
-                    java.util.List<HtmlSnapshot> stepSnaps = new java.util.ArrayList<>(session.stepSnapshots.values());
-                    stepSnaps.sort(java.util.Comparator.comparingInt(a -> a.stepIndex));
-                    String payload = buildRefinePayload(entryUrlFinal, session.planText, stepSnaps, freshCleanedHtml, stripUrlsFromText(currentPrompt), refineHintForModel, useVisualSupplement ? visualDescriptionForRefineFinal : null);
-                    uiLogger.accept("阶段中: model=" + modelName + ", action=REFINE_CODE, payloadMode=" + extractModeFromPayload(payload) + ", snapshots=" + stepSnaps.size());
-                    String promptForRefine = currentPrompt;
-                    try {
-                        if (session.userPrompt != null && !session.userPrompt.equals(currentPrompt)) {
-                            promptForRefine = "原用户任务:\n" + session.userPrompt + "\n\n当前用户任务:\n" + currentPrompt;
-                        }
-                    } catch (Exception ignored) {}
-                    String refinedCode = generateRefinedGroovyScript(
-                            promptForRefine, payload, previousCode, execOutput, refineHintForModel, uiLogger, modelName
-                    );
-
-                    String normalizedRefined = normalizeGeneratedGroovy(refinedCode);
-                    if (normalizedRefined != null && !normalizedRefined.equals(refinedCode)) {
-                        java.util.List<String> normalizeErrors = GroovyLinter.check(normalizedRefined);
-                        if (normalizeErrors.isEmpty()) {
-                            refinedCode = normalizedRefined;
-                        }
-                    }
-                    String finalRefinedCode = refinedCode == null ? "" : refinedCode;
-                    AutoWebAgentUtils.saveDebugCodeVariant(finalRefinedCode, modelName, "refine", uiLogger);
-                    session.lastArtifactType = "CODE";
+                    };
+                    String finalRefinedCode = refineCode(modelName, currentPrompt, previousCode, execOutput, refineHintForModel,
+                            entryUrlFinal, session, rootPageRef.get(), mode, a11yInterestingOnly, visualDescription, "refine", uiLogger);
 
                     SwingUtilities.invokeLater(() -> {
                         latestCodeByModel.put(modelName, finalRefinedCode);
-                                        stepStatusByModel.remove(modelName);
-                                        stepErrorByModel.remove(modelName);
-                                        executionSummaryByModel.remove(modelName);
+                        stepStatusByModel.remove(modelName);
+                        stepErrorByModel.remove(modelName);
+                        executionSummaryByModel.remove(modelName);
                         stepCursorByModel.remove(modelName);
                         refreshPlanCodePanel.run();
                         setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true);
@@ -1824,7 +1489,7 @@ class AutoWebAgentUI {
                     setStage.accept("NONE");
                     uiLogger.accept("Refine 失败: " + ex.getMessage());
                 }
-            }).start();
+            }, uiLogger, onUiJobRejected);
         });
 
         btnStepExecute.addActionListener(e -> {
@@ -1867,7 +1532,7 @@ class AutoWebAgentUI {
                 JOptionPane.showMessageDialog(frame, "选中的步骤在当前代码中未找到。", "提示", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
-            boolean hasMarkersForStepRun = hasExplicitStepMarkers(code);
+            boolean hasMarkersForStepRun = WorkflowSupport.hasExplicitStepMarkers(code);
             if (!hasMarkersForStepRun) {
                 int confirm = JOptionPane.showConfirmDialog(
                         frame,
@@ -1892,109 +1557,25 @@ class AutoWebAgentUI {
             collapseLeftPanel.run();
             uiLogger.accept("=== 分步执行开始: 已选步骤 " + selectedSteps.size() + " ===");
             setStage.accept("EXECUTING");
+            final String currentPrompt = promptArea.getText();
             final long execEpoch = uiEpoch.incrementAndGet();
-            Thread execThread = new Thread(() -> {
+            CancellationToken execToken = CancellationToken.create();
+            runningTokenByModel.put(modelName, execToken);
+            submitUiJob("step-execute", execToken, () -> {
                 try {
                     if (uiEpoch.get() != execEpoch) return;
-                    String currentPrompt = promptArea.getText();
-                    String entryUrl = chooseExecutionEntryUrl(session, currentPrompt);
                     Page liveRootPage = ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
-                    String beforeUrl = safePageUrl(liveRootPage);
-                    boolean hasLivePage = !beforeUrl.isEmpty() && !"about:blank".equalsIgnoreCase(beforeUrl);
-                    if (entryUrl == null || entryUrl.trim().isEmpty()) {
-                        if (!hasLivePage) {
-                            throw new RuntimeException("未找到入口URL，且当前浏览器没有可用页面。请在“用户任务”里包含入口链接（https://...），或先生成计划并补充入口地址。");
-                        } else {
-                            uiLogger.accept("执行前导航: 未提供入口URL，将使用当前页面 | current=" + beforeUrl);
-                        }
-                    }
-                    ensureRootPageAtUrl(liveRootPage, entryUrl, uiLogger);
-                    groovy.lang.Binding sharedBinding = new groovy.lang.Binding();
-                    try { sharedBinding.setVariable("allGoodsData", new java.util.ArrayList<>()); } catch (Exception ignored) {}
-                    boolean hasMarkers = hasExplicitStepMarkers(code);
-                    if (!hasMarkers) {
-                        uiLogger.accept("检测到代码缺少 Step 分段标记，将按整段脚本一次性执行。");
-                        for (PlanStep step : selectedSteps) {
-                            if (step == null) continue;
-                            runningMap.put(step.index, true);
-                        }
-                        SwingUtilities.invokeLater(refreshPlanCodePanel);
-                        try {
-                            ContextWrapper bestContext = waitAndFindContext(liveRootPage, uiLogger);
-                            Object executionTarget = bestContext == null ? liveRootPage : bestContext.context;
-                            String normalized = promoteTopLevelDefsForSharedBinding(code, uiLogger);
-                            executeWithGroovy(normalized, executionTarget, uiLogger, sharedBinding, null, null);
-                            hasExecuted.set(true);
-                            for (PlanStep step : selectedSteps) {
-                                if (step == null) continue;
-                                statusMap.put(step.index, true);
-                                errorMap.remove(step.index);
-                            }
-                            stepCursorByModel.put(modelName, selectedSteps.size());
-                            uiLogger.accept("=== 整段执行完成（无 Step 分段） ===");
-                        } catch (Exception ex) {
-                            String reason = ex.getMessage();
-                            if (reason == null || reason.trim().isEmpty()) reason = ex.toString();
-                            for (PlanStep step : selectedSteps) {
-                                if (step == null) continue;
-                                statusMap.put(step.index, false);
-                                errorMap.put(step.index, reason);
-                            }
-                            uiLogger.accept("=== 整段执行失败（无 Step 分段）: " + reason + " ===");
-                        } finally {
-                            for (PlanStep step : selectedSteps) {
-                                if (step == null) continue;
-                                runningMap.remove(step.index);
-                            }
-                            executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                        }
-                        return;
-                    }
-                    for (int i = 0; i < selectedSteps.size(); i++) {
-                        if (uiEpoch.get() != execEpoch || Thread.currentThread().isInterrupted()) return;
-                        PlanStep step = selectedSteps.get(i);
-                        if (step == null) continue;
-                        int stepIndex = step.index;
-                        String stepCode = buildStepExecutionCode(code, stepIndex);
-                        if (stepCode == null || stepCode.trim().isEmpty()) {
-                            statusMap.put(stepIndex, true);
-                            errorMap.remove(stepIndex);
-                            stepCursorByModel.put(modelName, i + 1);
-                            executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                            uiLogger.accept("=== 分步执行跳过: Step " + stepIndex + " | 无可执行代码，视为成功 ===");
-                            continue;
-                        }
-                        uiLogger.accept("=== 分步执行开始: Step " + stepIndex + " ===");
-                        runningMap.put(stepIndex, true);
-                        SwingUtilities.invokeLater(refreshPlanCodePanel);
-                        try {
-                            ContextWrapper bestContext = waitAndFindContext(liveRootPage, uiLogger);
-                            Object executionTarget = bestContext == null ? liveRootPage : bestContext.context;
-                            String normalizedStep = promoteTopLevelDefsForSharedBinding(stepCode, uiLogger);
-                            executeWithGroovy(normalizedStep, executionTarget, uiLogger, sharedBinding, null, null);
-                            hasExecuted.set(true);
-                            statusMap.put(stepIndex, true);
-                            errorMap.remove(stepIndex);
-                            stepCursorByModel.put(modelName, i + 1);
-                            uiLogger.accept("=== 分步执行完成: Step " + stepIndex + " ===");
-                        } catch (Exception stepEx) {
-                            statusMap.put(stepIndex, false);
-                            String reason = stepEx.getMessage();
-                            if (reason == null || reason.trim().isEmpty()) reason = stepEx.toString();
-                            errorMap.put(stepIndex, reason);
-                            uiLogger.accept("=== 分步执行失败: Step " + stepIndex + " | " + reason + " ===");
-                        } finally {
-                            runningMap.remove(stepIndex);
-                        }
-                        executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                        SwingUtilities.invokeLater(refreshPlanCodePanel);
-                    }
+                    navigateToExecutionEntry(modelName, session, currentPrompt, liveRootPage, uiLogger);
+                    executeSteps(code, selectedSteps, liveRootPage, true, () -> uiEpoch.get() != execEpoch,
+                            new StepStatusListener(modelName, 0, statusMap, runningMap, errorMap,
+                                    stepCursorByModel, executionSummaryByModel, hasExecuted, refreshPlanCodePanel),
+                            uiLogger);
+                } catch (java.util.concurrent.CancellationException ce) {
+                    if (uiEpoch.get() == execEpoch) uiLogger.accept("=== 执行已中断 ===");
                 } catch (Exception ex) {
                     if (uiEpoch.get() == execEpoch) uiLogger.accept("=== 执行失败: " + ex.getMessage() + " ===");
                 } finally {
-                    runningThreadByModel.remove(modelName);
+                    runningTokenByModel.remove(modelName, execToken);
                     if (uiEpoch.get() == execEpoch) {
                         SwingUtilities.invokeLater(() -> {
                             unlockCodeTabs.run();
@@ -2007,9 +1588,15 @@ class AutoWebAgentUI {
                     checkedPlanStepsByModel.remove(modelName);
                     SwingUtilities.invokeLater(refreshPlanCodePanel);
                 }
+            }, uiLogger, () -> {
+                runningTokenByModel.remove(modelName, execToken);
+                SwingUtilities.invokeLater(() -> {
+                    unlockCodeTabs.run();
+                    setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true);
+                    if (mainHorizontalCollapsed.get()) expandLeftPanel.run();
+                    btnToggleLeftPanel.setEnabled(true);
+                });
             });
-            runningThreadByModel.put(modelName, execThread);
-            execThread.start();
             return;
         });
 
@@ -2062,118 +1649,22 @@ class AutoWebAgentUI {
             uiLogger.accept("=== 开始执行代码 ===");
             setStage.accept("EXECUTING");
             
+            final String currentPrompt = promptArea.getText();
             final long execEpoch = uiEpoch.incrementAndGet();
-            Thread execThread = new Thread(() -> {
+            CancellationToken execToken = CancellationToken.create();
+            runningTokenByModel.put(modelName, execToken);
+            submitUiJob("execute", execToken, () -> {
                 try {
                     if (uiEpoch.get() != execEpoch) return;
-                    String currentPrompt = promptArea.getText();
-                    String entryUrl = chooseExecutionEntryUrl(session, currentPrompt);
-                    uiLogger.accept("执行准备: model=" + modelName + ", entryUrl=" + (entryUrl == null ? "(null)" : entryUrl));
-
                     Page liveRootPage = ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
-                    String beforeUrl = safePageUrl(liveRootPage);
-                    boolean hasLivePage = !beforeUrl.isEmpty() && !"about:blank".equalsIgnoreCase(beforeUrl);
-                    if (entryUrl == null || entryUrl.trim().isEmpty()) {
-                        if (!hasLivePage) {
-                            throw new RuntimeException("未找到入口URL，且当前浏览器没有可用页面。请在“用户任务”里包含入口链接（https://...），或先生成计划并补充入口地址。");
-                        } else {
-                            uiLogger.accept("执行前导航: 未提供入口URL，将使用当前页面 | current=" + beforeUrl);
-                        }
-                    }
-                    ensureRootPageAtUrl(liveRootPage, entryUrl, uiLogger);
-                    groovy.lang.Binding sharedBinding = new groovy.lang.Binding();
-                    try { sharedBinding.setVariable("allGoodsData", new java.util.ArrayList<>()); } catch (Exception ignored) {}
-                    boolean hasMarkers = hasExplicitStepMarkers(code);
-                    if (!hasMarkers) {
-                        uiLogger.accept("检测到代码缺少 Step 分段标记，将按整段脚本一次性执行。");
-                        SwingUtilities.invokeLater(refreshPlanCodePanel);
-                        try {
-                            for (PlanStep step : steps) {
-                                if (step == null) continue;
-                                runningMap.put(step.index, true);
-                            }
-                            String progressText = "执行中：整段执行（无 Step 分段）";
-                            executionSummaryByModel.put(modelName, progressText);
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-
-                            ContextWrapper bestContext = waitAndFindContext(liveRootPage, uiLogger);
-                            Object executionTarget = bestContext == null ? liveRootPage : bestContext.context;
-                            executeWithGroovy(code, executionTarget, uiLogger, sharedBinding, null, null);
-                            hasExecuted.set(true);
-                            for (PlanStep step : steps) {
-                                if (step == null) continue;
-                                statusMap.put(step.index, true);
-                                errorMap.remove(step.index);
-                            }
-                            stepCursorByModel.put(modelName, steps.size());
-                            uiLogger.accept("=== 整段执行完成（无 Step 分段） ===");
-                        } catch (Exception ex) {
-                            String reason = ex.getMessage();
-                            if (reason == null || reason.trim().isEmpty()) reason = ex.toString();
-                            for (PlanStep step : steps) {
-                                if (step == null) continue;
-                                statusMap.put(step.index, false);
-                                errorMap.put(step.index, reason);
-                            }
-                            uiLogger.accept("=== 整段执行失败（无 Step 分段）: " + reason + " ===");
-                        } finally {
-                            for (PlanStep step : steps) {
-                                if (step == null) continue;
-                                runningMap.remove(step.index);
-                            }
-                            executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                        }
-                        return;
-                    }
-                    for (int i = 0; i < steps.size(); i++) {
-                        if (uiEpoch.get() != execEpoch || Thread.currentThread().isInterrupted()) return;
-                        PlanStep step = steps.get(i);
-                        if (step == null) continue;
-                        int stepIndex = step.index;
-                        String stepCode = buildStepExecutionCode(code, stepIndex);
-                        if (stepCode == null || stepCode.trim().isEmpty()) {
-                            statusMap.put(stepIndex, true);
-                            errorMap.remove(stepIndex);
-                            stepCursorByModel.put(modelName, i + 1);
-                            executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                            uiLogger.accept("=== 分步执行跳过: Step " + stepIndex + " | 无可执行代码，视为成功 ===");
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                            continue;
-                        }
-                        uiLogger.accept("=== 分步执行开始: Step " + stepIndex + " ===");
-                        try {
-                            runningMap.put(stepIndex, true);
-                            String partialSummary = buildExecutionSummary(statusMap, errorMap);
-                            String progressText = "执行中：步骤" + stepIndex + "（" + (i + 1) + "/" + steps.size() + "）";
-                            if (partialSummary != null && !partialSummary.trim().isEmpty()) {
-                                progressText = progressText + "\n\n" + partialSummary;
-                            }
-                            executionSummaryByModel.put(modelName, progressText);
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                            ContextWrapper bestContext = waitAndFindContext(liveRootPage, uiLogger);
-                            Object executionTarget = bestContext == null ? liveRootPage : bestContext.context;
-                            executeWithGroovy(stepCode, executionTarget, uiLogger, sharedBinding, null, null);
-                            hasExecuted.set(true);
-                            statusMap.put(stepIndex, true);
-                            errorMap.remove(stepIndex);
-                            stepCursorByModel.put(modelName, i + 1);
-                            uiLogger.accept("=== 分步执行完成: Step " + stepIndex + " ===");
-                        } catch (Exception stepEx) {
-                            statusMap.put(stepIndex, false);
-                            String reason = stepEx.getMessage();
-                            if (reason == null || reason.trim().isEmpty()) reason = stepEx.toString();
-                            errorMap.put(stepIndex, reason);
-                            uiLogger.accept("=== 分步执行失败: Step " + stepIndex + " | " + reason + " ===");
-                            SwingUtilities.invokeLater(refreshPlanCodePanel);
-                            continue;
-                        } finally {
-                            runningMap.remove(stepIndex);
-                        }
-                        executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
-                        SwingUtilities.invokeLater(refreshPlanCodePanel);
-                    }
+                    navigateToExecutionEntry(modelName, session, currentPrompt, liveRootPage, uiLogger);
+                    executeSteps(code, steps, liveRootPage, false, () -> uiEpoch.get() != execEpoch,
+                            new StepStatusListener(modelName, steps.size(), statusMap, runningMap, errorMap,
+                                    stepCursorByModel, executionSummaryByModel, hasExecuted, refreshPlanCodePanel),
+                            uiLogger);
                     executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
+                } catch (java.util.concurrent.CancellationException ce) {
+                    if (uiEpoch.get() == execEpoch) uiLogger.accept("=== 执行已中断 ===");
                 } catch (Exception ex) {
                     if (uiEpoch.get() == execEpoch) {
                         executionSummaryByModel.put(modelName, "执行失败：" + (ex.getMessage() == null ? "未知原因" : ex.getMessage()));
@@ -2181,7 +1672,7 @@ class AutoWebAgentUI {
                         uiLogger.accept("=== 执行失败: " + ex.getMessage() + " ===");
                     }
                 } finally {
-                    runningThreadByModel.remove(modelName);
+                    runningTokenByModel.remove(modelName, execToken);
                     if (uiEpoch.get() == execEpoch) {
                         SwingUtilities.invokeLater(() -> {
                             unlockCodeTabs.run();
@@ -2193,9 +1684,15 @@ class AutoWebAgentUI {
                         uiLogger.accept("=== 执行完成 ===");
                     }
                 }
+            }, uiLogger, () -> {
+                runningTokenByModel.remove(modelName, execToken);
+                SwingUtilities.invokeLater(() -> {
+                    unlockCodeTabs.run();
+                    setActionButtonsEnabled(btnPlan, btnGetCode, btnRefinePlan, btnRefine, btnStepExecute, btnExecute, btnClearAll, true);
+                    if (mainHorizontalCollapsed.get()) expandLeftPanel.run();
+                    btnToggleLeftPanel.setEnabled(true);
+                });
             });
-            runningThreadByModel.put(modelName, execThread);
-            execThread.start();
         });
 
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
@@ -2218,25 +1715,6 @@ class AutoWebAgentUI {
         });
     }
 
-    /**
-     * 获取用于分步执行的步骤列表（优先使用会话缓存，必要时从计划文本解析）
-     *
-     * @param session 模型会话
-     * @param code 当前代码/计划文本
-     * @return 排序后的步骤列表
-     */
-    private static java.util.List<PlanStep> getStepsForStepExecution(ModelSession session, String code) {
-        java.util.List<PlanStep> steps = session == null ? null : session.steps;
-        if (steps == null || steps.isEmpty()) {
-            PlanParseResult parsed = parsePlanFromText(code);
-            steps = parsed == null ? null : parsed.steps;
-        }
-        if (steps == null || steps.isEmpty()) return java.util.Collections.emptyList();
-        java.util.List<PlanStep> sorted = new java.util.ArrayList<>(steps);
-        sorted.sort(java.util.Comparator.comparingInt(a -> a == null ? Integer.MAX_VALUE : a.index));
-        return sorted;
-    }
-
     /**
      * 汇总步骤执行结果，生成展示区的执行摘要文本
      */
@@ -2271,124 +1749,167 @@ class AutoWebAgentUI {
     }
 
     /**
-     * 从完整代码中抽取指定步骤对应的可执行片段
+     * 执行步骤状态 → 控制台展示状态（步骤勾选列、执行摘要）
+     *
+     * progressTotal > 0 时在摘要区显示“执行中：步骤N（i/total）”进度。
      */
-    private static String buildStepExecutionCode(String code, int stepIndex) {
-        if (code == null || code.trim().isEmpty()) return "";
-        String src = stripPlanBlock(code);
-        // 支持 //、/* */、*、# 等多种 Step 标记前缀
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+)|第\\s*(\\d+)\\s*(?:步|步骤)|Part\\s*[:：#\\-]?\\s*(\\d+)).*$");
-        java.util.regex.Matcher m = p.matcher(src);
-        java.util.List<Integer> starts = new java.util.ArrayList<>();
-        java.util.List<Integer> nums = new java.util.ArrayList<>();
-        while (m.find()) {
-            starts.add(m.start());
-            try {
-                String token = null;
-                try { token = m.group(1); } catch (Exception ignored) {}
-                if (token == null || token.trim().isEmpty()) {
-                    try { token = m.group(2); } catch (Exception ignored) {}
-                }
-                if (token == null || token.trim().isEmpty()) {
-                    try { token = m.group(3); } catch (Exception ignored) {}
+    private static class StepStatusListener implements StepExecutionListener {
+        private final String modelName;
+        private final int progressTotal;
+        private final java.util.Map<Integer, Boolean> statusMap;
+        private final java.util.Map<Integer, Boolean> runningMap;
+        private final java.util.Map<Integer, String> errorMap;
+        private final java.util.Map<String, Integer> stepCursorByModel;
+        private final java.util.Map<String, String> executionSummaryByModel;
+        private final java.util.concurrent.atomic.AtomicBoolean hasExecuted;
+        private final Runnable refreshPlanCodePanel;
+
+        StepStatusListener(
+                String modelName,
+                int progressTotal,
+                java.util.Map<Integer, Boolean> statusMap,
+                java.util.Map<Integer, Boolean> runningMap,
+                java.util.Map<Integer, String> errorMap,
+                java.util.Map<String, Integer> stepCursorByModel,
+                java.util.Map<String, String> executionSummaryByModel,
+                java.util.concurrent.atomic.AtomicBoolean hasExecuted,
+                Runnable refreshPlanCodePanel
+        ) {
+            this.modelName = modelName;
+            this.progressTotal = progressTotal;
+            this.statusMap = statusMap;
+            this.runningMap = runningMap;
+            this.errorMap = errorMap;
+            this.stepCursorByModel = stepCursorByModel;
+            this.executionSummaryByModel = executionSummaryByModel;
+            this.hasExecuted = hasExecuted;
+            this.refreshPlanCodePanel = refreshPlanCodePanel;
+        }
+
+        @Override
+        public void onStepStart(java.util.List<PlanStep> steps, int completed, boolean wholeScript) {
+            for (PlanStep step : steps) runningMap.put(step.index, true);
+            if (progressTotal > 0) {
+                String progressText;
+                if (wholeScript) {
+                    progressText = "执行中：整段执行（无 Step 分段）";
+                } else {
+                    progressText = "执行中：步骤" + steps.get(0).index + "（" + (completed + 1) + "/" + progressTotal + "）";
+                    String partialSummary = buildExecutionSummary(statusMap, errorMap);
+                    if (partialSummary != null && !partialSummary.trim().isEmpty()) {
+                        progressText = progressText + "\n\n" + partialSummary;
+                    }
                 }
-                Integer n = parseUnicodeInt(token);
-                nums.add(n == null ? (nums.size() + 1) : n);
-            } catch (Exception ignored) {
-                nums.add(nums.size() + 1);
+                executionSummaryByModel.put(modelName, progressText);
             }
+            SwingUtilities.invokeLater(refreshPlanCodePanel);
         }
-        if (starts.isEmpty()) return "";
-        starts.add(src.length());
-        int targetStart = -1;
-        int targetEnd = -1;
-        for (int i = 0; i < nums.size(); i++) {
-            if (nums.get(i) == stepIndex) {
-                targetStart = starts.get(i);
-                targetEnd = starts.get(i + 1);
-                break;
+
+        @Override
+        public void onStepDone(java.util.List<PlanStep> steps, int completed, boolean skipped) {
+            if (!skipped) hasExecuted.set(true);
+            for (PlanStep step : steps) {
+                statusMap.put(step.index, true);
+                errorMap.remove(step.index);
             }
+            stepCursorByModel.put(modelName, completed);
+        }
+
+        @Override
+        public void onStepFailed(java.util.List<PlanStep> steps, String reason) {
+            for (PlanStep step : steps) {
+                statusMap.put(step.index, false);
+                errorMap.put(step.index, reason);
+            }
+        }
+
+        @Override
+        public void onStepFinished(java.util.List<PlanStep> steps) {
+            for (PlanStep step : steps) runningMap.remove(step.index);
+            executionSummaryByModel.put(modelName, buildExecutionSummary(statusMap, errorMap));
+            SwingUtilities.invokeLater(refreshPlanCodePanel);
         }
-        if (targetStart < 0 || targetEnd < 0) return "";
-        String prelude = src.substring(0, starts.get(0));
-        String block = src.substring(targetStart, Math.min(targetEnd, src.length()));
-        String blockNonComment = block;
-        try {
-            blockNonComment = blockNonComment.replaceAll("(?s)/\\*.*?\\*/", " ");
-            blockNonComment = blockNonComment.replaceAll("(?m)^\\s*//.*$", " ");
-        } catch (Exception ignored) {}
-        if (blockNonComment == null || blockNonComment.trim().isEmpty()) return "";
-        if (!prelude.isEmpty() && !prelude.endsWith("\n")) prelude = prelude + "\n";
-        return prelude + block;
     }
 
-    private static boolean hasExplicitStepMarkers(String code) {
-        if (code == null || code.trim().isEmpty()) return false;
-        String src = stripPlanBlock(code);
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+)|第\\s*(\\d+)\\s*(?:步|步骤)|Part\\s*[:：#\\-]?\\s*(\\d+)).*$");
-        return p.matcher(src).find();
+    /**
+     * 包装为只计算一次的 Supplier：多模型并发时共用同一份视觉补充结果
+     */
+    private static <T> java.util.function.Supplier<T> memoize(java.util.function.Supplier<T> supplier) {
+        java.util.concurrent.atomic.AtomicReference<T> ref = new java.util.concurrent.atomic.AtomicReference<>();
+        return () -> {
+            T v = ref.get();
+            if (v != null) return v;
+            synchronized (ref) {
+                v = ref.get();
+                if (v == null) {
+                    v = supplier.get();
+                    ref.set(v);
+                }
+                return v;
+            }
+        };
     }
 
-    private static String repairStepMarkersIfNeeded(
-            String modelName,
-            String currentPrompt,
-            ModelSession session,
-            Page currentPage,
-            java.util.List<HtmlSnapshot> snaps,
-            boolean useVisualSupplement,
-            String visualDescriptionFinal,
-            String generatedCode,
+    /**
+     * PLAN_REFINE 视觉补充：把根页面带到入口地址后截图并生成页面描述，失败时返回空串
+     */
+    private static String capturePlanRefineVisualDescription(
+            java.util.concurrent.atomic.AtomicReference<Page> rootPageRef,
+            java.util.concurrent.atomic.AtomicReference<PlayWrightUtil.Connection> connectionRef,
+            java.util.concurrent.atomic.AtomicBoolean forceNewPageOnExecute,
+            java.util.concurrent.atomic.AtomicBoolean hasExecuted,
+            String entryInput,
             java.util.function.Consumer<String> uiLogger
     ) {
-        if (generatedCode == null || generatedCode.trim().isEmpty()) return generatedCode;
-        if (hasExplicitStepMarkers(generatedCode)) return generatedCode;
-        if (session == null || session.steps == null || session.steps.size() <= 1) return generatedCode;
-        boolean looksLikePlanOnly = generatedCode.contains("PLAN_START") && !generatedCode.contains("web.");
-        if (looksLikePlanOnly) return generatedCode;
-
-        String refineHintForModel =
-                "仅修复输出格式，不要改变执行逻辑。\n" +
-                "要求：在每个步骤对应的可执行代码前，加入单行注释标记：// Step N（N=1..步骤数），并且顺序与计划一致。\n" +
-                "输出必须是完整、可直接执行的 Groovy 脚本（包含原有 PLAN 块注释），不要输出 Markdown，不要省略任何步骤。";
+        try {
+            traceVisual("PLAN_REFINE_VISUAL_BEGIN", "entryInputLen=" + (entryInput == null ? 0 : entryInput.length()));
+            ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
+            refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "PLAN_REFINE 视觉补充截图前刷新页面");
+            Page pageForVisual = rootPageRef.get();
+            String targetUrlForVisual = PlanRoutingSupport.extractFirstUrlFromText(entryInput);
+            if (targetUrlForVisual != null && !targetUrlForVisual.trim().isEmpty()) {
+                traceVisual("PLAN_REFINE_VISUAL_TARGET", "targetUrl=" + PlanRoutingSupport.stripUrlQuery(targetUrlForVisual.trim()));
+                PlanRoutingSupport.ensureRootPageAtUrl(pageForVisual, targetUrlForVisual.trim(), uiLogger);
+            }
+            traceVisual("PLAN_REFINE_VISUAL_PAGE",
+                    "pageNull=" + (pageForVisual == null) +
+                            ", pageUrl=" + safePageUrl(pageForVisual));
+            clearVisualCacheForPage(pageForVisual, uiLogger);
+            uiLogger.accept("视觉补充(PLAN_REFINE): 开始截图");
+            String v = buildPageVisualDescription(pageForVisual, uiLogger);
+            int len = v == null ? 0 : v.length();
+            uiLogger.accept("视觉补充(PLAN_REFINE): 已生成页面描述（len=" + len + "）");
+            traceVisual("PLAN_REFINE_VISUAL_DONE", "descLen=" + len);
+            return v == null ? "" : v;
+        } catch (Exception ex) {
+            uiLogger.accept("视觉补充(PLAN_REFINE)失败: " + ex.getMessage());
+            traceVisual("PLAN_REFINE_VISUAL_ERROR",
+                    "err=" + ex.getClass().getName() + ": " + (ex.getMessage() == null ? "" : ex.getMessage()));
+            return "";
+        }
+    }
 
+    /**
+     * CODEGEN 视觉补充：对当前页面截图并生成页面描述，失败时返回空串
+     */
+    private static String captureCodegenVisualDescription(
+            java.util.concurrent.atomic.AtomicReference<Page> rootPageRef,
+            java.util.concurrent.atomic.AtomicReference<PlayWrightUtil.Connection> connectionRef,
+            java.util.concurrent.atomic.AtomicBoolean forceNewPageOnExecute,
+            java.util.concurrent.atomic.AtomicBoolean hasExecuted,
+            java.util.function.Consumer<String> uiLogger
+    ) {
         try {
-            uiLogger.accept("CODEGEN 输出缺少 Step 标记，开始自动修复格式: model=" + modelName + ", steps=" + session.steps.size());
-            String payload = buildRefinePayload(
-                    currentPage,
-                    session.planText,
-                    snaps,
-                    "",
-                    currentPrompt,
-                    refineHintForModel,
-                    useVisualSupplement ? visualDescriptionFinal : null
-            );
-            String repaired = generateRefinedGroovyScript(
-                    currentPrompt,
-                    payload,
-                    generatedCode,
-                    "",
-                    refineHintForModel,
-                    uiLogger,
-                    modelName
-            );
-            String normalizedRepaired = normalizeGeneratedGroovy(repaired);
-            if (normalizedRepaired != null && !normalizedRepaired.equals(repaired)) {
-                java.util.List<String> normalizeErrors = GroovyLinter.check(normalizedRepaired);
-                boolean hasSyntaxIssue = normalizeErrors.stream().anyMatch(e2 -> e2.startsWith("Syntax Error") || e2.startsWith("Parse Error"));
-                if (!hasSyntaxIssue) {
-                    repaired = normalizedRepaired;
-                }
-            }
-            if (repaired != null && hasExplicitStepMarkers(repaired)) {
-                AutoWebAgentUtils.saveDebugCodeVariant(repaired, modelName, "gen_repair", uiLogger);
-                uiLogger.accept("CODEGEN 自动修复完成: model=" + modelName);
-                return repaired;
-            }
-            uiLogger.accept("CODEGEN 自动修复未生效: model=" + modelName);
+            ensureLiveRootPage(rootPageRef, connectionRef, forceNewPageOnExecute, hasExecuted, uiLogger);
+            refreshRootPageRefIfNeeded(rootPageRef, connectionRef, uiLogger, "视觉补充截图前刷新页面");
+            String v = buildPageVisualDescription(rootPageRef.get(), uiLogger);
+            int len = v == null ? 0 : v.length();
+            uiLogger.accept("视觉补充(CODEGEN): 已生成页面描述（len=" + len + "）");
+            return v == null ? "" : v;
         } catch (Exception ex) {
-            try { uiLogger.accept("CODEGEN 自动修复失败: model=" + modelName + ", err=" + ex.getMessage()); } catch (Exception ignored) {}
+            uiLogger.accept("视觉补充(CODEGEN)失败: " + ex.getMessage());
+            return "";
         }
-        return generatedCode;
     }
 
     /**
@@ -2433,7 +1954,7 @@ class AutoWebAgentUI {
             PlanParseResult parsed = parsePlanFromText(code);
             steps = parsed == null ? null : parsed.steps;
         }
-        java.util.Map<Integer, String> mapped = extractCodeByStep(stripPlanBlock(code));
+        java.util.Map<Integer, String> mapped = extractCodeByStep(WorkflowSupport.stripPlanBlock(code));
         if (steps == null || steps.isEmpty()) {
             if (mapped.isEmpty()) return java.util.Collections.emptyList();
             java.util.List<Integer> order = new java.util.ArrayList<>(mapped.keySet());
@@ -2467,28 +1988,14 @@ class AutoWebAgentUI {
     private static java.util.Map<Integer, String> extractCodeByStep(String code) {
         java.util.Map<Integer, String> res = new java.util.HashMap<>();
         if (code == null || code.trim().isEmpty()) return res;
-        String src = stripPlanBlock(code);
+        String src = WorkflowSupport.stripPlanBlock(code);
         // 支持 //、/* */、*、# 等多种 Step 标记前缀
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+)|第\\s*(\\d+)\\s*(?:步|步骤)|Part\\s*[:：#\\-]?\\s*(\\d+)).*$");
-        java.util.regex.Matcher m = p.matcher(src);
+        java.util.regex.Matcher m = WorkflowSupport.stepMarkerMatcher(src);
         java.util.List<Integer> starts = new java.util.ArrayList<>();
         java.util.List<Integer> nums = new java.util.ArrayList<>();
         while (m.find()) {
             starts.add(m.start());
-            try {
-                String token = null;
-                try { token = m.group(1); } catch (Exception ignored) {}
-                if (token == null || token.trim().isEmpty()) {
-                    try { token = m.group(2); } catch (Exception ignored) {}
-                }
-                if (token == null || token.trim().isEmpty()) {
-                    try { token = m.group(3); } catch (Exception ignored) {}
-                }
-                Integer n = parseUnicodeInt(token);
-                nums.add(n == null ? (nums.size() + 1) : n);
-            } catch (Exception ignored) {
-                nums.add(nums.size() + 1);
-            }
+            nums.add(WorkflowSupport.stepNumber(m, nums.size() + 1));
         }
         if (starts.isEmpty()) {
             String body = src == null ? "" : src.trim();
@@ -2519,26 +2026,6 @@ class AutoWebAgentUI {
         return res;
     }
 
-    /**
-     * 移除 PLAN_START~PLAN_END 计划块，保留可执行脚本部分
-     */
-    private static String stripPlanBlock(String code) {
-        if (code == null) return "";
-        int ps = code.indexOf("PLAN_START");
-        int pe = code.indexOf("PLAN_END");
-        if (ps >= 0 && pe > ps) {
-            int start = code.lastIndexOf("/*", ps);
-            int end = code.indexOf("*/", pe);
-            if (start >= 0 && end > pe) {
-                return code.substring(0, start) + code.substring(end + 2);
-            }
-            // PLAN 块未包裹在块注释内时，直接截断移除
-            int after = pe + "PLAN_END".length();
-            return code.substring(0, ps) + code.substring(Math.min(after, code.length()));
-        }
-        return code;
-    }
-
     private static String loadLatestDebugCodeVariant(String modelName) {
         if (modelName == null || modelName.trim().isEmpty()) return "";
         try {
@@ -2826,24 +2313,9 @@ class AutoWebAgentUI {
         if (row == null) return null;
         java.util.regex.Matcher m = java.util.regex.Pattern.compile("(?i)(?:Step|步骤)\\s*(\\d+)").matcher(row);
         if (!m.find()) return null;
-        return parseUnicodeInt(m.group(1));
+        return WorkflowSupport.parseUnicodeInt(m.group(1));
     }
     
-    private static Integer parseUnicodeInt(String token) {
-        if (token == null) return null;
-        String s = token.trim();
-        if (s.isEmpty()) return null;
-        int n = 0;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (!Character.isDigit(c)) return null;
-            int d = Character.getNumericValue(c);
-            if (d < 0 || d > 9) return null;
-            n = n * 10 + d;
-        }
-        return n;
-    }
-
     private static String toVerticalHtml(String text) {
         if (text == null) return "";
         String t = text.trim();
@@ -3140,6 +2612,21 @@ class AutoWebAgentUI {
         if (btnClearAll != null) btnClearAll.setEnabled(enabled);
     }
 
+    /**
+     * 按钮触发的后台任务统一提交到 {@link AutoWebEngine}（owner=ui），不再每次新建线程。
+     * 引擎队列已满时不启动任务，输出提示并执行 onRejected 恢复按钮状态。
+     *
+     * @param token 取消标记，为 null 时由引擎新建
+     */
+    private static void submitUiJob(String name, CancellationToken token, Runnable body, java.util.function.Consumer<String> uiLogger, Runnable onRejected) {
+        try {
+            AutoWebEngine.shared().submit("ui", name, token, body);
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            if (uiLogger != null) uiLogger.accept("任务未启动: " + ex.getMessage());
+            if (onRejected != null) onRejected.run();
+        }
+    }
+
     /**
      * 从连接中选取最近可用的页面
      *
@@ -3308,26 +2795,6 @@ class AutoWebAgentUI {
         return newPage;
     }
 
-    private static String promoteTopLevelDefsForSharedBinding(String code, java.util.function.Consumer<String> uiLogger) {
-        if (code == null) return "";
-        try {
-            java.util.regex.Pattern p = java.util.regex.Pattern.compile("(?m)^(\\s*)(?:final\\s+)?def\\s+([A-Za-z_][A-Za-z0-9_]*)\\s*=");
-            java.util.regex.Matcher m = p.matcher(code);
-            java.util.LinkedHashSet<String> vars = new java.util.LinkedHashSet<>();
-            while (m.find()) {
-                String v = m.group(2);
-                if (v != null && !v.trim().isEmpty()) vars.add(v.trim());
-            }
-            String rewritten = m.replaceAll("$1$2 =");
-            if (!vars.isEmpty() && uiLogger != null) {
-                uiLogger.accept("已将 top-level def 变量提升为共享变量: " + String.join(",", vars));
-            }
-            return rewritten;
-        } catch (Exception ignored) {
-            return code;
-        }
-    }
-
     private static double asDouble(Object v, double defaultValue) {
         if (v == null) return defaultValue;
         if (v instanceof Number) return ((Number) v).doubleValue();
@@ -3849,13 +3316,23 @@ class AutoWebAgentUI {
         java.util.List<java.io.File> images = captureMultiScreenScreenshots(page, uiLogger);
         traceVisual("VISUAL_DESC_IMAGES", "count=" + (images == null ? 0 : images.size()));
         if (images == null || images.isEmpty()) return "";
-        String prompt = AppConfig.getInstance().getAutowebVisualPrompt();
+        AppConfig cfg = AppConfig.getInstance();
+        // 先只算哈希：截图未变化时直接复用描述，不做缩放重编码
+        java.util.List<ScreenshotPipeline.Prepared> prepared = ScreenshotPipeline.hashAll(images);
+        java.nio.file.Path hashPath = cacheDir.resolve("visual_desc_" + cacheKey + ".phash");
+        String reused = ScreenshotPipeline.reuseDescription(descPath, hashPath, prepared,
+                cfg.getAutowebVisualHashDistance(), cfg.getAutowebVisualReuseMaxMinutes() * 60_000L);
+        if (reused != null) {
+            if (uiLogger != null) uiLogger.accept("视觉补充: 截图未变化，复用视觉描述");
+            traceVisual("VISUAL_DESC_HASH_REUSE", "descPath=" + descPath.toAbsolutePath() + ", " + ScreenshotPipeline.stats());
+            return reused;
+        }
+        String prompt = cfg.getAutowebVisualPrompt();
         try {
-            java.util.List<String> srcs = new java.util.ArrayList<>();
-            for (java.io.File f : images) {
-                if (f == null) continue;
-                srcs.add(f.getAbsolutePath());
-            }
+            ScreenshotPipeline.encodeAll(prepared, cfg.getAutowebVisualMaxEdge(), cfg.getAutowebVisualMaxKb() * 1024L);
+            java.util.List<String> srcs = ScreenshotPipeline.paths(prepared);
+            ScreenshotPipeline.recordVisionCall(prepared);
+            traceVisual("VISUAL_DESC_LLM_START", ScreenshotPipeline.stats());
             String r = LLMUtil.analyzeImageWithAliyun(srcs, prompt);
             String out = r == null ? "" : r.trim();
             traceVisual("VISUAL_DESC_LLM_DONE", "len=" + out.length());
@@ -3863,6 +3340,7 @@ class AutoWebAgentUI {
                 try {
                     java.nio.file.Files.createDirectories(cacheDir);
                     java.nio.file.Files.writeString(descPath, out, java.nio.charset.StandardCharsets.UTF_8);
+                    ScreenshotPipeline.rememberHashes(hashPath, prepared);
                     traceVisual("VISUAL_DESC_SAVED", "descPath=" + descPath.toAbsolutePath());
                 } catch (Exception ignored) {}
             }
@@ -3871,6 +3349,8 @@ class AutoWebAgentUI {
             if (uiLogger != null) uiLogger.accept("视觉补充: 图片分析失败: " + ex.getMessage());
             traceVisual("VISUAL_DESC_ERROR", ex.getClass().getName() + ": " + (ex.getMessage() == null ? "" : ex.getMessage()));
             return "";
+        } finally {
+            ScreenshotPipeline.cleanup(prepared);
         }
     }
 
@@ -3892,14 +3372,6 @@ class AutoWebAgentUI {
         }
     }
 
-    private static String stripUrlsFromText(String s) {
-        if (s == null || s.isEmpty()) return "";
-        String out = s;
-        try { out = out.replaceAll("(?i)https?://\\S+", ""); } catch (Exception ignored) {}
-        try { out = out.replaceAll("(?i)\\bwww\\.[^\\s]+", ""); } catch (Exception ignored) {}
-        return out;
-    }
-
     /**
      * 弹出多行输入对话框
      *
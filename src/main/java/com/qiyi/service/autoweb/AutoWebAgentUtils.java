@@ -163,23 +163,21 @@ class AutoWebAgentUtils {
 
     /**
      * 带超时的 LLM 调用封装。
-     * 核心逻辑：单线程执行 + 超时取消 + 统一日志。
+     * 核心逻辑：请求在 {@link AutoWebEngine} 的 I/O 线程上执行，等待期间检查当前任务的取消标记，
+     * 中断执行时立即返回（抛出 CancellationException），超时或失败统一记录日志并返回空串。
+     *
+     * @param timeoutMillis 超时时间，&lt;= 0 表示不限（仍可取消）
      */
     static String callLLMWithTimeout(java.util.concurrent.Callable<String> task, long timeoutMillis, java.util.function.Consumer<String> uiLogger, String modelName) {
-        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
-        java.util.concurrent.Future<String> future = executor.submit(task);
         try {
-            return future.get(timeoutMillis, java.util.concurrent.TimeUnit.MILLISECONDS);
+            return AutoWebEngine.shared().callBlocking("llm:" + (modelName == null ? "" : modelName), task, timeoutMillis);
+        } catch (java.util.concurrent.CancellationException ce) {
+            StorageSupport.log(uiLogger, "LLM", "调用已取消，模型=" + (modelName == null ? "" : modelName), null);
+            throw ce;
         } catch (java.util.concurrent.TimeoutException te) {
-            // 核心逻辑：超时后取消任务，避免阻塞
-            future.cancel(true);
             StorageSupport.log(uiLogger, "LLM", "调用超时，模型=" + (modelName == null ? "" : modelName) + "，已中止本次请求", te);
         } catch (Exception ex) {
-            // 核心逻辑：异常取消任务并输出错误
-            future.cancel(true);
             StorageSupport.log(uiLogger, "LLM", "调用失败，模型=" + (modelName == null ? "" : modelName), ex);
-        } finally {
-            executor.shutdownNow();
         }
         return "";
     }
@@ -0,0 +1,400 @@
+package com.qiyi.service.autoweb;
+
+import com.qiyi.config.AppConfig;
+import com.qiyi.util.AppLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AutoWeb 的无界面执行引擎：计划、代码生成、脚本执行等任务统一在一个受控线程池中运行。
+ *
+ * <ul>
+ *     <li>线程数与排队上限由 autoweb.engine.threads / autoweb.engine.queue 配置；队列满时提交直接拒绝（{@link RejectedExecutionException}），不再无限新建线程</li>
+ *     <li>每个任务带一个 {@link CancellationToken}，执行期间绑定到线程；取消只设置标记，由检查点协作退出，未开始的任务直接出队</li>
+ *     <li>任务按 owner 归组（如 "ui"、"autoweb:&lt;runId&gt;"），可整组取消；Swing 控制台与钉钉工具共用 {@link #shared()}</li>
+ *     <li>多模型并行用 {@link #fanOut}：子任务进入同一线程池，调用方线程同时领取未开始的子任务自己执行，
+ *     线程池占满时也不会因父任务等待子任务而死锁；单个子任务用 {@link Job#join()} 等待，同样会领取仍在排队的任务</li>
+ *     <li>模型请求等阻塞 I/O 用 {@link #callBlocking}：在引擎的 I/O 线程上执行，调用方按短时间片等待并检查取消标记，
+ *     取消或超时立即返回，不必等请求自己结束</li>
+ * </ul>
+ */
+public final class AutoWebEngine {
+
+    /**
+     * 引擎任务：通过参数拿到取消标记，长循环中应调用 {@link CancellationToken#throwIfCancelled()}。
+     */
+    public interface Task<T> {
+        T run(CancellationToken token) throws Exception;
+    }
+
+    /**
+     * 已提交任务的句柄。
+     */
+    public static final class Job<T> {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DEQUEUED = 2;
+
+        private final String id;
+        private final String owner;
+        private final String name;
+        private final CancellationToken token;
+        private final long submittedAt = System.currentTimeMillis();
+        private volatile long startedAt;
+        /** 开始执行与出队互斥：任务体先 CAS 到 RUNNING 才执行，cancel 只有 CAS 到 DEQUEUED 成功才出队 */
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private FutureTask<T> future;
+        private AutoWebEngine engine;
+
+        private Job(String id, String owner, String name, CancellationToken token) {
+            this.id = id;
+            this.owner = owner;
+            this.name = name;
+            this.token = token;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String owner() {
+            return owner;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public CancellationToken token() {
+            return token;
+        }
+
+        public boolean isStarted() {
+            return state.get() == RUNNING;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        /**
+         * 取消任务：设置取消标记；尚未开始的任务从队列移除。已开始的任务只设置标记，
+         * 仍留在任务列表中，{@link #await()} 等到任务体在检查点退出后才返回。
+         */
+        public void cancel(String reason) {
+            token.cancel(reason);
+            if (state.compareAndSet(QUEUED, DEQUEUED)) {
+                future.cancel(false);
+                engine.executor.remove(future);
+                engine.finish(this, true);
+            }
+        }
+
+        public T await() throws Exception {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        /**
+         * 在引擎任务内等待另一个任务：该任务仍在排队时从队列取出由当前线程直接执行，
+         * 避免线程池被等待子任务的父任务占满而死锁；已开始时与 {@link #await()} 相同。
+         */
+        public T join() throws Exception {
+            if (state.get() == QUEUED && engine.executor.remove(future)) future.run();
+            return await();
+        }
+
+        public T await(long timeoutMillis) throws Exception {
+            try {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            long now = System.currentTimeMillis();
+            return name + "(id=" + id + ", owner=" + owner + (startedAt > 0 ? ", runningMs=" + (now - startedAt) : ", queuedMs=" + (now - submittedAt)) +
+                    (token.isCancelled() ? ", cancelled" : "") + ")";
+        }
+    }
+
+    private static volatile AutoWebEngine shared;
+
+    /** {@link #callBlocking} 检查取消标记的间隔 */
+    private static final long POLL_MILLIS = 200;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor ioExecutor;
+    private final Map<String, Job<?>> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public static AutoWebEngine shared() {
+        AutoWebEngine e = shared;
+        if (e != null) return e;
+        synchronized (AutoWebEngine.class) {
+            if (shared == null) {
+                AppConfig cfg = AppConfig.getInstance();
+                shared = new AutoWebEngine("autoweb-engine", cfg.getAutowebEngineThreads(), cfg.getAutowebEngineQueue());
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * 独立引擎，供需要与共享线程池隔离的调用方（如测试）使用；一般用 {@link #shared()}。
+     */
+    public AutoWebEngine(String name, int threads, int queueSize) {
+        this.name = name;
+        int n = Math.max(1, threads);
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+            Thread t = new Thread(r, name + "-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        AtomicInteger ioSeq = new AtomicInteger();
+        this.ioExecutor = new ThreadPoolExecutor(0, n * 2, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, name + "-io-" + ioSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交任务。
+     *
+     * @param owner 归组标识，用于整组取消与查询
+     * @param token 取消标记，为 null 时新建
+     * @throws RejectedExecutionException 排队任务已达上限
+     */
+    public <T> Job<T> submit(String owner, String jobName, CancellationToken token, Task<T> task) {
+        String id = name + "-" + seq.incrementAndGet();
+        Job<T> job = new Job<>(id, owner == null ? "" : owner, jobName == null ? "" : jobName, token == null ? CancellationToken.create() : token);
+        job.engine = this;
+        job.future = new FutureTask<>(() -> {
+            // 工作线程已取出任务但 cancel 抢先出队：不再执行
+            if (!job.state.compareAndSet(Job.QUEUED, Job.RUNNING)) throw new CancellationException(job.token.reason());
+            job.startedAt = System.currentTimeMillis();
+            CancellationToken prev = CancellationToken.bind(job.token);
+            try {
+                job.token.throwIfCancelled();
+                return task.run(job.token);
+            } finally {
+                CancellationToken.bind(prev);
+                finish(job, job.token.isCancelled());
+            }
+        });
+        jobs.put(id, job);
+        try {
+            executor.execute(job.future);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("AutoWeb 任务队列已满（" + stats() + "），拒绝 " + job.name, e);
+        }
+        submitted.incrementAndGet();
+        return job;
+    }
+
+    public Job<Void> submit(String owner, String jobName, CancellationToken token, Runnable body) {
+        return submit(owner, jobName, token, t -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * 并行执行一组子任务（如每个模型一个），等待全部结束后按原顺序返回结果；失败或取消的子任务对应位置为 null。
+     * 子任务共用调用方的取消标记。
+     */
+    public <T> List<T> fanOut(CancellationToken token, List<? extends Task<T>> tasks) {
+        CancellationToken tk = token == null ? CancellationToken.create() : token;
+        List<FutureTask<T>> futures = new ArrayList<>();
+        List<AtomicBoolean> claims = new ArrayList<>();
+        for (Task<T> task : tasks) {
+            FutureTask<T> f = new FutureTask<>(() -> {
+                CancellationToken prev = CancellationToken.bind(tk);
+                try {
+                    tk.throwIfCancelled();
+                    return task.run(tk);
+                } finally {
+                    CancellationToken.bind(prev);
+                }
+            });
+            AtomicBoolean claim = new AtomicBoolean();
+            futures.add(f);
+            claims.add(claim);
+        }
+        // 第一个子任务留给调用方线程，其余交给线程池；池满或未及时领取的子任务由调用方依次补位执行
+        for (int i = 1; i < futures.size(); i++) {
+            FutureTask<T> f = futures.get(i);
+            AtomicBoolean claim = claims.get(i);
+            try {
+                executor.execute(() -> {
+                    if (claim.compareAndSet(false, true)) f.run();
+                });
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            if (claims.get(i).compareAndSet(false, true)) futures.get(i).run();
+        }
+        List<T> out = new ArrayList<>();
+        for (FutureTask<T> f : futures) {
+            try {
+                out.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                out.add(null);
+            } catch (ExecutionException e) {
+                Throwable c = e.getCause();
+                if (!(c instanceof CancellationException)) AppLog.warn("[autoweb-engine] fanOut task failed: " + c);
+                out.add(null);
+            } catch (CancellationException e) {
+                out.add(null);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * {@link #fanOut} 的无返回值版本，供按模型并行的 UI 流程直接传入原有的 Runnable 体。
+     */
+    public void runAll(CancellationToken token, List<? extends Runnable> bodies) {
+        List<Task<Void>> tasks = new ArrayList<>();
+        for (Runnable body : bodies) {
+            tasks.add(t -> {
+                body.run();
+                return null;
+            });
+        }
+        fanOut(token, tasks);
+    }
+
+    /**
+     * 执行一次阻塞调用（如模型请求）：调用在 I/O 线程上运行，当前线程每 {@link #POLL_MILLIS} 毫秒检查一次
+     * 绑定的取消标记；取消时中断请求线程并抛出 {@link CancellationException}，超时抛出 {@link TimeoutException}。
+     * I/O 线程占满时在当前线程直接执行（此时无法中途取消）。
+     *
+     * @param timeoutMillis 超时时间，&lt;= 0 表示不限
+     */
+    public <T> T callBlocking(String callName, Callable<T> call, long timeoutMillis) throws Exception {
+        CancellationToken token = CancellationToken.current();
+        if (token != null) token.throwIfCancelled();
+        FutureTask<T> f = new FutureTask<>(call);
+        try {
+            ioExecutor.execute(f);
+        } catch (RejectedExecutionException e) {
+            AppLog.warn("[autoweb-engine] io threads busy, run inline: " + callName);
+            f.run();
+        }
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+        try {
+            while (true) {
+                if (token != null && token.isCancelled()) {
+                    f.cancel(true);
+                    token.throwIfCancelled();
+                }
+                long left = deadline == Long.MAX_VALUE ? TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS) : deadline - System.nanoTime();
+                if (left <= 0) {
+                    f.cancel(true);
+                    throw new TimeoutException(callName + " timeout after " + timeoutMillis + "ms");
+                }
+                try {
+                    return f.get(Math.min(left, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ignored) {
+                }
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消某个 owner 下的全部任务。
+     *
+     * @return 取消的任务数
+     */
+    public int cancelOwner(String owner, String reason) {
+        int n = 0;
+        for (Job<?> job : jobs.values()) {
+            if (job.owner.equals(owner) && !job.token.isCancelled()) {
+                job.cancel(reason);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public List<Job<?>> jobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public String stats() {
+        return "threads=" + executor.getPoolSize() + "/" + executor.getMaximumPoolSize() +
+                ", active=" + executor.getActiveCount() +
+                ", queued=" + executor.getQueue().size() + "/" + (executor.getQueue().size() + executor.getQueue().remainingCapacity()) +
+                ", submitted=" + submitted.get() + ", completed=" + completed.get() +
+                ", cancelled=" + cancelled.get() + ", rejected=" + rejected.get();
+    }
+
+    /**
+     * 停止接收任务并取消全部任务，等待执行中的任务退出。
+     */
+    public void shutdown(long timeoutMillis) {
+        for (Job<?> job : jobs.values()) job.cancel("engine shutdown");
+        executor.shutdown();
+        ioExecutor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                AppLog.warn("[autoweb-engine] shutdown timeout: " + jobs.values());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finish(Job<?> job, boolean wasCancelled) {
+        if (jobs.remove(job.id) == null) return;
+        if (wasCancelled) cancelled.incrementAndGet();
+        else completed.incrementAndGet();
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable c = e.getCause();
+        if (c instanceof Exception) return (Exception) c;
+        if (c instanceof Error) throw (Error) c;
+        return e;
+    }
+}
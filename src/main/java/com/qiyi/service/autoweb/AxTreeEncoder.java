@@ -0,0 +1,344 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 紧凑的无障碍树编码（ARIA_SNAPSHOT 的 AX tree 兜底路径）。
+ *
+ * <p>原实现把 CDP Accessibility.getFullAXTree 的结果用 Gson 过滤、深拷贝后再整段 pretty JSON 序列化进 prompt，
+ * 每个节点带 nodeId/backendDOMNodeId/properties 等大量字段。这里改为逐行文本，格式与 Playwright ariaSnapshot 保持一致：</p>
+ *
+ * <pre>
+ * # AX https://erp.example.com/orders nodes=42/318
+ * - navigation [ref=e1]
+ *   - link "订单管理" [url=https://erp.example.com/orders] [ref=e2]
+ * - textbox "订单号": 10086 [ref=e3]
+ * - checkbox "全选" [checked] [ref=e4]
+ * </pre>
+ *
+ * <ul>
+ *     <li>缩进表示层级；ignored 节点、无名称的 generic/none 容器不输出，其子节点上提一层</li>
+ *     <li>与父节点名称相同的 StaticText 不重复输出</li>
+ *     <li>只保留对定位/操作有意义的属性（value/checked/selected/expanded/disabled/pressed/required/level/url 等）</li>
+ *     <li>ref 按输出顺序编号（e1, e2 ...），同一页面结构多次采集得到相同编号</li>
+ * </ul>
+ *
+ * <p>处理过程：一遍扫描 nodes 建立 id → 节点引用（不拷贝），选出 RootWebArea 后一次深度优先遍历直接写出文本。</p>
+ */
+final class AxTreeEncoder {
+    /** 单个名称/值的最大长度 */
+    static final int MAX_TEXT_LEN = 160;
+
+    private static final Set<String> TRANSPARENT_ROLES = new HashSet<>();
+    private static final String[] PROPERTIES = {
+            "checked", "selected", "expanded", "pressed", "disabled", "readonly", "required", "invalid", "level", "url"
+    };
+
+    static {
+        TRANSPARENT_ROLES.add("none");
+        TRANSPARENT_ROLES.add("generic");
+        TRANSPARENT_ROLES.add("presentation");
+        TRANSPARENT_ROLES.add("InlineTextBox");
+        TRANSPARENT_ROLES.add("LineBreak");
+        TRANSPARENT_ROLES.add("Ignored");
+    }
+
+    private AxTreeEncoder() {
+    }
+
+    /**
+     * 把 getFullAXTree 的结果编码为紧凑文本；只输出与 expectedUrl 最匹配（其次最大）的 RootWebArea 子树。
+     * 没有节点时返回空串。
+     */
+    static String encode(JsonObject cdpResult, String expectedUrl) {
+        if (cdpResult == null) return "";
+        JsonArray nodes;
+        try {
+            nodes = cdpResult.getAsJsonArray("nodes");
+        } catch (Exception e) {
+            return "";
+        }
+        if (nodes == null || nodes.size() == 0) return "";
+
+        Map<String, JsonObject> byId = new HashMap<>(nodes.size() * 2);
+        List<String> rootIds = new ArrayList<>();
+        String firstId = null;
+        for (JsonElement e : nodes) {
+            if (!(e instanceof JsonObject)) continue;
+            JsonObject n = (JsonObject) e;
+            String id = str(n.get("nodeId"));
+            if (id.isEmpty()) continue;
+            byId.put(id, n);
+            if (firstId == null) firstId = id;
+            if (isRootWebArea(n)) rootIds.add(id);
+        }
+        if (byId.isEmpty()) return "";
+        String rootId = rootIds.isEmpty() ? firstId : chooseRoot(byId, rootIds, expectedUrl);
+
+        StringBuilder body = new StringBuilder(Math.max(256, byId.size() * 24));
+        int emitted = emit(byId, rootId, body);
+        JsonObject root = byId.get(rootId);
+        String url = property(root, "url");
+        StringBuilder out = new StringBuilder(body.length() + 96);
+        out.append("# AX ").append(url.isEmpty() ? "-" : url).append(" nodes=").append(emitted).append('/').append(byId.size()).append('\n');
+        out.append(body);
+        return out.toString();
+    }
+
+    /**
+     * 与原 filterAxTreeToLargestRootWebArea 的选择规则一致：URL 匹配优先，其次非 about:blank，最后节点数最多。
+     */
+    private static String chooseRoot(Map<String, JsonObject> byId, List<String> rootIds, String expectedUrl) {
+        String expected = "";
+        try {
+            expected = PlanRoutingSupport.stripUrlQuery(expectedUrl);
+            expected = expected == null ? "" : expected.trim();
+        } catch (Exception ignored) {}
+
+        String best = null;
+        boolean bestMatch = false;
+        boolean bestBad = true;
+        int bestSize = -1;
+        for (String rid : rootIds) {
+            String url = property(byId.get(rid), "url");
+            boolean bad = url.isEmpty() || "about:blank".equalsIgnoreCase(url);
+            String noQuery = "";
+            try {
+                noQuery = PlanRoutingSupport.stripUrlQuery(url);
+                noQuery = noQuery == null ? "" : noQuery.trim();
+            } catch (Exception ignored) {}
+            boolean match = !expected.isEmpty() && !noQuery.isEmpty()
+                    && (noQuery.startsWith(expected) || expected.startsWith(noQuery));
+            int size = subtreeSize(byId, rid);
+            boolean better;
+            if (best == null) better = true;
+            else if (match != bestMatch) better = match;
+            else if (bad != bestBad) better = !bad;
+            else better = size > bestSize;
+            if (better) {
+                best = rid;
+                bestMatch = match;
+                bestBad = bad;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    private static int subtreeSize(Map<String, JsonObject> byId, String rootId) {
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(rootId);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!seen.add(id)) continue;
+            JsonObject n = byId.get(id);
+            if (n == null) continue;
+            for (String c : childIds(n)) stack.push(c);
+        }
+        return seen.size();
+    }
+
+    /**
+     * 深度优先写出节点行，返回输出的节点数。
+     */
+    private static int emit(Map<String, JsonObject> byId, String rootId, StringBuilder out) {
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<Item> stack = new ArrayDeque<>();
+        int ref = 0;
+        JsonObject root = byId.get(rootId);
+        // RootWebArea 只体现在首行，子节点从第 0 层开始
+        if (root != null && isRootWebArea(root)) {
+            seen.add(rootId);
+            pushChildren(stack, childIds(root), 0, name(root));
+        } else {
+            stack.push(new Item(rootId, 0, ""));
+        }
+        while (!stack.isEmpty()) {
+            Item it = stack.pop();
+            if (!seen.add(it.id)) continue;
+            JsonObject n = byId.get(it.id);
+            if (n == null) continue;
+            String role = role(n);
+            String name = name(n);
+            boolean ignored = bool(n.get("ignored"));
+            boolean transparent = ignored || role.isEmpty() || (TRANSPARENT_ROLES.contains(role) && name.isEmpty());
+            boolean duplicateText = "StaticText".equals(role) && (name.isEmpty() || name.equals(it.parentName));
+            if (transparent || duplicateText) {
+                pushChildren(stack, childIds(n), it.depth, it.parentName);
+                continue;
+            }
+            ref++;
+            for (int i = 0; i < it.depth; i++) out.append("  ");
+            out.append("- ").append("StaticText".equals(role) ? "text" : role);
+            if (!name.isEmpty()) out.append(" \"").append(clip(name).replace("\"", "\\\"")).append('"');
+            String value = value(n);
+            if (!value.isEmpty() && !value.equals(name)) out.append(": ").append(clip(value));
+            appendProperties(n, out);
+            out.append(" [ref=e").append(ref).append("]\n");
+            pushChildren(stack, childIds(n), it.depth + 1, name);
+        }
+        return ref;
+    }
+
+    private static final class Item {
+        final String id;
+        final int depth;
+        final String parentName;
+
+        Item(String id, int depth, String parentName) {
+            this.id = id;
+            this.depth = depth;
+            this.parentName = parentName;
+        }
+    }
+
+    private static void pushChildren(ArrayDeque<Item> stack, List<String> children, int depth, String parentName) {
+        // 逆序入栈，保证出栈顺序与文档顺序一致
+        for (int i = children.size() - 1; i >= 0; i--) {
+            stack.push(new Item(children.get(i), depth, parentName));
+        }
+    }
+
+    private static void appendProperties(JsonObject n, StringBuilder out) {
+        JsonArray props = array(n, "properties");
+        if (props == null) return;
+        // 按固定顺序输出，保证同一节点多次采集文本一致
+        String[] found = new String[PROPERTIES.length];
+        for (JsonElement pe : props) {
+            if (!(pe instanceof JsonObject)) continue;
+            JsonObject p = (JsonObject) pe;
+            String pname = str(p.get("name"));
+            for (int i = 0; i < PROPERTIES.length; i++) {
+                if (PROPERTIES[i].equals(pname)) {
+                    found[i] = valueOf(p.get("value"));
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            String v = found[i];
+            if (v == null) continue;
+            String p = PROPERTIES[i];
+            if ("true".equals(v)) {
+                out.append(" [").append(p).append(']');
+            } else if ("false".equals(v) || v.isEmpty()) {
+                // expanded=false 对下拉/折叠面板有意义，其余 false 省略
+                if ("expanded".equals(p) && "false".equals(v)) out.append(" [expanded=false]");
+            } else {
+                out.append(" [").append(p).append('=').append(clip(v)).append(']');
+            }
+        }
+    }
+
+    private static boolean isRootWebArea(JsonObject n) {
+        if ("RootWebArea".equalsIgnoreCase(role(n))) return true;
+        try {
+            JsonObject chromeRole = n.getAsJsonObject("chromeRole");
+            if (chromeRole != null) {
+                JsonElement v = chromeRole.get("value");
+                return v != null && v.getAsInt() == 144;
+            }
+        } catch (Exception ignored) {}
+        return false;
+    }
+
+    private static List<String> childIds(JsonObject n) {
+        JsonArray arr = array(n, "childIds");
+        if (arr == null || arr.size() == 0) return Collections.emptyList();
+        List<String> out = new ArrayList<>(arr.size());
+        for (JsonElement e : arr) {
+            String s = str(e);
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+
+    private static String role(JsonObject n) {
+        return n == null ? "" : valueOf(n.get("role"));
+    }
+
+    private static String name(JsonObject n) {
+        return n == null ? "" : collapse(valueOf(n.get("name")));
+    }
+
+    private static String value(JsonObject n) {
+        return n == null ? "" : collapse(valueOf(n.get("value")));
+    }
+
+    private static String property(JsonObject n, String propName) {
+        JsonArray props = array(n, "properties");
+        if (props == null) return "";
+        for (JsonElement pe : props) {
+            if (!(pe instanceof JsonObject)) continue;
+            JsonObject p = (JsonObject) pe;
+            if (propName.equalsIgnoreCase(str(p.get("name")))) return valueOf(p.get("value")).trim();
+        }
+        return "";
+    }
+
+    /**
+     * CDP 的 AXValue：{"type": "...", "value": ...}；取 value 的文本形式。
+     */
+    private static String valueOf(JsonElement axValue) {
+        if (axValue == null || axValue.isJsonNull()) return "";
+        if (axValue.isJsonObject()) {
+            JsonElement v = axValue.getAsJsonObject().get("value");
+            if (v == null || v.isJsonNull()) return "";
+            return v.isJsonPrimitive() ? v.getAsString() : v.toString();
+        }
+        return axValue.isJsonPrimitive() ? axValue.getAsString() : "";
+    }
+
+    private static JsonArray array(JsonObject n, String field) {
+        if (n == null) return null;
+        JsonElement e = n.get(field);
+        return e != null && e.isJsonArray() ? e.getAsJsonArray() : null;
+    }
+
+    private static String str(JsonElement e) {
+        if (e == null || e.isJsonNull() || !e.isJsonPrimitive()) return "";
+        return e.getAsString();
+    }
+
+    private static boolean bool(JsonElement e) {
+        try {
+            return e != null && e.isJsonPrimitive() && e.getAsBoolean();
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    private static String collapse(String s) {
+        if (s == null || s.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String clip(String s) {
+        if (s.length() <= MAX_TEXT_LEN) return s;
+        return s.substring(0, MAX_TEXT_LEN) + "…";
+    }
+}
@@ -0,0 +1,81 @@
+package com.qiyi.service.autoweb;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 协作式取消标记：由 {@link AutoWebEngine} 绑定到执行任务的线程，计划/代码生成/脚本执行在检查点主动退出。
+ *
+ * <p>替代按线程 interrupt 的做法：取消只影响本任务，不会误伤线程池中复用同一线程的后续任务；
+ * 未开始的任务直接出队，正在执行的任务在下一个检查点（DSL 动作、脚本执行前后、等待循环）抛出 {@link CancellationException}。</p>
+ */
+public final class CancellationToken {
+
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+    private volatile String reason;
+
+    private CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    public static CancellationToken create() {
+        return new CancellationToken(null);
+    }
+
+    /**
+     * 子标记：父标记取消时随之取消；子标记自己取消不影响父标记（如只停掉流水线的预取子任务，不取消整次执行）。
+     */
+    public CancellationToken child() {
+        return new CancellationToken(this);
+    }
+
+    public void cancel(String reason) {
+        this.reason = reason == null ? "" : reason;
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public String reason() {
+        if (reason == null) return parent == null ? "" : parent.reason();
+        return reason;
+    }
+
+    public void throwIfCancelled() {
+        if (isCancelled()) throw new CancellationException("AutoWeb task cancelled" + (reason().isEmpty() ? "" : ": " + reason()));
+    }
+
+    /**
+     * 当前线程绑定的标记；不在引擎任务中时返回 null。
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 当前任务是否已取消（兼容旧的 interrupt 方式：线程被中断也视为取消）。
+     */
+    public static boolean currentCancelled() {
+        CancellationToken t = CURRENT.get();
+        return (t != null && t.isCancelled()) || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * 检查点：当前任务已取消时抛出 {@link CancellationException}。
+     */
+    public static void checkCurrent() {
+        CancellationToken t = CURRENT.get();
+        if (t != null) t.throwIfCancelled();
+    }
+
+    static CancellationToken bind(CancellationToken token) {
+        CancellationToken prev = CURRENT.get();
+        if (token == null) CURRENT.remove();
+        else CURRENT.set(token);
+        return prev;
+    }
+}
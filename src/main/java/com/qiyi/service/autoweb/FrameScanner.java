@@ -0,0 +1,261 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Frame;
+import com.microsoft.playwright.Page;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * iframe 快速扫描。
+ *
+ * <p>原实现对每个 frame 调用 frameElement() + boundingBox()，每个 frame 两次往返，全程持 PLAYWRIGHT_LOCK。
+ * 这里改为在主文档注入一段脚本，一次 evaluate 返回所有顶层 iframe 的 name/id/src/当前地址与几何信息，
+ * 再在 Java 侧按 name、URL 与 Frame 对象对应；对不上的 frame（嵌套 iframe、同名 iframe）退回逐个查询。</p>
+ *
+ * <p>{@link Watcher} 监听 frame attach/navigate/detach 事件，等待内容 frame 时事件一到立即重扫，
+ * 不再固定睡 500ms 轮询。</p>
+ */
+final class FrameScanner {
+    /** 无事件时的最长等待（iframe 尺寸变化不会触发 frame 事件，仍需兜底重扫） */
+    static final long MAX_IDLE_WAIT_MS = 500;
+    /** 单次持锁等待事件的时长；分片等待，避免长时间占用 PLAYWRIGHT_LOCK */
+    static final long WAIT_SLICE_MS = 100;
+
+    static final String GEOMETRY_JS = "() => {\n" +
+            "  const out = [];\n" +
+            "  const frames = document.querySelectorAll('iframe,frame');\n" +
+            "  for (let i = 0; i < frames.length; i++) {\n" +
+            "    const el = frames[i];\n" +
+            "    let href = '';\n" +
+            "    try { href = (el.contentWindow && el.contentWindow.location) ? String(el.contentWindow.location.href) : ''; } catch (e) { href = ''; }\n" +
+            "    const r = el.getBoundingClientRect();\n" +
+            "    out.push({ name: el.getAttribute('name') || '', id: el.id || '', src: el.src || '', href: href,\n" +
+            "      x: r.x, y: r.y, w: r.width, h: r.height });\n" +
+            "  }\n" +
+            "  return out;\n" +
+            "}";
+
+    private FrameScanner() {
+    }
+
+    /**
+     * 单个 iframe 元素的几何信息；visible 与 boundingBox() 口径一致（宽高均大于 0）。
+     */
+    static final class Geometry {
+        String name = "";
+        String id = "";
+        String src = "";
+        String href = "";
+        double x;
+        double y;
+        double w;
+        double h;
+
+        double area() {
+            return w * h;
+        }
+
+        boolean visible() {
+            return w > 0 && h > 0;
+        }
+    }
+
+    /**
+     * 一次 evaluate 读取主文档中所有 iframe 的几何信息；失败返回空列表（调用方退回逐个查询）。
+     */
+    static List<Geometry> readGeometry(Page page) {
+        List<Geometry> out = new ArrayList<>();
+        if (page == null) return out;
+        try {
+            Object v = page.evaluate(GEOMETRY_JS);
+            if (!(v instanceof List)) return out;
+            for (Object o : (List<?>) v) {
+                if (!(o instanceof Map)) continue;
+                Map<?, ?> m = (Map<?, ?>) o;
+                Geometry g = new Geometry();
+                g.name = str(m.get("name"));
+                g.id = str(m.get("id"));
+                g.src = str(m.get("src"));
+                g.href = str(m.get("href"));
+                g.x = num(m.get("x"));
+                g.y = num(m.get("y"));
+                g.w = num(m.get("w"));
+                g.h = num(m.get("h"));
+                out.add(g);
+            }
+        } catch (Exception ignored) {
+            out.clear();
+        }
+        return out;
+    }
+
+    /**
+     * 把主 frame 的子 frame 与几何信息对应起来。
+     * 核心逻辑：先按 name（Playwright 的 frame.name() 取 name 属性，缺省取 id）唯一匹配，
+     * 再按当前地址/src 唯一匹配；有歧义的一律不匹配，由调用方逐个查询，宁可慢也不能张冠李戴。
+     */
+    static Map<Frame, Geometry> match(List<Frame> childFrames, List<Geometry> geometries) {
+        Map<Frame, Geometry> out = new IdentityHashMap<>();
+        if (childFrames == null || childFrames.isEmpty() || geometries == null || geometries.isEmpty()) return out;
+
+        Map<String, List<Geometry>> byName = new HashMap<>();
+        Map<String, List<Geometry>> byUrl = new HashMap<>();
+        for (Geometry g : geometries) {
+            String n = !g.name.isEmpty() ? g.name : g.id;
+            if (!n.isEmpty()) byName.computeIfAbsent(n, k -> new ArrayList<>()).add(g);
+            String u = !g.href.isEmpty() ? g.href : g.src;
+            if (!u.isEmpty() && !"about:blank".equalsIgnoreCase(u)) byUrl.computeIfAbsent(u, k -> new ArrayList<>()).add(g);
+        }
+        Map<String, Integer> frameNameCount = new HashMap<>();
+        Map<String, Integer> frameUrlCount = new HashMap<>();
+        for (Frame f : childFrames) {
+            frameNameCount.merge(safeName(f), 1, Integer::sum);
+            frameUrlCount.merge(safeUrl(f), 1, Integer::sum);
+        }
+
+        IdentityHashMap<Geometry, Boolean> used = new IdentityHashMap<>();
+        for (Frame f : childFrames) {
+            String n = safeName(f);
+            if (n.isEmpty() || frameNameCount.get(n) != 1) continue;
+            List<Geometry> gs = byName.get(n);
+            if (gs != null && gs.size() == 1 && !used.containsKey(gs.get(0))) {
+                out.put(f, gs.get(0));
+                used.put(gs.get(0), Boolean.TRUE);
+            }
+        }
+        for (Frame f : childFrames) {
+            if (out.containsKey(f)) continue;
+            String u = safeUrl(f);
+            if (u.isEmpty() || "about:blank".equalsIgnoreCase(u) || frameUrlCount.get(u) != 1) continue;
+            List<Geometry> gs = byUrl.get(u);
+            if (gs != null && gs.size() == 1 && !used.containsKey(gs.get(0))) {
+                out.put(f, gs.get(0));
+                used.put(gs.get(0), Boolean.TRUE);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 逐个查询兜底：frameElement() + boundingBox()（两次往返）。
+     */
+    static Geometry queryGeometry(Frame f) {
+        Geometry g = new Geometry();
+        com.microsoft.playwright.ElementHandle element = f.frameElement();
+        if (element != null) {
+            com.microsoft.playwright.options.BoundingBox box = element.boundingBox();
+            if (box != null) {
+                g.x = box.x;
+                g.y = box.y;
+                g.w = box.width;
+                g.h = box.height;
+            }
+        }
+        return g;
+    }
+
+    /**
+     * frame 事件监听：attach/navigate/detach 任一发生即递增版本号。
+     */
+    static final class Watcher implements AutoCloseable {
+        private final Page page;
+        private final AtomicInteger version = new AtomicInteger();
+        private final Consumer<Frame> listener = f -> version.incrementAndGet();
+
+        private Watcher(Page page) {
+            this.page = page;
+        }
+
+        static Watcher attach(Page page) {
+            Watcher w = new Watcher(page);
+            if (page == null) return w;
+            synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+                try {
+                    page.onFrameAttached(w.listener);
+                    page.onFrameNavigated(w.listener);
+                    page.onFrameDetached(w.listener);
+                } catch (Exception ignored) {}
+            }
+            return w;
+        }
+
+        int version() {
+            return version.get();
+        }
+
+        /**
+         * 等待 frame 事件（版本号不同于 seen）或最多 maxWaitMs；返回是否有新事件。
+         * 分片持锁等待，事件由 waitForCondition 泵出；每片之间释放锁，其它采集线程可继续操作浏览器。
+         */
+        boolean awaitChange(int seen, long maxWaitMs) {
+            long deadline = System.currentTimeMillis() + Math.max(0, maxWaitMs);
+            while (version.get() == seen) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                if (CancellationToken.currentCancelled()) return false;
+                if (page == null) {
+                    try { Thread.sleep(Math.min(remaining, WAIT_SLICE_MS)); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return false; }
+                    continue;
+                }
+                synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+                    try {
+                        page.waitForCondition(() -> version.get() != seen,
+                                new Page.WaitForConditionOptions().setTimeout(Math.min(remaining, WAIT_SLICE_MS)));
+                    } catch (Exception ignored) {
+                        // 超时：继续下一片
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (page == null) return;
+            synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+                try {
+                    page.offFrameAttached(listener);
+                    page.offFrameNavigated(listener);
+                    page.offFrameDetached(listener);
+                } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    private static String safeName(Frame f) {
+        try {
+            String n = f.name();
+            return n == null ? "" : n.trim();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String safeUrl(Frame f) {
+        try {
+            String u = f.url();
+            return u == null ? "" : u.trim();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString().trim();
+    }
+
+    private static double num(Object o) {
+        if (o instanceof Number) return ((Number) o).doubleValue();
+        try {
+            return o == null ? 0 : Double.parseDouble(o.toString());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
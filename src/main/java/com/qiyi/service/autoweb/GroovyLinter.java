@@ -1,8 +1,5 @@
 package com.qiyi.service.autoweb;
 
-import groovy.lang.GroovyShell;
-import org.codehaus.groovy.control.CompilationFailedException;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -10,6 +7,7 @@ import java.util.regex.Pattern;
 /**
  * Groovy 脚本静态检查器。
  * 负责执行前的安全模式识别与语法解析校验。
+ * 检查结果与语法解析产出的 Script 类由 {@link GroovyScriptCache} 按脚本哈希缓存。
  */
 public class GroovyLinter {
 
@@ -37,29 +35,24 @@ public class GroovyLinter {
 
     /**
      * 执行静态检查并返回问题列表。
-     * 核心逻辑：先做安全检查，再做 Groovy 语法解析。
+     * 核心逻辑：先做安全检查，再做 Groovy 语法解析；同一脚本只检查一次。
      */
     public static List<String> check(String code) {
+        if (code == null) return new ArrayList<>();
+        return new ArrayList<>(GroovyScriptCache.shared().lint(code));
+    }
+
+    /**
+     * 安全模式检测（不含语法解析）。
+     */
+    static List<String> securityErrors(String code) {
         List<String> errors = new ArrayList<>();
         if (code == null) return errors;
-
-        // 核心逻辑：安全模式检测
         for (Pattern p : UNSAFE_PATTERNS) {
             if (p.matcher(code).find()) {
                 errors.add("Security Error: Code contains unsafe pattern '" + p.pattern() + "'");
             }
         }
-
-        // 核心逻辑：语法解析检测
-        try {
-            GroovyShell shell = new GroovyShell(new groovy.lang.Binding(), AutoWebAgent.secureGroovyCompilerConfig());
-            shell.parse(code);
-        } catch (CompilationFailedException e) {
-            errors.add("Syntax Error: " + e.getMessage());
-        } catch (Exception e) {
-            errors.add("Parse Error: " + e.getMessage());
-        }
-
         return errors;
     }
 }
@@ -0,0 +1,450 @@
+package com.qiyi.service.autoweb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 模型生成代码的归一化（{@link GroovySupport#normalizeGeneratedGroovy} 与执行前的 {@link AutoWebAgent#normalizeGroovyScriptForExecution}）。
+ *
+ * <p>与旧实现（测试源码中的 LegacyGroovyNormalizer，仅作一致性测试与基准测试的对照）输出完全一致，区别在于：</p>
+ * <ul>
+ *     <li>规则全部预编译为静态 Pattern，不再每次调用 replaceAll 重新编译（旧实现每次归一化约 40 次编译）</li>
+ *     <li>按行生效的规则（计划标记注释、块注释外的 PLAN_START/PLAN_END、listbox 点击改写）合并为一次逐行扫描，不再每条规则 split/join 一遍</li>
+ *     <li>每条规则先用字面量做必要条件检查（如 "JsonBuilder"、"format("、"LocalDate"），不可能命中时跳过整段扫描；
+ *     可能跨行匹配的少见规则（"- plan"、"&lt;plan&gt;"…）命中字面量时仍按原正则在全文上执行，保证结果不变</li>
+ * </ul>
+ */
+final class GroovyNormalizer {
+    private GroovyNormalizer() {
+    }
+
+    private static final Pattern MARKER_LINE = Pattern.compile("(?m)^(\\s*)(PLAN:|THINK:|ANALYSIS:|REASONING:|思考过程|计划|QUESTION:)\\b");
+    private static final String[] MARKER_TOKENS = {"PLAN:", "THINK:", "ANALYSIS:", "REASONING:", "思考过程", "计划", "QUESTION:"};
+
+    private static final Pattern DASH_PLAN = Pattern.compile("(?m)^(\\s*)(-\\s*[Pp]lan\\b.*)");
+    private static final Pattern STAR_PLAN = Pattern.compile("(?m)^(\\s*)(\\*\\s*[Pp]lan\\b.*)");
+    private static final Pattern BRACKET_PLAN = Pattern.compile("(?m)^(\\s*)(\\[Plan\\].*)");
+    private static final Pattern TAG_PLAN = Pattern.compile("(?m)^(\\s*)(<plan>.*)</plan>\\s*$");
+    private static final Pattern TAG_THINK = Pattern.compile("(?m)^(\\s*)(<think>.*)</think>\\s*$");
+    private static final Pattern CN_THINK = Pattern.compile("(?m)^(\\s*)(思考:.*)");
+
+    private static final Pattern OPEN_BY_TEXT = Pattern.compile("^\\s*web\\.click\\(\\s*(['\"])text=\\\"([^\\\"]+)\\\"\\1\\s*\\)\\s*;?\\s*$");
+    private static final Pattern WAIT_LINE = Pattern.compile("^\\s*web\\.wait\\(\\s*\\d+\\s*\\)\\s*;?\\s*$");
+    private static final Pattern LOG_LINE = Pattern.compile("^\\s*web\\.log\\(.*\\)\\s*;?\\s*$");
+    private static final Pattern BLANK_LINE = Pattern.compile("^\\s*$");
+    private static final Pattern LINE_COMMENT = Pattern.compile("^\\s*//.*$");
+    private static final Pattern SELECT_FROM_LISTBOX = Pattern.compile("^\\s*web\\.click\\(\\s*(['\"])(?:div\\[role=\\\"listbox\\\"\\]|\\[role=\\\"listbox\\\"\\]|div\\[role=listbox\\]|\\[role=listbox\\])\\s*>>\\s*text=\\\"([^\\\"]+)\\\"\\1\\s*\\)\\s*;?\\s*$");
+
+    private static final Pattern ROW_COUNT_ASSIGN = Pattern.compile("\\browCount\\b\\s*=\\s*web\\.count\\(");
+    private static final String ROW_LOOP_REPLACEMENT = "def rows = web.extractFirstPageRows(containerSelector, rowSelector, cellSelector)\n" +
+            "rows.each { row -> web.log(row) }\n";
+    private static final Pattern ROW_LOOP_A = Pattern.compile("(?s)def\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?allRowsOutput\\.each\\s*\\{.*?\\}\\s*");
+    private static final Pattern ROW_LOOP_B = Pattern.compile("(?s)def\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()");
+    private static final Pattern ROW_TEXTS_BLOCK = Pattern.compile("(?s)def\\s+rowTexts\\s*=\\s*\\[\\].*?def\\s+joinedRow\\s*=.*?web\\.log\\(joinedRow\\).*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()");
+    private static final Pattern INT_ROW_LOOP = Pattern.compile("(?s)int\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?for\\s*\\(\\s*int\\s+i\\s*=\\s*0;.*?\\)\\s*\\{.*?web\\.log\\(joinedRow\\)\\s*;?\\s*\\}.*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()");
+    private static final Pattern GET_TEXT_LOG_ASSIGN = Pattern.compile("(?s)(?:String|def|var)?\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*=\\s*web\\.getText\\((\"|')(.*?)\\2\\)\\s*\\n\\s*web\\.log\\(\\1\\)");
+    private static final Pattern GET_TEXT_LOG = Pattern.compile("(?s)web\\.getText\\((\"|')(.*?)\\1\\)\\s*\\n\\s*web\\.log\\(([^\\)]+)\\)");
+
+    private static final Pattern LEADING_LANG_LINE = Pattern.compile("(?s)^\\s*(groovy|java)\\s*\\r?\\n");
+    private static final Pattern[] IMPORT_RULES = {
+            Pattern.compile("(?m)^\\s*import\\s+static\\s+[^\\r\\n]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.util\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.math\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.time\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.time\\.format\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.text\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+java\\.util\\.regex\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+com\\.google\\.gson\\.[A-Za-z0-9_.$]+\\s*$"),
+            Pattern.compile("(?m)^\\s*import\\s+groovy\\.json\\.(JsonOutput|JsonBuilder)\\s*$")
+    };
+    private static final String[] IMPORT_REPLACEMENTS = {
+            "", "import java.util.*", "import java.math.*", "import java.time.*", "", "import java.text.*", "import java.util.regex.*", "import com.google.gson.*", ""
+    };
+    private static final String PRETTY_GSON = "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)";
+    private static final Pattern[] JSON_BUILDER_RULES = {
+            Pattern.compile("(?m)^\\s*println\\s+groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\("),
+            Pattern.compile("groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\("),
+            Pattern.compile("new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)"),
+            Pattern.compile("groovy\\.json\\.JsonBuilder\\s*\\(([^\\)]*)\\)\\.toPrettyString\\(\\)"),
+            Pattern.compile("println\\s+new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)")
+    };
+    private static final String[] JSON_BUILDER_REPLACEMENTS = {
+            "println new groovy.json.JsonBuilder(", "new groovy.json.JsonBuilder(", PRETTY_GSON, PRETTY_GSON, "println " + PRETTY_GSON
+    };
+    private static final Pattern[] JSON_OUTPUT_RULES = {
+            Pattern.compile("JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)"),
+            Pattern.compile("println\\s+JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)"),
+            Pattern.compile("JsonOutput\\.toJson\\(([^\\)]*)\\)")
+    };
+    private static final String[] JSON_OUTPUT_REPLACEMENTS = {
+            PRETTY_GSON, "println " + PRETTY_GSON, "new com.google.gson.Gson().toJson($1)"
+    };
+    private static final Pattern[] DATE_FORMAT_RULES = {
+            Pattern.compile("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)"),
+            Pattern.compile("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)"),
+            Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)"),
+            Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)")
+    };
+    private static final String[] DATE_FORMAT_REPLACEMENTS = {
+            "new java.text.SimpleDateFormat(\"$1\").format(new Date())",
+            "new java.text.SimpleDateFormat('$1').format(new Date())",
+            "new java.text.SimpleDateFormat(\"$2\").format($1)",
+            "new java.text.SimpleDateFormat('$2').format($1)"
+    };
+    private static final Pattern NEW_DATE_MINUS = Pattern.compile("new\\s+Date\\(\\s*\\)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)");
+    private static final Pattern NEW_DATE_PLUS = Pattern.compile("new\\s+Date\\(\\s*\\)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)");
+    private static final Pattern VAR_MINUS = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)");
+    private static final Pattern VAR_PLUS = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)");
+    private static final String[] JAVA_TIME_NAMES = {"LocalDate", "LocalDateTime", "LocalTime", "DateTimeFormatter", "DateTimeParseException"};
+    private static final Pattern[] JAVA_TIME_RULES = {
+            Pattern.compile("(?<![A-Za-z0-9_\\.])LocalDate\\b"),
+            Pattern.compile("(?<![A-Za-z0-9_\\.])LocalDateTime\\b"),
+            Pattern.compile("(?<![A-Za-z0-9_\\.])LocalTime\\b"),
+            Pattern.compile("(?<![A-Za-z0-9_\\.])DateTimeFormatter\\b"),
+            Pattern.compile("(?<![A-Za-z0-9_\\.])DateTimeParseException\\b")
+    };
+    private static final String[] JAVA_TIME_REPLACEMENTS = {
+            "java.time.LocalDate", "java.time.LocalDateTime", "java.time.LocalTime", "java.time.format.DateTimeFormatter", "java.time.format.DateTimeParseException"
+    };
+
+    /**
+     * 将模型输出归一化为可执行 Groovy 形式（结果与旧实现一致）。
+     */
+    static String normalizeGenerated(String code) {
+        if (code == null) return null;
+        String normalized = normalizePlanBlockCommentFormat(code);
+        normalized = rewriteLines(normalized);
+        normalized = applyPlanLineRules(normalized);
+        if (normalized.contains("listbox")) normalized = rewriteClickListbox(normalized);
+        if (needsRowLoopRewrite(normalized)) normalized = rewriteRowLoops(normalized);
+        normalized = forExecution(normalized);
+        return escapeNonInterpolatedDollar(normalized);
+    }
+
+    /**
+     * 执行前的代码归一化：去掉代码围栏与不允许的 import，把 JsonBuilder/JsonOutput/Date 扩展方法改写为沙箱内可用的写法。
+     */
+    static String forExecution(String code) {
+        if (code == null) return "";
+        String out = code;
+        if (out.contains("```")) out = out.replace("```groovy", "").replace("```java", "").replace("```", "");
+        Matcher lang = LEADING_LANG_LINE.matcher(out);
+        if (lang.lookingAt()) out = out.substring(lang.end());
+
+        if (out.contains("import")) out = replaceEach(out, IMPORT_RULES, IMPORT_REPLACEMENTS);
+        if (out.contains("JsonBuilder")) out = replaceEach(out, JSON_BUILDER_RULES, JSON_BUILDER_REPLACEMENTS);
+        if (out.contains("JsonOutput")) out = replaceEach(out, JSON_OUTPUT_RULES, JSON_OUTPUT_REPLACEMENTS);
+        if (out.contains("format(")) out = replaceEach(out, DATE_FORMAT_RULES, DATE_FORMAT_REPLACEMENTS);
+
+        boolean minus = out.contains("minus(");
+        boolean plus = out.contains("plus(");
+        if (minus) out = NEW_DATE_MINUS.matcher(out).replaceAll("new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).minus(java.time.Duration.ofDays($1L)).toEpochMilli())");
+        if (plus) out = NEW_DATE_PLUS.matcher(out).replaceAll("new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).plus(java.time.Duration.ofDays($1L)).toEpochMilli())");
+        if (minus || out.contains("minus(")) out = VAR_MINUS.matcher(out).replaceAll("new Date(java.time.Instant.ofEpochMilli($1.getTime()).minus(java.time.Duration.ofDays($2L)).toEpochMilli())");
+        if (plus || out.contains("plus(")) out = VAR_PLUS.matcher(out).replaceAll("new Date(java.time.Instant.ofEpochMilli($1.getTime()).plus(java.time.Duration.ofDays($2L)).toEpochMilli())");
+
+        for (int i = 0; i < JAVA_TIME_RULES.length; i++) {
+            if (out.contains(JAVA_TIME_NAMES[i])) out = JAVA_TIME_RULES[i].matcher(out).replaceAll(JAVA_TIME_REPLACEMENTS[i]);
+        }
+        return out.trim();
+    }
+
+    private static String replaceEach(String s, Pattern[] rules, String[] replacements) {
+        String out = s;
+        for (int i = 0; i < rules.length; i++) out = rules[i].matcher(out).replaceAll(replacements[i]);
+        return out;
+    }
+
+    /**
+     * 计划块（PLAN_START 之前最近的 /* 到 PLAN_END 之后最近的 *&#47;）内每行去掉行首的 "*" 与 "//" 前缀。
+     * 只扫描计划块本身。
+     */
+    private static String normalizePlanBlockCommentFormat(String code) {
+        int ps = code.indexOf("PLAN_START");
+        int pe = code.indexOf("PLAN_END");
+        if (ps < 0 || pe < 0 || pe <= ps) return code;
+        int blockStart = code.lastIndexOf("/*", ps);
+        if (blockStart < 0) return code;
+        int blockEnd = code.indexOf("*/", pe);
+        if (blockEnd < 0) return code;
+
+        int insideStart = blockStart + 2;
+        StringBuilder sb = new StringBuilder(code.length());
+        sb.append(code, 0, insideStart);
+        int lineStart = insideStart;
+        while (true) {
+            int nl = code.indexOf('\n', lineStart);
+            int lineEnd = (nl < 0 || nl >= blockEnd) ? blockEnd : nl;
+            int p = lineStart;
+            while (p < lineEnd && Character.isWhitespace(code.charAt(p))) p++;
+            sb.append(code, lineStart, p);
+            int rest = p;
+            if (rest < lineEnd && code.charAt(rest) == '*') {
+                rest++;
+                if (rest < lineEnd && code.charAt(rest) == ' ') rest++;
+            }
+            if (rest + 1 < lineEnd && code.charAt(rest) == '/' && code.charAt(rest + 1) == '/') {
+                rest += 2;
+                if (rest < lineEnd && code.charAt(rest) == ' ') rest++;
+            }
+            sb.append(code, rest, lineEnd);
+            if (lineEnd == blockEnd) break;
+            sb.append('\n');
+            lineStart = lineEnd + 1;
+        }
+        sb.append(code, blockEnd, code.length());
+        return sb.toString();
+    }
+
+    /**
+     * 一次逐行扫描：行首思考/计划标记加注释，块注释外的 PLAN_START/PLAN_END 行加注释。
+     */
+    private static String rewriteLines(String code) {
+        boolean anyMarker = false;
+        for (String t : MARKER_TOKENS) {
+            if (code.contains(t)) {
+                anyMarker = true;
+                break;
+            }
+        }
+        boolean anyPlanMarker = code.contains("PLAN_START") || code.contains("PLAN_END");
+        if (!anyMarker && !anyPlanMarker) return code;
+
+        StringBuilder sb = new StringBuilder(code.length() + 32);
+        boolean inBlock = false;
+        int n = code.length();
+        int start = 0;
+        while (true) {
+            int nl = code.indexOf('\n', start);
+            int end = nl < 0 ? n : nl;
+            String line = code.substring(start, end);
+            if (anyMarker && containsMarker(line)) line = MARKER_LINE.matcher(line).replaceAll("$1// $2");
+            if (anyPlanMarker) {
+                if (!inBlock) {
+                    String trimmed = line.trim();
+                    if (trimmed.startsWith("PLAN_START") || trimmed.startsWith("PLAN_END")) {
+                        sb.append("// ");
+                    }
+                }
+                inBlock = updateBlockCommentState(inBlock, line);
+            }
+            sb.append(line);
+            if (nl < 0) break;
+            sb.append('\n');
+            start = nl + 1;
+        }
+        return sb.toString();
+    }
+
+    private static boolean containsMarker(String line) {
+        for (String t : MARKER_TOKENS) {
+            if (line.contains(t)) return true;
+        }
+        return false;
+    }
+
+    static boolean updateBlockCommentState(boolean inBlock, String line) {
+        if (line == null || line.isEmpty()) return inBlock;
+        int i = 0;
+        int n = line.length();
+        boolean state = inBlock;
+        while (i < n - 1) {
+            char c = line.charAt(i);
+            char d = line.charAt(i + 1);
+            if (!state && c == '/' && d == '*') {
+                state = true;
+                i += 2;
+                continue;
+            }
+            if (state && c == '*' && d == '/') {
+                state = false;
+                i += 2;
+                continue;
+            }
+            i++;
+        }
+        return state;
+    }
+
+    /**
+     * "- plan"、"* plan"、"[Plan]"、"&lt;plan&gt;"、"&lt;think&gt;"、"思考:" 行加注释。
+     * 这些规则的 \s 可跨行匹配，命中字面量时按原正则在全文上执行；正常生成的代码里很少出现，多数情况直接跳过。
+     */
+    private static String applyPlanLineRules(String code) {
+        String out = code;
+        if (out.contains("lan")) {
+            out = DASH_PLAN.matcher(out).replaceAll("$1// $2");
+            out = STAR_PLAN.matcher(out).replaceAll("$1// $2");
+        }
+        if (out.contains("[Plan]")) out = BRACKET_PLAN.matcher(out).replaceAll("$1// $2");
+        if (out.contains("</plan>")) out = TAG_PLAN.matcher(out).replaceAll("$1// $2");
+        if (out.contains("</think>")) out = TAG_THINK.matcher(out).replaceAll("$1// $2");
+        if (out.contains("思考:")) out = CN_THINK.matcher(out).replaceAll("$1// $2");
+        return out;
+    }
+
+    /**
+     * 把“点击打开下拉 + 点击 listbox 选项”两行改写为 web.selectDropdown(label, option)。
+     */
+    private static String rewriteClickListbox(String code) {
+        if (code.isEmpty()) return code;
+        String[] lines = code.split("\n", -1);
+        List<String> out = new ArrayList<>(lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            Matcher mOpen = line.contains("text=") ? OPEN_BY_TEXT.matcher(line) : null;
+            if (mOpen == null || !mOpen.matches()) {
+                out.add(line);
+                continue;
+            }
+            String label = mOpen.group(2);
+
+            int j = i + 1;
+            List<String> between = new ArrayList<>();
+            int scanLimit = 10;
+            while (j < lines.length && scanLimit-- > 0) {
+                String next = lines[j];
+                if (WAIT_LINE.matcher(next).matches() || LOG_LINE.matcher(next).matches() || BLANK_LINE.matcher(next).matches() || LINE_COMMENT.matcher(next).matches()) {
+                    between.add(next);
+                    j++;
+                    continue;
+                }
+                break;
+            }
+
+            if (j < lines.length) {
+                Matcher mPick = SELECT_FROM_LISTBOX.matcher(lines[j]);
+                if (mPick.matches()) {
+                    String option = mPick.group(2);
+                    int p = 0;
+                    while (p < line.length() && Character.isWhitespace(line.charAt(p))) p++;
+                    String indent = line.substring(0, p);
+                    out.addAll(between);
+                    out.add(indent + "web.selectDropdown(\"" + label.replace("\\", "\\\\").replace("\"", "\\\"") + "\", \"" + option.replace("\\", "\\\\").replace("\"", "\\\"") + "\")");
+                    i = j;
+                    continue;
+                }
+            }
+            out.add(line);
+        }
+        return String.join("\n", out);
+    }
+
+    private static boolean needsRowLoopRewrite(String code) {
+        return code.contains("web.extractList(")
+                || (code.contains("rowCount") && ROW_COUNT_ASSIGN.matcher(code).find())
+                || code.contains("rowTexts")
+                || code.contains("joinedRow");
+    }
+
+    /**
+     * 把逐行 web.count + 循环拼接文本的写法改写为 web.extractFirstPageRows，getText 后紧跟 log 的写法补上变量定义。
+     */
+    private static String rewriteRowLoops(String code) {
+        String normalized = code;
+        normalized = ROW_LOOP_A.matcher(normalized).replaceAll(ROW_LOOP_REPLACEMENT);
+        normalized = ROW_LOOP_B.matcher(normalized).replaceAll(ROW_LOOP_REPLACEMENT);
+        normalized = ROW_TEXTS_BLOCK.matcher(normalized).replaceAll("");
+        normalized = INT_ROW_LOOP.matcher(normalized).replaceAll(ROW_LOOP_REPLACEMENT);
+
+        Matcher assign = GET_TEXT_LOG_ASSIGN.matcher(normalized);
+        StringBuffer assignBuffer = new StringBuffer();
+        while (assign.find()) {
+            String varName = assign.group(1);
+            String sel = assign.group(3);
+            String block = "def " + varName + " = web.getText(\"" + sel.replace("\"", "\\\"") + "\")\nweb.log(" + varName + ")";
+            assign.appendReplacement(assignBuffer, Matcher.quoteReplacement(block));
+        }
+        assign.appendTail(assignBuffer);
+        normalized = assignBuffer.toString();
+
+        Matcher log = GET_TEXT_LOG.matcher(normalized);
+        StringBuffer logBuffer = new StringBuffer();
+        while (log.find()) {
+            String sel = log.group(2);
+            String varName = log.group(3).trim();
+            String block = "def " + varName + " = web.getText(\"" + sel.replace("\"", "\\\"") + "\")\nweb.log(" + varName + ")";
+            log.appendReplacement(logBuffer, Matcher.quoteReplacement(block));
+        }
+        log.appendTail(logBuffer);
+        return logBuffer.toString();
+    }
+
+    /**
+     * 双引号字符串（含三引号）里不构成插值的 $ 转义为 \$，避免 Groovy 编译报错。
+     */
+    static String escapeNonInterpolatedDollar(String code) {
+        if (code == null || code.indexOf('$') < 0 || code.indexOf('"') < 0) return code;
+        StringBuilder out = new StringBuilder(code.length() + 16);
+        int n = code.length();
+        int i = 0;
+        boolean inDouble = false;
+        int doubleQuoteLen = 0;
+        while (i < n) {
+            char c = code.charAt(i);
+            if (!inDouble) {
+                if (c == '"') {
+                    if (i + 2 < n && code.charAt(i + 1) == '"' && code.charAt(i + 2) == '"') {
+                        inDouble = true;
+                        doubleQuoteLen = 3;
+                        out.append("\"\"\"");
+                        i += 3;
+                        continue;
+                    }
+                    inDouble = true;
+                    doubleQuoteLen = 1;
+                    out.append('"');
+                    i++;
+                    continue;
+                }
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            if (c == '\\') {
+                out.append(c);
+                if (i + 1 < n) {
+                    out.append(code.charAt(i + 1));
+                    i += 2;
+                } else {
+                    i++;
+                }
+                continue;
+            }
+
+            if (doubleQuoteLen == 3) {
+                if (c == '"' && i + 2 < n && code.charAt(i + 1) == '"' && code.charAt(i + 2) == '"') {
+                    inDouble = false;
+                    doubleQuoteLen = 0;
+                    out.append("\"\"\"");
+                    i += 3;
+                    continue;
+                }
+            } else {
+                if (c == '"') {
+                    inDouble = false;
+                    doubleQuoteLen = 0;
+                    out.append('"');
+                    i++;
+                    continue;
+                }
+            }
+
+            if (c == '$') {
+                char next = (i + 1) < n ? code.charAt(i + 1) : '\0';
+                boolean interpolation = next == '{' || next == '_' || Character.isLetter(next);
+                if (!interpolation) out.append('\\');
+                out.append('$');
+                i++;
+                continue;
+            }
+
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+}
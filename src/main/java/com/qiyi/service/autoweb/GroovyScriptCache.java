@@ -0,0 +1,205 @@
+package com.qiyi.service.autoweb;
+
+import com.qiyi.config.AppConfig;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已编译 Groovy 脚本缓存。
+ *
+ * <p>以脚本文本（归一化后）的 SHA-256 为 key，缓存静态检查结果与编译好的 Script 类：
+ * 同一脚本在多个步骤、多次修复重试、多次运行之间只做一次正则检查与一次编译。</p>
+ *
+ * <p>所有脚本共用一个带 {@link AutoWebAgent#secureGroovyCompilerConfig()} 的 GroovyClassLoader。
+ * 一个 loader 最多编译 {@code capacity} 个脚本，之后换代：旧 loader 清空类缓存并关闭，
+ * 旧代的 Script 类从缓存中摘除（检查结果保留），使其可被 GC 回收，metaspace 不随运行次数增长。</p>
+ */
+final class GroovyScriptCache {
+    private static volatile GroovyScriptCache shared;
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private GroovyClassLoader loader;
+    private int generation;
+    private int compiledInGeneration;
+    private long hits;
+    private long compiles;
+
+    static final class Entry {
+        final List<String> lintErrors;
+        volatile Class<?> scriptClass;
+        volatile int generation;
+
+        Entry(List<String> lintErrors) {
+            this.lintErrors = lintErrors;
+        }
+    }
+
+    GroovyScriptCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > GroovyScriptCache.this.capacity;
+            }
+        };
+        this.loader = newLoader();
+    }
+
+    static GroovyScriptCache shared() {
+        GroovyScriptCache c = shared;
+        if (c == null) {
+            synchronized (GroovyScriptCache.class) {
+                c = shared;
+                if (c == null) {
+                    c = new GroovyScriptCache(AppConfig.getInstance().getAutowebGroovyScriptCacheSize());
+                    shared = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 返回脚本的静态检查结果（安全模式 + 语法），结果不可修改。
+     * 核心逻辑：首次检查时顺带编译，语法通过的脚本直接留下 Script 类供执行复用。
+     */
+    List<String> lint(String code) {
+        if (code == null) return Collections.emptyList();
+        return entryFor(code, sha256Hex(code)).lintErrors;
+    }
+
+    /**
+     * 用给定 Binding 执行脚本，等价于 {@code new GroovyShell(binding, cfg).evaluate(code)}，但复用已编译的类。
+     */
+    Object run(String code, Binding binding) {
+        Script script = InvokerHelper.createScript(scriptClass(code), binding == null ? new Binding() : binding);
+        return script.run();
+    }
+
+    Class<?> scriptClass(String code) {
+        if (code == null) throw new IllegalArgumentException("scriptCode is null");
+        String key = sha256Hex(code);
+        Entry e = entryFor(code, key);
+        Class<?> c = e.scriptClass;
+        if (c != null) return c;
+        // 旧代被回收或首次检查时语法失败：重新编译，语法错误按原样抛出
+        GroovyClassLoader l;
+        int gen;
+        synchronized (this) {
+            l = loader;
+            gen = generation;
+        }
+        c = l.parseClass(newSource(code, key), false);
+        storeCompiled(e, c, gen);
+        return c;
+    }
+
+    private Entry entryFor(String code, String key) {
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                hits++;
+                return e;
+            }
+        }
+
+        List<String> errors = new ArrayList<>(GroovyLinter.securityErrors(code));
+        GroovyClassLoader l;
+        int gen;
+        synchronized (this) {
+            l = loader;
+            gen = generation;
+        }
+        Class<?> compiled = null;
+        try {
+            compiled = l.parseClass(newSource(code, key), false);
+        } catch (CompilationFailedException ex) {
+            errors.add("Syntax Error: " + ex.getMessage());
+        } catch (Exception ex) {
+            errors.add("Parse Error: " + ex.getMessage());
+        }
+
+        Entry created = new Entry(Collections.unmodifiableList(errors));
+        synchronized (this) {
+            Entry raced = entries.get(key);
+            if (raced != null) return raced;
+            entries.put(key, created);
+        }
+        if (compiled != null) storeCompiled(created, compiled, gen);
+        return created;
+    }
+
+    private synchronized void storeCompiled(Entry e, Class<?> c, int gen) {
+        compiles++;
+        if (gen != generation) return;
+        e.scriptClass = c;
+        e.generation = gen;
+        compiledInGeneration++;
+        if (compiledInGeneration >= capacity) rotate();
+    }
+
+    /**
+     * 换代：新建 loader，摘除旧代 Script 类，并清空旧 loader 的类缓存与 MetaClass 注册。
+     * 正在执行的旧代脚本不受影响，执行结束后整代即可被回收。
+     */
+    private void rotate() {
+        GroovyClassLoader old = loader;
+        loader = newLoader();
+        generation++;
+        compiledInGeneration = 0;
+        for (Entry e : entries.values()) {
+            if (e.generation != generation) e.scriptClass = null;
+        }
+        try {
+            old.clearCache();
+            old.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private GroovyClassLoader newLoader() {
+        return new GroovyClassLoader(GroovyScriptCache.class.getClassLoader(), AutoWebAgent.secureGroovyCompilerConfig());
+    }
+
+    private static GroovyCodeSource newSource(String code, String key) {
+        GroovyCodeSource source = new GroovyCodeSource(code, "AutoWebScript_" + key.substring(0, Math.min(16, key.length())) + ".groovy", GroovyShell.DEFAULT_CODE_BASE);
+        source.setCachable(false);
+        return source;
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+            byte[] b = md.digest(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(b.length * 2);
+            for (byte x : b) sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(s.hashCode()) + "_" + s.length();
+        }
+    }
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized String stats() {
+        return "size=" + entries.size() + ", hits=" + hits + ", compiles=" + compiles + ", generation=" + generation;
+    }
+}
@@ -1,5 +1,6 @@
 package com.qiyi.service.autoweb;
 
+import com.qiyi.config.AppConfig;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.Document;
@@ -15,11 +16,12 @@ import java.util.Set;
 /**
  * HTML 清理与压缩工具
  * 负责移除无关标签/属性、截断长文本，并生成适合 LLM 的紧凑 HTML
+ * 默认使用单遍流式实现 {@link StreamingHtmlCleaner}；{@link #cleanWithDom(String)} 为旧的 DOM 实现
  */
 public class HTMLCleaner {
 
     // 只需要移除完全无用的标签，保留结构
-    private static final Set<String> TAGS_TO_REMOVE = new HashSet<>(Arrays.asList(
+    static final Set<String> TAGS_TO_REMOVE = new HashSet<>(Arrays.asList(
             "script", "style", "noscript", "svg", "meta", "link", "head"
     ));
 
@@ -31,7 +33,7 @@ public class HTMLCleaner {
     // title, alt: 辅助文本
     // data-*: 有时用于测试定位 (如 data-testid)
     // for: label 关联
-    private static final Set<String> ATTRIBUTES_TO_KEEP = new HashSet<>(Arrays.asList(
+    static final Set<String> ATTRIBUTES_TO_KEEP = new HashSet<>(Arrays.asList(
             "id", "class", "name", 
             "type", "value", "placeholder", 
             "href", "src", "action", "method",
@@ -39,16 +41,40 @@ public class HTMLCleaner {
     ));
 
     // 需要保留的空标签（自闭合或通常为空但有意义的标签）
-    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
+    static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
             "img", "input", "br", "hr", "textarea", "button", "select", "iframe"
     ));
 
     /**
-     * 清理 HTML 内容，尽量保留结构与可定位信息
+     * 清理 HTML 内容，尽量保留结构与可定位信息（单遍流式实现，输出 token 预算取 autoweb.clean.token.budget）
      * @param html 原始 HTML
      * @return 清理后的 HTML 片段
      */
     public static String clean(String html) {
+        return clean(html, AppConfig.getInstance().getAutowebCleanTokenBudget());
+    }
+
+    /**
+     * 清理 HTML 内容，并按 token 预算控制输出大小
+     * @param html 原始 HTML
+     * @param tokenBudget 输出 token 预算，&lt;=0 表示不限
+     * @return 清理后的 HTML 片段
+     */
+    public static String clean(String html, int tokenBudget) {
+        if (html == null || html.isEmpty()) return "";
+        long start = System.nanoTime();
+        String cleaned = StreamingHtmlCleaner.clean(html, tokenBudget);
+        StorageSupport.log(null, "HTML_CLEAN", "before len=" + html.length() + ", after len=" + cleaned.length()
+                + ", tokenBudget=" + tokenBudget + ", costMs=" + (System.nanoTime() - start) / 1_000_000, null);
+        return cleaned;
+    }
+
+    /**
+     * 基于 Jsoup DOM 的多遍清理（旧实现），保留作流式实现的对照（一致性测试与基准测试）
+     * @param html 原始 HTML
+     * @return 清理后的 HTML 片段
+     */
+    public static String cleanWithDom(String html) {
         if (html == null || html.isEmpty()) return "";
         StorageSupport.log(null, "HTML_CLEAN", "before len=" + html.length(), null);
 
@@ -173,6 +199,68 @@ public class HTMLCleaner {
         return cleaned;
     }
 
+    /**
+     * 单个属性的清理规则（与 {@link #cleanWithDom(String)} 中的规则一致）
+     * @param key 小写属性名
+     * @param val 属性值
+     * @return 清理后的属性值；返回 null 表示删除该属性
+     */
+    static String cleanAttributeValue(String key, String val) {
+        if (val == null) val = "";
+        // 截断过长的 data URI
+        if ((key.equals("src") || key.equals("href")) && val.startsWith("data:") && val.length() > 100) {
+            return val.substring(0, 50) + "...(truncated)";
+        }
+        if (key.equals("class")) {
+            return firstClasses(val, 3, 40);
+        }
+        if ((key.equals("id") || key.equals("name") || key.equals("title") || key.equals("alt") || key.equals("placeholder") || key.equals("value")) && val.length() > 120) {
+            return val.substring(0, 100) + "...(truncated)";
+        }
+        if ((key.equals("href") || key.equals("src") || key.equals("action")) && val.length() > 160) {
+            String trimmed = val;
+            int q = trimmed.indexOf('?');
+            if (q > 0) trimmed = trimmed.substring(0, q);
+            int h = trimmed.indexOf('#');
+            if (h > 0) trimmed = trimmed.substring(0, h);
+            if (trimmed.length() > 160) trimmed = trimmed.substring(0, 140) + "...(truncated)";
+            return trimmed;
+        }
+        if (ATTRIBUTES_TO_KEEP.contains(key)) return val;
+        if (key.startsWith("aria-")) {
+            if (val.length() > 300) return null;
+            if (val.length() > 120) return val.substring(0, 100) + "...(truncated)";
+            return val;
+        }
+        if (key.startsWith("data-")) {
+            if (val.length() > 200) return null;
+            if (val.length() > 80) return val.substring(0, 70) + "...(truncated)";
+            return val;
+        }
+        return null;
+    }
+
+    /**
+     * 只保留前 maxCount 个 class，每个最长 maxLen（不用正则切分）
+     */
+    private static String firstClasses(String val, int maxCount, int maxLen) {
+        int n = val.length();
+        int i = 0;
+        while (i < n && StreamingHtmlCleaner.isSpace(val.charAt(i))) i++;
+        if (i == n) return val;
+        StringBuilder sb = new StringBuilder(Math.min(n, maxCount * (maxLen + 1)));
+        int kept = 0;
+        while (i < n && kept < maxCount) {
+            int s = i;
+            while (i < n && !StreamingHtmlCleaner.isSpace(val.charAt(i))) i++;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(val, s, Math.min(i, s + maxLen));
+            kept++;
+            while (i < n && StreamingHtmlCleaner.isSpace(val.charAt(i))) i++;
+        }
+        return sb.toString();
+    }
+
     private static void pruneRepetitiveSiblings(Element root) {
         if (root == null) return;
         java.util.ArrayDeque<Element> stack = new java.util.ArrayDeque<>();
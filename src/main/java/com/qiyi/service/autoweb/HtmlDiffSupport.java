@@ -0,0 +1,390 @@
+package com.qiyi.service.autoweb;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 清洗后 HTML 的结构化 diff，用于 REFINE_CODE 只发送“当前页相对 step 快照的变化”。
+ *
+ * <p>两棵树按子树哈希对齐：先用 LCS 找出完全相同的子节点作为锚点，锚点之间的剩余节点按
+ * tag/id/首个 class 配对后递归比较，配不上的记为新增/删除。同一子树下变化过多时折叠为一条
+ * REPLACED（直接给出新子树），避免整表重渲染产生大量逐格变化。元素路径是以最近的唯一 id
+ * 为锚点的 CSS 选择器，可直接用于定位。</p>
+ *
+ * <p>基线（step 快照）解析后的树与子树哈希按内容缓存，多轮修正时不重复解析。</p>
+ */
+final class HtmlDiffSupport {
+    /** 单个子树下超过该变化数时折叠为 REPLACED */
+    static final int COLLAPSE_THRESHOLD = 12;
+    /** 单条 ADDED/REPLACED 给出的子树 HTML 上限；超过时 {@link Diff#clipped} 置位，调用方应改发全文 */
+    static final int MAX_SUBTREE_CHARS = 4000;
+    /** 上下文（前一个兄弟节点）摘要长度 */
+    static final int CONTEXT_CHARS = 120;
+    /** 子节点 LCS 的规模上限，超过后退化为顺序配对 */
+    static final long MAX_LCS_CELLS = 1_000_000L;
+
+    private static final int BASELINE_CACHE_SIZE = 8;
+    private static final LinkedHashMap<String, Tree> BASELINES = new LinkedHashMap<String, Tree>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+            return size() > BASELINE_CACHE_SIZE;
+        }
+    };
+
+    private HtmlDiffSupport() {
+    }
+
+    enum Kind {ADDED, REMOVED, CHANGED, REPLACED}
+
+    static final class Change {
+        final Kind kind;
+        final String path;
+        final String parentPath;
+        final String after;
+        final String detail;
+
+        Change(Kind kind, String path, String parentPath, String after, String detail) {
+            this.kind = kind;
+            this.path = path;
+            this.parentPath = parentPath;
+            this.after = after;
+            this.detail = detail;
+        }
+    }
+
+    static final class Diff {
+        final List<Change> changes = new ArrayList<>();
+        /** 是否有 ADDED/REPLACED 子树被截断（此时 diff 无法还原当前页） */
+        boolean clipped;
+
+        boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        int count(Kind kind) {
+            int n = 0;
+            for (Change c : changes) if (c.kind == kind) n++;
+            return n;
+        }
+
+        String summary() {
+            return "added=" + count(Kind.ADDED) + ", removed=" + count(Kind.REMOVED)
+                    + ", changed=" + count(Kind.CHANGED) + ", replaced=" + count(Kind.REPLACED);
+        }
+
+        /**
+         * 渲染为 payload 文本；每条变化带父节点路径与前一个兄弟节点摘要作为上下文。
+         */
+        String render() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("SUMMARY: ").append(summary()).append("\n");
+            for (Change c : changes) {
+                sb.append("[").append(c.kind).append("] ").append(c.path).append("\n");
+                if (c.parentPath != null && !c.parentPath.isEmpty()) sb.append("  parent: ").append(c.parentPath).append("\n");
+                if (c.after != null && !c.after.isEmpty()) sb.append("  after: ").append(c.after).append("\n");
+                if (c.detail != null && !c.detail.isEmpty()) sb.append(c.detail);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 解析后的树：body 根节点 + 每个元素的自身签名/子树哈希。
+     */
+    private static final class Tree {
+        final Element root;
+        final IdentityHashMap<Element, String> self = new IdentityHashMap<>();
+        final IdentityHashMap<Element, Long> hash = new IdentityHashMap<>();
+
+        Tree(String html) {
+            Document doc = Jsoup.parseBodyFragment(html == null ? "" : html);
+            doc.outputSettings().prettyPrint(false);
+            this.root = doc.body();
+            index(root);
+        }
+
+        private long index(Element el) {
+            String s = selfSignature(el);
+            self.put(el, s);
+            long h = 1125899906842597L + s.hashCode();
+            for (Element c : el.children()) {
+                h = 31 * h + index(c);
+            }
+            hash.put(el, h);
+            return h;
+        }
+    }
+
+    /**
+     * 计算 baseline → current 的结构化 diff。
+     */
+    static Diff diff(String baselineHtml, String currentHtml) {
+        Tree before = baseline(baselineHtml);
+        Tree after = new Tree(currentHtml);
+        Diff out = new Diff();
+        compare(before, before.root, after, after.root, out);
+        return out;
+    }
+
+    private static Tree baseline(String html) {
+        String key = (html == null ? 0 : html.length()) + ":" + (html == null ? 0 : html.hashCode());
+        synchronized (BASELINES) {
+            Tree t = BASELINES.get(key);
+            if (t != null) return t;
+        }
+        Tree t = new Tree(html);
+        synchronized (BASELINES) {
+            BASELINES.put(key, t);
+        }
+        return t;
+    }
+
+    private static void compare(Tree ta, Element a, Tree tb, Element b, Diff out) {
+        if (ta.hash.get(a).longValue() == tb.hash.get(b).longValue()) return;
+        int mark = out.changes.size();
+        if (!ta.self.get(a).equals(tb.self.get(b))) {
+            out.changes.add(new Change(Kind.CHANGED, path(b), "", "", describeSelfChange(a, b)));
+        }
+
+        List<Element> ka = a.children();
+        List<Element> kb = b.children();
+        int[][] anchors = lcsAnchors(ta, ka, tb, kb);
+        int ia = 0;
+        int ib = 0;
+        for (int k = 0; k <= anchors.length; k++) {
+            int endA = k < anchors.length ? anchors[k][0] : ka.size();
+            int endB = k < anchors.length ? anchors[k][1] : kb.size();
+            compareGap(ta, ka.subList(ia, endA), tb, kb.subList(ib, endB), b, out);
+            ia = endA + 1;
+            ib = endB + 1;
+        }
+
+        int added = out.changes.size() - mark;
+        if (added > COLLAPSE_THRESHOLD && b.parent() != null && !"body".equals(b.tagName())) {
+            // 变化过多：整棵子树直接给新内容，比逐条列出更短也更好读
+            out.changes.subList(mark, out.changes.size()).clear();
+            out.changes.add(new Change(Kind.REPLACED, path(b), parentPath(b), previousSiblingSummary(b), "  html: " + clipSubtree(b, out) + "\n"));
+        }
+    }
+
+    /**
+     * 锚点之间的节点：按 tag/id/首个 class 顺序配对，配上的递归比较，其余记为新增/删除。
+     */
+    private static void compareGap(Tree ta, List<Element> ga, Tree tb, List<Element> gb, Element parentB, Diff out) {
+        boolean[] usedA = new boolean[ga.size()];
+        int from = 0;
+        for (Element eb : gb) {
+            String kb = alignKey(eb);
+            int match = -1;
+            for (int i = from; i < ga.size(); i++) {
+                if (!usedA[i] && alignKey(ga.get(i)).equals(kb)) {
+                    match = i;
+                    break;
+                }
+            }
+            if (match >= 0) {
+                // 配对前跳过的旧节点视为删除
+                for (int i = from; i < match; i++) {
+                    if (!usedA[i]) {
+                        usedA[i] = true;
+                        addRemoved(ga.get(i), out);
+                    }
+                }
+                usedA[match] = true;
+                from = match + 1;
+                compare(ta, ga.get(match), tb, eb, out);
+            } else {
+                out.changes.add(new Change(Kind.ADDED, path(eb), path(parentB), previousSiblingSummary(eb), "  html: " + clipSubtree(eb, out) + "\n"));
+            }
+        }
+        for (int i = 0; i < ga.size(); i++) {
+            if (!usedA[i]) addRemoved(ga.get(i), out);
+        }
+    }
+
+    private static void addRemoved(Element ea, Diff out) {
+        out.changes.add(new Change(Kind.REMOVED, path(ea), "", "", "  was: " + clip(startTagWithText(ea, true), CONTEXT_CHARS) + "\n"));
+    }
+
+    /**
+     * 子节点序列按子树哈希求 LCS，返回锚点下标对（按顺序）。
+     */
+    private static int[][] lcsAnchors(Tree ta, List<Element> ka, Tree tb, List<Element> kb) {
+        int n = ka.size();
+        int m = kb.size();
+        if (n == 0 || m == 0) return new int[0][];
+        long[] ha = new long[n];
+        long[] hb = new long[m];
+        for (int i = 0; i < n; i++) ha[i] = ta.hash.get(ka.get(i));
+        for (int j = 0; j < m; j++) hb[j] = tb.hash.get(kb.get(j));
+        List<int[]> out = new ArrayList<>();
+        if ((long) n * m > MAX_LCS_CELLS) {
+            // 超大列表：只取前后缀相同部分作为锚点，中间交给 compareGap 顺序配对
+            int p = 0;
+            while (p < n && p < m && ha[p] == hb[p]) {
+                out.add(new int[]{p, p});
+                p++;
+            }
+            List<int[]> tail = new ArrayList<>();
+            int i = n - 1;
+            int j = m - 1;
+            while (i >= p && j >= p && ha[i] == hb[j]) {
+                tail.add(0, new int[]{i, j});
+                i--;
+                j--;
+            }
+            out.addAll(tail);
+            return out.toArray(new int[0][]);
+        }
+        int[][] dp = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                dp[i][j] = ha[i] == hb[j] ? dp[i + 1][j + 1] + 1 : Math.max(dp[i + 1][j], dp[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (ha[i] == hb[j]) {
+                out.add(new int[]{i, j});
+                i++;
+                j++;
+            } else if (dp[i + 1][j] >= dp[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return out.toArray(new int[0][]);
+    }
+
+    private static String selfSignature(Element el) {
+        StringBuilder sb = new StringBuilder(el.tagName());
+        TreeMap<String, String> attrs = new TreeMap<>();
+        for (Attribute a : el.attributes()) attrs.put(a.getKey(), a.getValue());
+        for (Map.Entry<String, String> e : attrs.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        sb.append('|').append(normalize(el.ownText()));
+        return sb.toString();
+    }
+
+    private static String alignKey(Element el) {
+        String id = el.id();
+        String cls = el.className() == null ? "" : el.className().trim();
+        int sp = cls.indexOf(' ');
+        if (sp > 0) cls = cls.substring(0, sp);
+        return el.tagName() + "#" + (id == null ? "" : id) + "." + cls;
+    }
+
+    private static String describeSelfChange(Element a, Element b) {
+        StringBuilder sb = new StringBuilder();
+        String ta = normalize(a.ownText());
+        String tb = normalize(b.ownText());
+        if (!ta.equals(tb)) {
+            sb.append("  text: \"").append(clip(ta, CONTEXT_CHARS)).append("\" -> \"").append(clip(tb, CONTEXT_CHARS)).append("\"\n");
+        }
+        if (!a.tagName().equals(b.tagName())) {
+            sb.append("  tag: ").append(a.tagName()).append(" -> ").append(b.tagName()).append("\n");
+        }
+        TreeMap<String, String> keys = new TreeMap<>();
+        for (Attribute x : a.attributes()) keys.put(x.getKey(), "");
+        for (Attribute x : b.attributes()) keys.put(x.getKey(), "");
+        for (String k : keys.keySet()) {
+            String va = a.hasAttr(k) ? a.attr(k) : null;
+            String vb = b.hasAttr(k) ? b.attr(k) : null;
+            if (va == null ? vb == null : va.equals(vb)) continue;
+            sb.append("  attr ").append(k).append(": ")
+                    .append(va == null ? "(none)" : "\"" + clip(va, CONTEXT_CHARS) + "\"")
+                    .append(" -> ")
+                    .append(vb == null ? "(none)" : "\"" + clip(vb, CONTEXT_CHARS) + "\"")
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 元素路径：向上找到最近的唯一 id 作为锚点，其余层级用 tag.class:nth-child(n)。
+     */
+    private static String path(Element el) {
+        if (el == null) return "";
+        if ("body".equals(el.tagName())) return "body";
+        Document doc = el.ownerDocument();
+        List<String> parts = new ArrayList<>();
+        Element cur = el;
+        while (cur != null && !"body".equals(cur.tagName()) && !"html".equals(cur.tagName())) {
+            String id = cur.id();
+            if (id != null && !id.isEmpty() && id.matches("[A-Za-z_][\\w-]*") && doc != null && doc.getElementById(id) == cur) {
+                parts.add(0, "#" + id);
+                break;
+            }
+            parts.add(0, pathComponent(cur));
+            cur = cur.parent();
+        }
+        return String.join(" > ", parts);
+    }
+
+    private static String pathComponent(Element el) {
+        StringBuilder sb = new StringBuilder(el.tagName());
+        int classes = 0;
+        for (String c : el.classNames()) {
+            if (c.isEmpty() || !c.matches("[A-Za-z_][\\w-]*")) continue;
+            sb.append('.').append(c);
+            if (++classes >= 2) break;
+        }
+        Element parent = el.parent();
+        if (parent != null) {
+            int sameTag = 0;
+            for (Element sib : parent.children()) {
+                if (sib.tagName().equals(el.tagName())) sameTag++;
+            }
+            if (sameTag > 1) sb.append(":nth-child(").append(el.elementSiblingIndex() + 1).append(')');
+        }
+        return sb.toString();
+    }
+
+    private static String parentPath(Element el) {
+        return el == null ? "" : path(el.parent());
+    }
+
+    private static String previousSiblingSummary(Element el) {
+        Element prev = el == null ? null : el.previousElementSibling();
+        return prev == null ? "" : clip(startTagWithText(prev, false), CONTEXT_CHARS);
+    }
+
+    private static String startTagWithText(Element el, boolean allText) {
+        StringBuilder sb = new StringBuilder("<").append(el.tagName());
+        for (Attribute a : el.attributes()) {
+            sb.append(' ').append(a.getKey()).append("=\"").append(a.getValue()).append('"');
+        }
+        sb.append('>');
+        String text = normalize(allText ? el.text() : el.ownText());
+        if (!text.isEmpty()) sb.append(text);
+        return sb.toString();
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.replaceAll("\\s+", " ").trim();
+    }
+
+    private static String clipSubtree(Element el, Diff out) {
+        String html = el.outerHtml();
+        if (html.length() > MAX_SUBTREE_CHARS) out.clipped = true;
+        return clip(html, MAX_SUBTREE_CHARS);
+    }
+
+    private static String clip(String s, int max) {
+        if (s == null) return "";
+        if (s.length() <= max) return s;
+        return s.substring(0, max) + "...(truncated)";
+    }
+}
@@ -2,7 +2,7 @@ package com.qiyi.service.autoweb;
 
 /**
  * HTML 快照缓存读写组件。
- * 负责按 URL/入口动作/采集模式生成 key 并落盘读取。
+ * 负责按 URL/入口动作/采集模式生成 key，内容交给 {@link HtmlSnapshotStore} 压缩去重存储。
  */
 class HtmlSnapshotDao {
     /**
@@ -63,32 +63,28 @@ class HtmlSnapshotDao {
 
     /**
      * 读取缓存的 HTML 快照。
-     * 核心逻辑：优先精确 key，其次共享 key。
+     * 核心逻辑：优先精确 key，其次共享 key；存储未命中时尝试迁移旧版平铺文件。
      */
     static AutoWebAgent.HtmlSnapshot readCachedHtml(int stepIndex, String url, String entryAction, AutoWebAgent.HtmlCaptureMode captureMode, boolean a11yInterestingOnly) {
         try {
             java.nio.file.Path dir = ensureCacheDir();
+            HtmlSnapshotStore store = HtmlSnapshotStore.forDir(dir);
             AutoWebAgent.HtmlCaptureMode mode = captureMode == null ? AutoWebAgent.HtmlCaptureMode.RAW_HTML : captureMode;
             String normalizedUrl = normalizeUrlForCache(url);
             String key = makeKey(url, entryAction, mode, a11yInterestingOnly);
-            java.nio.file.Path cleanedPath = dir.resolve(key + ".cleaned.html");
-            if (!java.nio.file.Files.exists(cleanedPath)) {
+            String cleanedText = readOrMigrate(dir, store, key, normalizedUrl, entryAction, mode);
+            if (cleanedText == null) {
                 String sharedKey = makeSharedKey(url, mode, a11yInterestingOnly);
-                java.nio.file.Path sharedCleanedPath = dir.resolve(sharedKey + ".cleaned.html");
-                if (java.nio.file.Files.exists(sharedCleanedPath)) {
-                    key = sharedKey;
-                    cleanedPath = sharedCleanedPath;
-                } else {
-                    return null;
-                }
+                cleanedText = readOrMigrate(dir, store, sharedKey, normalizedUrl, "", mode);
+                if (cleanedText == null) return null;
+                key = sharedKey;
             }
             AutoWebAgent.HtmlSnapshot snap = new AutoWebAgent.HtmlSnapshot();
             snap.stepIndex = stepIndex;
             snap.url = normalizedUrl;
             snap.entryAction = entryAction;
             snap.cacheKey = key;
-            String cleanedText = new String(java.nio.file.Files.readAllBytes(cleanedPath), java.nio.charset.StandardCharsets.UTF_8);
-            if (cleanedText == null || cleanedText.trim().isEmpty()) return null;
+            if (cleanedText.trim().isEmpty()) return null;
             if (mode == AutoWebAgent.HtmlCaptureMode.ARIA_SNAPSHOT) {
                 try {
                     String t = cleanedText.trim();
@@ -116,25 +112,18 @@ class HtmlSnapshotDao {
 
     /**
      * 写入缓存的 HTML 快照。
-     * 核心逻辑：同时保存 raw 与 cleaned 文件，并返回快照对象。
+     * 核心逻辑：raw 与 cleaned 以内容寻址方式压缩存储，精确 key 与共享 key 指向同一份内容。
      */
     static AutoWebAgent.HtmlSnapshot writeCachedHtml(int stepIndex, String url, String entryAction, AutoWebAgent.HtmlCaptureMode captureMode, boolean a11yInterestingOnly, String rawHtml, String cleanedHtml) {
         try {
             java.nio.file.Path dir = ensureCacheDir();
             AutoWebAgent.HtmlCaptureMode mode = captureMode == null ? AutoWebAgent.HtmlCaptureMode.RAW_HTML : captureMode;
             String key = makeKey(url, entryAction, mode, a11yInterestingOnly);
-            java.nio.file.Path rawPath = dir.resolve(key + ".raw.html");
-            java.nio.file.Path cleanedPath = dir.resolve(key + ".cleaned.html");
-            // 核心逻辑：落盘 raw 与 cleaned
-            java.nio.file.Files.write(rawPath, (rawHtml == null ? "" : rawHtml).getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            java.nio.file.Files.write(cleanedPath, (cleanedHtml == null ? "" : cleanedHtml).getBytes(java.nio.charset.StandardCharsets.UTF_8));
             String sharedKey = makeSharedKey(url, mode, a11yInterestingOnly);
-            if (sharedKey != null && !sharedKey.equals(key)) {
-                java.nio.file.Path sharedRaw = dir.resolve(sharedKey + ".raw.html");
-                java.nio.file.Path sharedCleaned = dir.resolve(sharedKey + ".cleaned.html");
-                java.nio.file.Files.write(sharedRaw, (rawHtml == null ? "" : rawHtml).getBytes(java.nio.charset.StandardCharsets.UTF_8));
-                java.nio.file.Files.write(sharedCleaned, (cleanedHtml == null ? "" : cleanedHtml).getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            }
+            java.util.List<String> keys = new java.util.ArrayList<>();
+            keys.add(key);
+            if (sharedKey != null && !sharedKey.equals(key)) keys.add(sharedKey);
+            HtmlSnapshotStore.forDir(dir).write(keys, normalizeUrlForCache(url), entryAction, mode.name(), rawHtml, cleanedHtml);
             AutoWebAgent.HtmlSnapshot snap = new AutoWebAgent.HtmlSnapshot();
             snap.stepIndex = stepIndex;
             snap.url = normalizeUrlForCache(url);
@@ -146,4 +135,23 @@ class HtmlSnapshotDao {
             return null;
         }
     }
+
+    /**
+     * 从存储读取；未命中时把旧版 key.cleaned.html / key.raw.html 导入存储并删除旧文件。
+     */
+    private static String readOrMigrate(java.nio.file.Path dir, HtmlSnapshotStore store, String key, String url, String entryAction, AutoWebAgent.HtmlCaptureMode mode) throws java.io.IOException {
+        String cleaned = store.readCleaned(key);
+        if (cleaned != null) return cleaned;
+        java.nio.file.Path legacyCleaned = dir.resolve(key + ".cleaned.html");
+        if (!java.nio.file.Files.exists(legacyCleaned)) return null;
+        java.nio.file.Path legacyRaw = dir.resolve(key + ".raw.html");
+        cleaned = new String(java.nio.file.Files.readAllBytes(legacyCleaned), java.nio.charset.StandardCharsets.UTF_8);
+        String raw = java.nio.file.Files.exists(legacyRaw)
+                ? new String(java.nio.file.Files.readAllBytes(legacyRaw), java.nio.charset.StandardCharsets.UTF_8)
+                : cleaned;
+        store.write(java.util.Collections.singletonList(key), url, entryAction, mode.name(), raw, cleaned);
+        java.nio.file.Files.deleteIfExists(legacyCleaned);
+        java.nio.file.Files.deleteIfExists(legacyRaw);
+        return cleaned;
+    }
 }
@@ -0,0 +1,382 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.qiyi.config.AppConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTML 快照存储：内容寻址 + 压缩 + 索引 + 淘汰。
+ *
+ * <p>目录结构（位于 autoweb/cache/snapshots 下）：</p>
+ * <ul>
+ *     <li>blobs/&lt;sha256&gt;.z：快照正文按内容哈希命名并 deflate 压缩，相同内容只存一份（精确 key 与共享 key 共用同一 blob）</li>
+ *     <li>index.json：key → {url, entryAction, captureMode, cleaned/raw blob 哈希, 最近访问时间}</li>
+ * </ul>
+ *
+ * <p>读取先查内存热层（按 blob 哈希的 LRU），未命中再解压磁盘 blob；热层命中时仍会确认 blob 文件存在，
+ * 以兼容 UI“清空缓存”直接删除目录文件的做法。写入后按条目数与压缩后总字节数做 LRU 淘汰，
+ * 不再被任何条目引用的 blob 一并删除。</p>
+ *
+ * <p>读取刷新的最近访问时间按间隔写回索引，重启后 LRU 顺序不丢；压缩后总字节数按 blob 引用计数增量维护，
+ * 淘汰循环不再每删一条就全量重算。</p>
+ */
+final class HtmlSnapshotStore {
+    static final String DIR_NAME = "snapshots";
+    static final String INDEX_FILE = "index.json";
+    /** 索引条目上限 */
+    static final int MAX_ENTRIES = 2000;
+    /** 内存热层上限（字符数） */
+    static final long HOT_TIER_MAX_CHARS = 16L * 1024 * 1024;
+    /** 仅有访问时间变化时，索引写回的最小间隔 */
+    static final long ACCESS_PERSIST_INTERVAL_MS = 30_000L;
+
+    private static final Map<Path, HtmlSnapshotStore> BY_DIR = new ConcurrentHashMap<>();
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private final Path root;
+    private final Path blobDir;
+    private final Path indexFile;
+    private final long maxBytes;
+    private final long accessPersistIntervalMs;
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    /** blob 哈希 → 被多少个条目字段引用 */
+    private final Map<String, Integer> blobRefs = new HashMap<>();
+    /** blob 哈希 → 压缩后字节数 */
+    private final Map<String, Long> blobBytes = new HashMap<>();
+    private long liveBytes;
+    private boolean accessDirty;
+    private long lastPersistAt;
+    private final LinkedHashMap<String, String> hot = new LinkedHashMap<>(64, 0.75f, true);
+    private long hotChars;
+    private boolean loaded;
+    private int hits;
+    private int misses;
+
+    /**
+     * 索引条目；blob 大小为压缩后字节数，用于淘汰统计。
+     */
+    static final class Entry {
+        String url;
+        String entryAction;
+        String captureMode;
+        String cleaned;
+        long cleanedBytes;
+        String raw;
+        long rawBytes;
+        long createdAt;
+        long lastAccess;
+    }
+
+    private static final class IndexFile {
+        int version = 1;
+        Map<String, Entry> entries = new LinkedHashMap<>();
+    }
+
+    HtmlSnapshotStore(Path cacheDir, long maxBytes) {
+        this(cacheDir, maxBytes, ACCESS_PERSIST_INTERVAL_MS);
+    }
+
+    HtmlSnapshotStore(Path cacheDir, long maxBytes, long accessPersistIntervalMs) {
+        this.root = cacheDir.resolve(DIR_NAME);
+        this.blobDir = root.resolve("blobs");
+        this.indexFile = root.resolve(INDEX_FILE);
+        this.maxBytes = Math.max(1L, maxBytes);
+        this.accessPersistIntervalMs = Math.max(0L, accessPersistIntervalMs);
+    }
+
+    /**
+     * 按缓存目录获取共享实例（单测会切换 user.dir，因此不能只有一个全局实例）。
+     */
+    static HtmlSnapshotStore forDir(Path cacheDir) {
+        Path dir = cacheDir.toAbsolutePath().normalize();
+        return BY_DIR.computeIfAbsent(dir, d -> new HtmlSnapshotStore(d,
+                Math.max(1, AppConfig.getInstance().getAutowebSnapshotCacheMaxMb()) * 1024L * 1024L));
+    }
+
+    /**
+     * 读取 cleaned 正文；条目不存在或 blob 已被删除时返回 null。
+     */
+    synchronized String readCleaned(String key) {
+        ensureLoaded();
+        Entry e = index.get(key);
+        if (e == null || e.cleaned == null) {
+            misses++;
+            return null;
+        }
+        String text = readBlob(e.cleaned);
+        if (text == null) {
+            removeEntry(key);
+            accessDirty = true;
+            misses++;
+            return null;
+        }
+        e.lastAccess = System.currentTimeMillis();
+        accessDirty = true;
+        hits++;
+        persistAccessIfDue();
+        return text;
+    }
+
+    synchronized boolean contains(String key) {
+        ensureLoaded();
+        Entry e = index.get(key);
+        return e != null && e.cleaned != null && Files.exists(blobPath(e.cleaned));
+    }
+
+    /**
+     * 写入一条快照，keys 中的所有 key 指向同一组 blob。
+     */
+    synchronized void write(List<String> keys, String url, String entryAction, String captureMode, String rawHtml, String cleanedHtml) throws java.io.IOException {
+        ensureLoaded();
+        String cleaned = cleanedHtml == null ? "" : cleanedHtml;
+        String raw = rawHtml == null ? "" : rawHtml;
+        String cleanedHash = writeBlob(cleaned);
+        String rawHash = raw.equals(cleaned) ? cleanedHash : writeBlob(raw);
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            if (key == null) continue;
+            Entry e = new Entry();
+            e.url = url;
+            e.entryAction = entryAction;
+            e.captureMode = captureMode;
+            e.cleaned = cleanedHash;
+            e.cleanedBytes = blobSize(cleanedHash);
+            e.raw = rawHash;
+            e.rawBytes = blobSize(rawHash);
+            e.createdAt = now;
+            e.lastAccess = now;
+            removeEntry(key);
+            putEntry(key, e);
+        }
+        evict();
+        persistIndex();
+    }
+
+    synchronized int size() {
+        ensureLoaded();
+        return index.size();
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * 所有条目引用的 blob 压缩后总字节数（去重后）。
+     */
+    synchronized long totalBytes() {
+        ensureLoaded();
+        return liveBytes;
+    }
+
+    private void evict() {
+        if (index.size() <= MAX_ENTRIES && liveBytes <= maxBytes) return;
+        List<Map.Entry<String, Entry>> byAccess = new ArrayList<>(index.entrySet());
+        byAccess.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> it = byAccess.iterator();
+        while (it.hasNext() && index.size() > 1 && (index.size() > MAX_ENTRIES || liveBytes > maxBytes)) {
+            removeEntry(it.next().getKey());
+            removed++;
+        }
+        int deletedBlobs = deleteUnreferencedBlobs();
+        StorageSupport.log(null, "SNAPSHOT_CACHE", "evicted entries=" + removed + ", blobs=" + deletedBlobs
+                + ", remaining=" + index.size() + ", bytes=" + liveBytes, null);
+    }
+
+    private void putEntry(String key, Entry e) {
+        index.put(key, e);
+        retainBlob(e.cleaned, e.cleanedBytes);
+        retainBlob(e.raw, e.rawBytes);
+    }
+
+    private void removeEntry(String key) {
+        Entry e = index.remove(key);
+        if (e == null) return;
+        releaseBlob(e.cleaned);
+        releaseBlob(e.raw);
+    }
+
+    private void retainBlob(String hash, long bytes) {
+        if (hash == null) return;
+        if (blobRefs.merge(hash, 1, Integer::sum) == 1) {
+            blobBytes.put(hash, bytes);
+            liveBytes += bytes;
+        }
+    }
+
+    private void releaseBlob(String hash) {
+        if (hash == null) return;
+        Integer refs = blobRefs.get(hash);
+        if (refs == null) return;
+        if (refs > 1) {
+            blobRefs.put(hash, refs - 1);
+            return;
+        }
+        blobRefs.remove(hash);
+        Long bytes = blobBytes.remove(hash);
+        if (bytes != null) liveBytes -= bytes;
+    }
+
+    private int deleteUnreferencedBlobs() {
+        Set<String> live = blobRefs.keySet();
+        int deleted = 0;
+        if (!Files.isDirectory(blobDir)) return 0;
+        try (java.util.stream.Stream<Path> s = Files.list(blobDir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                String name = p.getFileName().toString();
+                if (!name.endsWith(".z")) continue;
+                String hash = name.substring(0, name.length() - 2);
+                if (live.contains(hash)) continue;
+                try {
+                    Files.deleteIfExists(p);
+                    dropHot(hash);
+                    deleted++;
+                } catch (Exception ignored) {}
+            }
+        } catch (Exception ignored) {}
+        return deleted;
+    }
+
+    private Path blobPath(String hash) {
+        return blobDir.resolve(hash + ".z");
+    }
+
+    private long blobSize(String hash) {
+        try {
+            return Files.size(blobPath(hash));
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
+    private String writeBlob(String text) throws java.io.IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256Hex(bytes);
+        Path p = blobPath(hash);
+        if (!Files.exists(p)) {
+            Files.createDirectories(blobDir);
+            Path tmp = blobDir.resolve(hash + ".z.tmp");
+            try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(tmp), new Deflater(Deflater.DEFAULT_COMPRESSION), 8192)) {
+                out.write(bytes);
+            }
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING);
+        }
+        putHot(hash, text);
+        return hash;
+    }
+
+    private String readBlob(String hash) {
+        Path p = blobPath(hash);
+        if (!Files.exists(p)) {
+            dropHot(hash);
+            return null;
+        }
+        String cached = hot.get(hash);
+        if (cached != null) return cached;
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(p), new java.util.zip.Inflater(), 8192)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) bos.write(buf, 0, n);
+            String text = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+            putHot(hash, text);
+            return text;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void putHot(String hash, String text) {
+        if (text.length() > HOT_TIER_MAX_CHARS / 4) return;
+        String prev = hot.put(hash, text);
+        if (prev != null) hotChars -= prev.length();
+        hotChars += text.length();
+        Iterator<Map.Entry<String, String>> it = hot.entrySet().iterator();
+        while (hotChars > HOT_TIER_MAX_CHARS && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            hotChars -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+
+    private void dropHot(String hash) {
+        String prev = hot.remove(hash);
+        if (prev != null) hotChars -= prev.length();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(indexFile)) return;
+        try {
+            String json = new String(Files.readAllBytes(indexFile), StandardCharsets.UTF_8);
+            IndexFile f = GSON.fromJson(json, IndexFile.class);
+            if (f != null && f.entries != null) {
+                for (Map.Entry<String, Entry> e : f.entries.entrySet()) {
+                    if (e.getKey() != null && e.getValue() != null) putEntry(e.getKey(), e.getValue());
+                }
+            }
+        } catch (Exception e) {
+            StorageSupport.log(null, "SNAPSHOT_CACHE", "index load failed, start empty", e);
+        }
+    }
+
+    /**
+     * 只有访问时间变化时按间隔写回索引；写回失败不影响读取。
+     */
+    private void persistAccessIfDue() {
+        if (!accessDirty || System.currentTimeMillis() - lastPersistAt < accessPersistIntervalMs) return;
+        try {
+            persistIndex();
+        } catch (Exception e) {
+            StorageSupport.log(null, "SNAPSHOT_CACHE", "index persist failed", e);
+        }
+    }
+
+    private void persistIndex() throws java.io.IOException {
+        accessDirty = false;
+        lastPersistAt = System.currentTimeMillis();
+        Files.createDirectories(root);
+        IndexFile f = new IndexFile();
+        f.entries.putAll(index);
+        Path tmp = root.resolve(INDEX_FILE + ".tmp");
+        Files.write(tmp, GSON.toJson(f).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+            byte[] b = md.digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte x : b) sb.append(String.format("%02x", x));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(java.util.Arrays.hashCode(bytes));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +51,11 @@ public class MultiModelAutoRun {
         boolean localAnalyze = false;
         String localAnalysisModel = LLMUtil.OLLAMA_MODEL_QWEN3_8B;
         int reportMaxChars = 8_000_000;
+        /**
+         * 并发度：<=1 时按 case/模型顺序在同一页面上串行执行；
+         * >1 时每个 (case, model) 组合在独立 BrowserContext 中执行，由固定大小的 worker 池并发调度。
+         */
+        int parallelism = 1;
     }
 
     /**
@@ -96,6 +102,10 @@ public class MultiModelAutoRun {
         List<String> formattedErrors;
         String runLogHead;
         String runLogTail;
+        /**
+         * 该 (case, model) 组合的总墙钟耗时（含打开页面、Plan/Code 生成、执行与修复），同一组合的各次尝试相同。
+         */
+        long pairWallMs;
     }
 
     /**
@@ -121,6 +131,8 @@ public class MultiModelAutoRun {
         String analysisPrompt;
         String localAnalysisModel;
         String localAnalysis;
+        int parallelism;
+        long wallMs;
     }
 
     /**
@@ -256,75 +268,254 @@ public class MultiModelAutoRun {
         rootLogger.accept("E2E config: captureMode=" + report.captureMode + ", visualSupplement=" + cfg.useVisualSupplement);
         PlayWrightUtil.Connection connection = PlayWrightUtil.connectAndAutomate();
         if (connection == null || connection.browser == null) throw new RuntimeException("Failed to connect to browser.");
+        report.parallelism = Math.max(1, cfg.parallelism);
+        long runStart = System.currentTimeMillis();
 
         try {
-            for (CaseInput c : cfg.cases) {
-                CaseRunResult caseResult = new CaseRunResult();
-                caseResult.id = c.id;
-                caseResult.entryUrl = c.entryUrl;
-                caseResult.userTask = c.userTask;
-                caseResult.runs = new ArrayList<>();
+            if (cfg.parallelism > 1) {
+                String storageState = snapshotStorageState(connection, rootLogger);
+                report.cases = runPairsConcurrently(AutoWebEngine.shared(), cfg.cases, cfg.models, cfg.parallelism,
+                        PlayWrightUtil::connectAndAutomate,
+                        MultiModelAutoRun::closeWorkerConnection,
+                        (conn, c, model) -> runIsolatedPair(conn, storageState, c, model, cfg),
+                        rootLogger);
+            } else {
+                for (CaseInput c : cfg.cases) {
+                    CaseRunResult caseResult = new CaseRunResult();
+                    caseResult.id = c.id;
+                    caseResult.entryUrl = c.entryUrl;
+                    caseResult.userTask = c.userTask;
+                    caseResult.runs = new ArrayList<>();
+
+                    PageHandle pageHandle = null;
+                    try {
+                        pageHandle = openPage(connection, c.entryUrl, rootLogger);
+                        for (String model : cfg.models) {
+                            try {
+                                long pairStart = System.currentTimeMillis();
+                                List<ModelRunResult> rs = runSingleModelCase(model, c, pageHandle.page, cfg.captureMode, cfg.useVisualSupplement, cfg.alsoStdout);
+                                if (rs != null) {
+                                    markPairWallTime(rs, System.currentTimeMillis() - pairStart);
+                                    caseResult.runs.addAll(rs);
+                                }
+                            } catch (Exception ex) {
+                                caseResult.runs.add(runnerErrorResult(model, c, "(runner)", ex));
+                            }
+                        }
+                    } catch (Exception ex) {
+                        for (String model : cfg.models) {
+                            caseResult.runs.add(runnerErrorResult(model, c, "(openPage)", ex));
+                        }
+                    } finally {
+                        if (pageHandle != null) {
+                            try {
+                                pageHandle.page.close();
+                            } catch (Exception ignored) {
+                            }
+                        }
+                    }
 
-                PageHandle pageHandle = null;
+                    report.cases.add(caseResult);
+                }
+            }
+        } finally {
+            try {
+                PlayWrightUtil.disconnectBrowser(connection.playwright, connection.browser);
+            } catch (Exception ignored) {
+            }
+        }
+
+        report.wallMs = System.currentTimeMillis() - runStart;
+        long pairWallSum = 0L;
+        for (CaseRunResult cr : report.cases) {
+            java.util.Set<String> seen = new java.util.HashSet<>();
+            for (ModelRunResult r : cr.runs) {
+                if (r != null && seen.add(r.model)) pairWallSum += r.pairWallMs;
+            }
+        }
+        rootLogger.accept("E2E finished: parallelism=" + report.parallelism + ", wallMs=" + report.wallMs + ", sumPairWallMs=" + pairWallSum);
+        return report;
+    }
+
+    /**
+     * 并发执行时单个 (case, model) 组合的执行函数；W 为 worker 独占的资源（浏览器连接）。
+     */
+    interface PairRunner<W> {
+        List<ModelRunResult> run(W worker, CaseInput c, String model) throws Exception;
+    }
+
+    /**
+     * 以固定大小的 worker 池并发执行所有 (case, model) 组合，并按 cases × models 的原始顺序合并结果。
+     *
+     * <p>worker 循环作为子任务交给 engine 的 {@link AutoWebEngine#runAll}（生产环境为共享引擎，与其他 AutoWeb 任务共用同一线程池）。
+     * 每个 worker 启动时通过 workerFactory 创建自己的资源（Playwright 连接），只在本线程使用，
+     * 结束时交给 workerCloser 关闭。组合按 case 优先的顺序领取，完成顺序不影响报告顺序。
+     * worker 创建资源失败时直接退出，未执行的组合以 (worker) 错误结果补齐。</p>
+     */
+    static <W> List<CaseRunResult> runPairsConcurrently(
+            AutoWebEngine engine,
+            List<CaseInput> cases,
+            List<String> models,
+            int parallelism,
+            java.util.function.Supplier<W> workerFactory,
+            java.util.function.Consumer<W> workerCloser,
+            PairRunner<W> runner,
+            java.util.function.Consumer<String> logger
+    ) throws InterruptedException {
+        int modelCount = models.size();
+        int total = cases.size() * modelCount;
+        AtomicReferenceArray<List<ModelRunResult>> slots = new AtomicReferenceArray<>(total);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(parallelism, total));
+        if (logger != null) logger.accept("E2E concurrent mode: pairs=" + total + ", workers=" + workers);
+        List<Runnable> loops = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            loops.add(() -> {
+                // 引擎繁忙时 worker 可能由调用方线程补位顺序执行，组合已领完就不再创建浏览器连接
+                if (next.get() >= total) return;
+                W worker = null;
+                try {
+                    worker = workerFactory.get();
+                } catch (Exception ex) {
+                    if (logger != null) logger.accept("E2E worker init failed: " + ex.getMessage());
+                }
+                if (worker == null) return;
                 try {
-                    pageHandle = openPage(connection, c.entryUrl, rootLogger);
-                    for (String model : cfg.models) {
+                    for (int i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                        CancellationToken.checkCurrent();
+                        CaseInput c = cases.get(i / modelCount);
+                        String model = models.get(i % modelCount);
+                        long pairStart = System.currentTimeMillis();
+                        List<ModelRunResult> rs;
                         try {
-                            List<ModelRunResult> rs = runSingleModelCase(model, c, pageHandle.page, cfg.captureMode, cfg.useVisualSupplement, cfg.alsoStdout);
-                            if (rs != null) caseResult.runs.addAll(rs);
+                            rs = runner.run(worker, c, model);
                         } catch (Exception ex) {
-                            ModelRunResult r = new ModelRunResult();
-                            r.model = model;
-                            r.prompt = buildPrompt(c);
-                            r.attemptIndex = 1;
-                            r.repairAttempt = false;
-                            r.planSteps = new ArrayList<>();
-                            r.lintErrors = new ArrayList<>();
-                            r.stepResults = new ArrayList<>();
-                            r.formattedErrors = new ArrayList<>();
-                            r.entryUrlUsed = c == null ? "" : c.entryUrl;
-                            r.formattedErrors.add("步骤: (runner), 出错信息: " + (ex.getMessage() == null ? ex.toString() : ex.getMessage()));
-                            r.runLogHead = "";
-                            r.runLogTail = "";
-                            caseResult.runs.add(r);
+                            rs = new ArrayList<>();
+                            rs.add(runnerErrorResult(model, c, "(runner)", ex));
+                        }
+                        if (rs == null) rs = new ArrayList<>();
+                        long pairWallMs = System.currentTimeMillis() - pairStart;
+                        markPairWallTime(rs, pairWallMs);
+                        slots.set(i, rs);
+                        if (logger != null) {
+                            logger.accept("E2E pair done: case=" + (c == null ? "" : c.id) + ", model=" + model + ", wallMs=" + pairWallMs);
                         }
-                    }
-                } catch (Exception ex) {
-                    for (String model : cfg.models) {
-                        ModelRunResult r = new ModelRunResult();
-                        r.model = model;
-                        r.prompt = buildPrompt(c);
-                        r.attemptIndex = 1;
-                        r.repairAttempt = false;
-                        r.planSteps = new ArrayList<>();
-                        r.lintErrors = new ArrayList<>();
-                        r.stepResults = new ArrayList<>();
-                        r.formattedErrors = new ArrayList<>();
-                        r.entryUrlUsed = c == null ? "" : c.entryUrl;
-                        r.formattedErrors.add("步骤: (openPage), 出错信息: " + (ex.getMessage() == null ? ex.toString() : ex.getMessage()));
-                        r.runLogHead = "";
-                        r.runLogTail = "";
-                        caseResult.runs.add(r);
                     }
                 } finally {
-                    if (pageHandle != null) {
-                        try {
-                            pageHandle.page.close();
-                        } catch (Exception ignored) {
-                        }
+                    if (workerCloser != null) {
+                        try { workerCloser.accept(worker); } catch (Exception ignored) {}
                     }
                 }
+            });
+        }
+        engine.runAll(CancellationToken.current(), loops);
+        if (logger != null && countFilled(slots) < total) {
+            logger.accept("E2E workers finished early: done=" + countFilled(slots) + "/" + total);
+        }
+
+        List<CaseRunResult> merged = new ArrayList<>();
+        for (int ci = 0; ci < cases.size(); ci++) {
+            CaseInput c = cases.get(ci);
+            CaseRunResult caseResult = new CaseRunResult();
+            caseResult.id = c.id;
+            caseResult.entryUrl = c.entryUrl;
+            caseResult.userTask = c.userTask;
+            caseResult.runs = new ArrayList<>();
+            for (int mi = 0; mi < modelCount; mi++) {
+                List<ModelRunResult> rs = slots.get(ci * modelCount + mi);
+                if (rs == null) {
+                    caseResult.runs.add(runnerErrorResult(models.get(mi), c, "(worker)", new IllegalStateException("no worker available")));
+                } else {
+                    caseResult.runs.addAll(rs);
+                }
+            }
+            merged.add(caseResult);
+        }
+        return merged;
+    }
+
+    private static int countFilled(AtomicReferenceArray<?> slots) {
+        int n = 0;
+        for (int i = 0; i < slots.length(); i++) if (slots.get(i) != null) n++;
+        return n;
+    }
 
-                report.cases.add(caseResult);
+    private static void markPairWallTime(List<ModelRunResult> rs, long wallMs) {
+        for (ModelRunResult r : rs) {
+            if (r != null) r.pairWallMs = wallMs;
+        }
+    }
+
+    private static ModelRunResult runnerErrorResult(String model, CaseInput c, String stage, Exception ex) {
+        ModelRunResult r = new ModelRunResult();
+        r.model = model;
+        r.prompt = buildPrompt(c);
+        r.attemptIndex = 1;
+        r.repairAttempt = false;
+        r.planSteps = new ArrayList<>();
+        r.lintErrors = new ArrayList<>();
+        r.stepResults = new ArrayList<>();
+        r.formattedErrors = new ArrayList<>();
+        r.entryUrlUsed = c == null ? "" : c.entryUrl;
+        r.formattedErrors.add("步骤: " + stage + ", 出错信息: " + (ex.getMessage() == null ? ex.toString() : ex.getMessage()));
+        r.runLogHead = "";
+        r.runLogTail = "";
+        return r;
+    }
+
+    /**
+     * 读取默认上下文（已登录的用户浏览器）的 cookie/localStorage，供独立 BrowserContext 复用登录态。
+     * sessionStorage 不在其中，依赖 sessionStorage 的站点在并发模式下可能需要重新登录。
+     */
+    private static String snapshotStorageState(PlayWrightUtil.Connection connection, java.util.function.Consumer<String> logger) {
+        try {
+            if (connection.browser.contexts() == null || connection.browser.contexts().isEmpty()) return null;
+            synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+                return connection.browser.contexts().get(0).storageState();
             }
+        } catch (Exception ex) {
+            if (logger != null) logger.accept("读取登录态失败，独立上下文将不带登录态: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 在 worker 自己的连接上新建独立 BrowserContext 执行一个 (case, model) 组合，结束后关闭该上下文。
+     */
+    private static List<ModelRunResult> runIsolatedPair(PlayWrightUtil.Connection conn, String storageState, CaseInput c, String model, RunnerConfig cfg) {
+        BufferingLogger logger = new BufferingLogger("[case=" + c.id + " model=" + model + "] ", cfg.alsoStdout);
+        com.microsoft.playwright.BrowserContext ctx = null;
+        String stage = "(openPage)";
+        try {
+            com.microsoft.playwright.Browser.NewContextOptions options = new com.microsoft.playwright.Browser.NewContextOptions();
+            if (storageState != null && !storageState.isEmpty()) options.setStorageState(storageState);
+            ctx = conn.browser.newContext(options);
+            com.microsoft.playwright.Page page = ctx.newPage();
+            navigateToEntry(page, c.entryUrl, logger);
+            stage = "(runner)";
+            return runSingleModelCase(model, c, page, cfg.captureMode, cfg.useVisualSupplement, cfg.alsoStdout);
+        } catch (Exception ex) {
+            List<ModelRunResult> rs = new ArrayList<>();
+            rs.add(runnerErrorResult(model, c, stage, ex));
+            return rs;
         } finally {
-            try {
-                PlayWrightUtil.disconnectBrowser(connection.playwright, connection.browser);
-            } catch (Exception ignored) {
+            if (ctx != null) {
+                try {
+                    ctx.close();
+                } catch (Exception ignored) {
+                }
             }
         }
+    }
 
-        return report;
+    /**
+     * 关闭 worker 连接：只关闭本线程的 Playwright 驱动，不关闭用户的 Chrome 进程。
+     */
+    private static void closeWorkerConnection(PlayWrightUtil.Connection conn) {
+        try {
+            if (conn.playwright != null) conn.playwright.close();
+        } catch (Exception ignored) {
+        }
     }
 
     private static class PageHandle {
@@ -347,25 +538,31 @@ public class MultiModelAutoRun {
         }
 
         h.page = ctx.newPage();
-        if (entryUrl != null && !entryUrl.trim().isEmpty()) {
-            synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
-                h.page.navigate(entryUrl.trim());
-                try {
-                    h.page.waitForLoadState(
-                            com.microsoft.playwright.options.LoadState.NETWORKIDLE,
-                            new com.microsoft.playwright.Page.WaitForLoadStateOptions().setTimeout(120_000)
-                    );
-                } catch (Exception ignored) {
-                }
-                h.page.waitForTimeout(1000);
-            }
-            if (logger != null) {
-                logger.accept("Opened page: " + StorageSupport.safePageUrl(h.page));
-            }
-        }
+        navigateToEntry(h.page, entryUrl, logger);
         return h;
     }
 
+    /**
+     * 打开入口 URL 并等待网络空闲。
+     * 串行模式只有主线程使用连接，并发模式下 page 所属连接只被当前 worker 线程使用，
+     * 因此这里不持有全局 PLAYWRIGHT_LOCK，避免最长 120s 的等待阻塞其他 worker。
+     */
+    private static void navigateToEntry(com.microsoft.playwright.Page page, String entryUrl, java.util.function.Consumer<String> logger) {
+        if (entryUrl == null || entryUrl.trim().isEmpty()) return;
+        page.navigate(entryUrl.trim());
+        try {
+            page.waitForLoadState(
+                    com.microsoft.playwright.options.LoadState.NETWORKIDLE,
+                    new com.microsoft.playwright.Page.WaitForLoadStateOptions().setTimeout(120_000)
+            );
+        } catch (Exception ignored) {
+        }
+        page.waitForTimeout(1000);
+        if (logger != null) {
+            logger.accept("Opened page: " + StorageSupport.safePageUrl(page));
+        }
+    }
+
     private static List<ModelRunResult> runSingleModelCase(
             String model,
             CaseInput c,
@@ -705,6 +902,7 @@ public class MultiModelAutoRun {
         out.accept("=== 多模型E2E执行汇总 ===");
         if (report.models != null) out.accept("models=" + String.join(",", report.models));
         out.accept("ts=" + (report.ts == null ? "" : report.ts));
+        out.accept("parallelism=" + report.parallelism + ", wallMs=" + report.wallMs);
 
         if (report.cases == null) return;
         for (CaseRunResult c : report.cases) {
@@ -744,6 +942,7 @@ public class MultiModelAutoRun {
                 if (!failedText.isEmpty()) {
                     line.append("，执行失败的步骤为").append(failedText);
                 }
+                line.append("，耗时").append(first.pairWallMs).append("ms");
                 out.accept(line.toString());
             }
         }
@@ -883,7 +1082,13 @@ public class MultiModelAutoRun {
         String resp = "";
 
         if (!aliyunKey.isEmpty()) {
-            resp = LLMUtil.analyzeImageWithAliyun(screenshot, prompt);
+            ScreenshotPipeline.Prepared prepared = ScreenshotPipeline.prepare(screenshot, cfg.getAutowebVisualMaxEdge(), cfg.getAutowebVisualMaxKb() * 1024L);
+            try {
+                ScreenshotPipeline.recordVisionCall(java.util.Collections.singletonList(prepared));
+                resp = LLMUtil.analyzeImageWithAliyun(prepared.file, prompt);
+            } finally {
+                ScreenshotPipeline.cleanup(java.util.Collections.singletonList(prepared));
+            }
         }
         if (resp == null) resp = "";
         return resp;
@@ -988,6 +1193,7 @@ public class MultiModelAutoRun {
         cfg.localAnalyze = Boolean.parseBoolean(System.getProperty("autoweb.e2e.localAnalyze", "false"));
         cfg.localAnalysisModel = System.getProperty("autoweb.e2e.localModel", LLMUtil.OLLAMA_MODEL_QWEN3_8B);
         cfg.reportMaxChars = parseInt(System.getProperty("autoweb.e2e.reportMaxChars", "8000000"), 8_000_000);
+        cfg.parallelism = parseInt(System.getProperty("autoweb.e2e.parallelism", "1"), 1);
         return cfg;
     }
 
@@ -1008,6 +1214,7 @@ public class MultiModelAutoRun {
         if (cfg == null) return;
         cfg.captureMode = resolveCaptureModeFromSystemProperties();
         cfg.useVisualSupplement = Boolean.parseBoolean(System.getProperty("autoweb.e2e.visualSupplement", String.valueOf(cfg.useVisualSupplement)));
+        cfg.parallelism = parseInt(System.getProperty("autoweb.e2e.parallelism", String.valueOf(cfg.parallelism)), cfg.parallelism);
     }
 
     private static void cleanupAutowebArtifacts() {
@@ -1210,6 +1417,8 @@ public class MultiModelAutoRun {
         JsonObject o = new JsonObject();
         o.addProperty("ts", report.ts == null ? "" : report.ts);
         o.addProperty("captureMode", report.captureMode == null ? "" : report.captureMode);
+        o.addProperty("parallelism", report.parallelism);
+        o.addProperty("wallMs", report.wallMs);
         JsonArray models = new JsonArray();
         if (report.models != null) {
             for (String m : report.models) models.add(m);
@@ -1233,6 +1442,7 @@ public class MultiModelAutoRun {
                         rj.addProperty("attemptIndex", r.attemptIndex);
                         rj.addProperty("repairAttempt", r.repairAttempt);
                         rj.addProperty("entryUrlUsed", r.entryUrlUsed == null ? "" : r.entryUrlUsed);
+                        rj.addProperty("pairWallMs", r.pairWallMs);
                         rj.addProperty("planConfirmed", r.planConfirmed);
                         rj.addProperty("planHasQuestion", r.planHasQuestion);
                         rj.addProperty("planText", r.planText == null ? "" : r.planText);
@@ -1,6 +1,7 @@
 package com.qiyi.service.autoweb;
 
 import com.microsoft.playwright.Page;
+import com.qiyi.config.AppConfig;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -11,10 +12,14 @@ import org.jsoup.select.Elements;
  * 负责把用户意图、页面信息、计划步骤拼成模型可读格式
  */
 class PayloadSupport {
-    private static boolean looksLikeAriaSnapshotJson(String s) {
+    /**
+     * 是否为 ARIA_SNAPSHOT 模式的采集结果：ariaSnapshotText JSON，或无障碍树兜底的 AX_TREE_TEXT 文本段。
+     */
+    private static boolean looksLikeA11ySnapshot(String s) {
         if (s == null) return false;
         String t = s.trim();
         if (t.isEmpty()) return false;
+        if (t.startsWith(AutoWebAgent.AX_TREE_TEXT_HEADER)) return true;
         if (!t.startsWith("{")) return false;
         return t.contains("\"ariaSnapshotText\"");
     }
@@ -161,7 +166,7 @@ class PayloadSupport {
         return best;
     }
 
-    private static Element pickBestRepeatedListContainer(Document doc) {
+    static Element pickBestRepeatedListContainer(Document doc) {
         if (doc == null) return null;
         Element best = null;
         double bestScore = 0.0;
@@ -804,10 +809,12 @@ class PayloadSupport {
      * @param sb 目标 builder
      * @param snapshots 步骤快照
      * @param maxChars 最大字符数
+     * @return 完整（未截断、未替换为 ARIA 摘要）写入的 stepIndex
      */
-    private static void appendStepHtmlsCleaned(StringBuilder sb, java.util.List<AutoWebAgent.HtmlSnapshot> snapshots, int maxChars) {
-        if (sb == null) return;
-        if (snapshots == null || snapshots.isEmpty()) return;
+    private static java.util.Set<Integer> appendStepHtmlsCleaned(StringBuilder sb, java.util.List<AutoWebAgent.HtmlSnapshot> snapshots, int maxChars) {
+        java.util.Set<Integer> complete = new java.util.HashSet<>();
+        if (sb == null) return complete;
+        if (snapshots == null || snapshots.isEmpty()) return complete;
         int used = 0;
         java.util.HashMap<String, Integer> firstStepByUrl = new java.util.HashMap<>();
         for (AutoWebAgent.HtmlSnapshot snap : snapshots) {
@@ -832,7 +839,8 @@ class PayloadSupport {
                 firstStepByUrl.put(urlKey, snap.stepIndex);
             }
             String body = snap.cleanedHtml;
-            if (looksLikeAriaSnapshotJson(body)) {
+            boolean original = true;
+            if (looksLikeA11ySnapshot(body)) {
                 AutoWebAgent.HtmlSnapshot raw = HtmlSnapshotDao.readCachedHtml(
                         snap.stepIndex,
                         snap.url,
@@ -844,17 +852,102 @@ class PayloadSupport {
                     String ariaPart = truncate(body, 200000);
                     String rawSnippet = extractListSnippetFromRawHtml(raw.cleanedHtml, 60000);
                     body = "ARIA_SNAPSHOT:\n" + ariaPart + "\n\nRAW_HTML_LIST_SNIPPET:\n" + rawSnippet;
+                    original = false;
                 }
             }
             int remaining = maxChars - used - header.length();
             if (remaining <= 0) break;
             if (body.length() > remaining) {
                 body = body.substring(0, remaining) + "...(truncated)";
+            } else if (original) {
+                complete.add(snap.stepIndex);
             }
             sb.append(header).append(body).append("\n");
             used += header.length() + body.length() + 1;
             if (used >= maxChars) break;
         }
+        return complete;
+    }
+
+    /**
+     * 追加当前页内容。开启 autoweb.refine.dom.diff 且 STEP_HTMLS_CLEANED 中有完整的 HTML 基线时，
+     * 只发送当前页相对基线的结构化变化（CURRENT_PAGE_HTML_DIFF）；变化不够小时仍发送全文。
+     *
+     * @param currentUrl 当前页 URL（用于优先选择同 URL 的 step 作为基线）
+     * @param completeSteps 在 STEP_HTMLS_CLEANED 中完整出现的 stepIndex
+     */
+    private static void appendCurrentPageHtml(StringBuilder sb, String currentUrl, java.util.List<AutoWebAgent.HtmlSnapshot> snapshots, java.util.Set<Integer> completeSteps, String currentCleanedHtml) {
+        if (currentCleanedHtml == null || currentCleanedHtml.isEmpty()) return;
+        String diffSection = buildCurrentPageDiffSection(currentUrl, snapshots, completeSteps, currentCleanedHtml);
+        if (diffSection != null) {
+            sb.append(diffSection);
+            return;
+        }
+        String v = currentCleanedHtml;
+        if (v.length() > 200000) v = v.substring(0, 200000) + "...(truncated)";
+        sb.append("CURRENT_PAGE_HTML_CLEANED:\n").append(v).append("\n");
+    }
+
+    /** 当前页短于该长度时直接发全文 */
+    private static final int DOM_DIFF_MIN_CHARS = 2000;
+    /** diff 超过全文该比例时放弃 diff */
+    private static final double DOM_DIFF_MAX_RATIO = 0.5;
+    /** 最多尝试的基线数 */
+    private static final int DOM_DIFF_MAX_BASELINES = 6;
+
+    private static String buildCurrentPageDiffSection(String currentUrl, java.util.List<AutoWebAgent.HtmlSnapshot> snapshots, java.util.Set<Integer> completeSteps, String currentCleanedHtml) {
+        if (!AppConfig.getInstance().isAutowebRefineDomDiffEnabled()) return null;
+        if (snapshots == null || snapshots.isEmpty() || completeSteps == null || completeSteps.isEmpty()) return null;
+        if (currentCleanedHtml.length() < DOM_DIFF_MIN_CHARS || currentCleanedHtml.endsWith("...(truncated)")) return null;
+        if (looksLikeA11ySnapshot(currentCleanedHtml)) return null;
+
+        String curKey = currentUrl == null ? "" : PlanRoutingSupport.stripUrlQuery(currentUrl.trim());
+        java.util.List<AutoWebAgent.HtmlSnapshot> sameUrl = new java.util.ArrayList<>();
+        java.util.List<AutoWebAgent.HtmlSnapshot> others = new java.util.ArrayList<>();
+        for (AutoWebAgent.HtmlSnapshot snap : snapshots) {
+            if (snap == null || snap.cleanedHtml == null || snap.cleanedHtml.isEmpty()) continue;
+            if (!completeSteps.contains(snap.stepIndex) || looksLikeA11ySnapshot(snap.cleanedHtml)) continue;
+            String key = snap.url == null ? "" : PlanRoutingSupport.stripUrlQuery(snap.url.trim());
+            if (!curKey.isEmpty() && curKey.equals(key)) sameUrl.add(snap);
+            else others.add(snap);
+        }
+        // 同 URL 的 step 优先；没有时（如 UI 只知道入口 URL）在所有候选里取 diff 最小的
+        java.util.List<AutoWebAgent.HtmlSnapshot> candidates = sameUrl.isEmpty() ? others : sameUrl;
+
+        AutoWebAgent.HtmlSnapshot bestSnap = null;
+        String bestText = null;
+        String bestSummary = "";
+        int tried = 0;
+        for (AutoWebAgent.HtmlSnapshot snap : candidates) {
+            if (tried++ >= DOM_DIFF_MAX_BASELINES) break;
+            try {
+                HtmlDiffSupport.Diff d = HtmlDiffSupport.diff(snap.cleanedHtml, currentCleanedHtml);
+                if (d.clipped) {
+                    // 新增/替换的子树被截断时 diff 不能还原当前页，这个基线不可用
+                    StorageSupport.log(null, "REFINE_DOM_DIFF", "skip clipped diff | step=" + snap.stepIndex + ", " + d.summary(), null);
+                    continue;
+                }
+                String text = d.isEmpty() ? "NO_CHANGES\n" : d.render();
+                if (bestText == null || text.length() < bestText.length()) {
+                    bestSnap = snap;
+                    bestText = text;
+                    bestSummary = d.summary();
+                }
+            } catch (Exception e) {
+                StorageSupport.log(null, "REFINE_DOM_DIFF", "diff failed | step=" + snap.stepIndex, e);
+            }
+        }
+        if (bestSnap == null) return null;
+        if (bestText.length() > currentCleanedHtml.length() * DOM_DIFF_MAX_RATIO) {
+            StorageSupport.log(null, "REFINE_DOM_DIFF", "fallback to full html | baselineStep=" + bestSnap.stepIndex
+                    + ", fullChars=" + currentCleanedHtml.length() + ", diffChars=" + bestText.length(), null);
+            return null;
+        }
+        StorageSupport.log(null, "REFINE_DOM_DIFF", "baselineStep=" + bestSnap.stepIndex + ", fullChars=" + currentCleanedHtml.length()
+                + ", diffChars=" + bestText.length() + ", " + bestSummary, null);
+        return "CURRENT_PAGE_HTML_DIFF:\n"
+                + "BASELINE: [Step " + bestSnap.stepIndex + "] in STEP_HTMLS_CLEANED (current page = that snapshot with the changes below applied)\n"
+                + bestText;
     }
 
     /**
@@ -906,14 +999,11 @@ class PayloadSupport {
             }
         }
 
-        if (currentCleanedHtml != null && !currentCleanedHtml.isEmpty()) {
-            String v = currentCleanedHtml;
-            if (v.length() > 200000) v = v.substring(0, 200000) + "...(truncated)";
-            sb.append("CURRENT_PAGE_HTML_CLEANED:\n").append(v).append("\n");
-        }
+        StringBuilder stepHtmls = new StringBuilder();
+        java.util.Set<Integer> completeSteps = appendStepHtmlsCleaned(stepHtmls, snapshots, 500000);
+        appendCurrentPageHtml(sb, currentUrl, snapshots, completeSteps, currentCleanedHtml);
         sb.append("PLAN:\n").append(planText == null ? "" : planText).append("\n");
-        sb.append("STEP_HTMLS_CLEANED:\n");
-        appendStepHtmlsCleaned(sb, snapshots, 500000);
+        sb.append("STEP_HTMLS_CLEANED:\n").append(stepHtmls);
         return sb.toString();
     }
 
@@ -971,14 +1061,11 @@ class PayloadSupport {
             }
         }
 
-        if (currentCleanedHtml != null && !currentCleanedHtml.isEmpty()) {
-            String v = currentCleanedHtml;
-            if (v.length() > 200000) v = v.substring(0, 200000) + "...(truncated)";
-            sb.append("CURRENT_PAGE_HTML_CLEANED:\n").append(v).append("\n");
-        }
+        StringBuilder stepHtmls = new StringBuilder();
+        java.util.Set<Integer> completeSteps = appendStepHtmlsCleaned(stepHtmls, snapshots, 500000);
+        appendCurrentPageHtml(sb, cur, snapshots, completeSteps, currentCleanedHtml);
         sb.append("PLAN:\n").append(planText == null ? "" : planText).append("\n");
-        sb.append("STEP_HTMLS_CLEANED:\n");
-        appendStepHtmlsCleaned(sb, snapshots, 500000);
+        sb.append("STEP_HTMLS_CLEANED:\n").append(stepHtmls);
         return sb.toString();
     }
 }
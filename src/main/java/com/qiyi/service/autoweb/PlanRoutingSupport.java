@@ -266,6 +266,12 @@ class PlanRoutingSupport {
                 if (pageUrl == null) pageUrl = "";
                 pageUrl = pageUrl.trim();
             } catch (Exception ignored) {}
+            // 一次 evaluate 取回顶层 iframe 的几何信息；对不上的 frame 再逐个查询
+            java.util.Map<com.microsoft.playwright.Frame, FrameScanner.Geometry> geometries = java.util.Collections.emptyMap();
+            try {
+                geometries = FrameScanner.match(page.mainFrame().childFrames(), FrameScanner.readGeometry(page));
+            } catch (Exception ignored) {}
+            int queried = 0;
             for (com.microsoft.playwright.Frame f : page.frames()) {
                 if (f == page.mainFrame()) continue;
 
@@ -277,23 +283,15 @@ class PlanRoutingSupport {
                     fw.name = "Frame: " + fName + " (" + f.url() + ")";
 
                     result.wrappers.add(fw);
-                    com.microsoft.playwright.ElementHandle element = f.frameElement();
-                    double area = 0;
-                    boolean isVisible = false;
-                    double w = 0;
-                    double h = 0;
-
-                    if (element != null) {
-                        com.microsoft.playwright.options.BoundingBox box = element.boundingBox();
-                        if (box != null) {
-                            w = box.width;
-                            h = box.height;
-                            area = box.width * box.height;
-                            if (box.width > 0 && box.height > 0) {
-                                isVisible = true;
-                            }
-                        }
+                    FrameScanner.Geometry geo = geometries.get(f);
+                    if (geo == null) {
+                        geo = FrameScanner.queryGeometry(f);
+                        queried++;
                     }
+                    double w = geo.w;
+                    double h = geo.h;
+                    double area = geo.area();
+                    boolean isVisible = geo.visible();
 
                     if (firstFrame == null) {
                         firstFrame = fw;
@@ -379,7 +377,7 @@ class PlanRoutingSupport {
                 }
             }
 
-            StorageSupport.log(uiLogger, "FRAME_SCAN", "Scan complete. best=" + (result.best == null ? "" : result.best.name), null);
+            StorageSupport.log(uiLogger, "FRAME_SCAN", "Scan complete. best=" + (result.best == null ? "" : result.best.name) + " | batched=" + geometries.size() + " | queried=" + queried, null);
             return result;
         }
     }
@@ -425,18 +423,21 @@ class PlanRoutingSupport {
                         new Page.WaitForLoadStateOptions().setTimeout(AppConfig.getInstance().getAutowebWaitForLoadStateTimeoutMs()));
             } catch (Exception ignored) {}
 
-            // iframe 场景常见“先出主页面再异步挂载内容 frame”：这里短暂轮询等待内容 frame 出现
-            long deadline = System.currentTimeMillis() + 8000;
-            int tries = 0;
-            while (System.currentTimeMillis() < deadline) {
-                AutoWebAgent.ContextWrapper best = selectBestContext(rootPage, null);
-                if (best != null && best.name != null && !"Main Page".equals(best.name)) {
-                    if (uiLogger != null) uiLogger.accept("已识别到内容上下文: " + best.name);
-                    return best;
+            // iframe 场景常见“先出主页面再异步挂载内容 frame”：frame 事件一到立即重扫，无事件时最多等 500ms 兜底重扫
+            try (FrameScanner.Watcher watcher = FrameScanner.Watcher.attach(rootPage)) {
+                long deadline = System.currentTimeMillis() + 8000;
+                int tries = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    int seen = watcher.version();
+                    AutoWebAgent.ContextWrapper best = selectBestContext(rootPage, null);
+                    if (best != null && best.name != null && !"Main Page".equals(best.name)) {
+                        if (uiLogger != null) uiLogger.accept("已识别到内容上下文: " + best.name);
+                        return best;
+                    }
+                    tries++;
+                    if (uiLogger != null && tries % 4 == 0) uiLogger.accept("等待 iframe 就绪中...");
+                    watcher.awaitChange(seen, Math.min(FrameScanner.MAX_IDLE_WAIT_MS, deadline - System.currentTimeMillis()));
                 }
-                tries++;
-                if (uiLogger != null && tries % 4 == 0) uiLogger.accept("等待 iframe 就绪中...");
-                try { rootPage.waitForTimeout(500); } catch (Exception ignored) {}
             }
             return selectBestContext(rootPage, uiLogger);
         }
@@ -457,14 +458,17 @@ class PlanRoutingSupport {
             return fallback;
         }
         synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
-            long deadline = System.currentTimeMillis() + 8000;
-            while (System.currentTimeMillis() < deadline) {
-                AutoWebAgent.ContextWrapper best = selectBestContext(rootPage, null);
-                if (best != null && best.name != null && !"Main Page".equals(best.name)) {
-                    if (uiLogger != null) uiLogger.accept("已自动选中最佳上下文: " + best.name);
-                    return best;
+            try (FrameScanner.Watcher watcher = FrameScanner.Watcher.attach(rootPage)) {
+                long deadline = System.currentTimeMillis() + 8000;
+                while (System.currentTimeMillis() < deadline) {
+                    int seen = watcher.version();
+                    AutoWebAgent.ContextWrapper best = selectBestContext(rootPage, null);
+                    if (best != null && best.name != null && !"Main Page".equals(best.name)) {
+                        if (uiLogger != null) uiLogger.accept("已自动选中最佳上下文: " + best.name);
+                        return best;
+                    }
+                    watcher.awaitChange(seen, Math.min(FrameScanner.MAX_IDLE_WAIT_MS, deadline - System.currentTimeMillis()));
                 }
-                try { rootPage.waitForTimeout(500); } catch (Exception ignored) {}
             }
             return selectBestContext(rootPage, uiLogger);
         }
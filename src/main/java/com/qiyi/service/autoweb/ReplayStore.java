@@ -0,0 +1,304 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.qiyi.config.AppConfig;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 计划/脚本回放存储：(任务文本, 入口 URL) → 最近一次成功的计划、代码与步骤结果，并附带当时入口页的结构指纹。
+ *
+ * <p>同一站点的周期性任务（每日导出、固定报表）再次执行时，若入口页结构指纹与记录一致，
+ * 直接复用记录中的计划与代码执行，跳过计划生成、快照采集与代码生成三次模型调用；
+ * 指纹漂移、回放失败时由调用方作废记录并重新生成。</p>
+ *
+ * <p>存储位于 autoweb/replay/replay.json（不放在 autoweb/cache 下：启动时会清理 cache 目录）。
+ * 记录数超过 {@link #MAX_RECORDS} 时按最近使用时间淘汰。</p>
+ */
+public final class ReplayStore {
+    static final String DIR_NAME = "replay";
+    static final String FILE_NAME = "replay.json";
+    /** 记录条数上限 */
+    static final int MAX_RECORDS = 500;
+    /** 指纹特征数上限，避免超大页面把存储文件撑大 */
+    static final int MAX_FEATURES = 4000;
+    /** 特征路径向上追溯的祖先层数 */
+    private static final int PATH_DEPTH = 4;
+
+    private static final Map<Path, ReplayStore> BY_DIR = new ConcurrentHashMap<>();
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, Record> records = new LinkedHashMap<>();
+    private boolean loaded;
+
+    /**
+     * 入口页结构指纹。
+     * features 为去重后的元素路径签名（标签 + 不含数字的 class，向上 4 层），与文本、行数、数值无关；
+     * hash 为 features 排序后的 SHA-256。
+     */
+    public static final class Fingerprint {
+        public String hash;
+        public List<String> features = new ArrayList<>();
+
+        /**
+         * 根据（清洗后的）页面 HTML 计算指纹。
+         */
+        public static Fingerprint of(String html) {
+            Fingerprint fp = new Fingerprint();
+            Set<String> features = new TreeSet<>();
+            if (html != null && !html.trim().isEmpty()) {
+                Document doc = Jsoup.parse(html);
+                for (Element el : doc.body().getAllElements()) {
+                    if (el == doc.body()) continue;
+                    features.add(pathSignature(el, doc.body()));
+                    if (features.size() >= MAX_FEATURES) break;
+                }
+            }
+            fp.features.addAll(features);
+            fp.hash = sha256Hex(String.join("\n", fp.features));
+            return fp;
+        }
+
+        /**
+         * 与另一个指纹的 Jaccard 相似度（0~1）；hash 相同直接返回 1。
+         */
+        public double similarity(Fingerprint other) {
+            if (other == null) return 0.0;
+            if (hash != null && hash.equals(other.hash)) return 1.0;
+            Set<String> a = new HashSet<>(features == null ? new ArrayList<>() : features);
+            Set<String> b = new HashSet<>(other.features == null ? new ArrayList<>() : other.features);
+            if (a.isEmpty() && b.isEmpty()) return 1.0;
+            int inter = 0;
+            for (String s : a) if (b.contains(s)) inter++;
+            int union = a.size() + b.size() - inter;
+            return union == 0 ? 0.0 : (double) inter / union;
+        }
+    }
+
+    /**
+     * 单步执行结果摘要。
+     */
+    public static final class StepOutcome {
+        public int stepIndex;
+        public boolean ok;
+        public long durationMs;
+    }
+
+    /**
+     * 一条回放记录。
+     */
+    public static final class Record {
+        public String key;
+        public String userTask;
+        public String entryUrl;
+        public String modelKey;
+        public String captureMode;
+        public String planText;
+        public String code;
+        public Fingerprint fingerprint;
+        public List<StepOutcome> stepResults = new ArrayList<>();
+        public long createdAt;
+        public long lastUsedAt;
+        public int replayCount;
+    }
+
+    ReplayStore(Path autowebDir) {
+        this.root = autowebDir.resolve(DIR_NAME);
+        this.file = root.resolve(FILE_NAME);
+    }
+
+    /**
+     * 默认实例：当前工作目录下的 autoweb/replay。
+     */
+    public static ReplayStore shared() {
+        return forDir(Paths.get(System.getProperty("user.dir"), "autoweb"));
+    }
+
+    /**
+     * 指定 autoweb 目录下的实例（同一目录共用一个实例）。
+     */
+    public static ReplayStore forDir(Path autowebDir) {
+        Path dir = autowebDir.toAbsolutePath().normalize();
+        return BY_DIR.computeIfAbsent(dir, ReplayStore::new);
+    }
+
+    public static boolean isEnabled() {
+        return AppConfig.getInstance().isAutowebReplayEnabled();
+    }
+
+    /**
+     * 计算 (任务文本, 入口 URL) 的记录 key：任务文本折叠空白，URL 去掉 query/fragment。
+     */
+    public static String keyOf(String userTask, String entryUrl) {
+        String task = userTask == null ? "" : userTask.trim().replaceAll("\\s+", " ");
+        String url = entryUrl == null ? "" : entryUrl.trim();
+        if (PlanRoutingSupport.looksLikeUrl(url)) url = PlanRoutingSupport.stripUrlQuery(url);
+        return sha256Hex(task + "\n" + url);
+    }
+
+    /**
+     * 查找可回放的记录：key 命中且指纹相似度不低于阈值才返回，否则返回 null。
+     */
+    public synchronized Record find(String userTask, String entryUrl, Fingerprint current, double threshold, java.util.function.Consumer<String> logger) {
+        ensureLoaded();
+        String key = keyOf(userTask, entryUrl);
+        Record r = records.get(key);
+        if (r == null) {
+            StorageSupport.log(logger, "REPLAY", "miss | no record", null);
+            return null;
+        }
+        if (r.code == null || r.code.trim().isEmpty() || r.planText == null || r.planText.trim().isEmpty()) {
+            StorageSupport.log(logger, "REPLAY", "miss | record incomplete", null);
+            return null;
+        }
+        double sim = r.fingerprint == null ? 0.0 : r.fingerprint.similarity(current);
+        if (sim < threshold) {
+            StorageSupport.log(logger, "REPLAY", "miss | fingerprint drift similarity=" + String.format("%.3f", sim) + " threshold=" + threshold, null);
+            return null;
+        }
+        StorageSupport.log(logger, "REPLAY", "hit | similarity=" + String.format("%.3f", sim) + " replayCount=" + r.replayCount, null);
+        return r;
+    }
+
+    /**
+     * 保存（覆盖）一次成功执行的记录。
+     */
+    public synchronized void save(Record r) {
+        if (r == null) return;
+        ensureLoaded();
+        long now = System.currentTimeMillis();
+        r.key = keyOf(r.userTask, r.entryUrl);
+        if (r.createdAt <= 0) r.createdAt = now;
+        r.lastUsedAt = now;
+        records.remove(r.key);
+        records.put(r.key, r);
+        evict();
+        persist();
+    }
+
+    /**
+     * 回放成功：刷新使用时间与次数。
+     */
+    public synchronized void markReplayed(String userTask, String entryUrl) {
+        ensureLoaded();
+        Record r = records.get(keyOf(userTask, entryUrl));
+        if (r == null) return;
+        r.lastUsedAt = System.currentTimeMillis();
+        r.replayCount++;
+        persist();
+    }
+
+    /**
+     * 作废记录（回放失败后调用，下一次执行重新生成）。
+     */
+    public synchronized void invalidate(String userTask, String entryUrl) {
+        ensureLoaded();
+        if (records.remove(keyOf(userTask, entryUrl)) != null) persist();
+    }
+
+    synchronized int size() {
+        ensureLoaded();
+        return records.size();
+    }
+
+    private void evict() {
+        if (records.size() <= MAX_RECORDS) return;
+        List<Record> byUse = new ArrayList<>(records.values());
+        byUse.sort((a, b) -> Long.compare(a.lastUsedAt, b.lastUsedAt));
+        for (int i = 0; i < byUse.size() && records.size() > MAX_RECORDS; i++) {
+            records.remove(byUse.get(i).key);
+        }
+    }
+
+    private static final class StoreFile {
+        int version = 1;
+        List<Record> records = new ArrayList<>();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(file)) return;
+        try {
+            String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            StoreFile f = GSON.fromJson(json, StoreFile.class);
+            if (f != null && f.records != null) {
+                for (Record r : f.records) {
+                    if (r != null && r.key != null) records.put(r.key, r);
+                }
+            }
+        } catch (Exception e) {
+            StorageSupport.log(null, "REPLAY", "store load failed, start empty", e);
+        }
+    }
+
+    private void persist() {
+        try {
+            Files.createDirectories(root);
+            StoreFile f = new StoreFile();
+            f.records.addAll(records.values());
+            Path tmp = root.resolve(FILE_NAME + ".tmp");
+            Files.write(tmp, GSON.toJson(f).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            StorageSupport.log(null, "REPLAY", "store persist failed", e);
+        }
+    }
+
+    private static String pathSignature(Element el, Element stop) {
+        StringBuilder sb = new StringBuilder();
+        Element cur = el;
+        for (int depth = 0; depth < PATH_DEPTH && cur != null && cur != stop; depth++) {
+            if (sb.length() > 0) sb.insert(0, '>');
+            sb.insert(0, nodeSignature(cur));
+            cur = cur.parent();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 标签 + 排序后的 class；含数字的 class（CSS-in-JS 哈希、行号等）不参与，避免每次构建/每条数据都不同。
+     */
+    private static String nodeSignature(Element el) {
+        StringBuilder sb = new StringBuilder(el.tagName());
+        TreeSet<String> classes = new TreeSet<>();
+        for (String c : el.classNames()) {
+            if (c.isEmpty()) continue;
+            boolean hasDigit = false;
+            for (int i = 0; i < c.length() && !hasDigit; i++) hasDigit = Character.isDigit(c.charAt(i));
+            if (!hasDigit) classes.add(c);
+        }
+        for (String c : classes) sb.append('.').append(c);
+        return sb.toString();
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+            byte[] b = md.digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte x : b) sb.append(String.format("%02x", x));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(s.hashCode());
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.qiyi.service.autoweb;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 视觉补充的截图处理：发给视觉模型前先缩放、重编码到字节预算内，并计算感知哈希复用已有的视觉描述。
+ *
+ * <ul>
+ *     <li>缩放：最长边超过 maxEdge 时等比缩小；重编码为 JPEG，逐级降低质量（必要时再缩小）直到不超过 maxBytes；
+ *     结果不比原图小时直接发原图</li>
+ *     <li>感知哈希：9x8 灰度块均值的差分哈希（dHash，64 位），与分辨率无关；滚动条、光标等细小差异只改变少数位</li>
+ *     <li>描述复用：视觉描述缓存旁保存生成时各截图的哈希，新截图数量相同且逐张汉明距离不超过阈值时直接复用描述，不再调用视觉模型</li>
+ * </ul>
+ *
+ * <p>先 {@link #hashAll} 只解码并计算哈希，复用失败、确实要调用视觉模型时再 {@link #encodeAll} 缩放重编码，
+ * 调用结束后 {@link #cleanup} 删除重编码产生的 _vl.jpg。</p>
+ */
+final class ScreenshotPipeline {
+    private ScreenshotPipeline() {
+    }
+
+    private static final float[] JPEG_QUALITIES = {0.85f, 0.75f, 0.65f, 0.55f, 0.45f};
+    private static final int MAX_SHRINK_ROUNDS = 3;
+    /** 相邻块灰度差（0~255 级，乘 1000 的加权和）小于约 2 级视为相同，避免大片空白区域的位被噪点翻转 */
+    private static final double HASH_FLAT_MARGIN = 2000.0;
+
+    private static final AtomicInteger VISION_CALLS = new AtomicInteger();
+    private static final AtomicInteger REUSED = new AtomicInteger();
+    private static final AtomicLong RAW_BYTES = new AtomicLong();
+    private static final AtomicLong SENT_BYTES = new AtomicLong();
+
+    /**
+     * 一张处理后的截图：实际发送的文件、感知哈希与处理前后的字节数。
+     */
+    static final class Prepared {
+        /** 原始截图 */
+        File source;
+        /** 实际发送的文件：未重编码时即 source */
+        File file;
+        long hash;
+        boolean hashed;
+        long rawBytes;
+        long sentBytes;
+        int width;
+        int height;
+        /** 解码后的图片，重编码后释放 */
+        BufferedImage image;
+    }
+
+    /**
+     * 缩放并重编码截图。图片无法解码时原样返回（hashed=false，不参与描述复用）。
+     *
+     * @param src 原始截图（PNG）
+     * @param maxEdge 最长边上限（像素），&lt;=0 表示不缩放
+     * @param maxBytes 字节预算，&lt;=0 表示不限制
+     */
+    static Prepared prepare(File src, int maxEdge, long maxBytes) {
+        Prepared p = hash(src);
+        encode(p, maxEdge, maxBytes);
+        return p;
+    }
+
+    /**
+     * 只解码并计算感知哈希，不重编码、不写文件。
+     */
+    static Prepared hash(File src) {
+        Prepared p = new Prepared();
+        p.source = src;
+        p.file = src;
+        if (src == null) return p;
+        p.rawBytes = src.length();
+        p.sentBytes = p.rawBytes;
+        BufferedImage img;
+        try {
+            img = ImageIO.read(src);
+        } catch (Exception e) {
+            img = null;
+        }
+        if (img == null) return p;
+        p.hash = dHash(img);
+        p.hashed = true;
+        p.width = img.getWidth();
+        p.height = img.getHeight();
+        p.image = img;
+        return p;
+    }
+
+    /**
+     * 按最长边与字节预算重编码 {@link #hash} 的结果，写出 &lt;原名&gt;_vl.jpg 并更新 file/sentBytes。
+     */
+    static void encode(Prepared p, int maxEdge, long maxBytes) {
+        BufferedImage img = p.image;
+        p.image = null;
+        if (img == null) return;
+        File src = p.source;
+
+        boolean overEdge = maxEdge > 0 && Math.max(img.getWidth(), img.getHeight()) > maxEdge;
+        boolean overBytes = maxBytes > 0 && p.rawBytes > maxBytes;
+        if (!overEdge && !overBytes) return;
+
+        try {
+            BufferedImage scaled = overEdge ? scaleToEdge(img, maxEdge) : toRgb(img);
+            byte[] encoded = null;
+            for (int round = 0; round <= MAX_SHRINK_ROUNDS; round++) {
+                for (float q : JPEG_QUALITIES) {
+                    encoded = encodeJpeg(scaled, q);
+                    if (maxBytes <= 0 || encoded.length <= maxBytes) break;
+                }
+                if (maxBytes <= 0 || encoded.length <= maxBytes || round == MAX_SHRINK_ROUNDS) break;
+                int edge = (int) (Math.max(scaled.getWidth(), scaled.getHeight()) * 0.8);
+                scaled = scaleToEdge(scaled, Math.max(320, edge));
+            }
+            if (encoded == null || encoded.length >= p.rawBytes) return;
+            File out = new File(src.getParentFile(), baseName(src.getName()) + "_vl.jpg");
+            Files.write(out.toPath(), encoded);
+            p.file = out;
+            p.sentBytes = encoded.length;
+            p.width = scaled.getWidth();
+            p.height = scaled.getHeight();
+        } catch (Exception ignored) {
+            p.file = src;
+            p.sentBytes = p.rawBytes;
+        }
+    }
+
+    static List<Prepared> hashAll(List<File> images) {
+        List<Prepared> out = new ArrayList<>();
+        if (images == null) return out;
+        for (File f : images) {
+            if (f == null) continue;
+            out.add(hash(f));
+        }
+        return out;
+    }
+
+    static void encodeAll(List<Prepared> images, int maxEdge, long maxBytes) {
+        if (images == null) return;
+        for (Prepared p : images) encode(p, maxEdge, maxBytes);
+    }
+
+    /**
+     * 删除重编码产生的文件（原始截图保留），视觉模型调用结束后调用。
+     */
+    static void cleanup(List<Prepared> images) {
+        if (images == null) return;
+        for (Prepared p : images) {
+            if (p.file == null || p.file.equals(p.source)) continue;
+            try {
+                Files.deleteIfExists(p.file.toPath());
+            } catch (Exception ignored) {
+            }
+            p.file = p.source;
+        }
+    }
+
+    /**
+     * 差分哈希：按 9x8 网格求灰度块均值，右块比左块亮（超过 {@link #HASH_FLAT_MARGIN}）记 1。
+     */
+    static long dHash(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        if (w <= 0 || h <= 0) return 0L;
+        double[] cells = new double[9 * 8];
+        int[] row = new int[w];
+        for (int gy = 0; gy < 8; gy++) {
+            int y0 = gy * h / 8;
+            int y1 = Math.max(y0 + 1, (gy + 1) * h / 8);
+            for (int y = y0; y < y1 && y < h; y++) {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                for (int gx = 0; gx < 9; gx++) {
+                    int x0 = gx * w / 9;
+                    int x1 = Math.max(x0 + 1, (gx + 1) * w / 9);
+                    long sum = 0;
+                    for (int x = x0; x < x1 && x < w; x++) {
+                        int rgb = row[x];
+                        sum += ((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114;
+                    }
+                    cells[gy * 9 + gx] += (double) sum / ((x1 - x0) * (long) (y1 - y0));
+                }
+            }
+        }
+        long hash = 0L;
+        int bit = 0;
+        for (int gy = 0; gy < 8; gy++) {
+            for (int gx = 0; gx < 8; gx++) {
+                if (cells[gy * 9 + gx + 1] - cells[gy * 9 + gx] > HASH_FLAT_MARGIN) hash |= 1L << bit;
+                bit++;
+            }
+        }
+        return hash;
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 截图未变化时复用视觉描述：哈希文件存在、未超过 maxAgeMillis、截图数量相同且逐张距离不超过 maxDistance。
+     *
+     * @return 复用的描述；不满足条件返回 null
+     */
+    static String reuseDescription(Path descPath, Path hashPath, List<Prepared> images, int maxDistance, long maxAgeMillis) {
+        if (descPath == null || hashPath == null || images == null || images.isEmpty()) return null;
+        for (Prepared p : images) {
+            if (!p.hashed) return null;
+        }
+        try {
+            if (!Files.exists(descPath) || !Files.exists(hashPath)) return null;
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(hashPath).toMillis();
+            if (maxAgeMillis > 0 && (age < 0 || age > maxAgeMillis)) return null;
+            List<Long> stored = parseHashes(Files.readString(hashPath, StandardCharsets.UTF_8));
+            if (stored.size() != images.size()) return null;
+            for (int i = 0; i < stored.size(); i++) {
+                if (distance(stored.get(i), images.get(i).hash) > maxDistance) return null;
+            }
+            String desc = Files.readString(descPath, StandardCharsets.UTF_8);
+            if (desc == null || desc.trim().isEmpty()) return null;
+            // 刷新描述文件时间，URL 级短缓存在此之后继续生效；哈希文件时间不变，复用总时长仍受 maxAgeMillis 限制
+            Files.setLastModifiedTime(descPath, FileTime.fromMillis(System.currentTimeMillis()));
+            REUSED.incrementAndGet();
+            return desc.trim();
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * 视觉模型返回描述后记录本次截图的哈希。
+     */
+    static void rememberHashes(Path hashPath, List<Prepared> images) {
+        if (hashPath == null || images == null || images.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (Prepared p : images) {
+            if (!p.hashed) return;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(Long.toHexString(p.hash));
+        }
+        try {
+            Files.createDirectories(hashPath.getParent());
+            Files.writeString(hashPath, sb.toString(), StandardCharsets.UTF_8);
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * 记录一次视觉模型调用的上传字节数。
+     */
+    static void recordVisionCall(List<Prepared> images) {
+        VISION_CALLS.incrementAndGet();
+        if (images == null) return;
+        for (Prepared p : images) {
+            RAW_BYTES.addAndGet(p.rawBytes);
+            SENT_BYTES.addAndGet(p.sentBytes);
+        }
+    }
+
+    static String stats() {
+        return "visionCalls=" + VISION_CALLS.get() + ", reused=" + REUSED.get() +
+                ", rawKB=" + RAW_BYTES.get() / 1024 + ", sentKB=" + SENT_BYTES.get() / 1024;
+    }
+
+    static List<String> paths(List<Prepared> images) {
+        List<String> out = new ArrayList<>();
+        if (images == null) return out;
+        for (Prepared p : images) {
+            if (p.file != null) out.add(p.file.getAbsolutePath());
+        }
+        return out;
+    }
+
+    private static List<Long> parseHashes(String text) {
+        List<Long> out = new ArrayList<>();
+        if (text == null) return out;
+        for (String part : text.trim().split(",")) {
+            String s = part.trim();
+            if (s.isEmpty()) continue;
+            out.add(Long.parseUnsignedLong(s, 16));
+        }
+        return out;
+    }
+
+    private static BufferedImage scaleToEdge(BufferedImage img, int maxEdge) {
+        BufferedImage cur = toRgb(img);
+        int longest = Math.max(cur.getWidth(), cur.getHeight());
+        if (longest <= maxEdge) return cur;
+        double scale = (double) maxEdge / longest;
+        int tw = Math.max(1, (int) Math.round(cur.getWidth() * scale));
+        int th = Math.max(1, (int) Math.round(cur.getHeight() * scale));
+        // 逐级减半再缩到目标尺寸，避免单次双线性大比例缩小时文字发糊
+        while (cur.getWidth() / 2 >= tw && cur.getHeight() / 2 >= th) {
+            cur = resize(cur, cur.getWidth() / 2, cur.getHeight() / 2);
+        }
+        return resize(cur, tw, th);
+    }
+
+    private static BufferedImage resize(BufferedImage img, int w, int h) {
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(img, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static BufferedImage toRgb(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_RGB) return img;
+        BufferedImage out = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, img.getWidth(), img.getHeight());
+            g.drawImage(img, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage img, float quality) throws Exception {
+        Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!it.hasNext()) throw new IllegalStateException("No JPEG writer");
+        ImageWriter writer = it.next();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bos.toByteArray();
+    }
+
+    private static String baseName(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,235 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.qiyi.config.AppConfig;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 选择器解析记忆：(页面模板, 解析类型, 逻辑选择器) → 上次在该页面上实际命中的候选选择器。
+ *
+ * <p>WebDSL 的兜底链（复选框候选、按文本定位点击目标、行选择器探测）每次都从头逐个探测候选，
+ * 每个候选至少一次 count()/isVisible() 往返。记住上次命中的候选后，下次同一页面模板先试它，
+ * 命中即跳过前面的全部探测；记住的候选失配时记一次 miss，连续 {@link #MAX_MISSES} 次失配即丢弃，
+ * 兜底链重新命中其他候选时直接替换（自愈）。</p>
+ *
+ * <p>页面模板为 host + path，path 中的数字段、长十六进制段归一为占位符，同一类详情页共享记忆。
+ * 存储位于 autoweb/selectors/selectors.json（不放在 autoweb/cache 下：启动时会清理 cache 目录），
+ * 条目数超过 {@link #MAX_ENTRIES} 时按最近使用时间淘汰。</p>
+ */
+final class SelectorMemory {
+    static final String DIR_NAME = "selectors";
+    static final String FILE_NAME = "selectors.json";
+    /** 条目数上限 */
+    static final int MAX_ENTRIES = 2000;
+    /** 连续失配多少次后丢弃记忆 */
+    static final int MAX_MISSES = 2;
+
+    private static final Map<Path, SelectorMemory> BY_DIR = new ConcurrentHashMap<>();
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+
+    static final class Entry {
+        String key;
+        String concrete;
+        int hits;
+        int misses;
+        long lastUsedAt;
+    }
+
+    SelectorMemory(Path autowebDir) {
+        this.root = autowebDir.resolve(DIR_NAME);
+        this.file = root.resolve(FILE_NAME);
+    }
+
+    /**
+     * 默认实例：当前工作目录下的 autoweb/selectors；关闭配置时返回 null。
+     */
+    static SelectorMemory sharedIfEnabled() {
+        if (!AppConfig.getInstance().isAutowebSelectorMemoryEnabled()) return null;
+        return forDir(Paths.get(System.getProperty("user.dir"), "autoweb"));
+    }
+
+    static SelectorMemory forDir(Path autowebDir) {
+        Path dir = autowebDir.toAbsolutePath().normalize();
+        return BY_DIR.computeIfAbsent(dir, SelectorMemory::new);
+    }
+
+    /**
+     * 页面模板：host + 归一化 path；无法解析的 URL 返回 null（不参与记忆）。
+     */
+    static String pageKeyOf(String url) {
+        if (url == null) return null;
+        String u = url.trim();
+        if (u.isEmpty() || "about:blank".equalsIgnoreCase(u)) return null;
+        try {
+            URI uri = new URI(u);
+            String host = uri.getHost();
+            if (host == null || host.isEmpty()) return null;
+            String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+            StringBuilder sb = new StringBuilder(host.toLowerCase(Locale.ROOT));
+            for (String seg : path.split("/")) {
+                if (seg.isEmpty()) continue;
+                sb.append('/');
+                if (seg.matches("\\d+")) sb.append("{n}");
+                else if (seg.matches("(?i)[0-9a-f-]{16,}")) sb.append("{id}");
+                else sb.append(seg);
+            }
+            String frag = uri.getRawFragment();
+            // hash 路由的单页应用：路由部分同样参与模板
+            if (frag != null && frag.startsWith("/")) {
+                String route = frag.split("\\?", 2)[0].replaceAll("/\\d+(?=/|$)", "/{n}");
+                sb.append('#').append(route);
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 返回记住的候选，没有则返回 null。
+     */
+    synchronized String recall(String pageKey, String kind, String logical) {
+        ensureLoaded();
+        Entry e = entries.get(keyOf(pageKey, kind, logical));
+        return e == null ? null : e.concrete;
+    }
+
+    /**
+     * 记住的候选再次命中。
+     */
+    synchronized void hit(String pageKey, String kind, String logical) {
+        ensureLoaded();
+        Entry e = entries.get(keyOf(pageKey, kind, logical));
+        if (e == null) return;
+        e.hits++;
+        e.misses = 0;
+        e.lastUsedAt = System.currentTimeMillis();
+        dirty = true;
+    }
+
+    /**
+     * 记住的候选失配：累计到 {@link #MAX_MISSES} 次即丢弃。
+     */
+    synchronized void miss(String pageKey, String kind, String logical) {
+        ensureLoaded();
+        String key = keyOf(pageKey, kind, logical);
+        Entry e = entries.get(key);
+        if (e == null) return;
+        e.misses++;
+        if (e.misses >= MAX_MISSES) entries.remove(key);
+        persist();
+    }
+
+    /**
+     * 兜底链命中了新的候选：写入或替换记忆。
+     */
+    synchronized void remember(String pageKey, String kind, String logical, String concrete) {
+        if (concrete == null || concrete.isEmpty()) return;
+        ensureLoaded();
+        String key = keyOf(pageKey, kind, logical);
+        Entry e = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (e != null && concrete.equals(e.concrete)) {
+            e.lastUsedAt = now;
+            e.misses = 0;
+            dirty = true;
+            return;
+        }
+        e = new Entry();
+        e.key = key;
+        e.concrete = concrete;
+        e.lastUsedAt = now;
+        entries.remove(key);
+        entries.put(key, e);
+        evict();
+        persist();
+    }
+
+    /**
+     * 清除记忆（兜底链首个候选即命中时，没有可节省的探测）。
+     */
+    synchronized void forget(String pageKey, String kind, String logical) {
+        ensureLoaded();
+        if (entries.remove(keyOf(pageKey, kind, logical)) != null) persist();
+    }
+
+    /**
+     * 把命中次数等增量写盘；一次脚本执行结束时调用。
+     */
+    synchronized void flush() {
+        if (dirty) persist();
+    }
+
+    synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    private static String keyOf(String pageKey, String kind, String logical) {
+        return pageKey + "\n" + kind + "\n" + (logical == null ? "" : logical.trim());
+    }
+
+    private void evict() {
+        if (entries.size() <= MAX_ENTRIES) return;
+        List<Entry> byUse = new ArrayList<>(entries.values());
+        byUse.sort((a, b) -> Long.compare(a.lastUsedAt, b.lastUsedAt));
+        for (int i = 0; i < byUse.size() && entries.size() > MAX_ENTRIES; i++) {
+            entries.remove(byUse.get(i).key);
+        }
+    }
+
+    private static final class StoreFile {
+        int version = 1;
+        List<Entry> entries = new ArrayList<>();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!Files.exists(file)) return;
+        try {
+            String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            StoreFile f = GSON.fromJson(json, StoreFile.class);
+            if (f != null && f.entries != null) {
+                for (Entry e : f.entries) {
+                    if (e != null && e.key != null && e.concrete != null) entries.put(e.key, e);
+                }
+            }
+        } catch (Exception e) {
+            StorageSupport.log(null, "SELECTOR_MEMORY", "store load failed, start empty", e);
+        }
+    }
+
+    private void persist() {
+        dirty = false;
+        try {
+            Files.createDirectories(root);
+            StoreFile f = new StoreFile();
+            f.entries.addAll(entries.values());
+            Path tmp = root.resolve(FILE_NAME + ".tmp");
+            Files.write(tmp, GSON.toJson(f).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            StorageSupport.log(null, "SELECTOR_MEMORY", "store persist failed", e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.qiyi.service.autoweb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 事件驱动的“页面稳定”等待（settle），用于替代翻页/滚动后的固定 sleep。
+ *
+ * <p>页面脚本在目标容器上同时观察三类信号，满足即返回，总等待不超过 timeoutMs：</p>
+ * <ul>
+ *     <li>行集签名：行数 + 首行/末行文本，与操作前的签名不同即认为新数据已出现（翻页场景）</li>
+ *     <li>网络静默：PerformanceObserver 记录 xhr/fetch 完成时间，最近 quietMs 内没有接口返回</li>
+ *     <li>加载态消失：与容器重叠的 loading/spin 遮罩不可见，且容器子树静默 quietMs</li>
+ * </ul>
+ *
+ * <p>没有操作前签名时（滚动场景）只要求“无加载态 + DOM/网络静默”；firstMutationMs 内没有任何变化视为无待渲染内容。
+ * 传入 scrollStep 时脚本先挂好观察器再滚动容器，一次调用完成“滚动 + 等待渲染”，已到底部时直接返回 atBottom。
+ * 页面脚本执行失败（如整页跳转导致执行上下文销毁）时由调用方按原固定时长等待。</p>
+ */
+final class SettleSupport {
+    /** 公开 settle() 的默认等待上限 */
+    static final int DEFAULT_TIMEOUT_MS = 3000;
+    /** 翻页等待上限（仍有加载态时最多等到这里） */
+    static final int PAGINATION_TIMEOUT_MS = 5000;
+    /** 翻页原固定等待；签名一直未变化时最多等这么久，不比原实现慢 */
+    static final int PAGINATION_FIXED_WAIT_MS = 2000;
+    /** 滚动后等待上限 */
+    static final int SCROLL_TIMEOUT_MS = 1500;
+    /** 下拉弹层打开/滚动后的等待上限（弹层挂在 body 上，观察范围大，上限取小） */
+    static final int DROPDOWN_TIMEOUT_MS = 600;
+    /** 多久内没有任何 DOM/网络变化即认为没有待渲染内容 */
+    static final int FIRST_MUTATION_MS = 150;
+    /** 最后一次 DOM 变化/接口返回后保持静默多久认为渲染完成 */
+    static final int QUIET_MS = 100;
+    /** 页面内轮询间隔 */
+    static final int POLL_MS = 40;
+
+    /** 常见组件库的加载态（Ant Design / Element UI / 通用 aria-busy） */
+    static final List<String> SPINNER_SELECTORS = Arrays.asList(
+            ".ant-spin-spinning",
+            ".ant-table-loading .ant-spin",
+            ".el-loading-mask",
+            ".el-loading-spinner",
+            ".art-loading",
+            ".loading-mask",
+            "[aria-busy='true']"
+    );
+
+    private SettleSupport() {
+    }
+
+    /** 行集签名：行选择器不是合法 CSS 或没有匹配行时退化为容器文本长度 */
+    private static final String SIGNATURE_FN = ""
+            + "  const norm = s => (s || '').replace(/\\s+/g, ' ').trim();"
+            + "  const sig = () => {"
+            + "    let rows = null;"
+            + "    if (o.rowSelector) { try { rows = root.querySelectorAll(o.rowSelector); } catch (e) { rows = null; } }"
+            + "    if (!rows) return 'text:' + norm(root.textContent).length;"
+            + "    const n = rows.length;"
+            + "    if (n === 0) return 'rows:0|text:' + norm(root.textContent).length;"
+            + "    return 'rows:' + n + '|' + norm(rows[0].textContent).slice(0, 200) + '|' + norm(rows[n - 1].textContent).slice(0, 200);"
+            + "  };";
+
+    /**
+     * Locator.evaluate(container, {rowSelector})：返回当前行集签名。
+     */
+    static final String SIGNATURE_JS = ""
+            + "(el, o) => {"
+            + "  const root = el || document.body;"
+            + SIGNATURE_FN
+            + "  return sig();"
+            + "}";
+
+    /**
+     * Locator.evaluate(container, opts)：等待页面稳定，返回 {settled, reason, waitedMs, mutated, requests, signature, atBottom, moved}。
+     *
+     * <p>reason：rows-changed（签名变化）、dom-quiet（有变化且已静默）、no-change（无任何变化）、
+     * unchanged（签名在 unchangedMs 内未变化）、timeout（仍有加载态或持续变化）、at-bottom（scrollStep 模式下已到底部）。</p>
+     */
+    static final String SETTLE_JS = ""
+            + "async (el, o) => {"
+            + "  let root = el || document.body;"
+            + SIGNATURE_FN
+            + "  const top0 = root.scrollTop;"
+            + "  if (o.scrollStep > 0) {"
+            + "    const max = root.scrollHeight - root.clientHeight;"
+            + "    if (max > 0 && (max - top0) <= 2) return { settled: true, reason: 'at-bottom', waitedMs: 0, mutated: false, requests: 0, signature: sig(), atBottom: true, moved: 0 };"
+            + "  }"
+            + "  const start = performance.now();"
+            + "  let lastMut = start; let mutated = false; let lastNet = -1e9; let net = 0;"
+            + "  const obs = new MutationObserver(() => { lastMut = performance.now(); mutated = true; });"
+            + "  const watch = r => obs.observe(r, { childList: true, subtree: true, characterData: true });"
+            + "  watch(root);"
+            + "  let po = null;"
+            + "  try {"
+            + "    po = new PerformanceObserver(list => {"
+            + "      for (const e of list.getEntries()) {"
+            + "        if (e.initiatorType === 'xmlhttprequest' || e.initiatorType === 'fetch') { lastNet = performance.now(); net++; }"
+            + "      }"
+            + "    });"
+            + "    po.observe({ type: 'resource', buffered: false });"
+            + "  } catch (e) { po = null; }"
+            + "  let moved = 0;"
+            + "  if (o.scrollStep > 0) {"
+            + "    root.scrollTop = top0 + o.scrollStep;"
+            + "    root.dispatchEvent(new Event('scroll', { bubbles: true }));"
+            + "    moved = root.scrollTop - top0;"
+            + "  }"
+            + "  const busy = () => {"
+            + "    const rr = root.getBoundingClientRect();"
+            + "    const whole = root === document.body;"
+            + "    for (const s of (o.spinners || [])) {"
+            + "      let list;"
+            + "      try { list = document.querySelectorAll(s); } catch (e) { continue; }"
+            + "      for (const x of list) {"
+            + "        const r = x.getBoundingClientRect();"
+            + "        if (r.width <= 0 || r.height <= 0) continue;"
+            + "        if (whole || !(r.right < rr.left || r.left > rr.right || r.bottom < rr.top || r.top > rr.bottom)) return true;"
+            + "      }"
+            + "    }"
+            + "    return false;"
+            + "  };"
+            + "  const done = (settled, reason) => ({ settled, reason, waitedMs: Math.round(performance.now() - start), mutated, requests: net, signature: sig(), atBottom: false, moved });"
+            + "  try {"
+            + "    for (;;) {"
+            + "      if (!root.isConnected) { obs.disconnect(); root = document.body; watch(root); lastMut = performance.now(); mutated = true; }"
+            + "      const now = performance.now();"
+            + "      const elapsed = now - start;"
+            + "      const idle = now - lastMut >= o.quietMs && now - lastNet >= o.quietMs && !busy();"
+            + "      if (o.before != null) {"
+            + "        if (idle && sig() !== o.before) return done(true, 'rows-changed');"
+            + "        if (idle && elapsed >= o.unchangedMs) return done(false, 'unchanged');"
+            + "      } else if (idle && (mutated || net > 0)) {"
+            + "        return done(true, 'dom-quiet');"
+            + "      } else if (idle && elapsed >= o.firstMutationMs) {"
+            + "        return done(true, 'no-change');"
+            + "      }"
+            + "      if (elapsed >= o.timeoutMs) return done(false, 'timeout');"
+            + "      await new Promise(r => setTimeout(r, o.pollMs));"
+            + "    }"
+            + "  } finally {"
+            + "    obs.disconnect();"
+            + "    if (po) po.disconnect();"
+            + "  }"
+            + "}";
+
+    /**
+     * @param before        操作前的行集签名；为 null 时只等待静默
+     * @param fixedWaitMs   被替换的固定等待时长，签名一直不变化时最多等这么久
+     */
+    static Map<String, Object> options(String rowSelector, String before, int timeoutMs, int fixedWaitMs) {
+        Map<String, Object> opts = new HashMap<>();
+        opts.put("rowSelector", rowSelector == null ? "" : rowSelector.trim());
+        opts.put("before", before);
+        opts.put("timeoutMs", Math.max(0, timeoutMs));
+        opts.put("unchangedMs", Math.max(0, Math.min(timeoutMs, fixedWaitMs)));
+        // 替换很短的固定等待时，“无变化”判定不应比原等待更久
+        opts.put("firstMutationMs", fixedWaitMs > 0 ? Math.min(FIRST_MUTATION_MS, fixedWaitMs) : FIRST_MUTATION_MS);
+        opts.put("quietMs", QUIET_MS);
+        opts.put("pollMs", POLL_MS);
+        opts.put("spinners", SPINNER_SELECTORS);
+        opts.put("scrollStep", 0);
+        return opts;
+    }
+
+    /**
+     * 滚动场景：脚本内先挂观察器再把容器向下滚动 step 像素，然后按滚动后的静默规则等待。
+     */
+    static Map<String, Object> scrollOptions(int step, int timeoutMs, int fixedWaitMs) {
+        Map<String, Object> opts = options(null, null, timeoutMs, fixedWaitMs);
+        opts.put("scrollStep", Math.max(0, step));
+        return opts;
+    }
+
+    /**
+     * 一次等待的结果。
+     */
+    static final class Result {
+        final boolean settled;
+        final String reason;
+        final long waitedMs;
+        final String signature;
+        /** scrollStep 模式下滚动前容器已到底部 */
+        final boolean atBottom;
+
+        Result(boolean settled, String reason, long waitedMs, String signature) {
+            this(settled, reason, waitedMs, signature, false);
+        }
+
+        Result(boolean settled, String reason, long waitedMs, String signature, boolean atBottom) {
+            this.settled = settled;
+            this.reason = reason;
+            this.waitedMs = waitedMs;
+            this.signature = signature;
+            this.atBottom = atBottom;
+        }
+
+        /** 页面脚本不可用时按固定时长等待的结果 */
+        static Result fixed(long waitedMs, String reason) {
+            return new Result(false, reason, waitedMs, null);
+        }
+
+        String describe(int fixedWaitMs) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(waitedMs).append("ms (reason=").append(reason);
+            if (fixedWaitMs > 0) {
+                sb.append(", fixedWaitMs=").append(fixedWaitMs)
+                        .append(", savedMs=").append(Math.max(0, fixedWaitMs - waitedMs));
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    /**
+     * 解析页面脚本返回值；非预期结构返回 null，由调用方按固定等待兜底。
+     */
+    static Result parse(Object evalResult) {
+        if (!(evalResult instanceof Map)) return null;
+        Map<?, ?> m = (Map<?, ?>) evalResult;
+        Object waited = m.get("waitedMs");
+        Object reason = m.get("reason");
+        Object signature = m.get("signature");
+        return new Result(
+                Boolean.TRUE.equals(m.get("settled")),
+                reason == null ? "" : reason.toString(),
+                waited instanceof Number ? ((Number) waited).longValue() : 0L,
+                signature == null ? null : signature.toString(),
+                Boolean.TRUE.equals(m.get("atBottom")));
+    }
+
+    /**
+     * 累计一段流程（一次翻页抽取/一次滚动抽取）里所有等待的耗时与节省量。
+     */
+    static final class Stats {
+        private int waits;
+        private long waitedMs;
+        private long fixedMs;
+
+        void record(Result result, int fixedWaitMs) {
+            if (result == null) return;
+            waits++;
+            waitedMs += result.waitedMs;
+            fixedMs += Math.max(0, fixedWaitMs);
+        }
+
+        int getWaits() {
+            return waits;
+        }
+
+        long getWaitedMs() {
+            return waitedMs;
+        }
+
+        long getSavedMs() {
+            return Math.max(0, fixedMs - waitedMs);
+        }
+
+        String summary() {
+            return "waits=" + waits + ", waitedMs=" + waitedMs + ", fixedWaitMs=" + fixedMs + ", savedMs=" + getSavedMs();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.options.WaitUntilState;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 计划步骤页面采集池：在同一个 BrowserContext 中打开多个临时 Page，并发加载不同 step 的 URL。
+ *
+ * <p>Playwright Java 要求同一连接上的调用串行执行，因此“并发”发生在浏览器侧：
+ * 窗口内的 Page 只以 commit 方式发起导航（立即返回），浏览器同时加载它们；
+ * Java 侧按顺序逐个等待就绪并采集，采集完的 Page 立即复用去加载下一个 URL。
+ * {@link AutoWebAgent#PLAYWRIGHT_LOCK} 只在单个 Page 的单次操作期间持有，不再覆盖整个采集过程。</p>
+ */
+final class StepCapturePool implements AutoCloseable {
+    private final BrowserContext context;
+    private final int parallelism;
+    private final Consumer<String> uiLogger;
+    private final List<Page> opened = new ArrayList<>();
+    private final Deque<Page> idle = new ArrayDeque<>();
+
+    StepCapturePool(BrowserContext context, int parallelism, Consumer<String> uiLogger) {
+        this.context = context;
+        this.parallelism = Math.max(1, parallelism);
+        this.uiLogger = uiLogger;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 按滑动窗口采集：窗口内的任务同时加载，按任务顺序逐个完成。
+     *
+     * @param tasks        待采集任务（已按 step 顺序排列）
+     * @param urlOf        任务对应的 URL
+     * @param finish       等待就绪并采集，返回采集后仍可复用的 Page（入口动作打开新窗口时为新 Page，不可复用时返回 null）
+     * @param whileLoading 第一批导航发出后执行一次（用于在等待期间采集当前页面）
+     */
+    <T> void run(List<T> tasks, Function<T, String> urlOf, BiFunction<T, Page, Page> finish, Runnable whileLoading) {
+        Deque<T> pending = new ArrayDeque<>(tasks == null ? new ArrayList<>() : tasks);
+        Deque<Object[]> inFlight = new ArrayDeque<>();
+        fill(pending, inFlight, urlOf);
+        if (whileLoading != null) whileLoading.run();
+        while (!inFlight.isEmpty()) {
+            Object[] head = inFlight.pollFirst();
+            @SuppressWarnings("unchecked")
+            T task = (T) head[0];
+            Page page = (Page) head[1];
+            Page reusable = null;
+            try {
+                reusable = finish.apply(task, page);
+            } catch (Exception e) {
+                if (uiLogger != null) uiLogger.accept("采集页面失败: " + e.getMessage());
+            }
+            if (reusable != null && reusable != page && !opened.contains(reusable)) {
+                opened.add(reusable);
+            }
+            if (reusable != page) closeQuietly(page);
+            if (reusable != null) idle.addLast(reusable);
+            fill(pending, inFlight, urlOf);
+        }
+    }
+
+    private <T> void fill(Deque<T> pending, Deque<Object[]> inFlight, Function<T, String> urlOf) {
+        while (inFlight.size() < parallelism && !pending.isEmpty()) {
+            T task = pending.pollFirst();
+            Page page = acquire();
+            if (page != null) beginNavigation(page, urlOf.apply(task));
+            inFlight.addLast(new Object[]{task, page});
+        }
+    }
+
+    private Page acquire() {
+        Page page = idle.pollFirst();
+        if (page != null) return page;
+        synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+            try {
+                page = context.newPage();
+                opened.add(page);
+                return page;
+            } catch (Exception e) {
+                if (uiLogger != null) uiLogger.accept("打开采集页面失败: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 发起导航但只等到 commit，页面在浏览器侧继续加载。
+     */
+    private void beginNavigation(Page page, String url) {
+        synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+            try {
+                page.navigate(url, new Page.NavigateOptions().setWaitUntil(WaitUntilState.COMMIT));
+            } catch (Exception navEx) {
+                if (uiLogger != null) uiLogger.accept("打开 URL 失败: " + navEx.getMessage());
+            }
+        }
+    }
+
+    private void closeQuietly(Page page) {
+        if (page == null) return;
+        idle.remove(page);
+        opened.remove(page);
+        synchronized (AutoWebAgent.PLAYWRIGHT_LOCK) {
+            try { page.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    @Override
+    public void close() {
+        while (!opened.isEmpty()) {
+            closeQuietly(opened.get(opened.size() - 1));
+        }
+        idle.clear();
+    }
+}
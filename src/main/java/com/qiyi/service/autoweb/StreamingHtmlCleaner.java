@@ -0,0 +1,528 @@
+package com.qiyi.service.autoweb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单遍流式 HTML 清理器：边扫描标签边删除、改写、预算，不构建 DOM。
+ *
+ * <p>规则与 {@link HTMLCleaner#cleanWithDom(String)} 一致（删除无用标签/注释、属性白名单与截断、
+ * 长文本截断、重复兄弟节点只保留前 N 个、删除空容器、压缩空白），差异只在实现方式：</p>
+ * <ul>
+ *     <li>输出直接写入一个 StringBuilder；需要撤销的内容（空容器、超出样本数的重复行）通过回退写入位置删除</li>
+ *     <li>重复兄弟节点在第 max(80, N+1) 个子节点时按已出现的子节点判定，而不是等所有子节点解析完</li>
+ *     <li>按 token 预算输出：超过预算的 75% 后同类兄弟节点只保留 {@link #OVER_BUDGET_SAMPLES} 个样本；
+ *     达到预算后停止输出新内容，只补齐未闭合的结束标签</li>
+ * </ul>
+ *
+ * <p>输入按浏览器序列化的 DOM（page.content()）处理：结束标签齐全，只补了常见的隐式闭合（li/tr/td/option/p）。
+ * 文本与属性值中的实体原样保留，不做解码。</p>
+ */
+final class StreamingHtmlCleaner {
+    /** 与 LLMUtil 的估算口径一致：约 4 个字符 1 个 token */
+    static final int CHARS_PER_TOKEN = 4;
+    static final String TRUNCATED = "...(truncated)";
+    /** 单个文本节点最多保留的字符数 */
+    static final int MAX_TEXT_CHARS = 500;
+    /** 子节点达到该数量才判断是否为重复列表 */
+    static final int REPEAT_MIN_CHILDREN = 80;
+    /** 同一签名占比达到该值视为重复列表 */
+    static final double REPEAT_RATIO = 0.75;
+    /** 超过预算 75% 后，同类兄弟节点最多保留的样本数 */
+    static final int OVER_BUDGET_SAMPLES = 3;
+
+    private static final java.util.Set<String> HTML_VOID = new java.util.HashSet<>(java.util.Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"
+    ));
+    private static final java.util.Set<String> TRANSPARENT = new java.util.HashSet<>(java.util.Arrays.asList("html", "body"));
+    private static final java.util.Set<String> CLOSES_P = new java.util.HashSet<>(java.util.Arrays.asList(
+            "p", "div", "ul", "ol", "dl", "table", "form", "pre", "blockquote", "section", "article", "header", "footer",
+            "nav", "aside", "h1", "h2", "h3", "h4", "h5", "h6", "hr", "fieldset", "figure", "main", "address", "details"
+    ));
+    private static final String[] EXTENSION_SCHEMES = {"chrome-extension://", "moz-extension://", "safari-extension://"};
+
+    private static final class Frame {
+        final String tag;
+        /** 该元素被整体丢弃（不输出） */
+        final boolean dropped;
+        /** html/body：不输出标签本身，只输出内容 */
+        final boolean transparent;
+        /** 开始标签写入前的位置（删除整个元素时回退到这里） */
+        int outMark;
+        /** 开始标签写入后的位置（判断内容是否为空） */
+        int contentMark;
+        boolean hasAttrs;
+        int childCount;
+        /** 第 keep 个子节点开始前的位置（判定为重复列表时回退到这里） */
+        int pruneMark = -1;
+        int keep;
+        /** 已判定为重复列表：后续子节点全部丢弃 */
+        boolean pruned;
+        /** 已判定不是重复列表 */
+        boolean notRepeated;
+        Map<String, Integer> sigCounts;
+        int maxSigCount;
+
+        Frame(String tag, boolean dropped, boolean transparent) {
+            this.tag = tag;
+            this.dropped = dropped;
+            this.transparent = transparent;
+        }
+    }
+
+    private final String src;
+    private final int len;
+    private final StringBuilder out;
+    private final int softChars;
+    private final int hardChars;
+    private final List<Frame> stack = new ArrayList<>();
+    private int pos;
+    private boolean pendingSpace;
+    private boolean stopped;
+
+    private StreamingHtmlCleaner(String src, int tokenBudget) {
+        this.src = src;
+        this.len = src.length();
+        long hard = tokenBudget <= 0 ? Integer.MAX_VALUE : (long) tokenBudget * CHARS_PER_TOKEN;
+        this.hardChars = (int) Math.min(Integer.MAX_VALUE, hard);
+        this.softChars = (int) Math.min(Integer.MAX_VALUE, hard / 4 * 3);
+        this.out = new StringBuilder(Math.min(len, this.hardChars) / 2 + 16);
+        // 虚拟根节点：没有 html/body 包裹的片段同样按兄弟节点规则处理
+        Frame root = new Frame("#root", false, true);
+        root.keep = keepFor("body");
+        stack.add(root);
+    }
+
+    /**
+     * @param tokenBudget 输出 token 预算（按 {@link #CHARS_PER_TOKEN} 折算字符数），&lt;=0 表示不限
+     */
+    static String clean(String html, int tokenBudget) {
+        if (html == null || html.isEmpty()) return "";
+        StreamingHtmlCleaner c = new StreamingHtmlCleaner(html, tokenBudget);
+        c.run();
+        return c.out.toString();
+    }
+
+    private void run() {
+        while (pos < len) {
+            int lt = src.indexOf('<', pos);
+            if (lt < 0) {
+                text(pos, len);
+                pos = len;
+                break;
+            }
+            if (lt > pos) text(pos, lt);
+            pos = lt;
+            if (src.startsWith("<!--", pos)) {
+                int end = src.indexOf("-->", pos + 4);
+                pos = end < 0 ? len : end + 3;
+            } else if (src.startsWith("<![CDATA[", pos)) {
+                int end = src.indexOf("]]>", pos + 9);
+                pos = end < 0 ? len : end + 3;
+            } else if (pos + 1 < len && (src.charAt(pos + 1) == '!' || src.charAt(pos + 1) == '?')) {
+                int end = src.indexOf('>', pos + 2);
+                pos = end < 0 ? len : end + 1;
+            } else if (pos + 1 < len && src.charAt(pos + 1) == '/') {
+                endTag();
+            } else if (pos + 1 < len && isAsciiLetter(src.charAt(pos + 1))) {
+                startTag();
+            } else {
+                // 孤立的 '<' 按文本处理
+                emitText("&lt;");
+                pos++;
+            }
+        }
+        while (stack.size() > 1) close(stack.size() - 1);
+        // 与 DOM 版本的 trim() 一致
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') end--;
+        out.setLength(end);
+    }
+
+    // ---------------------------------------------------------------- 标签
+
+    private void startTag() {
+        int p = pos + 1;
+        int nameStart = p;
+        while (p < len && !isTagNameEnd(src.charAt(p))) p++;
+        String tag = lower(nameStart, p);
+
+        List<String[]> attrs = null;
+        boolean selfClosing = false;
+        while (p < len) {
+            char ch = src.charAt(p);
+            if (ch == '>') {
+                p++;
+                break;
+            }
+            if (ch == '/' || isSpace(ch)) {
+                if (ch == '/' && p + 1 < len && src.charAt(p + 1) == '>') selfClosing = true;
+                p++;
+                continue;
+            }
+            int ns = p;
+            p++;
+            while (p < len && !isSpace(src.charAt(p)) && src.charAt(p) != '/' && src.charAt(p) != '>' && src.charAt(p) != '=') p++;
+            String name = lower(ns, p);
+            while (p < len && isSpace(src.charAt(p))) p++;
+            String value = "";
+            if (p < len && src.charAt(p) == '=') {
+                p++;
+                while (p < len && isSpace(src.charAt(p))) p++;
+                if (p < len && (src.charAt(p) == '"' || src.charAt(p) == '\'')) {
+                    char q = src.charAt(p);
+                    int vEnd = src.indexOf(q, p + 1);
+                    if (vEnd < 0) vEnd = len;
+                    value = src.substring(p + 1, vEnd);
+                    p = Math.min(len, vEnd + 1);
+                } else {
+                    int vs = p;
+                    while (p < len && !isSpace(src.charAt(p)) && src.charAt(p) != '>') p++;
+                    value = src.substring(vs, p);
+                }
+            }
+            if (attrs == null) attrs = new ArrayList<>(4);
+            boolean dup = false;
+            for (String[] a : attrs) {
+                if (a[0].equals(name)) {
+                    dup = true;
+                    break;
+                }
+            }
+            if (!dup) attrs.add(new String[]{name, value});
+        }
+        pos = p;
+
+        if ("script".equals(tag) || "style".equals(tag) || "noscript".equals(tag)) {
+            // 原始文本元素：内容直接跳过
+            if (!selfClosing) skipRawText(tag);
+            return;
+        }
+
+        closeImplied(tag);
+        Frame parent = stack.get(stack.size() - 1);
+        boolean parentDropped = parent.dropped;
+        boolean transparent = TRANSPARENT.contains(tag);
+        boolean dropped = parentDropped
+                || HTMLCleaner.TAGS_TO_REMOVE.contains(tag)
+                || (tag.startsWith("translate-") && tag.endsWith("-mtz"))
+                || hasExtensionUrl(attrs);
+        if (!dropped && !transparent) {
+            dropped = !admitChild(parent, tag, attrs);
+        }
+        if (!dropped && !transparent && reachedHardBudget()) dropped = true;
+
+        boolean isVoid = HTML_VOID.contains(tag);
+        boolean rawContent = "textarea".equals(tag) || "title".equals(tag);
+        Frame f = new Frame(tag, dropped, transparent);
+        if (!dropped && !transparent) {
+            flushSpace();
+            f.outMark = out.length();
+            out.append('<').append(tag);
+            if (attrs != null) {
+                for (String[] a : attrs) {
+                    String v = HTMLCleaner.cleanAttributeValue(a[0], a[1]);
+                    if (v == null) continue;
+                    f.hasAttrs = true;
+                    out.append(' ').append(a[0]).append("=\"");
+                    appendAttrValue(v);
+                    out.append('"');
+                }
+            }
+            out.append('>');
+            f.contentMark = out.length();
+        }
+        f.keep = keepFor(tag);
+        if (isVoid) return;
+        stack.add(f);
+        if (rawContent) {
+            int end = indexOfEndTag(tag, pos);
+            if (!f.dropped) text(pos, end < 0 ? len : end);
+            pos = end < 0 ? len : end;
+        } else if (selfClosing) {
+            close(stack.size() - 1);
+        }
+    }
+
+    /**
+     * 父节点下新出现一个子元素：判断是否为重复列表/超预算的多余样本，返回 false 表示丢弃。
+     */
+    private boolean admitChild(Frame parent, String tag, List<String[]> attrs) {
+        parent.childCount++;
+        String sig = tag + "|" + firstClass(attrs);
+        if (parent.sigCounts == null) parent.sigCounts = new HashMap<>();
+        int seen = parent.sigCounts.getOrDefault(sig, 0);
+        parent.sigCounts.put(sig, seen + 1);
+        if (seen + 1 > parent.maxSigCount) parent.maxSigCount = seen + 1;
+        if (parent.pruned) return false;
+
+        int index = parent.childCount - 1;
+        if (index == parent.keep) {
+            parent.pruneMark = out.length();
+        }
+        if (!parent.notRepeated && parent.childCount >= Math.max(REPEAT_MIN_CHILDREN, parent.keep + 1)) {
+            if (parent.maxSigCount >= parent.childCount * REPEAT_RATIO) {
+                // 重复列表：回退已输出的第 keep 个之后的子节点
+                if (parent.pruneMark >= 0 && parent.pruneMark <= out.length()) out.setLength(parent.pruneMark);
+                parent.pruned = true;
+                return false;
+            }
+            parent.notRepeated = true;
+        }
+        if (seen >= OVER_BUDGET_SAMPLES && out.length() >= softChars) {
+            return false;
+        }
+        return true;
+    }
+
+    private void endTag() {
+        int p = pos + 2;
+        int ns = p;
+        while (p < len && !isTagNameEnd(src.charAt(p))) p++;
+        String tag = lower(ns, p);
+        int gt = src.indexOf('>', p);
+        pos = gt < 0 ? len : gt + 1;
+        for (int i = stack.size() - 1; i >= 1; i--) {
+            if (stack.get(i).tag.equals(tag)) {
+                while (stack.size() - 1 >= i) close(stack.size() - 1);
+                return;
+            }
+        }
+        // 没有匹配的开始标签：忽略
+    }
+
+    private void close(int index) {
+        Frame f = stack.remove(index);
+        if (f.dropped || f.transparent) return;
+        if (isPrunableEmpty(f)) {
+            // 空白文本随空容器一起删除
+            out.setLength(f.outMark);
+            pendingSpace = false;
+            return;
+        }
+        flushSpace();
+        out.append("</").append(f.tag).append('>');
+    }
+
+    private boolean isPrunableEmpty(Frame f) {
+        if (f.hasAttrs || HTMLCleaner.VOID_TAGS.contains(f.tag)) return false;
+        for (int i = f.contentMark; i < out.length(); i++) {
+            if (out.charAt(i) != ' ') return false;
+        }
+        return true;
+    }
+
+    /**
+     * 浏览器序列化结果里结束标签是齐全的；这里只补常见的隐式闭合，兼容手写/截断的 HTML。
+     */
+    private void closeImplied(String tag) {
+        String top = stack.get(stack.size() - 1).tag;
+        switch (tag) {
+            case "li":
+                closeUpTo("li", "ul", "ol");
+                break;
+            case "dt":
+            case "dd":
+                if ("dt".equals(top) || "dd".equals(top)) close(stack.size() - 1);
+                break;
+            case "tr":
+                closeUpTo("tr", "table", "tbody", "thead", "tfoot");
+                break;
+            case "td":
+            case "th":
+                if ("td".equals(top) || "th".equals(top)) close(stack.size() - 1);
+                break;
+            case "option":
+                if ("option".equals(top)) close(stack.size() - 1);
+                break;
+            case "optgroup":
+                if ("option".equals(top)) close(stack.size() - 1);
+                if (!stack.isEmpty() && "optgroup".equals(stack.get(stack.size() - 1).tag)) close(stack.size() - 1);
+                break;
+            default:
+                if ("p".equals(top) && CLOSES_P.contains(tag)) close(stack.size() - 1);
+        }
+    }
+
+    private void closeUpTo(String target, String... boundaries) {
+        for (int i = stack.size() - 1; i >= 1; i--) {
+            String t = stack.get(i).tag;
+            for (String b : boundaries) {
+                if (b.equals(t)) return;
+            }
+            if (t.equals(target)) {
+                while (stack.size() - 1 >= i) close(stack.size() - 1);
+                return;
+            }
+        }
+    }
+
+    private void skipRawText(String tag) {
+        int end = indexOfEndTag(tag, pos);
+        if (end < 0) {
+            pos = len;
+            return;
+        }
+        int gt = src.indexOf('>', end);
+        pos = gt < 0 ? len : gt + 1;
+    }
+
+    private int indexOfEndTag(String tag, int from) {
+        int p = from;
+        while (true) {
+            int lt = src.indexOf("</", p);
+            if (lt < 0) return -1;
+            if (src.regionMatches(true, lt + 2, tag, 0, tag.length())) {
+                int after = lt + 2 + tag.length();
+                if (after >= len || isTagNameEnd(src.charAt(after))) return lt;
+            }
+            p = lt + 2;
+        }
+    }
+
+    // ---------------------------------------------------------------- 文本
+
+    private void text(int from, int to) {
+        if (stack.get(stack.size() - 1).dropped) return;
+        int kept = 0;
+        for (int i = from; i < to; i++) {
+            char ch = src.charAt(i);
+            if (isSpace(ch)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (kept >= MAX_TEXT_CHARS) {
+                trimPartialEntity();
+                out.append(TRUNCATED);
+                pendingSpace = false;
+                return;
+            }
+            if (pendingSpace) {
+                if (reachedHardBudget()) return;
+                flushSpace();
+                kept++;
+            } else if (kept == 0 && reachedHardBudget()) {
+                return;
+            }
+            out.append(ch);
+            kept++;
+        }
+    }
+
+    private void emitText(String s) {
+        if (stack.get(stack.size() - 1).dropped) return;
+        if (reachedHardBudget()) return;
+        flushSpace();
+        out.append(s);
+    }
+
+    private void flushSpace() {
+        if (pendingSpace) {
+            int n = out.length();
+            if (n > 0 && out.charAt(n - 1) != ' ') out.append(' ');
+            pendingSpace = false;
+        }
+    }
+
+    /**
+     * 达到硬预算：写一次截断标记，之后只补结束标签。
+     */
+    private boolean reachedHardBudget() {
+        if (stopped) return true;
+        if (out.length() < hardChars) return false;
+        stopped = true;
+        flushSpace();
+        out.append(TRUNCATED);
+        return true;
+    }
+
+    private void trimPartialEntity() {
+        int n = out.length();
+        for (int i = n - 1; i >= Math.max(0, n - 10); i--) {
+            char ch = out.charAt(i);
+            if (ch == ';') return;
+            if (ch == '&') {
+                out.setLength(i);
+                return;
+            }
+        }
+    }
+
+    private void appendAttrValue(String v) {
+        boolean space = false;
+        for (int i = 0; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            if (isSpace(ch)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            if (ch == '"') out.append("&quot;");
+            else out.append(ch);
+        }
+        if (space) out.append(' ');
+    }
+
+    // ---------------------------------------------------------------- 工具
+
+    private static int keepFor(String tag) {
+        if ("select".equals(tag)) return 80;
+        if ("tbody".equals(tag) || "table".equals(tag) || "ul".equals(tag) || "ol".equals(tag)) return 50;
+        return 30;
+    }
+
+    private static boolean hasExtensionUrl(List<String[]> attrs) {
+        if (attrs == null) return false;
+        for (String[] a : attrs) {
+            if (!"src".equals(a[0]) && !"href".equals(a[0])) continue;
+            for (String scheme : EXTENSION_SCHEMES) {
+                if (a[1].startsWith(scheme)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstClass(List<String[]> attrs) {
+        if (attrs == null) return "";
+        for (String[] a : attrs) {
+            if (!"class".equals(a[0])) continue;
+            String v = a[1];
+            int s = 0;
+            while (s < v.length() && isSpace(v.charAt(s))) s++;
+            int e = s;
+            while (e < v.length() && !isSpace(v.charAt(e))) e++;
+            return v.substring(s, e);
+        }
+        return "";
+    }
+
+    private String lower(int from, int to) {
+        boolean hasUpper = false;
+        for (int i = from; i < to; i++) {
+            char ch = src.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                hasUpper = true;
+                break;
+            }
+        }
+        String s = src.substring(from, to);
+        return hasUpper ? s.toLowerCase(java.util.Locale.ROOT) : s;
+    }
+
+    private static boolean isTagNameEnd(char ch) {
+        return isSpace(ch) || ch == '>' || ch == '/';
+    }
+
+    private static boolean isAsciiLetter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f' || ch == 0x0B;
+    }
+}
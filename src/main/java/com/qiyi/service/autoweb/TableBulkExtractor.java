@@ -0,0 +1,160 @@
+package com.qiyi.service.autoweb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表格批量抽取（页面内执行）。
+ *
+ * <p>{@link WebDSL#extractTableData} 逐行 nth(j) + innerText + 逐列定位，每个单元格都是一次 CDP 往返。
+ * 这里把“当前可见行的全部列值 + 行键”放到一次 {@code Locator.evaluateAll} 中完成；滚动与等待新数据渲染
+ * 复用 {@link SettleSupport#SETTLE_JS} 的 scrollStep 模式，替代固定 sleep。</p>
+ *
+ * <p>列选择器语义与 {@code WebDSL.extractCellValue} 保持一致（空/text → 整行文本，attr:x / @x → 行属性，
+ * sel@attr → 子元素属性，其余按 CSS 取第一个匹配元素的 innerText/title/aria-label）。
+ * 列选择器不是合法 CSS（如 text=、role=、>> 链）时页面脚本返回 unsupported，调用方回退到逐行模式。</p>
+ */
+final class TableBulkExtractor {
+    private TableBulkExtractor() {
+    }
+
+    /**
+     * Locator.evaluateAll(rows, spec)：返回 {unsupported: [...], rows: [{key, values}]}，空行不返回。
+     *
+     * <p>key 为 rowkey:属性值、cells:前两列文本 或 text:整行文本，由调用方按逐行模式的规则取 md5，
+     * 两种模式的行键一致。</p>
+     */
+    static final String EXTRACT_ROWS_JS = ""
+            + "(els, spec) => {"
+            + "  const norm = s => (s || '').replace(/[\\r\\n]+/g, ' ').replace(/\\s+/g, ' ').trim();"
+            + "  const cols = spec.columns || [];"
+            + "  const probe = document.createDocumentFragment();"
+            + "  const unsupported = [];"
+            + "  for (const c of cols) {"
+            + "    if (c.kind !== 'css' && c.kind !== 'selAttr') continue;"
+            + "    try { probe.querySelector(c.sel); } catch (e) { unsupported.push(c.name); }"
+            + "  }"
+            + "  if (unsupported.length > 0) return { unsupported, rows: [] };"
+            + "  const cellValue = (row, c) => {"
+            + "    if (c.kind === 'text') return row.innerText || '';"
+            + "    if (c.kind === 'attr') return row.getAttribute(c.attr) || '';"
+            + "    if (c.kind === 'selAttr') {"
+            + "      const t = row.querySelector(c.sel);"
+            + "      const v = t ? t.getAttribute(c.attr) : null;"
+            + "      if (v) return v;"
+            + "      return row.getAttribute(c.attr) || '';"
+            + "    }"
+            + "    const t = row.querySelector(c.sel);"
+            + "    if (!t) return '';"
+            + "    return t.innerText || t.getAttribute('title') || t.getAttribute('aria-label') || '';"
+            + "  };"
+            + "  const out = [];"
+            + "  for (const row of els) {"
+            + "    const text = norm(row.innerText);"
+            + "    if (!text) continue;"
+            + "    let key = row.getAttribute('data-row-key') || row.getAttribute('data-rowid') || row.getAttribute('data-row-id') || '';"
+            + "    if (key) { key = 'rowkey:' + key; } else {"
+            + "      const cells = row.querySelectorAll('td, .art-table-cell, .ant-table-cell');"
+            + "      const parts = [];"
+            + "      for (let i = 0; i < cells.length && i < 2; i++) { const t = norm(cells[i].innerText); if (t) parts.push(t); }"
+            + "      key = parts.length > 0 ? 'cells:' + parts.join('|') : 'text:' + text;"
+            + "    }"
+            + "    const values = {};"
+            + "    for (const c of cols) { try { values[c.name] = cellValue(row, c); } catch (e) { values[c.name] = ''; } }"
+            + "    out.push({ key, values });"
+            + "  }"
+            + "  return { unsupported: [], rows: out };"
+            + "}";
+
+    /**
+     * 构造页面脚本使用的列描述；解析规则与 WebDSL.extractCellValue 一致。
+     */
+    static List<Map<String, Object>> columnSpecs(Map<?, ?> columns, Map<String, String> resolvedColumns) {
+        List<Map<String, Object>> specs = new ArrayList<>();
+        if (columns == null) return specs;
+        for (Map.Entry<?, ?> entry : columns.entrySet()) {
+            String colName = entry.getKey() == null ? "" : entry.getKey().toString();
+            String rawColSel = entry.getValue() == null ? "" : entry.getValue().toString();
+            String colSel = resolvedColumns == null ? rawColSel : resolvedColumns.getOrDefault(colName, rawColSel);
+            specs.add(columnSpec(colName, colSel));
+        }
+        return specs;
+    }
+
+    static Map<String, Object> columnSpec(String name, String colSel) {
+        Map<String, Object> spec = new HashMap<>();
+        spec.put("name", name);
+        String sel = colSel == null ? "" : colSel.trim();
+        String lower = sel.toLowerCase();
+        if (sel.isEmpty() || "text".equals(lower) || "innertext".equals(lower) || "row_text".equals(lower)
+                || "__row_text__".equals(lower) || ":scope".equals(lower) || ".".equals(sel)) {
+            spec.put("kind", "text");
+            return spec;
+        }
+        if (lower.startsWith("attr:")) {
+            spec.put("kind", "attr");
+            spec.put("attr", sel.substring("attr:".length()).trim());
+            return spec;
+        }
+        if (sel.startsWith("@") && sel.length() > 1) {
+            spec.put("kind", "attr");
+            spec.put("attr", sel.substring(1).trim());
+            return spec;
+        }
+        int at = sel.lastIndexOf('@');
+        if (at > 0 && at < sel.length() - 1) {
+            String targetSel = sel.substring(0, at).trim();
+            String attr = sel.substring(at + 1).trim();
+            if (!targetSel.isEmpty() && !attr.isEmpty()) {
+                spec.put("kind", "selAttr");
+                spec.put("sel", targetSel);
+                spec.put("attr", attr);
+                return spec;
+            }
+        }
+        spec.put("kind", "css");
+        spec.put("sel", sel);
+        return spec;
+    }
+
+    /**
+     * 一次抽取的结果：unsupported 非空表示需要回退到逐行模式。
+     */
+    static final class Batch {
+        final List<String> unsupported = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        final List<Map<String, String>> values = new ArrayList<>();
+    }
+
+    static Batch parse(Object evalResult) {
+        Batch batch = new Batch();
+        if (!(evalResult instanceof Map)) return batch;
+        Map<?, ?> m = (Map<?, ?>) evalResult;
+        Object unsupported = m.get("unsupported");
+        if (unsupported instanceof List) {
+            for (Object o : (List<?>) unsupported) {
+                if (o != null) batch.unsupported.add(o.toString());
+            }
+        }
+        Object rows = m.get("rows");
+        if (!(rows instanceof List)) return batch;
+        for (Object r : (List<?>) rows) {
+            if (!(r instanceof Map)) continue;
+            Map<?, ?> row = (Map<?, ?>) r;
+            Object key = row.get("key");
+            Object vals = row.get("values");
+            Map<String, String> values = new LinkedHashMap<>();
+            if (vals instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) vals).entrySet()) {
+                    values.put(String.valueOf(e.getKey()), e.getValue() == null ? "" : e.getValue().toString());
+                }
+            }
+            batch.keys.add(key == null ? "" : key.toString());
+            batch.values.add(values);
+        }
+        return batch;
+    }
+}
@@ -29,6 +29,11 @@ public class WebDSL {
     private int maxRetries = 3;
     private Object result;
     private final java.util.ArrayList<UiFrameworkSupport> uiFrameworkSupports = new java.util.ArrayList<>();
+    private SelectorMemory selectorMemory = SelectorMemory.sharedIfEnabled();
+    private int selectorProbes;
+    private int selectorProbesSaved;
+    private int selectorMemoryHits;
+    private int selectorMemoryMisses;
     
     private static final Pattern ARIA_LABEL_ONLY_PATTERN = Pattern.compile("^\\s*\\[\\s*aria-label\\s*=\\s*(['\"])(.*?)\\1\\s*\\]\\s*$", Pattern.CASE_INSENSITIVE);
     private static final Pattern DATE_PART_PATTERN = Pattern.compile("(\\d{4})[-/](\\d{1,2})[-/](\\d{1,2})");
@@ -103,6 +108,14 @@ public class WebDSL {
         return this;
     }
 
+    /**
+     * 指定选择器记忆（默认为 autoweb/selectors 下的共享实例），便于测试使用临时目录
+     */
+    WebDSL withSelectorMemory(SelectorMemory memory) {
+        this.selectorMemory = memory;
+        return this;
+    }
+
     public Object withMaxRetries(int retries, groovy.lang.Closure<?> block) {
         int prev = this.maxRetries;
         this.maxRetries = Math.max(1, retries);
@@ -1247,6 +1260,8 @@ public class WebDSL {
 
     // --- Logging ---
     public void log(String message) {
+        // 取消检查点：绝大多数 DSL 动作先打日志，引擎任务取消后脚本在下一个动作处退出
+        CancellationToken.checkCurrent();
         StorageSupport.log(logger, "DSL", message, null);
     }
 
@@ -1323,48 +1338,37 @@ public class WebDSL {
     private Locator tryResolveClickTargetByText(String text) {
         if (!looksLikePlainText(text)) return null;
         String raw = text == null ? "" : text.trim();
-        Locator bestAttached = null;
+        java.util.List<String> candidates = new java.util.ArrayList<>();
         
         if (looksLikeTextRegex(raw)) {
             String pattern = escapeForRegexLiteralInSelector(raw);
-            String[] regexSelectors = new String[] {
-                    "role=button[name=/" + pattern + "/]",
-                    "role=link[name=/" + pattern + "/]",
-                    "role=menuitem[name=/" + pattern + "/]",
-                    "role=tab[name=/" + pattern + "/]",
-                    "role=option[name=/" + pattern + "/]",
-                    "text=/" + pattern + "/"
-            };
-            for (String sel : regexSelectors) {
-                try {
-                    Locator loc = locator(sel).first();
-                    waitForLocatorAttached(loc, 250);
-                    if (loc.count() == 0) continue;
-                    bestAttached = loc;
-                    if (loc.isVisible()) return loc;
-                } catch (Exception ignored) {}
-            }
+            candidates.add("role=button[name=/" + pattern + "/]");
+            candidates.add("role=link[name=/" + pattern + "/]");
+            candidates.add("role=menuitem[name=/" + pattern + "/]");
+            candidates.add("role=tab[name=/" + pattern + "/]");
+            candidates.add("role=option[name=/" + pattern + "/]");
+            candidates.add("text=/" + pattern + "/");
         }
         
         String escaped = escapeForSelectorValue(raw);
-        String[] selectors = new String[] {
-                "role=button[name=\"" + escaped + "\"]",
-                "role=link[name=\"" + escaped + "\"]",
-                "role=menuitem[name=\"" + escaped + "\"]",
-                "role=tab[name=\"" + escaped + "\"]",
-                "role=option[name=\"" + escaped + "\"]",
-                "text=\"" + escaped + "\""
-        };
-        for (String sel : selectors) {
-            try {
-                Locator loc = locator(sel).first();
-                waitForLocatorAttached(loc, 250);
-                if (loc.count() == 0) continue;
-                bestAttached = loc;
-                if (loc.isVisible()) return loc;
-            } catch (Exception ignored) {}
-        }
-        return bestAttached;
+        candidates.add("role=button[name=\"" + escaped + "\"]");
+        candidates.add("role=link[name=\"" + escaped + "\"]");
+        candidates.add("role=menuitem[name=\"" + escaped + "\"]");
+        candidates.add("role=tab[name=\"" + escaped + "\"]");
+        candidates.add("role=option[name=\"" + escaped + "\"]");
+        candidates.add("text=\"" + escaped + "\"");
+        
+        // 都不可见时退回最后一个已挂载的候选
+        Locator[] bestAttached = new Locator[1];
+        String sel = firstMatchingCandidate("clickText", raw, candidates.toArray(new String[0]), c -> {
+            Locator loc = locator(c).first();
+            waitForLocatorAttached(loc, 250);
+            if (loc.count() == 0) return false;
+            bestAttached[0] = loc;
+            return loc.isVisible();
+        });
+        if (sel != null) return locator(sel).first();
+        return bestAttached[0];
     }
 
     boolean tryDomClickFallback(Locator loc) {
@@ -2089,7 +2093,7 @@ public class WebDSL {
             waitForLocatorAttached(trigger, defaultTimeout);
             boolean opened = openDropdownTrigger(trigger);
             if (!opened) throw new RuntimeException("Dropdown did not open: " + dd);
-            wait(120);
+            settleOn(null, null, null, SettleSupport.DROPDOWN_TIMEOUT_MS, 120);
             
             if (tryClickDropdownOption(opt)) return;
             
@@ -2112,7 +2116,7 @@ public class WebDSL {
                 if (!scrolled) {
                     page.mouse().wheel(0, 800);
                 }
-                wait(150);
+                settleOn(container != null ? container.first() : null, null, null, SettleSupport.DROPDOWN_TIMEOUT_MS, 150);
             }
             
             if (tryTypeDropdownAndEnter(trigger, opt)) return;
@@ -2752,6 +2756,111 @@ public class WebDSL {
     public void wait(int millis) {
         log("Wait: " + millis + "ms");
         page.waitForTimeout(millis);
+        CancellationToken.checkCurrent();
+    }
+
+    /**
+     * 等待容器（为空时为整页）稳定：无加载态且 DOM/接口静默，最多等待 {@link SettleSupport#DEFAULT_TIMEOUT_MS}。
+     * 用于替代点击/滚动后的固定 wait(ms)。
+     *
+     * @return 实际等待的毫秒数
+     */
+    public long settle(String containerSelector) {
+        return settle(containerSelector, SettleSupport.DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * 等待容器稳定，最多等待 timeoutMs。
+     *
+     * @return 实际等待的毫秒数
+     */
+    public long settle(String containerSelector, int timeoutMs) {
+        SettleSupport.Result r = settleOn(resolveSettleTarget(containerSelector), null, null, timeoutMs, 0);
+        log("Wait: Settle '" + (containerSelector == null ? "page" : containerSelector) + "' " + r.describe(0));
+        return r.waitedMs;
+    }
+
+    /**
+     * 滚动后的等待：替代原先的固定 wait(fixedWaitMs)，结果累计到 stats 用于输出节省耗时。
+     */
+    private SettleSupport.Result settleAfterScroll(String containerSelector, int fixedWaitMs, SettleSupport.Stats stats) {
+        SettleSupport.Result r = settleOn(resolveSettleTarget(containerSelector), null, null, SettleSupport.SCROLL_TIMEOUT_MS, fixedWaitMs);
+        if (stats != null) stats.record(r, fixedWaitMs);
+        return r;
+    }
+
+    /**
+     * 滚动一步并等待新数据渲染，一次页面调用完成；settle 脚本不可用或已关闭 autoweb.event.wait 时
+     * 退回 isAtBottom + scrollBy + 固定等待 fixedWaitMs。
+     */
+    private SettleSupport.Result scrollAndSettle(String containerSelector, int step, int fixedWaitMs, SettleSupport.Stats stats) {
+        SettleSupport.Result r = null;
+        boolean enabled = AppConfig.getInstance().isAutowebEventWaitEnabled();
+        if (enabled) {
+            try {
+                r = SettleSupport.parse(locator(containerSelector).first().evaluate(SettleSupport.SETTLE_JS,
+                        SettleSupport.scrollOptions(step, SettleSupport.SCROLL_TIMEOUT_MS, fixedWaitMs)));
+            } catch (Exception e) {
+                log("Notice: Settle script unavailable (" + e.getMessage() + "), fallback to fixed wait " + fixedWaitMs + "ms");
+            }
+        }
+        if (r == null) {
+            if (isAtBottom(containerSelector)) return new SettleSupport.Result(true, "at-bottom", 0, null, true);
+            scrollBy(containerSelector, step);
+            page.waitForTimeout(fixedWaitMs);
+            r = SettleSupport.Result.fixed(fixedWaitMs, enabled ? "fallback" : "disabled");
+        }
+        if (stats != null && !r.atBottom) stats.record(r, fixedWaitMs);
+        return r;
+    }
+
+    private Locator resolveSettleTarget(String containerSelector) {
+        if (containerSelector == null || containerSelector.trim().isEmpty()) return null;
+        try {
+            Locator loc = locator(containerSelector).first();
+            if (loc.count() > 0) return loc;
+        } catch (Exception ignored) {}
+        return null;
+    }
+
+    /**
+     * 操作前的行集签名（行数 + 首末行文本），获取失败返回 null。
+     */
+    private String rowSignature(Locator target, String rowSelector) {
+        try {
+            Locator root = target != null ? target : locator("body").first();
+            Object v = root.evaluate(SettleSupport.SIGNATURE_JS, SettleSupport.options(rowSelector, null, 0, 0));
+            return v == null ? null : v.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * settle 的统一入口：页面脚本不可用（或已关闭 autoweb.event.wait）时退回固定等待 fixedWaitMs。
+     *
+     * @param target      观察的容器，为 null 时观察 body
+     * @param before      操作前的行集签名；非空时等待签名变化
+     * @param fixedWaitMs 被替换的固定等待时长；为 0 时兜底等待 min(timeoutMs, 500)
+     */
+    private SettleSupport.Result settleOn(Locator target, String rowSelector, String before, int timeoutMs, int fixedWaitMs) {
+        int fallbackMs = fixedWaitMs > 0 ? fixedWaitMs : Math.min(Math.max(0, timeoutMs), 500);
+        if (!AppConfig.getInstance().isAutowebEventWaitEnabled()) {
+            page.waitForTimeout(fallbackMs);
+            return SettleSupport.Result.fixed(fallbackMs, "disabled");
+        }
+        SettleSupport.Result r = null;
+        try {
+            Locator root = target != null ? target : locator("body").first();
+            r = SettleSupport.parse(root.evaluate(SettleSupport.SETTLE_JS, SettleSupport.options(rowSelector, before, timeoutMs, fixedWaitMs)));
+        } catch (Exception e) {
+            log("Notice: Settle script unavailable (" + e.getMessage() + "), fallback to fixed wait " + fallbackMs + "ms");
+        }
+        if (r == null) {
+            page.waitForTimeout(fallbackMs);
+            return SettleSupport.Result.fixed(fallbackMs, "fallback");
+        }
+        return r;
     }
 
     // --- Interaction ---
@@ -3038,6 +3147,7 @@ public class WebDSL {
         List<java.util.Map<String, String>> allData = new java.util.ArrayList<>();
         java.util.Set<String> seen = new java.util.HashSet<>();
         int pageCount = 0;
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
         
         while (pageCount < maxPages) {
             // Extract current page
@@ -3081,10 +3191,16 @@ public class WebDSL {
                 }
                 
                 highlight(nextBtn);
+                Locator settleTarget = resolveSettleTarget(containerSelector);
+                String settleRows = (rowSelector == null || rowSelector.trim().isEmpty() || isAutoSelector(rowSelector)) ? "tr, [role='row']" : rowSelector;
+                String before = rowSignature(settleTarget, settleRows);
                 nextBtn.click();
                 
-                // Wait for load
-                page.waitForTimeout(2000); 
+                // Wait for the next page: row set changed / no spinner / table XHR idle
+                SettleSupport.Result settled = settleOn(settleTarget, settleRows, before,
+                        SettleSupport.PAGINATION_TIMEOUT_MS, SettleSupport.PAGINATION_FIXED_WAIT_MS);
+                settleStats.record(settled, SettleSupport.PAGINATION_FIXED_WAIT_MS);
+                log("  -> Page " + (pageCount + 1) + " settled in " + settled.describe(SettleSupport.PAGINATION_FIXED_WAIT_MS));
                 
             } catch (Exception e) {
                 log("Error handling next button: " + e.getMessage());
@@ -3092,6 +3208,9 @@ public class WebDSL {
             }
         }
         
+        if (settleStats.getWaits() > 0) {
+            log("  -> Pagination waits: " + settleStats.summary());
+        }
         return allData;
     }
     
@@ -3117,22 +3236,92 @@ public class WebDSL {
                 "a11y:checkbox"
         };
         
+        String t = firstMatchingCandidate("checkbox", s, candidates, c -> locator(c).count() > 0);
+        if (t != null) {
+            if (!t.equals(s)) log("  -> Checkbox fallback selector: '" + t + "'");
+            return locator(t);
+        }
+        log("  -> Checkbox fallback exhausted: '" + selector + "'");
+        return null;
+    }
+    
+    /** 兜底链末尾的泛化候选：几乎在任何页面都能命中（导航菜单等），不写入记忆 */
+    private static final java.util.Set<String> GENERIC_CANDIDATES = java.util.Set.of("tr", "li", "a");
+
+    /**
+     * 按顺序探测候选选择器，返回第一个满足 matches 的候选，全部不满足返回 null。
+     * 核心逻辑：始终先试调用方给出的首选（candidates[0]）；不命中时再试 SelectorMemory 记住的本页面上次命中的候选，
+     * 命中即跳过排在它前面的探测；失配则降级记忆并回到完整兜底链，兜底链命中的新候选替换旧记忆。
+     * 泛化候选（tr/li/a）只作为当次兜底，不记忆，避免表格未渲染时的临时结果在之后的执行中盖过正确的选择器。
+     */
+    private String firstMatchingCandidate(String kind, String logical, String[] candidates, java.util.function.Predicate<String> matches) {
+        java.util.List<String> chain = new java.util.ArrayList<>();
         for (String c : candidates) {
             if (c == null) continue;
             String t = c.trim();
-            if (t.isEmpty()) continue;
-            try {
-                Locator loc = locator(t);
-                if (loc.count() > 0) {
-                    if (!t.equals(s)) log("  -> Checkbox fallback selector: '" + t + "'");
-                    return loc;
-                }
-            } catch (Exception ignored) {}
+            if (t.isEmpty() || chain.contains(t)) continue;
+            chain.add(t);
+        }
+        if (chain.isEmpty()) return null;
+        String pageKey = selectorMemory == null ? null : SelectorMemory.pageKeyOf(StorageSupport.safePageUrl(page));
+        String remembered = pageKey == null ? null : selectorMemory.recall(pageKey, kind, logical);
+        int rememberedIdx = remembered == null ? -1 : chain.indexOf(remembered);
+        if (rememberedIdx > 0 && GENERIC_CANDIDATES.contains(remembered)) {
+            // 旧版本可能记住了泛化候选，直接丢弃
+            selectorMemory.forget(pageKey, kind, logical);
+            rememberedIdx = -1;
+        }
+        if (probeCandidate(matches, chain.get(0))) {
+            if (remembered != null) selectorMemory.forget(pageKey, kind, logical);
+            return chain.get(0);
+        }
+        if (rememberedIdx > 0) {
+            if (probeCandidate(matches, remembered)) {
+                selectorMemoryHits++;
+                selectorProbesSaved += rememberedIdx - 1;
+                selectorMemory.hit(pageKey, kind, logical);
+                return remembered;
+            }
+            selectorMemoryMisses++;
+            selectorMemory.miss(pageKey, kind, logical);
+            log("  -> Remembered selector no longer matches: '" + remembered + "'");
+        }
+        for (int i = 1; i < chain.size(); i++) {
+            if (i == rememberedIdx) continue;
+            String t = chain.get(i);
+            if (!probeCandidate(matches, t)) continue;
+            if (pageKey != null && !GENERIC_CANDIDATES.contains(t)) selectorMemory.remember(pageKey, kind, logical, t);
+            return t;
         }
-        log("  -> Checkbox fallback exhausted: '" + selector + "'");
         return null;
     }
-    
+
+    private boolean probeCandidate(java.util.function.Predicate<String> matches, String candidate) {
+        selectorProbes++;
+        try {
+            return matches.test(candidate);
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * 本实例（一次脚本执行）的兜底链探测统计；没有探测时返回空串。
+     */
+    public String selectorResolutionStats() {
+        if (selectorProbes == 0) return "";
+        return "probes=" + selectorProbes + ", saved=" + selectorProbesSaved + ", memoryHits=" + selectorMemoryHits + ", memoryMisses=" + selectorMemoryMisses;
+    }
+
+    /**
+     * 脚本执行结束：输出探测统计并把记忆增量写盘。
+     */
+    void finishSelectorResolution() {
+        String stats = selectorResolutionStats();
+        if (!stats.isEmpty()) log("Selector resolution: " + stats);
+        if (selectorMemory != null) selectorMemory.flush();
+    }
+
     private boolean isCheckboxIntent(String selector) {
         if (selector == null) return false;
         String s = selector.toLowerCase();
@@ -3388,7 +3577,7 @@ public class WebDSL {
         if (!exists(selector)) {
             log("Warning: EnsureAtTop target not found: '" + selector + "'. Scrolling window top as fallback");
             scrollToTop();
-            page.waitForTimeout(150);
+            settleAfterScroll(null, 150, null);
             return;
         }
         // Try multiple strategies to reliably return to top
@@ -3396,28 +3585,28 @@ public class WebDSL {
             try {
                 locator(selector).first().evaluate("el => el.scrollTop = 0");
             } catch (Exception ignored) {}
-            page.waitForTimeout(100);
+            settleAfterScroll(selector, 100, null);
         }
         if (!isAtTop(selector)) {
             // Use wheel up bursts
             hover(selector);
             for (int i = 0; i < 4 && !isAtTop(selector); i++) {
                 page.mouse().wheel(0, -1200);
-                page.waitForTimeout(150);
+                settleAfterScroll(selector, 150, null);
             }
         }
         if (!isAtTop(selector)) {
             // Use Home key
             try {
                 page.keyboard().press("Home");
-                page.waitForTimeout(150);
+                settleAfterScroll(selector, 150, null);
             } catch (Exception ignored) {}
         }
         // Final check, fall back to window top
         if (!isAtTop(selector)) {
             log("Warning: Container did not reach top, scrolling window top as fallback");
             scrollToTop();
-            page.waitForTimeout(150);
+            settleAfterScroll(null, 150, null);
         }
     }
     
@@ -3430,13 +3619,13 @@ public class WebDSL {
         try {
             // Step 1: Direct scrollTop = 0
             locator(selector).first().evaluate("el => { el.scrollTop = 0; el.dispatchEvent(new Event('scroll', { bubbles: true })); }");
-            page.waitForTimeout(300);
+            settleAfterScroll(selector, 300, null);
             
             // Step 2: Reverse wheel to force virtualization refresh
             hover(selector);
             for (int i = 0; i < 6; i++) {
                 page.mouse().wheel(0, -1200);
-                page.waitForTimeout(200);
+                settleAfterScroll(selector, 200, null);
             }
         } catch (Exception e) {
             log("Warning: ensureTop failed: " + e.getMessage());
@@ -3732,13 +3921,14 @@ public class WebDSL {
         java.util.List<String> results = new java.util.ArrayList<>();
         
         int noNewDataCount = 0;
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
         int maxScrolls = 80; // Safety break
         int scrollStep = 300;
         int wheelStep = 800;
         
         // Ensure start from top
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
 
         for (int i = 0; i < maxScrolls; i++) {
             Locator rows = getRowsInContainer(containerSelector, rowSelector);
@@ -3782,8 +3972,7 @@ public class WebDSL {
             }
             // 1) element scroll
             scrollBy(containerSelector, scrollStep);
-            wait(500);
-            wait(500);
+            settleAfterScroll(containerSelector, 1000, settleStats);
             
             // Escalate steps if no new data is found
             if (!foundNew) {
@@ -3798,9 +3987,9 @@ public class WebDSL {
         
         // Restore state to top
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
         
-        log("  -> Extracted " + results.size() + " unique items.");
+        log("  -> Extracted " + results.size() + " unique items (scroll waits: " + settleStats.summary() + ").");
         return results;
     }
 
@@ -3847,13 +4036,20 @@ public class WebDSL {
             int cnt = getRowsInContainer(containerSelector, effectiveRowSelector).count();
             log("  -> Using containerSelector='" + containerSelector + "', rowSelector='" + effectiveRowSelector + "' (rows=" + cnt + ")");
         } catch (Exception ignored) {}
+
+        if (AppConfig.getInstance().isAutowebTableBulkExtractEnabled()) {
+            List<java.util.Map<String, String>> bulk = extractTableDataBulk(containerSelector, effectiveRowSelector, limit, columns, resolvedColumns);
+            if (bulk != null) return bulk;
+        }
         
         java.util.Set<String> processedKeys = new java.util.HashSet<>();
         List<java.util.Map<String, String>> results = new java.util.ArrayList<>();
         
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
+        
         // Ensure start from top
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
         
         int maxScrolls = 80;
         int noNewDataCount = 0;
@@ -3933,8 +4129,7 @@ public class WebDSL {
             }
             // 1) element scroll
             scrollBy(containerSelector, scrollStep);
-            wait(500);
-            wait(500);
+            settleAfterScroll(containerSelector, 1000, settleStats);
             
             // Escalate steps if no new data is found
             if (!foundNew) {
@@ -3949,12 +4144,118 @@ public class WebDSL {
         
         // Restore state to top
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
         
-        log("  -> Extracted " + results.size() + " structured rows.");
+        log("  -> Extracted " + results.size() + " structured rows (scroll waits: " + settleStats.summary() + ").");
+        return results;
+    }
+
+    /**
+     * 批量模式：每个滚动步只做一次页面内抽取（全部可见行 + 全部列 + 行键），滚动与等待渲染合并为一次 settle 调用，
+     * 等待规则与逐行模式相同（受 autoweb.event.wait 控制）。返回 null 表示当前选择器不适用，调用方回退到逐行模式。
+     */
+    private List<java.util.Map<String, String>> extractTableDataBulk(String containerSelector, String rowSelector, int limit, java.util.Map<?, ?> columns, java.util.Map<String, String> resolvedColumns) {
+        if (rowSelector == null || rowSelector.trim().isEmpty() || !exists(containerSelector)) return null;
+        java.util.Map<String, Object> spec = new java.util.HashMap<>();
+        spec.put("columns", TableBulkExtractor.columnSpecs(columns, resolvedColumns));
+
+        long startedAt = System.currentTimeMillis();
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
+        java.util.Set<String> processedKeys = new java.util.HashSet<>();
+        List<java.util.Map<String, String>> results = new java.util.ArrayList<>();
+
+        ensureAtTop(containerSelector);
+        settleAfterScroll(containerSelector, 300, settleStats);
+
+        int maxScrolls = 80;
+        int noNewDataCount = 0;
+        int scrollStep = 300;
+
+        for (int i = 0; i < maxScrolls; i++) {
+            TableBulkExtractor.Batch batch;
+            try {
+                Object raw = getRowsInContainer(containerSelector, rowSelector).evaluateAll(TableBulkExtractor.EXTRACT_ROWS_JS, spec);
+                batch = TableBulkExtractor.parse(raw);
+            } catch (Exception e) {
+                if (results.isEmpty()) {
+                    log("  -> Bulk extraction unavailable (" + e.getMessage() + "), fallback to row-by-row mode.");
+                    return null;
+                }
+                log("  -> Bulk extraction failed at step " + i + ": " + e.getMessage());
+                break;
+            }
+            if (!batch.unsupported.isEmpty()) {
+                log("  -> Bulk extraction unsupported for columns " + batch.unsupported + ", fallback to row-by-row mode.");
+                return null;
+            }
+
+            boolean foundNew = false;
+            for (int j = 0; j < batch.keys.size(); j++) {
+                if (!processedKeys.add(stableBulkRowKey(batch.keys.get(j)))) continue;
+                results.add(toTableRow(columns, batch.values.get(j)));
+                foundNew = true;
+                if (limit > 0 && results.size() >= limit) {
+                    log("  -> Reached limit of " + limit + " items.");
+                    break;
+                }
+            }
+            if (limit > 0 && results.size() >= limit) break;
+
+            if (!foundNew) {
+                noNewDataCount++;
+                if (noNewDataCount >= 3) {
+                    log("  -> No new data found for 3 consecutive scrolls. Stopping.");
+                    break;
+                }
+            } else {
+                noNewDataCount = 0;
+            }
+
+            if (scrollAndSettle(containerSelector, scrollStep, 1000, settleStats).atBottom) {
+                log("  -> Container reached bottom.");
+                break;
+            }
+
+            // Escalate steps if no new data is found
+            scrollStep = foundNew ? 300 : Math.min(scrollStep * 2, 1600);
+        }
+
+        ensureAtTop(containerSelector);
+        settleAfterScroll(containerSelector, 300, settleStats);
+
+        log("  -> Extracted " + results.size() + " structured rows (bulk, scroll waits: " + settleStats.summary()
+                + ", elapsedMs=" + (System.currentTimeMillis() - startedAt) + ").");
         return results;
     }
 
+    /**
+     * 页面内行键转成与 {@link #buildStableRowKey} 相同的形式：rowkey 原样保留，单元格/整行文本取 md5。
+     */
+    private String stableBulkRowKey(String pageKey) {
+        if (pageKey == null) return "";
+        if (pageKey.startsWith("cells:")) return "cells:" + md5(pageKey.substring("cells:".length()));
+        if (pageKey.startsWith("text:")) return "md5:" + md5(pageKey.substring("text:".length()));
+        return pageKey;
+    }
+
+    private java.util.Map<String, String> toTableRow(java.util.Map<?, ?> columns, java.util.Map<String, String> values) {
+        java.util.Map<String, String> rowData = new java.util.HashMap<>();
+        for (java.util.Map.Entry<?, ?> entry : columns.entrySet()) {
+            String colName = entry.getKey() == null ? "" : entry.getKey().toString();
+            String rawColSel = entry.getValue() == null ? "" : entry.getValue().toString();
+            String aliasKey = null;
+            if (!rawColSel.isEmpty() && !isSelectorLike(rawColSel) && !colName.isEmpty() && colName.matches("\\d+")) {
+                aliasKey = rawColSel;
+            }
+            String val = values.getOrDefault(colName, "");
+            rowData.put(colName, val);
+            if (aliasKey != null && !aliasKey.equals(colName)) {
+                rowData.put(aliasKey, val);
+            }
+        }
+        return rowData;
+    }
+
     private String extractCellValue(Locator row, String colSel) {
         if (row == null) return "";
         String sel = colSel == null ? "" : colSel.trim();
@@ -4036,16 +4337,11 @@ public class WebDSL {
                 "li",
                 "a"
         };
-        for (String sel : candidates) {
-            if (sel == null) continue;
-            String s = sel.trim();
-            if (s.isEmpty()) continue;
-            try {
-                Locator rows = locator(s);
-                if (rows != null && rows.count() > 0) return s;
-            } catch (Exception ignored) {}
-        }
-        return preferredRowSelector;
+        String s = firstMatchingCandidate("row", preferred, candidates, c -> {
+            Locator rows = locator(c);
+            return rows != null && rows.count() > 0;
+        });
+        return s != null ? s : preferredRowSelector;
     }
 
     private static final class ListSelectorHint {
@@ -4243,8 +4539,9 @@ public class WebDSL {
             }
         } catch (Exception ignored) {}
         
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
         
         int maxScrolls = 80;
         int noNewData = 0;
@@ -4312,10 +4609,10 @@ public class WebDSL {
             int adaptiveStep = (count <= 3) ? 120 : scrollStep;
             int adaptiveWheel = (count <= 3) ? 200 : wheelStep;
             scrollBy(containerSelector, adaptiveStep);
-            wait(500);
+            settleAfterScroll(containerSelector, 500, settleStats);
             hover(containerSelector);
             page.mouse().wheel(0, adaptiveWheel);
-            wait(500);
+            settleAfterScroll(containerSelector, 500, settleStats);
             
             if (!foundNew) {
                 scrollStep = Math.min(scrollStep * 2, 1600);
@@ -4327,7 +4624,7 @@ public class WebDSL {
         }
         
         ensureAtTop(containerSelector);
-        wait(300);
+        settleAfterScroll(containerSelector, 300, settleStats);
         try {
             int rowsInContainer = getRowsInContainer(containerSelector, rowSelector).count();
             debug.add("rowsInContainer(end)=" + rowsInContainer);
@@ -4339,8 +4636,9 @@ public class WebDSL {
             }
         } catch (Exception ignored) {}
         debug.add("total=" + results.size());
+        debug.add("scrollWaits=" + settleStats.summary());
         writeDebugFile("table_extract_debug.txt", debug);
-        log("  -> Extracted " + results.size() + " row texts.");
+        log("  -> Extracted " + results.size() + " row texts (scroll waits: " + settleStats.summary() + ").");
         return results;
     }
 
@@ -4387,7 +4685,8 @@ public class WebDSL {
         
         // Start from top to be sure
         scrollToTop(containerSelector);
-        wait(500);
+        SettleSupport.Stats settleStats = new SettleSupport.Stats();
+        settleAfterScroll(containerSelector, 500, settleStats);
         
         int maxScrolls = 50;
 
@@ -4403,13 +4702,14 @@ public class WebDSL {
                     log("  -> Found item at visible index " + j);
                     highlight(row);
                     row.scrollIntoViewIfNeeded();
+                    log("  -> Scroll waits: " + settleStats.summary());
                     return true;
                 }
             }
             
             // Scroll down to find more
             mouseWheel(containerSelector, 800);
-            wait(800);
+            settleAfterScroll(containerSelector, 800, settleStats);
             
             // Optimization: If no items are visible, maybe we are scrolling a wrong container?
             if (count == 0) {
@@ -4418,7 +4718,7 @@ public class WebDSL {
             }
         }
         
-        log("  -> Item '" + textToFind + "' not found after " + maxScrolls + " scrolls.");
+        log("  -> Item '" + textToFind + "' not found after " + maxScrolls + " scrolls (scroll waits: " + settleStats.summary() + ").");
         return false;
     }
 
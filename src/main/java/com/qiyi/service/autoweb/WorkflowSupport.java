@@ -0,0 +1,602 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Page;
+import com.qiyi.service.autoweb.AutoWebAgent.ContextWrapper;
+import com.qiyi.service.autoweb.AutoWebAgent.HtmlCaptureMode;
+import com.qiyi.service.autoweb.AutoWebAgent.HtmlSnapshot;
+import com.qiyi.service.autoweb.AutoWebAgent.ModelSession;
+import com.qiyi.service.autoweb.AutoWebAgent.PlanParseResult;
+import com.qiyi.service.autoweb.AutoWebAgent.PlanStep;
+import com.qiyi.service.autoweb.AutoWebAgent.StepExecutionListener;
+
+/**
+ * “生成计划 → 生成代码 → 修正代码 → 执行”各环节的无界面实现。
+ *
+ * 主要职责：
+ * - 单个模型的计划生成/计划修正/代码生成/代码修正：组装 payload、调用 LLM、规整输出并回写 {@link ModelSession}；
+ * - 按 Step 标记切分脚本并逐步执行，通过 {@link StepExecutionListener} 回报每步状态。
+ *
+ * 说明：
+ * - 方法只接收普通参数与 logger，不依赖 Swing；界面状态（输入框、勾选项）由调用方在 EDT 上读取后传入；
+ * - 多模型并发、epoch 过期判断与界面刷新由调用方负责（控制台 UI、钉钉工具共用这里的实现）。
+ */
+class WorkflowSupport {
+    private static final java.util.regex.Pattern STEP_MARKER = java.util.regex.Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+)|第\\s*(\\d+)\\s*(?:步|步骤)|Part\\s*[:：#\\-]?\\s*(\\d+)).*$");
+
+    private static final String STEP_MARKER_REPAIR_HINT =
+            "仅修复输出格式，不要改变执行逻辑。\n" +
+            "要求：在每个步骤对应的可执行代码前，加入单行注释标记：// Step N（N=1..步骤数），并且顺序与计划一致。\n" +
+            "输出必须是完整、可直接执行的 Groovy 脚本（包含原有 PLAN 块注释），不要输出 Markdown，不要省略任何步骤。";
+
+    /**
+     * 生成计划（PLAN）：有入口 URL 时只做规划，否则让模型先询问入口
+     *
+     * @param modelName 模型名
+     * @param promptForLlm 发送给模型的用户任务
+     * @param currentUrl 当前页面 URL
+     * @param entryUrl 入口 URL，可为空
+     * @param debugTag 调试代码变体标签，为 null 时不落盘
+     * @param logger 日志输出
+     * @return 计划解析结果
+     */
+    static PlanParseResult generatePlan(
+            String modelName,
+            String promptForLlm,
+            String currentUrl,
+            String entryUrl,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        boolean hasUrl = entryUrl != null && !entryUrl.trim().isEmpty();
+        String payload = hasUrl
+                ? AutoWebAgent.buildPlanOnlyPayload(currentUrl, promptForLlm, entryUrl)
+                : AutoWebAgent.buildPlanEntryPayload(currentUrl, promptForLlm);
+        log(logger, "阶段中: model=" + modelName + ", planMode=" + AutoWebAgent.extractModeFromPayload(payload));
+        String text = AutoWebAgent.generateGroovyScript(promptForLlm, payload, logger, modelName);
+        String finalText = text == null ? "" : text;
+        if (debugTag != null) AutoWebAgentUtils.saveDebugCodeVariant(finalText, modelName, debugTag, logger);
+        return AutoWebAgent.parsePlanFromText(finalText);
+    }
+
+    /**
+     * 修正计划（PLAN_REFINE）：补充入口信息（及可选的页面视觉描述）后重新规划
+     *
+     * @param entryInput 用户补充的入口信息
+     * @param visualDescription 页面视觉描述，为 null 时不附带视觉补充
+     * @return 计划解析结果
+     */
+    static PlanParseResult refinePlan(
+            String modelName,
+            String promptForLlm,
+            String currentUrl,
+            String entryInput,
+            java.util.function.Supplier<String> visualDescription,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        log(logger, "PLAN_REFINE Debug: model=" + modelName + ", entryInput='" + entryInput + "'");
+        String visual = visualDescription == null ? null : visualDescription.get();
+        String payload = AutoWebAgent.buildPlanRefinePayload(currentUrl, promptForLlm, entryInput, visual);
+        log(logger, "PLAN_REFINE Payload Hash: " + payload.hashCode() + " | Length: " + payload.length());
+        log(logger, "阶段中: model=" + modelName + ", planMode=" + AutoWebAgent.extractModeFromPayload(payload));
+        String text = AutoWebAgent.generateGroovyScript(promptForLlm, payload, logger, modelName);
+        String finalText = text == null ? "" : text;
+        if (debugTag != null) AutoWebAgentUtils.saveDebugCodeVariant(finalText, modelName, debugTag, logger);
+        PlanParseResult parsed = AutoWebAgent.parsePlanFromText(finalText);
+        if (!parsed.confirmed) {
+            log(logger, "PLAN_REFINE 未通过: model=" + modelName + " | Confirmed=false. LLM Output:\n" + finalText);
+        }
+        return parsed;
+    }
+
+    /**
+     * 将计划结果写回会话，并作废之前采集的步骤 HTML
+     */
+    static void applyPlan(ModelSession session, String userPrompt, PlanParseResult parsed) {
+        session.userPrompt = userPrompt;
+        session.planText = parsed.planText;
+        session.steps = parsed.steps;
+        session.planConfirmed = parsed.confirmed;
+        session.lastArtifactType = "PLAN";
+        session.htmlPrepared = false;
+        session.htmlCaptureMode = null;
+        session.htmlA11yInterestingOnly = false;
+        session.stepSnapshots.clear();
+    }
+
+    /**
+     * 按计划采集各步骤 HTML；采集模式未变化且已采集过时直接复用
+     *
+     * @param pageProvider 返回可用的根页面，参数为刷新原因（用于日志）
+     */
+    static void ensureStepSnapshots(
+            ModelSession session,
+            java.util.function.Function<String, Page> pageProvider,
+            HtmlCaptureMode mode,
+            boolean a11yInterestingOnly,
+            String modelName,
+            java.util.function.Consumer<String> logger
+    ) {
+        boolean needPrepare = !session.htmlPrepared
+                || session.htmlCaptureMode != mode
+                || session.htmlA11yInterestingOnly != a11yInterestingOnly;
+        if (!needPrepare) return;
+        log(logger, modelName + ": 开始按计划采集 HTML（Step 数: " + session.steps.size() + "）...");
+        Page page = pageProvider.apply("采集 HTML 前刷新页面");
+        java.util.List<HtmlSnapshot> snaps = AutoWebAgent.prepareStepHtmls(page, session.steps, logger, mode, a11yInterestingOnly);
+        java.util.Map<Integer, HtmlSnapshot> map = new java.util.HashMap<>();
+        for (HtmlSnapshot s : snaps) map.put(s.stepIndex, s);
+        session.stepSnapshots = map;
+        session.htmlPrepared = true;
+        session.htmlCaptureMode = mode;
+        session.htmlA11yInterestingOnly = a11yInterestingOnly;
+        log(logger, modelName + ": HTML 采集完成（snapshots=" + session.stepSnapshots.size() + "）");
+    }
+
+    /**
+     * 生成代码（CODEGEN）：按计划采集 HTML、调用模型生成脚本，必要时补齐 Step 标记
+     *
+     * @param captureLock 多模型并发时串行化 HTML 采集的锁，为 null 时不加锁
+     * @param visualDescription 页面视觉描述，为 null 时不附带视觉补充
+     * @return 生成的代码；计划缺少步骤时返回 null
+     */
+    static String generateCode(
+            String modelName,
+            String promptForLlm,
+            String entryUrl,
+            ModelSession session,
+            java.util.function.Function<String, Page> pageProvider,
+            HtmlCaptureMode mode,
+            boolean a11yInterestingOnly,
+            Object captureLock,
+            java.util.function.Supplier<String> visualDescription,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        if (session.steps == null || session.steps.isEmpty()) {
+            log(logger, modelName + ": 计划缺少步骤，无法采集 HTML。请重新生成计划。");
+            return null;
+        }
+        if (captureLock == null) {
+            ensureStepSnapshots(session, pageProvider, mode, a11yInterestingOnly, modelName, logger);
+        } else {
+            synchronized (captureLock) {
+                ensureStepSnapshots(session, pageProvider, mode, a11yInterestingOnly, modelName, logger);
+            }
+        }
+        java.util.List<HtmlSnapshot> snaps = sortedSnapshots(session);
+
+        Page page = pageProvider.apply("生成 Payload 前刷新页面");
+        String visual = visualDescription == null ? null : visualDescription.get();
+        String payload = AutoWebAgent.buildCodegenPayload(entryUrl, session.planText, snaps, visual);
+        log(logger, "将要提交给大模型的 操作页面网页的长度为 " + cleanedHtmlLength(payload) + " ，采集模式为 " + mode);
+        log(logger, "阶段中: model=" + modelName + ", action=CODEGEN, payloadMode=" + AutoWebAgent.extractModeFromPayload(payload) + ", steps=" + session.steps.size() + ", snapshots=" + snaps.size());
+        String generatedCode = AutoWebAgent.generateGroovyScript(promptForLlm, payload, logger, modelName);
+        generatedCode = normalizeIfParsable(generatedCode);
+        generatedCode = repairStepMarkersIfNeeded(modelName, promptForLlm, session, page, snaps, visual, generatedCode, logger);
+
+        String finalCode = generatedCode == null ? "" : generatedCode;
+        if (debugTag != null) AutoWebAgentUtils.saveDebugCodeVariant(finalCode, modelName, debugTag, logger);
+        session.lastArtifactType = "CODE";
+        return finalCode;
+    }
+
+    /**
+     * 修正代码（REFINE_CODE）：结合当前页面、执行输出与修正说明，让模型改写已有脚本
+     *
+     * @param currentPrompt 当前用户任务
+     * @param previousCode 待修正的代码
+     * @param execOutput 上次执行输出
+     * @param refineHint 修正说明
+     * @param rootPage 根页面
+     * @param visualDescription 页面视觉描述，为 null 时不附带视觉补充
+     * @return 修正后的代码
+     */
+    static String refineCode(
+            String modelName,
+            String currentPrompt,
+            String previousCode,
+            String execOutput,
+            String refineHint,
+            String entryUrl,
+            ModelSession session,
+            Page rootPage,
+            HtmlCaptureMode mode,
+            boolean a11yInterestingOnly,
+            java.util.function.Supplier<String> visualDescription,
+            String debugTag,
+            java.util.function.Consumer<String> logger
+    ) {
+        if (session.userPrompt == null || session.userPrompt.trim().isEmpty()) {
+            session.userPrompt = currentPrompt;
+        }
+        log(logger, "阶段开始: model=" + modelName + ", action=REFINE_CODE");
+
+        ContextWrapper workingContext = AutoWebAgent.reloadAndFindContext(rootPage, logger);
+        String visual = visualDescription == null ? null : visualDescription.get();
+        String freshHtml = "";
+        try { freshHtml = AutoWebAgent.getPageContent(workingContext.context, mode, a11yInterestingOnly); } catch (Exception ignored) {}
+        String freshCleanedHtml = AutoWebAgent.cleanCapturedContent(freshHtml, mode);
+        AutoWebAgentUtils.saveDebugArtifacts(freshHtml, freshCleanedHtml, null, logger);
+
+        if (!session.planConfirmed) {
+            PlanParseResult parsed = AutoWebAgent.parsePlanFromText(previousCode);
+            if (parsed.steps != null && !parsed.steps.isEmpty() && parsed.confirmed) {
+                session.planText = parsed.planText;
+                session.steps = parsed.steps;
+                session.planConfirmed = true;
+            }
+        }
+        if (session.planConfirmed) {
+            ensureStepSnapshots(session, reason -> rootPage, mode, a11yInterestingOnly, modelName, logger);
+        }
+
+        java.util.List<HtmlSnapshot> stepSnaps = sortedSnapshots(session);
+        String payload = AutoWebAgent.buildRefinePayload(entryUrl, session.planText, stepSnaps, freshCleanedHtml, stripUrlsFromText(currentPrompt), refineHint, visual);
+        log(logger, "阶段中: model=" + modelName + ", action=REFINE_CODE, payloadMode=" + AutoWebAgent.extractModeFromPayload(payload) + ", snapshots=" + stepSnaps.size());
+        String promptForRefine = currentPrompt;
+        if (session.userPrompt != null && !session.userPrompt.equals(currentPrompt)) {
+            promptForRefine = "原用户任务:\n" + session.userPrompt + "\n\n当前用户任务:\n" + currentPrompt;
+        }
+        String refinedCode = AutoWebAgent.generateRefinedGroovyScript(
+                promptForRefine, payload, previousCode, execOutput, refineHint, logger, modelName
+        );
+        String normalizedRefined = AutoWebAgent.normalizeGeneratedGroovy(refinedCode);
+        if (normalizedRefined != null && !normalizedRefined.equals(refinedCode)) {
+            if (GroovyLinter.check(normalizedRefined).isEmpty()) {
+                refinedCode = normalizedRefined;
+            }
+        }
+        String finalRefinedCode = refinedCode == null ? "" : refinedCode;
+        if (debugTag != null) AutoWebAgentUtils.saveDebugCodeVariant(finalRefinedCode, modelName, debugTag, logger);
+        session.lastArtifactType = "CODE";
+        return finalRefinedCode;
+    }
+
+    /**
+     * 去掉文本中的 URL（入口地址单独传给模型，避免在用户任务里重复出现）
+     */
+    static String stripUrlsFromText(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String out = s;
+        try { out = out.replaceAll("(?i)https?://\\S+", ""); } catch (Exception ignored) {}
+        try { out = out.replaceAll("(?i)\\bwww\\.[^\\s]+", ""); } catch (Exception ignored) {}
+        return out;
+    }
+
+    /**
+     * 判断文本是否只是计划（含 PLAN 块但没有任何 web. 调用）
+     */
+    static boolean looksLikePlanOnly(String code) {
+        return code != null && (code.contains("PLAN_START") || code.contains("PLAN_END")) && !code.contains("web.");
+    }
+
+    /**
+     * 执行前导航：推断入口 URL 并把根页面带到入口
+     *
+     * @return 使用的入口 URL，可能为空（沿用当前页面）
+     */
+    static String navigateToExecutionEntry(String modelName, ModelSession session, String currentPrompt, Page rootPage, java.util.function.Consumer<String> logger) {
+        String entryUrl = AutoWebAgent.chooseExecutionEntryUrl(session, currentPrompt);
+        log(logger, "执行准备: model=" + modelName + ", entryUrl=" + (entryUrl == null ? "(null)" : entryUrl));
+        String beforeUrl = AutoWebAgent.safePageUrl(rootPage);
+        boolean hasLivePage = !beforeUrl.isEmpty() && !"about:blank".equalsIgnoreCase(beforeUrl);
+        if (entryUrl == null || entryUrl.trim().isEmpty()) {
+            if (!hasLivePage) {
+                throw new RuntimeException("未找到入口URL，且当前浏览器没有可用页面。请在“用户任务”里包含入口链接（https://...），或先生成计划并补充入口地址。");
+            }
+            log(logger, "执行前导航: 未提供入口URL，将使用当前页面 | current=" + beforeUrl);
+        }
+        AutoWebAgent.ensureRootPageAtUrl(rootPage, entryUrl, logger);
+        return entryUrl;
+    }
+
+    /**
+     * 按 Step 标记逐步执行脚本；代码没有 Step 标记时整段执行一次
+     *
+     * 单步失败只记录并继续后续步骤；取消（{@link java.util.concurrent.CancellationException}）不算失败，直接向上抛出。
+     *
+     * @param steps 要执行的步骤（按执行顺序）
+     * @param promoteSharedDefs 是否把 top-level def 变量提升为步骤间共享变量
+     * @param stopped 返回 true 时不再开始后续步骤（例如调用方已过期）
+     * @param listener 步骤状态回调
+     */
+    static void executeSteps(
+            String code,
+            java.util.List<PlanStep> steps,
+            Page rootPage,
+            boolean promoteSharedDefs,
+            java.util.function.BooleanSupplier stopped,
+            StepExecutionListener listener,
+            java.util.function.Consumer<String> logger
+    ) {
+        groovy.lang.Binding sharedBinding = new groovy.lang.Binding();
+        try { sharedBinding.setVariable("allGoodsData", new java.util.ArrayList<>()); } catch (Exception ignored) {}
+        java.util.List<PlanStep> runSteps = new java.util.ArrayList<>();
+        for (PlanStep step : steps) {
+            if (step != null) runSteps.add(step);
+        }
+        if (!hasExplicitStepMarkers(code)) {
+            log(logger, "检测到代码缺少 Step 分段标记，将按整段脚本一次性执行。");
+            listener.onStepStart(runSteps, 0, true);
+            try {
+                runScript(promoteSharedDefs ? promoteTopLevelDefsForSharedBinding(code, logger) : code, rootPage, sharedBinding, logger);
+                listener.onStepDone(runSteps, runSteps.size(), false);
+                log(logger, "=== 整段执行完成（无 Step 分段） ===");
+            } catch (java.util.concurrent.CancellationException ce) {
+                throw ce;
+            } catch (Exception ex) {
+                String reason = failureReason(ex);
+                listener.onStepFailed(runSteps, reason);
+                log(logger, "=== 整段执行失败（无 Step 分段）: " + reason + " ===");
+            } finally {
+                listener.onStepFinished(runSteps);
+            }
+            return;
+        }
+        for (int i = 0; i < runSteps.size(); i++) {
+            if (stopped.getAsBoolean() || CancellationToken.currentCancelled()) return;
+            PlanStep step = runSteps.get(i);
+            java.util.List<PlanStep> current = java.util.Collections.singletonList(step);
+            String stepCode = buildStepExecutionCode(code, step.index);
+            if (stepCode == null || stepCode.trim().isEmpty()) {
+                listener.onStepDone(current, i + 1, true);
+                listener.onStepFinished(current);
+                log(logger, "=== 分步执行跳过: Step " + step.index + " | 无可执行代码，视为成功 ===");
+                continue;
+            }
+            log(logger, "=== 分步执行开始: Step " + step.index + " ===");
+            listener.onStepStart(current, i, false);
+            try {
+                runScript(promoteSharedDefs ? promoteTopLevelDefsForSharedBinding(stepCode, logger) : stepCode, rootPage, sharedBinding, logger);
+                listener.onStepDone(current, i + 1, false);
+                log(logger, "=== 分步执行完成: Step " + step.index + " ===");
+            } catch (java.util.concurrent.CancellationException ce) {
+                // 取消不是步骤失败：不记失败、不继续后续步骤
+                throw ce;
+            } catch (Exception stepEx) {
+                String reason = failureReason(stepEx);
+                listener.onStepFailed(current, reason);
+                log(logger, "=== 分步执行失败: Step " + step.index + " | " + reason + " ===");
+            } finally {
+                listener.onStepFinished(current);
+            }
+        }
+    }
+
+    /**
+     * 获取用于分步执行的步骤列表（优先使用会话缓存，必要时从计划文本解析）
+     *
+     * @param session 模型会话
+     * @param code 当前代码/计划文本
+     * @return 排序后的步骤列表
+     */
+    static java.util.List<PlanStep> getStepsForStepExecution(ModelSession session, String code) {
+        java.util.List<PlanStep> steps = session == null ? null : session.steps;
+        if (steps == null || steps.isEmpty()) {
+            PlanParseResult parsed = AutoWebAgent.parsePlanFromText(code);
+            steps = parsed == null ? null : parsed.steps;
+        }
+        if (steps == null || steps.isEmpty()) return java.util.Collections.emptyList();
+        java.util.List<PlanStep> sorted = new java.util.ArrayList<>(steps);
+        sorted.sort(java.util.Comparator.comparingInt(a -> a == null ? Integer.MAX_VALUE : a.index));
+        return sorted;
+    }
+
+    /**
+     * 从完整代码中抽取指定步骤对应的可执行片段
+     */
+    static String buildStepExecutionCode(String code, int stepIndex) {
+        if (code == null || code.trim().isEmpty()) return "";
+        String src = stripPlanBlock(code);
+        // 支持 //、/* */、*、# 等多种 Step 标记前缀
+        java.util.regex.Matcher m = STEP_MARKER.matcher(src);
+        java.util.List<Integer> starts = new java.util.ArrayList<>();
+        java.util.List<Integer> nums = new java.util.ArrayList<>();
+        while (m.find()) {
+            starts.add(m.start());
+            nums.add(stepNumber(m, nums.size() + 1));
+        }
+        if (starts.isEmpty()) return "";
+        starts.add(src.length());
+        int targetStart = -1;
+        int targetEnd = -1;
+        for (int i = 0; i < nums.size(); i++) {
+            if (nums.get(i) == stepIndex) {
+                targetStart = starts.get(i);
+                targetEnd = starts.get(i + 1);
+                break;
+            }
+        }
+        if (targetStart < 0 || targetEnd < 0) return "";
+        String prelude = src.substring(0, starts.get(0));
+        String block = src.substring(targetStart, Math.min(targetEnd, src.length()));
+        String blockNonComment = block;
+        try {
+            blockNonComment = blockNonComment.replaceAll("(?s)/\\*.*?\\*/", " ");
+            blockNonComment = blockNonComment.replaceAll("(?m)^\\s*//.*$", " ");
+        } catch (Exception ignored) {}
+        if (blockNonComment == null || blockNonComment.trim().isEmpty()) return "";
+        if (!prelude.isEmpty() && !prelude.endsWith("\n")) prelude = prelude + "\n";
+        return prelude + block;
+    }
+
+    /**
+     * 判断代码（去掉计划块后）是否带有 Step 分段标记
+     */
+    static boolean hasExplicitStepMarkers(String code) {
+        if (code == null || code.trim().isEmpty()) return false;
+        return STEP_MARKER.matcher(stripPlanBlock(code)).find();
+    }
+
+    /**
+     * 取 Step 标记里的步骤编号；无法解析时使用 fallback
+     */
+    static int stepNumber(java.util.regex.Matcher m, int fallback) {
+        try {
+            String token = m.group(1);
+            if (token == null || token.trim().isEmpty()) token = m.group(2);
+            if (token == null || token.trim().isEmpty()) token = m.group(3);
+            Integer n = parseUnicodeInt(token);
+            return n == null ? fallback : n;
+        } catch (Exception ignored) {
+            return fallback;
+        }
+    }
+
+    static java.util.regex.Matcher stepMarkerMatcher(String src) {
+        return STEP_MARKER.matcher(src);
+    }
+
+    /**
+     * 移除 PLAN_START~PLAN_END 计划块，保留可执行脚本部分
+     */
+    static String stripPlanBlock(String code) {
+        if (code == null) return "";
+        int ps = code.indexOf("PLAN_START");
+        int pe = code.indexOf("PLAN_END");
+        if (ps >= 0 && pe > ps) {
+            int start = code.lastIndexOf("/*", ps);
+            int end = code.indexOf("*/", pe);
+            if (start >= 0 && end > pe) {
+                return code.substring(0, start) + code.substring(end + 2);
+            }
+            // PLAN 块未包裹在块注释内时，直接截断移除
+            int after = pe + "PLAN_END".length();
+            return code.substring(0, ps) + code.substring(Math.min(after, code.length()));
+        }
+        return code;
+    }
+
+    static Integer parseUnicodeInt(String token) {
+        if (token == null) return null;
+        String s = token.trim();
+        if (s.isEmpty()) return null;
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isDigit(c)) return null;
+            int d = Character.getNumericValue(c);
+            if (d < 0 || d > 9) return null;
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    /**
+     * 把 top-level 的 def 变量改写为 Binding 变量，使分步执行时后续步骤能读到前面步骤的结果
+     */
+    static String promoteTopLevelDefsForSharedBinding(String code, java.util.function.Consumer<String> logger) {
+        if (code == null) return "";
+        try {
+            java.util.regex.Pattern p = java.util.regex.Pattern.compile("(?m)^(\\s*)(?:final\\s+)?def\\s+([A-Za-z_][A-Za-z0-9_]*)\\s*=");
+            java.util.regex.Matcher m = p.matcher(code);
+            java.util.LinkedHashSet<String> vars = new java.util.LinkedHashSet<>();
+            while (m.find()) {
+                String v = m.group(2);
+                if (v != null && !v.trim().isEmpty()) vars.add(v.trim());
+            }
+            String rewritten = m.replaceAll("$1$2 =");
+            if (!vars.isEmpty() && logger != null) {
+                logger.accept("已将 top-level def 变量提升为共享变量: " + String.join(",", vars));
+            }
+            return rewritten;
+        } catch (Exception ignored) {
+            return code;
+        }
+    }
+
+    /**
+     * 生成的代码缺少 Step 标记且计划有多步时，让模型只修复输出格式
+     */
+    private static String repairStepMarkersIfNeeded(
+            String modelName,
+            String currentPrompt,
+            ModelSession session,
+            Page currentPage,
+            java.util.List<HtmlSnapshot> snaps,
+            String visualDescription,
+            String generatedCode,
+            java.util.function.Consumer<String> logger
+    ) {
+        if (generatedCode == null || generatedCode.trim().isEmpty()) return generatedCode;
+        if (hasExplicitStepMarkers(generatedCode)) return generatedCode;
+        if (session == null || session.steps == null || session.steps.size() <= 1) return generatedCode;
+        boolean planOnly = generatedCode.contains("PLAN_START") && !generatedCode.contains("web.");
+        if (planOnly) return generatedCode;
+
+        try {
+            log(logger, "CODEGEN 输出缺少 Step 标记，开始自动修复格式: model=" + modelName + ", steps=" + session.steps.size());
+            String payload = AutoWebAgent.buildRefinePayload(
+                    currentPage,
+                    session.planText,
+                    snaps,
+                    "",
+                    currentPrompt,
+                    STEP_MARKER_REPAIR_HINT,
+                    visualDescription
+            );
+            String repaired = AutoWebAgent.generateRefinedGroovyScript(
+                    currentPrompt,
+                    payload,
+                    generatedCode,
+                    "",
+                    STEP_MARKER_REPAIR_HINT,
+                    logger,
+                    modelName
+            );
+            repaired = normalizeIfParsable(repaired);
+            if (repaired != null && hasExplicitStepMarkers(repaired)) {
+                AutoWebAgentUtils.saveDebugCodeVariant(repaired, modelName, "gen_repair", logger);
+                log(logger, "CODEGEN 自动修复完成: model=" + modelName);
+                return repaired;
+            }
+            log(logger, "CODEGEN 自动修复未生效: model=" + modelName);
+        } catch (java.util.concurrent.CancellationException ce) {
+            throw ce;
+        } catch (Exception ex) {
+            log(logger, "CODEGEN 自动修复失败: model=" + modelName + ", err=" + ex.getMessage());
+        }
+        return generatedCode;
+    }
+
+    /**
+     * 规整模型输出；规整后出现语法/解析错误时保留原文
+     */
+    private static String normalizeIfParsable(String code) {
+        String normalized = AutoWebAgent.normalizeGeneratedGroovy(code);
+        if (normalized == null || normalized.equals(code)) return code;
+        java.util.List<String> errors = GroovyLinter.check(normalized);
+        boolean hasSyntaxIssue = errors.stream().anyMatch(e -> e.startsWith("Syntax Error") || e.startsWith("Parse Error"));
+        return hasSyntaxIssue ? code : normalized;
+    }
+
+    private static void runScript(String code, Page rootPage, groovy.lang.Binding sharedBinding, java.util.function.Consumer<String> logger) throws Exception {
+        ContextWrapper bestContext = AutoWebAgent.waitAndFindContext(rootPage, logger);
+        Object executionTarget = bestContext == null ? rootPage : bestContext.context;
+        AutoWebAgent.executeWithGroovy(code, executionTarget, logger, sharedBinding, null, null);
+    }
+
+    private static java.util.List<HtmlSnapshot> sortedSnapshots(ModelSession session) {
+        java.util.List<HtmlSnapshot> snaps = new java.util.ArrayList<>(session.stepSnapshots.values());
+        snaps.sort(java.util.Comparator.comparingInt(a -> a.stepIndex));
+        return snaps;
+    }
+
+    private static int cleanedHtmlLength(String payload) {
+        int h = payload == null ? -1 : payload.indexOf("STEP_HTMLS_CLEANED:");
+        if (h < 0) return 0;
+        int start = payload.indexOf('\n', h);
+        return start < 0 ? 0 : payload.length() - start - 1;
+    }
+
+    private static String failureReason(Exception ex) {
+        String reason = ex.getMessage();
+        if (reason == null || reason.trim().isEmpty()) reason = ex.toString();
+        return reason;
+    }
+
+    private static void log(java.util.function.Consumer<String> logger, String msg) {
+        if (logger != null) logger.accept(msg);
+    }
+}
@@ -0,0 +1,98 @@
+package com.qiyi.service.dingtalk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 通讯录索引：把 getAllDepartments 返回的部门列表一次性建成查找表。
+ *
+ * <p>部门可按 ID 或名称查找，默认只取直属成员，显式要求时才展开全部子部门；用户可按姓名/ID 互查。
+ * 展开结果按出现顺序去重，同一用户出现在多个部门时只保留一次。</p>
+ */
+public class DingTalkDirectoryIndex {
+    private final Map<String, DingTalkDepartment> deptById = new HashMap<>();
+    private final Map<String, DingTalkDepartment> deptByName = new HashMap<>();
+    private final Map<String, List<DingTalkDepartment>> childrenByParentId = new HashMap<>();
+    private final Map<String, String> userIdByName = new HashMap<>();
+    private final Map<String, String> userNameById = new HashMap<>();
+
+    public DingTalkDirectoryIndex(List<DingTalkDepartment> departments) {
+        if (departments == null) return;
+        for (DingTalkDepartment d : departments) {
+            if (d == null) continue;
+            if (d.getDeptId() != null) deptById.put(d.getDeptId(), d);
+            if (d.getName() != null) deptByName.put(d.getName(), d);
+            if (d.getParentId() != null) {
+                childrenByParentId.computeIfAbsent(d.getParentId(), k -> new ArrayList<>()).add(d);
+            }
+            if (d.getUserList() != null) {
+                for (DingTalkUser u : d.getUserList()) {
+                    if (u == null || u.getUserid() == null || u.getUserid().isEmpty()) continue;
+                    if (u.getName() != null) userIdByName.put(u.getName(), u.getUserid());
+                    userNameById.put(u.getUserid(), u.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * 按部门 ID 或名称查找（ID 优先）。
+     */
+    public DingTalkDepartment findDepartment(String key) {
+        if (key == null) return null;
+        DingTalkDepartment dept = deptById.get(key);
+        return dept != null ? dept : deptByName.get(key);
+    }
+
+    /**
+     * 部门直属成员 userId（去重、保持顺序）；部门没有成员列表时返回空集合。
+     */
+    public Set<String> directMembers(DingTalkDepartment dept) {
+        Set<String> userIds = new LinkedHashSet<>();
+        if (dept != null) addMembers(dept, userIds);
+        return userIds;
+    }
+
+    /**
+     * 展开部门及其全部子部门的成员 userId（去重、保持顺序）。
+     */
+    public Set<String> expandDepartment(DingTalkDepartment root) {
+        Set<String> userIds = new LinkedHashSet<>();
+        if (root == null) return userIds;
+        Set<String> visited = new HashSet<>();
+        Deque<DingTalkDepartment> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            DingTalkDepartment d = queue.poll();
+            if (d.getDeptId() != null && !visited.add(d.getDeptId())) continue;
+            addMembers(d, userIds);
+            List<DingTalkDepartment> children = d.getDeptId() == null ? null : childrenByParentId.get(d.getDeptId());
+            if (children != null) queue.addAll(children);
+        }
+        return userIds;
+    }
+
+    private static void addMembers(DingTalkDepartment dept, Set<String> userIds) {
+        if (dept.getUserList() == null) return;
+        for (DingTalkUser u : dept.getUserList()) {
+            if (u != null && u.getUserid() != null && !u.getUserid().isEmpty()) {
+                userIds.add(u.getUserid());
+            }
+        }
+    }
+
+    public String findUserIdByName(String name) {
+        return name == null ? null : userIdByName.get(name);
+    }
+
+    public String findUserNameById(String userId) {
+        return userId == null ? null : userNameById.get(userId);
+    }
+}
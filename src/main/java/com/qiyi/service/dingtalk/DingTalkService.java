@@ -1,9 +1,12 @@
 package com.qiyi.service.dingtalk;
 
+import com.qiyi.config.AppConfig;
+import com.qiyi.service.dingtalk.messaging.DingTalkMediaCache;
 import com.qiyi.util.DingTalkUtil;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 钉钉能力门面（Facade）。
@@ -54,6 +57,16 @@ public class DingTalkService {
         return DingTalkUtil.createCalendarEvent(config.getRobotClientId(), config.getRobotClientSecret(), userId, summary, description, startTime, endTime, attendeeUnionIds, location);
     }
 
+    public String createRecurringCalendarEvent(String userId, String summary, String description, String startTime, String endTime, List<String> attendeeUnionIds, String location, String recurrenceType, int occurrences) throws Exception {
+        config.requireRobotClientCredentials();
+        return DingTalkUtil.createCalendarEvent(config.getRobotClientId(), config.getRobotClientSecret(), userId, summary, description, startTime, endTime, attendeeUnionIds, location, recurrenceType, occurrences);
+    }
+
+    public Map<String, List<long[]>> getBusyTimes(String operatorUnionId, List<String> unionIds, String startTime, String endTime) throws Exception {
+        config.requireRobotClientCredentials();
+        return DingTalkUtil.getBusyTimes(config.getRobotClientId(), config.getRobotClientSecret(), operatorUnionId, unionIds, startTime, endTime);
+    }
+
     public boolean sendTextMessageToEmployees(List<String> userIds, String content) throws Exception {
         config.requireRobotClientCredentials();
         config.requireRobotCode();
@@ -78,9 +91,34 @@ public class DingTalkService {
         return DingTalkUtil.sendLinkMessageToEmployees(config.getRobotClientId(), config.getRobotClientSecret(), config.getRobotCode(), userIds, title, text, messageUrl, picUrl);
     }
 
+    public boolean sendProgressCard(String userId, String cardBizId, String title, String markdownText) throws Exception {
+        config.requireRobotClientCredentials();
+        config.requireRobotCode();
+        String cardData = DingTalkUtil.buildMarkdownCardData(title, markdownText);
+        return DingTalkUtil.sendRobotInteractiveCard(config.getRobotClientId(), config.getRobotClientSecret(), config.getRobotCode(), userId, cardBizId, cardData);
+    }
+
+    public boolean updateProgressCard(String cardBizId, String title, String markdownText) throws Exception {
+        config.requireRobotClientCredentials();
+        String cardData = DingTalkUtil.buildMarkdownCardData(title, markdownText);
+        return DingTalkUtil.updateRobotInteractiveCard(config.getRobotClientId(), config.getRobotClientSecret(), cardBizId, cardData);
+    }
+
+    /**
+     * 上传图片并返回 mediaId；相同内容在有效期内直接复用缓存的 mediaId，大尺寸 PNG 按配置先压缩。
+     */
     public String uploadMedia(File file) throws Exception {
+        return uploadMedia(file, AppConfig.getInstance().isDingTalkMediaCompressEnabled());
+    }
+
+    /**
+     * @param compress 是否允许上传前压缩/缩放（二维码等需要保真的截图传 false）
+     */
+    public String uploadMedia(File file, boolean compress) throws Exception {
         config.requireRobotClientCredentials();
-        return DingTalkUtil.uploadMedia(config.getRobotClientId(), config.getRobotClientSecret(), file);
+        String appKey = config.getRobotClientId();
+        String appSecret = config.getRobotClientSecret();
+        return DingTalkMediaCache.shared().getOrUpload(appKey, file, compress, f -> DingTalkUtil.uploadMedia(appKey, appSecret, f));
     }
 
     public void sendWorkNotificationImage(List<String> userIds, String mediaId) throws Exception {
@@ -90,8 +128,15 @@ public class DingTalkService {
     }
 
     public void sendImageFileToEmployees(List<String> userIds, File file) throws Exception {
-        String mediaId = uploadMedia(file);
-        sendWorkNotificationImage(userIds, mediaId);
+        config.requireRobotClientCredentials();
+        config.requireAgentId();
+        boolean compress = AppConfig.getInstance().isDingTalkMediaCompressEnabled();
+        String appKey = config.getRobotClientId();
+        String appSecret = config.getRobotClientSecret();
+        // 缓存的 mediaId 可能已被钉钉提前回收：仅在被判定为过期/无效时重新上传并重发一次
+        DingTalkMediaCache.shared().sendWithMedia(appKey, file, compress,
+                f -> DingTalkUtil.uploadMedia(appKey, appSecret, f),
+                mediaId -> sendWorkNotificationImage(userIds, mediaId));
     }
 
     public void sendAsyncWorkTextMessage(List<String> userIds, String content) {
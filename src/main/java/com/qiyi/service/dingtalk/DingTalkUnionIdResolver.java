@@ -0,0 +1,192 @@
+package com.qiyi.service.dingtalk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qiyi.util.AppLog;
+import com.qiyi.util.DingTalkUtil;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * userId → unionId 解析器（批量 + 持久化缓存）。
+ *
+ * <p>同一应用下 userId 与 unionId 的对应关系不会变化，因此解析结果永久缓存：内存中一份，
+ * 并落盘到临时目录（与通讯录文件缓存同一位置），进程重启后无需重新请求。</p>
+ *
+ * <p>{@link #resolveAll(Collection, Lookup)} 先查缓存，未命中的 userId 在共享线程池中并发查询
+ * （并发度 {@link DingTalkUtil.DingTalkSettings#UNION_ID_LOOKUP_CONCURRENCY}），整批结束后只写一次文件。</p>
+ */
+public class DingTalkUnionIdResolver {
+    /**
+     * 单个 userId 的远程查询，返回 null 表示未查到。
+     */
+    @FunctionalInterface
+    public interface Lookup {
+        String lookup(String userId) throws Exception;
+    }
+
+    private static final Map<String, DingTalkUnionIdResolver> BY_APP = new ConcurrentHashMap<>();
+    private static final ExecutorService LOOKUP_POOL = newLookupExecutor(DingTalkUtil.DingTalkSettings.UNION_ID_LOOKUP_CONCURRENCY);
+
+    private final File storeFile;
+    private final Executor executor;
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+    private final Object fileLock = new Object();
+    private volatile boolean loaded;
+
+    /**
+     * @param storeFile 持久化文件；为 null 时只做内存缓存
+     */
+    DingTalkUnionIdResolver(File storeFile, Executor executor) {
+        this.storeFile = storeFile;
+        this.executor = executor;
+    }
+
+    /**
+     * 按应用获取共享解析器；appKey 为空（未配置/单测）时只做内存缓存，不落盘。
+     */
+    public static DingTalkUnionIdResolver forApp(String appKey) {
+        String key = appKey == null ? "" : appKey.trim();
+        return BY_APP.computeIfAbsent(key, k -> {
+            File file = null;
+            if (!k.isEmpty()) {
+                String safeAppKey = k.replaceAll("[^a-zA-Z0-9.-]", "_");
+                file = new File(System.getProperty("java.io.tmpdir"),
+                        DingTalkUtil.DingTalkSettings.UNION_ID_FILE_CACHE_PREFIX + safeAppKey + DingTalkUtil.DingTalkSettings.CONTACTS_FILE_CACHE_SUFFIX);
+            }
+            return new DingTalkUnionIdResolver(file, LOOKUP_POOL);
+        });
+    }
+
+    public String resolve(String userId, Lookup lookup) {
+        if (userId == null) return null;
+        return resolveAll(java.util.Collections.singletonList(userId), lookup).get(userId);
+    }
+
+    /**
+     * 批量解析，返回按输入顺序排列的 userId → unionId（解析失败的 userId 不在结果中）。
+     */
+    public Map<String, String> resolveAll(Collection<String> userIds, Lookup lookup) {
+        ensureLoaded();
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        if (userIds != null) {
+            for (String id : userIds) {
+                if (id != null && !id.trim().isEmpty()) unique.add(id.trim());
+            }
+        }
+
+        List<String> misses = new ArrayList<>();
+        for (String id : unique) {
+            if (!cache.containsKey(id)) misses.add(id);
+        }
+
+        if (!misses.isEmpty()) {
+            long startedAt = System.currentTimeMillis();
+            Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+            for (String id : misses) {
+                futures.put(id, CompletableFuture.supplyAsync(() -> lookupQuietly(id, lookup), executor));
+            }
+            int resolved = 0;
+            for (Map.Entry<String, CompletableFuture<String>> e : futures.entrySet()) {
+                String unionId = e.getValue().join();
+                if (unionId != null && !unionId.isEmpty()) {
+                    cache.put(e.getKey(), unionId);
+                    resolved++;
+                }
+            }
+            if (resolved > 0) persist();
+            AppLog.info("[dingtalk] unionId resolve, total=" + unique.size() + ", misses=" + misses.size()
+                    + ", resolved=" + resolved + ", elapsedMs=" + (System.currentTimeMillis() - startedAt));
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String id : unique) {
+            String unionId = cache.get(id);
+            if (unionId != null) result.put(id, unionId);
+        }
+        return result;
+    }
+
+    public int size() {
+        ensureLoaded();
+        return cache.size();
+    }
+
+    private static String lookupQuietly(String userId, Lookup lookup) {
+        try {
+            return lookup.lookup(userId);
+        } catch (Exception e) {
+            AppLog.error("[dingtalk] unionId lookup failed, userId=" + userId + ", error=" + e.getMessage());
+            return null;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (fileLock) {
+            if (loaded) return;
+            if (storeFile != null && storeFile.isFile()) {
+                try {
+                    Map<?, ?> stored = new ObjectMapper().readValue(storeFile, Map.class);
+                    for (Map.Entry<?, ?> e : stored.entrySet()) {
+                        if (e.getKey() != null && e.getValue() != null) {
+                            cache.putIfAbsent(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+                        }
+                    }
+                    AppLog.info("Loaded DingTalk unionId cache from local file: " + storeFile.getAbsolutePath() + ", size=" + cache.size());
+                } catch (Exception e) {
+                    AppLog.error("Failed to load DingTalk unionId cache, ignore: " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private void persist() {
+        if (storeFile == null) return;
+        synchronized (fileLock) {
+            try {
+                File tmp = new File(storeFile.getAbsolutePath() + ".tmp");
+                new ObjectMapper().writeValue(tmp, new HashMap<>(cache));
+                Files.move(tmp.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                AppLog.error("Failed to persist DingTalk unionId cache: " + e.getMessage());
+            }
+        }
+    }
+
+    private static ExecutorService newLookupExecutor(int workers) {
+        int n = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                n,
+                n,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "DingTalk-UnionId-Lookup-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
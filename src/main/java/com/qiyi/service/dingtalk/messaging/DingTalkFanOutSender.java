@@ -0,0 +1,191 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.util.AppLog;
+import com.qiyi.util.DingTalkUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 大批量单聊消息分发：去重 → 按接口上限分片 → 限速并发发送 → 按分片汇总结果。
+ *
+ * <p>钉钉机器人批量单聊接口单次最多 {@link DingTalkUtil.DingTalkSettings#BATCH_SEND_MAX_USERS} 个 userId，
+ * 且应用级有 QPS 配额。默认实例共用一个进程级限速器与发送线程池，多个工具同时分发时总调用频率仍不超过
+ * {@link DingTalkUtil.DingTalkSettings#FAN_OUT_MAX_CALLS_PER_SECOND}。</p>
+ */
+public class DingTalkFanOutSender {
+    /**
+     * 发送一个分片；返回 false 或抛出异常均视为该分片失败。
+     *
+     * <p>只有抛出 {@link NotDeliveredException} 的分片会重试：其余失败无法确认接口是否已经投递，
+     * 重发可能让同一批用户收到两条消息。</p>
+     */
+    @FunctionalInterface
+    public interface ChunkSender {
+        boolean send(List<String> userIds) throws Exception;
+    }
+
+    /**
+     * 请求确定没有到达钉钉（如获取 token、建客户端失败）时由 {@link ChunkSender} 抛出，分发器据此重试该分片。
+     */
+    public static class NotDeliveredException extends Exception {
+        public NotDeliveredException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final ExecutorService SENDERS = newSenderExecutor(DingTalkUtil.DingTalkSettings.FAN_OUT_CONCURRENCY);
+    private static final RateLimiter SHARED_LIMITER = new RateLimiter(DingTalkUtil.DingTalkSettings.FAN_OUT_MAX_CALLS_PER_SECOND);
+
+    private final Executor executor;
+    private final RateLimiter limiter;
+    private final int chunkSize;
+    private final int maxAttempts;
+
+    public DingTalkFanOutSender() {
+        this(SENDERS, SHARED_LIMITER, DingTalkUtil.DingTalkSettings.BATCH_SEND_MAX_USERS, DingTalkUtil.DingTalkSettings.FAN_OUT_CHUNK_RETRIES + 1);
+    }
+
+    DingTalkFanOutSender(Executor executor, RateLimiter limiter, int chunkSize, int maxAttempts) {
+        this.executor = executor;
+        this.limiter = limiter;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * 按出现顺序去重后分片并发发送，阻塞直到所有分片完成。
+     */
+    public FanOutReport send(Collection<String> userIds, ChunkSender sender) {
+        long startedAt = System.currentTimeMillis();
+        List<List<String>> chunks = split(userIds, chunkSize);
+        List<CompletableFuture<FanOutReport.ChunkResult>> futures = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            final int index = i;
+            final List<String> chunk = chunks.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> sendChunk(index, chunk, sender), executor));
+        }
+        List<FanOutReport.ChunkResult> results = new ArrayList<>(chunks.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (Exception e) {
+                results.add(new FanOutReport.ChunkResult(i, chunks.get(i), false, 0, e.getMessage()));
+            }
+        }
+        FanOutReport report = new FanOutReport(results, System.currentTimeMillis() - startedAt);
+        AppLog.info("[dingtalk] fan-out finished, recipients=" + report.getTotalRecipients()
+                + ", chunks=" + results.size()
+                + ", failedChunks=" + report.getFailedChunks().size()
+                + ", elapsedMs=" + report.getElapsedMillis());
+        return report;
+    }
+
+    /**
+     * 去重（保持顺序、忽略空值）后按 size 切分。
+     */
+    static List<List<String>> split(Collection<String> userIds, int size) {
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        if (userIds != null) {
+            for (String id : userIds) {
+                if (id == null) continue;
+                String v = id.trim();
+                if (!v.isEmpty()) unique.add(v);
+            }
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> current = new ArrayList<>(Math.min(size, unique.size()));
+        for (String id : unique) {
+            current.add(id);
+            if (current.size() >= size) {
+                chunks.add(current);
+                current = new ArrayList<>(size);
+            }
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    private FanOutReport.ChunkResult sendChunk(int index, List<String> chunk, ChunkSender sender) {
+        String error = null;
+        int attempts = 0;
+        while (attempts < maxAttempts) {
+            attempts++;
+            try {
+                limiter.acquire();
+                if (sender.send(chunk)) {
+                    return new FanOutReport.ChunkResult(index, chunk, true, attempts, null);
+                }
+                error = "send returned false";
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "interrupted";
+                break;
+            } catch (NotDeliveredException e) {
+                error = errorMessage(e.getCause() != null ? e.getCause() : e);
+            } catch (Exception e) {
+                error = errorMessage(e);
+                break;
+            }
+        }
+        AppLog.warn("[dingtalk] fan-out chunk failed, index=" + index + ", size=" + chunk.size() + ", attempts=" + attempts + ", error=" + error);
+        return new FanOutReport.ChunkResult(index, chunk, false, attempts, error);
+    }
+
+    private static String errorMessage(Throwable e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+    }
+
+    private static ExecutorService newSenderExecutor(int workers) {
+        int n = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                n,
+                n,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "DingTalk-FanOut-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 最简单的匀速限速器：相邻两次调用之间至少间隔 1000/permitsPerSecond 毫秒。
+     */
+    static class RateLimiter {
+        private final long intervalNanos;
+        private long nextFreeAt;
+
+        RateLimiter(int permitsPerSecond) {
+            this.intervalNanos = permitsPerSecond <= 0 ? 0L : TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos <= 0) return;
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = Math.max(now, nextFreeAt);
+                nextFreeAt = slot + intervalNanos;
+                waitNanos = slot - now;
+            }
+            if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.util.AppLog;
+import com.qiyi.util.DingTalkUtil;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 钉钉媒体文件（mediaId）上传缓存。
+ *
+ * <ul>
+ *     <li>按文件内容 SHA-256 作为键：重试、同一张图发给多人时不再重复上传</li>
+ *     <li>有效期 {@link DingTalkUtil.DingTalkSettings#MEDIA_CACHE_SECONDS}，略短于钉钉媒体文件的 3 天有效期</li>
+ *     <li>同一内容的并发上传只会真正调用一次接口，其余调用方等待同一个结果</li>
+ *     <li>存储复用 {@link DingTalkUtil.DingTalkCache}，替换为集中式缓存后多实例可共享 mediaId</li>
+ * </ul>
+ *
+ * <p>可选的预处理（{@link MediaImageCompressor}）只在缓存未命中时执行，缓存键基于原始内容计算。</p>
+ */
+public class DingTalkMediaCache {
+    /**
+     * 实际上传动作，返回 mediaId。
+     */
+    @FunctionalInterface
+    public interface Uploader {
+        String upload(File file) throws Exception;
+    }
+
+    /**
+     * 用 mediaId 发送消息的动作。
+     */
+    @FunctionalInterface
+    public interface MediaSender {
+        void send(String mediaId) throws Exception;
+    }
+
+    /**
+     * 钉钉"不合法的媒体文件 id"错误码。
+     */
+    static final int ERRCODE_INVALID_MEDIA_ID = 40007;
+
+    private static final DingTalkMediaCache SHARED = new DingTalkMediaCache(null);
+
+    private final DingTalkUtil.DingTalkCache store;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger uploads = new AtomicInteger();
+
+    /**
+     * @param store 缓存存储；为 null 时每次使用 DingTalkUtil 当前配置的缓存
+     */
+    DingTalkMediaCache(DingTalkUtil.DingTalkCache store) {
+        this.store = store;
+    }
+
+    public static DingTalkMediaCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * 返回文件对应的 mediaId：命中缓存直接返回，否则（可选压缩后）上传并写入缓存。
+     *
+     * @param namespace 缓存命名空间（通常为应用 appKey，不同应用的 mediaId 不通用）
+     * @param compress  是否允许上传前压缩/缩放大尺寸图片
+     */
+    public String getOrUpload(String namespace, File file, boolean compress, Uploader uploader) throws Exception {
+        if (file == null || !file.isFile()) {
+            throw new IllegalArgumentException("Media file not found: " + file);
+        }
+        String key = cacheKey(namespace, sha256(file), compress);
+        String cached = store().get(key);
+        if (cached != null && !cached.isEmpty()) {
+            AppLog.info("[dingtalk] media cache hit, file=" + file.getName());
+            return cached;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            String mediaId = upload(file, compress, uploader);
+            store().put(key, mediaId, DingTalkUtil.DingTalkSettings.MEDIA_CACHE_SECONDS);
+            mine.complete(mediaId);
+            return mediaId;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 用文件对应的 mediaId 发送消息。
+     *
+     * <p>只有使用缓存 mediaId 且发送被钉钉判定为 mediaId 过期/无效时，才失效缓存、重新上传并重发一次；
+     * 刚上传的 mediaId 或其他发送错误直接抛出，避免一次发送失败触发多余上传和重复消息。</p>
+     */
+    public void sendWithMedia(String namespace, File file, boolean compress, Uploader uploader, MediaSender sender) throws Exception {
+        if (file == null || !file.isFile()) {
+            throw new IllegalArgumentException("Media file not found: " + file);
+        }
+        String cached = store().get(cacheKey(namespace, sha256(file), compress));
+        if (cached == null || cached.isEmpty()) {
+            sender.send(getOrUpload(namespace, file, compress, uploader));
+            return;
+        }
+        try {
+            sender.send(cached);
+        } catch (Exception e) {
+            if (!isMediaIdRejected(e)) throw e;
+            AppLog.warn("[dingtalk] cached mediaId rejected, re-upload once: " + e.getMessage());
+            invalidate(namespace, file, compress);
+            sender.send(getOrUpload(namespace, file, compress, uploader));
+        }
+    }
+
+    /**
+     * 发送错误是否表示 mediaId 已过期或无效（错误码 40007，或错误信息指明 media_id 不合法/过期）。
+     */
+    static boolean isMediaIdRejected(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            String msg = t.getMessage();
+            if (msg == null) continue;
+            if (msg.contains("errcode=" + ERRCODE_INVALID_MEDIA_ID)) return true;
+            String lower = msg.toLowerCase();
+            boolean aboutMedia = lower.contains("media_id") || lower.contains("mediaid") || msg.contains("媒体文件");
+            boolean rejected = lower.contains("invalid") || lower.contains("expired")
+                    || msg.contains("不合法") || msg.contains("无效") || msg.contains("过期");
+            if (aboutMedia && rejected) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 使缓存中的 mediaId 失效（例如发送时被钉钉判定为无效）。
+     */
+    public void invalidate(String namespace, File file, boolean compress) {
+        try {
+            // DingTalkCache 没有删除接口：写入一个立即过期的空值覆盖旧 mediaId
+            store().put(cacheKey(namespace, sha256(file), compress), "", 0);
+        } catch (Exception e) {
+            AppLog.warn("[dingtalk] media cache invalidate failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 实际发生的上传次数（用于评估缓存效果）。
+     */
+    public int getUploadCount() {
+        return uploads.get();
+    }
+
+    private String upload(File file, boolean compress, Uploader uploader) throws Exception {
+        File toUpload = file;
+        if (compress) {
+            toUpload = MediaImageCompressor.prepare(file);
+        }
+        try {
+            uploads.incrementAndGet();
+            return uploader.upload(toUpload);
+        } finally {
+            if (toUpload != file) {
+                Files.deleteIfExists(toUpload.toPath());
+            }
+        }
+    }
+
+    private DingTalkUtil.DingTalkCache store() {
+        return store != null ? store : DingTalkUtil.getDingTalkCache();
+    }
+
+    private static String await(CompletableFuture<String> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    private static String cacheKey(String namespace, String hash, boolean compress) {
+        return DingTalkUtil.DingTalkSettings.MEDIA_CACHE_KEY_PREFIX
+                + (namespace == null ? "" : namespace) + "_"
+                + (compress ? "c_" : "o_")
+                + hash;
+    }
+
+    static String sha256(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.tools.ToolProgress;
+import com.qiyi.util.AppLog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 可原地更新的进度卡片（{@link ToolProgress} 的钉钉实现）。
+ *
+ * <p>工作方式：</p>
+ * <ul>
+ *     <li>{@link #update(String)} 只追加到内存缓冲，不直接调用 API</li>
+ *     <li>首行到达后按 flushIntervalMs 安排一次合并刷新：首次刷新创建卡片，之后原地更新同一张卡片</li>
+ *     <li>卡片仅展示最近 maxVisibleLines 行，保证聊天窗口可读</li>
+ *     <li>卡片创建失败时退化为 fallback（通常是 sendText），但仍按批次合并发送</li>
+ * </ul>
+ */
+public class DingTalkProgressCard implements ToolProgress {
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DingTalk-Progress-Card-Flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ProgressCardSink sink;
+    private final String title;
+    private final Consumer<String> fallback;
+    private final long flushIntervalMs;
+    private final int maxVisibleLines;
+    private final String cardId = "progress_" + UUID.randomUUID().toString().replace("-", "");
+    private final long startedAt = System.currentTimeMillis();
+
+    private final Object stateLock = new Object();
+    private final Object flushLock = new Object();
+    private final ArrayDeque<String> visible = new ArrayDeque<>();
+    private final List<String> pending = new ArrayList<>();
+    private int totalLines;
+    private boolean dirty;
+    private boolean finished;
+    private String summary;
+    private ScheduledFuture<?> scheduled;
+
+    private boolean cardCreated;
+    private boolean fallbackMode;
+    private int apiCalls;
+
+    public DingTalkProgressCard(ProgressCardSink sink, String title, Consumer<String> fallback, long flushIntervalMs, int maxVisibleLines) {
+        this.sink = sink;
+        this.title = title == null || title.trim().isEmpty() ? "任务进度" : title.trim();
+        this.fallback = fallback;
+        this.flushIntervalMs = Math.max(200L, flushIntervalMs);
+        this.maxVisibleLines = Math.max(5, maxVisibleLines);
+    }
+
+    @Override
+    public void update(String line) {
+        if (line == null) return;
+        synchronized (stateLock) {
+            if (finished) return;
+            append(line);
+            if (scheduled == null) {
+                scheduled = FLUSHER.schedule(this::scheduledFlush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void finish(String summary) {
+        synchronized (stateLock) {
+            if (finished) return;
+            finished = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+            if (summary != null && !summary.trim().isEmpty()) {
+                this.summary = summary.trim();
+                append(this.summary);
+            }
+            dirty = true;
+        }
+        flush();
+    }
+
+    public String getCardId() {
+        return cardId;
+    }
+
+    /**
+     * 已发生的投递调用次数（创建/更新/降级发送），用于评估合并效果。
+     */
+    public int getApiCalls() {
+        synchronized (flushLock) {
+            return apiCalls;
+        }
+    }
+
+    private void append(String line) {
+        String[] parts = line.split("\n", -1);
+        for (String p : parts) {
+            visible.addLast(p);
+            pending.add(p);
+            totalLines++;
+        }
+        while (visible.size() > maxVisibleLines) visible.removeFirst();
+        dirty = true;
+    }
+
+    private void scheduledFlush() {
+        synchronized (stateLock) {
+            scheduled = null;
+        }
+        flush();
+        synchronized (stateLock) {
+            if (!finished && dirty && scheduled == null) {
+                scheduled = FLUSHER.schedule(this::scheduledFlush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            String markdown;
+            List<String> batch;
+            synchronized (stateLock) {
+                if (!dirty) return;
+                dirty = false;
+                markdown = render();
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            deliver(markdown, batch);
+        }
+    }
+
+    private void deliver(String markdown, List<String> batch) {
+        if (!fallbackMode) {
+            try {
+                apiCalls++;
+                if (!cardCreated) {
+                    sink.create(cardId, title, markdown);
+                    cardCreated = true;
+                } else {
+                    sink.update(cardId, title, markdown);
+                }
+                return;
+            } catch (Exception e) {
+                if (!cardCreated) {
+                    AppLog.error("[progress-card] create failed, fallback to text: " + e.getMessage());
+                    fallbackMode = true;
+                } else {
+                    AppLog.error("[progress-card] update failed: " + e.getMessage());
+                    return;
+                }
+            }
+        }
+        if (fallback == null || batch.isEmpty()) return;
+        try {
+            apiCalls++;
+            fallback.accept(String.join("\n", batch));
+        } catch (Exception e) {
+            AppLog.error("[progress-card] fallback send failed: " + e.getMessage());
+        }
+    }
+
+    private String render() {
+        StringBuilder sb = new StringBuilder();
+        long elapsedSec = (System.currentTimeMillis() - startedAt) / 1000;
+        sb.append(finished ? "**已结束**" : "**进行中**")
+                .append(" · 耗时 ").append(elapsedSec).append("s")
+                .append(" · 共 ").append(totalLines).append(" 条进度");
+        int hidden = totalLines - visible.size();
+        if (hidden > 0) {
+            sb.append("\n\n...(已省略较早的 ").append(hidden).append(" 条)");
+        }
+        sb.append("\n\n");
+        boolean first = true;
+        for (String line : visible) {
+            if (!first) sb.append("  \n");
+            sb.append(line);
+            first = false;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.service.dingtalk.DingTalkService;
+
+/**
+ * 基于钉钉机器人互动卡片（StandardCard）的进度投递端：单聊发送给指定用户，后续按 cardBizId 原地更新。
+ */
+public class DingTalkProgressCardSink implements ProgressCardSink {
+    private final DingTalkService service;
+    private final String receiverUserId;
+
+    public DingTalkProgressCardSink(DingTalkService service, String receiverUserId) {
+        this.service = service;
+        this.receiverUserId = receiverUserId;
+    }
+
+    @Override
+    public void create(String cardId, String title, String markdownText) throws Exception {
+        service.sendProgressCard(receiverUserId, cardId, title, markdownText);
+    }
+
+    @Override
+    public void update(String cardId, String title, String markdownText) throws Exception {
+        service.updateProgressCard(cardId, title, markdownText);
+    }
+}
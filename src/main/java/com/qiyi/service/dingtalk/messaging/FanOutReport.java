@@ -0,0 +1,94 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量分发结果：按分片记录成功/失败，便于向发起人回报与排查。
+ */
+public class FanOutReport {
+    private final List<ChunkResult> chunks;
+    private final long elapsedMillis;
+
+    public FanOutReport(List<ChunkResult> chunks, long elapsedMillis) {
+        this.chunks = chunks == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(chunks));
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getTotalRecipients() {
+        int n = 0;
+        for (ChunkResult c : chunks) n += c.getUserIds().size();
+        return n;
+    }
+
+    public List<String> getSucceededUserIds() {
+        List<String> ids = new ArrayList<>();
+        for (ChunkResult c : chunks) if (c.isSuccess()) ids.addAll(c.getUserIds());
+        return ids;
+    }
+
+    public List<String> getFailedUserIds() {
+        List<String> ids = new ArrayList<>();
+        for (ChunkResult c : chunks) if (!c.isSuccess()) ids.addAll(c.getUserIds());
+        return ids;
+    }
+
+    public List<ChunkResult> getFailedChunks() {
+        List<ChunkResult> failed = new ArrayList<>();
+        for (ChunkResult c : chunks) if (!c.isSuccess()) failed.add(c);
+        return failed;
+    }
+
+    public boolean isAllSucceeded() {
+        for (ChunkResult c : chunks) if (!c.isSuccess()) return false;
+        return true;
+    }
+
+    /**
+     * 单个分片（一次批量发送 API 调用）的结果。
+     */
+    public static class ChunkResult {
+        private final int index;
+        private final List<String> userIds;
+        private final boolean success;
+        private final int attempts;
+        private final String error;
+
+        public ChunkResult(int index, List<String> userIds, boolean success, int attempts, String error) {
+            this.index = index;
+            this.userIds = userIds == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(userIds));
+            this.success = success;
+            this.attempts = attempts;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public List<String> getUserIds() {
+            return userIds;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
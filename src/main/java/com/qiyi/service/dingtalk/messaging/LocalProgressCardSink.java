@@ -0,0 +1,62 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.util.AppLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地进度卡片投递端（替身实现）：仅在内存中保存卡片内容并记录调用次数，供控制台调试与单测使用。
+ */
+public class LocalProgressCardSink implements ProgressCardSink {
+    private final Map<String, String> cards = new ConcurrentHashMap<>();
+    private final AtomicInteger createCalls = new AtomicInteger();
+    private final AtomicInteger updateCalls = new AtomicInteger();
+    private final boolean log;
+
+    public LocalProgressCardSink() {
+        this(false);
+    }
+
+    public LocalProgressCardSink(boolean log) {
+        this.log = log;
+    }
+
+    @Override
+    public void create(String cardId, String title, String markdownText) {
+        createCalls.incrementAndGet();
+        cards.put(cardId, markdownText == null ? "" : markdownText);
+        if (log) AppLog.info("[progress-card] create " + cardId + " " + title + "\n" + markdownText);
+    }
+
+    @Override
+    public void update(String cardId, String title, String markdownText) {
+        if (!cards.containsKey(cardId)) {
+            throw new IllegalStateException("Unknown card: " + cardId);
+        }
+        updateCalls.incrementAndGet();
+        cards.put(cardId, markdownText == null ? "" : markdownText);
+        if (log) AppLog.info("[progress-card] update " + cardId + " " + title + "\n" + markdownText);
+    }
+
+    public String getContent(String cardId) {
+        return cards.get(cardId);
+    }
+
+    public int getCardCount() {
+        return cards.size();
+    }
+
+    public int getCreateCalls() {
+        return createCalls.get();
+    }
+
+    public int getUpdateCalls() {
+        return updateCalls.get();
+    }
+
+    public int getTotalCalls() {
+        return createCalls.get() + updateCalls.get();
+    }
+}
@@ -0,0 +1,92 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.util.AppLog;
+import com.qiyi.util.DingTalkUtil;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * 上传前的图片压缩：把大尺寸 PNG 截图缩放到 {@link DingTalkUtil.DingTalkSettings#MEDIA_MAX_DIMENSION}
+ * 以内并转为 JPEG，降低上传带宽与耗时。
+ *
+ * <p>只处理超过 {@link DingTalkUtil.DingTalkSettings#MEDIA_COMPRESS_THRESHOLD_BYTES} 或超过最大边长的 PNG；
+ * 二维码这类小截图不会被改动。压缩失败或结果没有变小时返回原文件。</p>
+ */
+public final class MediaImageCompressor {
+    private MediaImageCompressor() {
+    }
+
+    /**
+     * 返回待上传的文件：原文件，或压缩后生成的临时文件（由调用方负责删除）。
+     */
+    public static File prepare(File file) {
+        if (file == null || !file.getName().toLowerCase().endsWith(".png")) return file;
+        try {
+            long size = file.length();
+            BufferedImage src = ImageIO.read(file);
+            if (src == null) return file;
+            int maxDim = Math.max(1, DingTalkUtil.DingTalkSettings.MEDIA_MAX_DIMENSION);
+            boolean oversized = src.getWidth() > maxDim || src.getHeight() > maxDim;
+            if (!oversized && size <= DingTalkUtil.DingTalkSettings.MEDIA_COMPRESS_THRESHOLD_BYTES) return file;
+
+            BufferedImage scaled = scaleToRgb(src, maxDim);
+            File out = Files.createTempFile("dingtalk_media_", ".jpg").toFile();
+            writeJpeg(scaled, out, DingTalkUtil.DingTalkSettings.MEDIA_JPEG_QUALITY);
+            if (out.length() <= 0 || out.length() >= size) {
+                Files.deleteIfExists(out.toPath());
+                return file;
+            }
+            AppLog.info("[dingtalk] media compressed, file=" + file.getName()
+                    + ", " + src.getWidth() + "x" + src.getHeight() + " -> " + scaled.getWidth() + "x" + scaled.getHeight()
+                    + ", bytes " + size + " -> " + out.length());
+            return out;
+        } catch (Exception e) {
+            AppLog.warn("[dingtalk] media compress failed, upload original: " + e.getMessage());
+            return file;
+        }
+    }
+
+    private static BufferedImage scaleToRgb(BufferedImage src, int maxDim) {
+        double ratio = Math.min(1.0, (double) maxDim / Math.max(src.getWidth(), src.getHeight()));
+        int w = Math.max(1, (int) Math.round(src.getWidth() * ratio));
+        int h = Math.max(1, (int) Math.round(src.getHeight() * ratio));
+        BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = dst.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG 无透明通道，透明区域按白底处理
+            g.setColor(java.awt.Color.WHITE);
+            g.fillRect(0, 0, w, h);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+
+    private static void writeJpeg(BufferedImage image, File out, float quality) throws Exception {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) throw new IllegalStateException("No JPEG writer available");
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0.1f, Math.min(1.0f, quality)));
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.qiyi.service.dingtalk.messaging;
+
+/**
+ * 进度卡片的投递端（创建一次，之后原地更新）。
+ *
+ * <p>生产环境使用 {@link DingTalkProgressCardSink}（钉钉机器人互动卡片）；
+ * 本地调试/单测使用 {@link LocalProgressCardSink}，不发起任何网络调用。</p>
+ */
+public interface ProgressCardSink {
+    /**
+     * 创建卡片并投递给接收人。
+     * @param cardId 调用方生成的卡片唯一 ID
+     */
+    void create(String cardId, String title, String markdownText) throws Exception;
+
+    /**
+     * 整卡覆盖更新已创建的卡片。
+     */
+    void update(String cardId, String title, String markdownText) throws Exception;
+}
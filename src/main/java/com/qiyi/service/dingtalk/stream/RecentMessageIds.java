@@ -0,0 +1,62 @@
+package com.qiyi.service.dingtalk.stream;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 有界、按时间窗口过期的消息 ID 集合，用于拦截 Stream 客户端重连后的重复投递。
+ *
+ * <p>按插入顺序保存（最早的在队头），每次写入时顺带淘汰过期项与超出容量的最早项，因此内存占用始终有上界。</p>
+ */
+public class RecentMessageIds {
+    private final long windowMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Long> seenAt = new LinkedHashMap<>();
+
+    public RecentMessageIds(long windowMillis, int maxEntries) {
+        this(windowMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    RecentMessageIds(long windowMillis, int maxEntries, LongSupplier clock) {
+        this.windowMillis = Math.max(1L, windowMillis);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+    }
+
+    /**
+     * 首次出现（或上次出现已超出时间窗口）返回 true 并记录；窗口内重复出现返回 false。
+     */
+    public synchronized boolean markIfAbsent(String id) {
+        if (id == null || id.isEmpty()) return true;
+        long now = clock.getAsLong();
+        evict(now);
+        Long prev = seenAt.get(id);
+        if (prev != null && now - prev < windowMillis) {
+            return false;
+        }
+        seenAt.remove(id);
+        seenAt.put(id, now);
+        while (seenAt.size() > maxEntries) {
+            Iterator<String> it = seenAt.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return seenAt.size();
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<String, Long>> it = seenAt.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (now - e.getValue() < windowMillis) break;
+            it.remove();
+        }
+    }
+}
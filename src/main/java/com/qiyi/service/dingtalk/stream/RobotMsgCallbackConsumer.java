@@ -14,6 +14,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,10 +28,60 @@ import java.util.regex.Pattern;
  * 钉钉 Stream 回调入口：接收消息并转交给 TaskProcessor。
  *
  * <p>该类只做“消息接入 + 上下文构建 + 异步分发”，具体工具选择与执行由 {@link TaskProcessor} 负责。</p>
+ *
+ * <p>回调线程上只做两件事：按 msgId 去重、投递到有界的接入队列，然后立即 ack。
+ * @ 解析（会触发通讯录加载）与任务执行全部在接入线程池中完成；Stream 客户端重连后的重复投递
+ * 在时间窗口内直接丢弃，不会再次进入 TaskProcessor。</p>
  */
 public class RobotMsgCallbackConsumer implements OpenDingTalkCallbackListener<JSONObject, JSONObject> {
+    private static final RecentMessageIds RECENT_MESSAGE_IDS = new RecentMessageIds(
+            DingTalkUtil.DingTalkSettings.STREAM_DEDUP_WINDOW_MILLIS,
+            DingTalkUtil.DingTalkSettings.STREAM_DEDUP_MAX_ENTRIES
+    );
+    private static final ExecutorService INGESTION = newIngestionExecutor(
+            DingTalkUtil.DingTalkSettings.STREAM_INGESTION_WORKERS,
+            DingTalkUtil.DingTalkSettings.STREAM_INGESTION_QUEUE_CAPACITY
+    );
+
+    private final RecentMessageIds recentMessageIds;
+    private final Executor ingestion;
+
+    public RobotMsgCallbackConsumer() {
+        this(RECENT_MESSAGE_IDS, INGESTION);
+    }
+
+    RobotMsgCallbackConsumer(RecentMessageIds recentMessageIds, Executor ingestion) {
+        this.recentMessageIds = recentMessageIds;
+        this.ingestion = ingestion;
+    }
+
     @Override
     public JSONObject execute(JSONObject request) {
+        try {
+            String messageId = resolveMessageId(request);
+            if (messageId != null && !recentMessageIds.markIfAbsent(messageId)) {
+                AppLog.info("[dingtalk] duplicate message dropped, msgId=" + messageId);
+                return new JSONObject();
+            }
+            try {
+                ingestion.execute(() -> handle(request));
+            } catch (RejectedExecutionException e) {
+                String senderStaffId = request == null ? null : request.getString("senderStaffId");
+                AppLog.warn("[dingtalk] ingestion queue full, message rejected, msgId=" + messageId + ", senderStaffId=" + senderStaffId);
+                if (senderStaffId != null && !senderStaffId.isEmpty()) {
+                    DingTalkUtil.sendAsyncTextMessage(java.util.Collections.singletonList(senderStaffId), "当前排队任务较多，请稍后再试。");
+                }
+            }
+        } catch (Exception e) {
+            AppLog.error("[dingtalk] receive message error", e);
+        }
+        return new JSONObject();
+    }
+
+    /**
+     * 接入线程中执行：解析文本与 @ 用户，构建上下文并交给 TaskProcessor。
+     */
+    protected void handle(JSONObject request) {
         try {
             JSONObject text = request.getJSONObject("text");
             String senderStaffId = request.getString("senderStaffId");
@@ -35,17 +92,46 @@ public class RobotMsgCallbackConsumer implements OpenDingTalkCallbackListener<JS
                 List<String> atUserIds = parseAtUserIds(msg);
 
                 AppLog.info("[dingtalk] message received, senderStaffId=" + senderStaffId + ", atCount=" + (atUserIds == null ? 0 : atUserIds.size()) + ", content=" + safeOneLine(msg));
-                java.util.concurrent.CompletableFuture.runAsync(() -> {
-                    DingTalkToolContext ctx = new DingTalkToolContext(senderStaffId, atUserIds);
-                    TaskProcessor.process(msg, ctx, ctx);
-                });
+                DingTalkToolContext ctx = new DingTalkToolContext(senderStaffId, atUserIds);
+                TaskProcessor.process(msg, ctx, ctx);
             } else {
                 AppLog.warn("[dingtalk] message received but missing text payload, senderStaffId=" + senderStaffId + ", raw=" + safeOneLine(JSON.toJSONString(request)));
             }
         } catch (Exception e) {
-            AppLog.error("[dingtalk] receive message error", e);
+            AppLog.error("[dingtalk] handle message error", e);
         }
-        return new JSONObject();
+    }
+
+    /**
+     * 消息唯一标识：优先使用回调中的 msgId；缺失时用“发送人 + 创建时间 + 内容”兜底。
+     */
+    static String resolveMessageId(JSONObject request) {
+        if (request == null) return null;
+        String msgId = request.getString("msgId");
+        if (msgId != null && !msgId.trim().isEmpty()) return msgId.trim();
+        String createAt = request.getString("createAt");
+        if (createAt == null || createAt.isEmpty()) return null;
+        JSONObject text = request.getJSONObject("text");
+        String content = text == null ? "" : String.valueOf(text.getString("content"));
+        return request.getString("senderStaffId") + ":" + createAt + ":" + content.hashCode();
+    }
+
+    private static ExecutorService newIngestionExecutor(int workers, int queueCapacity) {
+        int n = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                n,
+                n,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "DingTalk-Robot-Ingestion-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
     }
 
     private static List<String> parseAtUserIds(String msg) {
@@ -287,7 +287,8 @@ public class PodCastPostToWechat {
                 publishPage.screenshot(new com.microsoft.playwright.Page.ScreenshotOptions().setPath(screenshotPath));
             }
             
-            String mediaId = DING_TALK_SERVICE.uploadMedia(screenshotPath.toFile());
+            // 二维码截图需保真，不做压缩
+            String mediaId = DING_TALK_SERVICE.uploadMedia(screenshotPath.toFile(), false);
 
             DING_TALK_SERVICE.sendAsyncWorkTextMessage(DING_TALK_SERVICE.getConfig().getPodcastAdminUsers(), "微信公众号文章需要扫码发布，请扫描下方二维码： --" + System.currentTimeMillis());
             DING_TALK_SERVICE.sendAsyncWorkImageMessage(DING_TALK_SERVICE.getConfig().getPodcastAdminUsers(), mediaId);
@@ -16,6 +16,7 @@ import java.util.concurrent.Future;
 
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.tools.ToolProgress;
 
 public class PodcastManager {
     private static final DingTalkService DING_TALK_SERVICE = DingTalkService.fromAppConfig();
@@ -136,10 +137,11 @@ public class PodcastManager {
             return;
         }
 
+        ToolProgress progress = ToolProgress.open(messenger, "播客摘要生成");
         try {
             String startMsg = "开始分析生成摘要，待处理文件数: " + targetFiles.length;
             if (messenger != null) {
-                messenger.sendText(startMsg);
+                progress.update(startMsg);
             } else {
                 DING_TALK_SERVICE.sendTextMessageToEmployees(DING_TALK_SERVICE.getConfig().getPodcastAdminUsers(), startMsg);
             }
@@ -178,9 +180,13 @@ public class PodcastManager {
             }));
         }
         
+        int finished = 0;
         for (Future<?> f : futures) {
             try { f.get(); } catch (Exception e) { AppLog.error(e); }
+            finished++;
+            progress.update("摘要处理进度: " + finished + "/" + futures.size());
         }
+        progress.finish(null);
 
         PFileUtil.batchRenameChineseFiles(fileService.getDownloadDirSummary(),modelType, 50);
         
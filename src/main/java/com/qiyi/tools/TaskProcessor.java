@@ -39,21 +39,11 @@ public class TaskProcessor {
         }
 
         // Step 1: 先用全量工具 Schema 做一次“工具筛选”，减少后续规划 prompt 体积
-        StringBuilder selectionPrompt = new StringBuilder();
-        selectionPrompt.append(SkillPrompts.base());
-        selectionPrompt.append("You are an intent classifier. Analyze the user's input and select the tools that might be needed.\n");
-        selectionPrompt.append("The available tools are:\n");
-        for (Tool tool : ToolManager.getAll()) {
-            selectionPrompt.append("- Schema: ").append(ToolManager.toToolSchema(tool).toJSONString()).append("\n");
-        }
-        selectionPrompt.append("\nUser Input: \"").append(text).append("\"\n");
-        selectionPrompt.append("\nReturn JSON only. Format: { \"selected_tools\": [\"tool_name1\"] } or { \"selected_tools\": [] } if no tool matches.");
-        selectionPrompt.append("\nIf the user asks about the agent's capabilities (e.g., '你能做什么', '工具能力', 'capabilities'), select the 'list_capabilities' tool.");
-        selectionPrompt.append("\nDo NOT select 'SearchDingTalkUserTool' unless the user explicitly asks for uid/userId/用户ID/Uid/查询uid。For sending notifications like '告诉/通知/发给某人', select 'send_message' directly (it can resolve names); do not use SearchDingTalkUserTool for that.");
+        String selectionPrompt = buildSelectionPrompt(text);
 
         List<String> validSelectedTools = new ArrayList<>();
         try {
-            String selectionResponse = LLMUtil.chat(selectionPrompt.toString());
+            String selectionResponse = LLMUtil.chat(selectionPrompt);
             if (selectionResponse != null && !selectionResponse.trim().isEmpty()) {
                 selectionResponse = selectionResponse.replace("```json", "").replace("```", "").trim();
                 JSONObject selectionJson = JSON.parseObject(selectionResponse);
@@ -72,58 +62,10 @@ public class TaskProcessor {
         AppLog.info("[task] selectedTools=" + validSelectedTools);
 
         // Step 2: 生成“可执行任务计划”（reply + tasks[]），并按需注入对应业务域 skills prompt
-        StringBuilder sb = new StringBuilder();
-        sb.append(SkillPrompts.base());
-        sb.append("You are an intent classifier. Analyze the user's input and map it to a sequence of tools to be executed.\n");
-        sb.append("Current Date and Time: ").append(java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
-        sb.append("Note: If the user provides relative time (e.g., 'tomorrow', 'next week'), calculate the exact date based on the Current Date. For 'create_event', startTime and endTime MUST be in 'yyyy-MM-dd HH:mm:ss' format.\n");
-        sb.append("IMPORTANT: You can chain multiple tools. If the output of one tool is required as input for the next tool (e.g., use the result of a query as the message content), use the placeholder '{{PREV_RESULT}}' as the parameter value. This placeholder will be replaced by the actual result of the previous tool execution.\n");
-        sb.append("RULES: 1) Do NOT use SearchDingTalkUserTool unless the user asks for uid/userId. 2) For '把结果告诉/发给/通知 某人', use send_message with names/departments and content='{{PREV_RESULT}}'. 3) For ERP order queries like '查一下订单1063063', map the number to parameter orderId. 4) For self-selected stock group queries, use get_group_stock_quotes and extract groupName from phrases like 'XX分组/自选股XX/我的XX里面的股票'.\n");
-
-        if (!validSelectedTools.isEmpty()) {
-            java.util.Set<String> domains = new java.util.LinkedHashSet<>();
-            for (String toolName : validSelectedTools) {
-                Tool tool = ToolManager.get(toolName);
-                if (tool != null) domains.add(tool.getBusinessDomain());
-            }
-            sb.append(SkillPrompts.forDomains(domains));
-            sb.append("The tools available (selected from previous step) are:\n");
-            for (String toolName : validSelectedTools) {
-                Tool tool = ToolManager.get(toolName);
-                if (tool == null) continue;
-                sb.append("- Schema: ").append(ToolManager.toToolSchema(tool).toJSONString()).append("\n");
-            }
-        } else {
-            sb.append("No specific tools were matched, but please provide a helpful reply.\n");
-        }
-
-        sb.append("\nUser Input: \"").append(text).append("\"\n");
-        sb.append("\nReturn JSON only (no markdown, no ```json wrapper). The JSON must follow this structure:\n");
-        sb.append("IMPORTANT: Use the EXACT parameter names as defined in the tool description. Do not use aliases or invent new parameter names (e.g. use 'maxProcessCount' NOT 'count' or 'limit').\n");
-        sb.append("Note: For tasks involving sending notifications or messages (e.g., '通知', '发消息', '发送给'), the text immediately following these keywords is typically the recipient (user name or department name). Please infer the recipient based on this context.\n");
-        sb.append("IMPORTANT: Extraction Policy: Values should generally be extracted from the user input. However, use common sense and basic semantic analysis to identify entities correctly (e.g., do not split names like '其二' into separate characters if they likely represent a single entity). You may normalize values if necessary (e.g. 'tomorrow' -> actual date), but do not invent unrelated values.\n");
-        sb.append("{\n");
-        if (!validSelectedTools.isEmpty()) {
-            sb.append("  \"reply\": \"A polite reply in Chinese summarizing the plan. Do NOT ask for user confirmation or if they want to proceed. State that you are starting the tasks immediately.\",\n");
-        } else {
-            sb.append("  \"reply\": \"A polite reply in Chinese. If the user input is a greeting or chat, respond naturally. If the user is asking for a task that cannot be performed by the available tools (since none were selected), politely explain that you do not have that capability.\",\n");
-        }
-        sb.append("  \"tasks\": [\n");
-        if (!validSelectedTools.isEmpty()) {
-            sb.append("    {\n");
-            sb.append("      \"tool\": \"tool_name\" (or null if no match found),\n");
-            sb.append("      \"confidence\": \"high\" | \"medium\" | \"low\",\n");
-            sb.append("      \"parameters\": {\n");
-            sb.append("        \"paramName\": value\n");
-            sb.append("      },\n");
-            sb.append("      \"missing_info\": \"Description of missing MANDATORY information ONLY. If a parameter is optional or has a default value, do NOT list it here. Return empty string if all mandatory info is present.\"\n");
-            sb.append("    }\n");
-        }
-        sb.append("  ]\n");
-        sb.append("}");
+        String planningPrompt = buildPlanningPrompt(text, validSelectedTools);
 
         try {
-            String jsonStr = LLMUtil.chat(sb.toString());
+            String jsonStr = LLMUtil.chat(planningPrompt);
             jsonStr = jsonStr.replaceAll("```json", "").replaceAll("```", "").trim();
 
             JSONObject result = JSON.parseObject(jsonStr);
@@ -269,6 +211,80 @@ public class TaskProcessor {
         }
     }
 
+    /**
+     * 工具筛选 prompt：全量工具 Schema + 用户输入，只要求模型返回可能用到的工具名。
+     */
+    static String buildSelectionPrompt(String text) {
+        StringBuilder selectionPrompt = new StringBuilder();
+        selectionPrompt.append(SkillPrompts.base());
+        selectionPrompt.append("You are an intent classifier. Analyze the user's input and select the tools that might be needed.\n");
+        selectionPrompt.append("The available tools are:\n");
+        for (Tool tool : ToolManager.getAll()) {
+            selectionPrompt.append("- Schema: ").append(ToolManager.toToolSchema(tool).toJSONString()).append("\n");
+        }
+        selectionPrompt.append("\nUser Input: \"").append(text).append("\"\n");
+        selectionPrompt.append("\nReturn JSON only. Format: { \"selected_tools\": [\"tool_name1\"] } or { \"selected_tools\": [] } if no tool matches.");
+        selectionPrompt.append("\nIf the user asks about the agent's capabilities (e.g., '你能做什么', '工具能力', 'capabilities'), select the 'list_capabilities' tool.");
+        selectionPrompt.append("\nDo NOT select 'SearchDingTalkUserTool' unless the user explicitly asks for uid/userId/用户ID/Uid/查询uid。For sending notifications like '告诉/通知/发给某人', select 'send_message' directly (it can resolve names); do not use SearchDingTalkUserTool for that.");
+        return selectionPrompt.toString();
+    }
+
+    /**
+     * 任务规划 prompt：注入已筛选工具的 Schema 与所属业务域的 skills prompt，要求模型返回 reply + tasks[]。
+     */
+    static String buildPlanningPrompt(String text, List<String> validSelectedTools) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(SkillPrompts.base());
+        sb.append("You are an intent classifier. Analyze the user's input and map it to a sequence of tools to be executed.\n");
+        sb.append("Current Date and Time: ").append(java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
+        sb.append("Note: If the user provides relative time (e.g., 'tomorrow', 'next week'), calculate the exact date based on the Current Date. For 'create_event', startTime and endTime MUST be in 'yyyy-MM-dd HH:mm:ss' format.\n");
+        sb.append("IMPORTANT: You can chain multiple tools. If the output of one tool is required as input for the next tool (e.g., use the result of a query as the message content), use the placeholder '{{PREV_RESULT}}' as the parameter value. This placeholder will be replaced by the actual result of the previous tool execution.\n");
+        sb.append("RULES: 1) Do NOT use SearchDingTalkUserTool unless the user asks for uid/userId. 2) For '把结果告诉/发给/通知 某人', use send_message with names/departments and content='{{PREV_RESULT}}'. 3) For ERP order queries like '查一下订单1063063', map the number to parameter orderId. 4) For self-selected stock group queries, use get_group_stock_quotes and extract groupName from phrases like 'XX分组/自选股XX/我的XX里面的股票'.\n");
+
+        if (!validSelectedTools.isEmpty()) {
+            java.util.Set<String> domains = new java.util.LinkedHashSet<>();
+            for (String toolName : validSelectedTools) {
+                Tool tool = ToolManager.get(toolName);
+                if (tool != null) domains.add(tool.getBusinessDomain());
+            }
+            sb.append(SkillPrompts.forDomains(domains));
+            sb.append("The tools available (selected from previous step) are:\n");
+            for (String toolName : validSelectedTools) {
+                Tool tool = ToolManager.get(toolName);
+                if (tool == null) continue;
+                sb.append("- Schema: ").append(ToolManager.toToolSchema(tool).toJSONString()).append("\n");
+            }
+        } else {
+            sb.append("No specific tools were matched, but please provide a helpful reply.\n");
+        }
+
+        sb.append("\nUser Input: \"").append(text).append("\"\n");
+        sb.append("\nReturn JSON only (no markdown, no ```json wrapper). The JSON must follow this structure:\n");
+        sb.append("IMPORTANT: Use the EXACT parameter names as defined in the tool description. Do not use aliases or invent new parameter names (e.g. use 'maxProcessCount' NOT 'count' or 'limit').\n");
+        sb.append("Note: For tasks involving sending notifications or messages (e.g., '通知', '发消息', '发送给'), the text immediately following these keywords is typically the recipient (user name or department name). Please infer the recipient based on this context.\n");
+        sb.append("IMPORTANT: Extraction Policy: Values should generally be extracted from the user input. However, use common sense and basic semantic analysis to identify entities correctly (e.g., do not split names like '其二' into separate characters if they likely represent a single entity). You may normalize values if necessary (e.g. 'tomorrow' -> actual date), but do not invent unrelated values.\n");
+        sb.append("{\n");
+        if (!validSelectedTools.isEmpty()) {
+            sb.append("  \"reply\": \"A polite reply in Chinese summarizing the plan. Do NOT ask for user confirmation or if they want to proceed. State that you are starting the tasks immediately.\",\n");
+        } else {
+            sb.append("  \"reply\": \"A polite reply in Chinese. If the user input is a greeting or chat, respond naturally. If the user is asking for a task that cannot be performed by the available tools (since none were selected), politely explain that you do not have that capability.\",\n");
+        }
+        sb.append("  \"tasks\": [\n");
+        if (!validSelectedTools.isEmpty()) {
+            sb.append("    {\n");
+            sb.append("      \"tool\": \"tool_name\" (or null if no match found),\n");
+            sb.append("      \"confidence\": \"high\" | \"medium\" | \"low\",\n");
+            sb.append("      \"parameters\": {\n");
+            sb.append("        \"paramName\": value\n");
+            sb.append("      },\n");
+            sb.append("      \"missing_info\": \"Description of missing MANDATORY information ONLY. If a parameter is optional or has a default value, do NOT list it here. Return empty string if all mandatory info is present.\"\n");
+            sb.append("    }\n");
+        }
+        sb.append("  ]\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
     static boolean tryExecuteDirectCommand(String text, ToolContext context, ToolMessenger messenger) {
         if (text == null || text.trim().isEmpty()) return false;
 
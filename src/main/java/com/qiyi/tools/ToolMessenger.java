@@ -24,4 +24,14 @@ public interface ToolMessenger {
     void sendImage(String imageUrl);
 
     void sendImage(File imageFile);
+
+    /**
+     * 打开可原地更新的进度通道（见 {@link ToolProgress}）。
+     *
+     * <p>默认逐条发送文本；支持消息原地更新的渠道（如钉钉互动卡片）可覆盖该方法。
+     * 调用方建议使用 {@link ToolProgress#open(ToolMessenger, String)}，以兼容返回 null 的实现。</p>
+     */
+    default ToolProgress openProgress(String title) {
+        return ToolProgress.lineByLine(this);
+    }
 }
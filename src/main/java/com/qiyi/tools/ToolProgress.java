@@ -0,0 +1,78 @@
+package com.qiyi.tools;
+
+import com.qiyi.util.AppLog;
+
+/**
+ * 工具进度回传通道（可原地更新的“进度消息”）。
+ *
+ * <p>长任务（播客下载/处理、AutoWeb 两阶段执行、ERP 查询等）会产生大量过程日志，逐条 {@code sendText}
+ * 会造成大量 API 调用并刷屏。该通道允许渠道实现把多条进度合并后原地更新同一条消息：</p>
+ * <ul>
+ *     <li>钉钉入口：合并进度增量，定时更新同一张互动卡片</li>
+ *     <li>其他入口（控制台/测试）：默认退化为逐条 {@link ToolMessenger#sendText(String)}</li>
+ * </ul>
+ *
+ * <p>最终结果（查询结果、计划详情等）仍应通过 {@link ToolMessenger} 单独发送，进度通道只承载过程信息。</p>
+ */
+public interface ToolProgress extends AutoCloseable {
+    ToolProgress NOOP = new ToolProgress() {
+        @Override
+        public void update(String line) {
+        }
+
+        @Override
+        public void finish(String summary) {
+        }
+    };
+
+    /**
+     * 追加一行进度（实现方可合并后延迟发送）。
+     */
+    void update(String line);
+
+    /**
+     * 结束进度通道并立即刷新剩余内容；summary 可为空。重复调用应为幂等。
+     */
+    void finish(String summary);
+
+    @Override
+    default void close() {
+        finish(null);
+    }
+
+    /**
+     * 为 messenger 打开进度通道；messenger 未提供可更新通道时退化为逐条发送文本。
+     */
+    static ToolProgress open(ToolMessenger messenger, String title) {
+        if (messenger == null) return NOOP;
+        ToolProgress progress = null;
+        try {
+            progress = messenger.openProgress(title);
+        } catch (Exception e) {
+            AppLog.error("[progress] openProgress failed, fallback to text: " + e.getMessage());
+        }
+        return progress != null ? progress : lineByLine(messenger);
+    }
+
+    /**
+     * 逐条发送文本的默认实现（与引入进度通道前的行为一致）。
+     */
+    static ToolProgress lineByLine(ToolMessenger messenger) {
+        if (messenger == null) return NOOP;
+        return new ToolProgress() {
+            @Override
+            public void update(String line) {
+                if (line == null) return;
+                try {
+                    messenger.sendText(line);
+                } catch (Exception ignored) {
+                }
+            }
+
+            @Override
+            public void finish(String summary) {
+                update(summary);
+            }
+        };
+    }
+}
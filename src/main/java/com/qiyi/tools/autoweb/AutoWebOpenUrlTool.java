@@ -6,6 +6,7 @@ import com.qiyi.service.autoweb.AutoWebAgent;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.util.BrowserSessionPool;
 import com.qiyi.util.PlayWrightUtil;
 
 @Tool.Info(
@@ -15,8 +16,6 @@ import com.qiyi.util.PlayWrightUtil;
         type = Tool.ToolType.AUTO_WEB_SCRIPT
 )
 public class AutoWebOpenUrlTool implements Tool {
-    private static final Object CONNECTION_LOCK = new Object();
-    private static volatile PlayWrightUtil.Connection SHARED_CONNECTION;
 
     @Override
     public String execute(JSONObject params, ToolContext context, ToolMessenger messenger) {
@@ -62,18 +61,12 @@ public class AutoWebOpenUrlTool implements Tool {
     }
 
     private static PlayWrightUtil.Connection acquireConnection() {
-        PlayWrightUtil.Connection c = SHARED_CONNECTION;
-        if (c != null && c.browser != null) return c;
-        synchronized (CONNECTION_LOCK) {
-            c = SHARED_CONNECTION;
-            if (c != null && c.browser != null) return c;
-            c = PlayWrightUtil.connectAndAutomate();
-            if (c == null || c.browser == null) {
-                throw new RuntimeException("Failed to connect to browser.");
-            }
-            SHARED_CONNECTION = c;
-            return c;
+        // 使用浏览器会话池中的长期连接：断开后自动重连，多个 AutoWeb 工具共用一个 driver
+        PlayWrightUtil.Connection c = BrowserSessionPool.getInstance().sharedConnection();
+        if (c == null || c.browser == null) {
+            throw new RuntimeException("Failed to connect to browser.");
         }
+        return c;
     }
 
     private static Page openPage(PlayWrightUtil.Connection connection, String entryUrl) {
@@ -5,34 +5,50 @@ import com.alibaba.fastjson2.JSONObject;
 import com.microsoft.playwright.Page;
 import com.qiyi.config.AppConfig;
 import com.qiyi.service.autoweb.AutoWebAgent;
+import com.qiyi.service.autoweb.AutoWebEngine;
+import com.qiyi.service.autoweb.CancellationToken;
+import com.qiyi.service.autoweb.ReplayStore;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.tools.ToolProgress;
+import com.qiyi.util.BrowserSessionPool;
 import com.qiyi.util.PlayWrightUtil;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Tool.Info(
         name = "autoweb_two_phase_run",
-        description = "Two-phase AutoWeb execution with resumable runId. Parameters: action (string, optional: open|prepare|run|prepare_and_run|resume|drop), runId (string, optional), entryUrl (string, optional; if absent, use the latest URL from an already opened page in the shared Chrome session), userTask (string, required for prepare), model (string, optional), captureMode (string, optional: RAW_HTML|ARIA_SNAPSHOT), fromStep (int, optional, default 1), maxSteps (int, optional, default 0 meaning all), autoRepair (boolean, optional, default true), maxRepairAttempts (int, optional, default 1). Output: JSON with runId, planText, code, stepResults.",
+        description = "Two-phase AutoWeb execution with resumable runId. Parameters: action (string, optional: open|prepare|run|prepare_and_run|resume|drop|cancel; cancel requires runId and stops the in-flight prepare/run of that runId, including a prepare/prepare_and_run started without runId once its runId has been reported), runId (string, optional), entryUrl (string, optional; if absent, use the latest URL from an already opened page in the shared Chrome session), userTask (string, required for prepare), model (string, optional), captureMode (string, optional: RAW_HTML|ARIA_SNAPSHOT), fromStep (int, optional, default 1), maxSteps (int, optional, default 0 meaning all), autoRepair (boolean, optional, default true), maxRepairAttempts (int, optional, default 1), replay (boolean, optional, default false: reuse the last successful plan/code for the same userTask+entryUrl when the page structure is unchanged; if the replay fails, the record is dropped and a fresh plan/code is prepared under regeneratedRunId but NOT run, so the caller decides whether and from which step to rerun it with action=run), pipelined (boolean, optional, default false: for prepare_and_run, generate each step's code just before it runs while the previous step executes, instead of generating the whole script up front). Output: JSON with runId, replayed, planText, code, stepResults.",
         businessDomain = "com.qiyi.tools.autoweb",
         type = Tool.ToolType.AUTO_WEB_SCRIPT
 )
 public class AutoWebTwoPhaseRunTool implements Tool {
-    private static final Map<String, RunSession> SESSIONS = new ConcurrentHashMap<>();
-    private static final Object CONNECTION_LOCK = new Object();
-    private static volatile PlayWrightUtil.Connection SHARED_CONNECTION;
+    private static final Path DEFAULT_AUTOWEB_DIR = Paths.get(System.getProperty("user.dir"), "autoweb");
+
+    private static volatile RunSessionStore<RunSession> sessions = newSessionStore(DEFAULT_AUTOWEB_DIR);
+    private static volatile ReplayStore replays = ReplayStore.forDir(DEFAULT_AUTOWEB_DIR);
+
+    /**
+     * 准备阶段新建的 runId → 所在引擎任务的取消标记。prepare / prepare_and_run 调用时还没有 runId，
+     * 任务只能挂在 owner "autoweb" 下；runId 生成后在此登记，cancel 才能按 runId 找到它。任务结束时移除。
+     */
+    private static final Map<String, CancellationToken> RUN_TOKENS = new ConcurrentHashMap<>();
 
     @Override
     public String execute(JSONObject params, ToolContext context, ToolMessenger messenger) {
         String action = params == null ? "" : safeTrim(params.getString("action")).toLowerCase();
         if (action.isEmpty()) action = "prepare_and_run";
+        ToolProgress progress = ToolProgress.open(messenger, "AUTOWEB " + action);
         try {
             if ("open".equals(action)) {
                 String entryUrl = params == null ? "" : safeTrim(params.getString("entryUrl"));
@@ -40,7 +56,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                 BufferingMessengerLogger logger = new BufferingMessengerLogger("[AUTOWEB] ", messenger, 50);
                 PlayWrightUtil.Connection connection = acquireConnection();
                 PageHandle h = openPage(connection, entryUrl, logger);
-                sendProgress(messenger, "AUTOWEB: 已打开页面 " + safeTrim(h.page.url()));
+                sendProgress(progress, "AUTOWEB: 已打开页面 " + safeTrim(h.page.url()));
                 JSONObject out = new JSONObject();
                 out.put("ok", true);
                 out.put("entryUrl", entryUrl);
@@ -51,56 +67,167 @@ public class AutoWebTwoPhaseRunTool implements Tool {
             if ("drop".equals(action)) {
                 String runId = params == null ? "" : safeTrim(params.getString("runId"));
                 if (!runId.isEmpty()) {
-                    SESSIONS.remove(runId);
-                    sendProgress(messenger, "AUTOWEB: 已清理 runId=" + runId);
+                    sessions.remove(runId);
+                    sendProgress(progress, "AUTOWEB: 已清理 runId=" + runId);
+                }
+                JSONObject out = new JSONObject();
+                out.put("ok", true);
+                out.put("runId", runId);
+                return out.toJSONString();
+            }
+
+            if ("cancel".equals(action)) {
+                String runId = params == null ? "" : safeTrim(params.getString("runId"));
+                // 不带 runId 的任务共用 owner "autoweb"（可能属于不同的钉钉用户），不允许整组取消
+                if (runId.isEmpty()) throw new IllegalArgumentException("runId is required for cancel");
+                int cancelled = AutoWebEngine.shared().cancelOwner(engineOwner(runId), "cancel action");
+                CancellationToken runToken = RUN_TOKENS.get(runId);
+                if (runToken != null && !runToken.isCancelled()) {
+                    runToken.cancel("cancel action");
+                    cancelled++;
                 }
+                sendProgress(progress, "AUTOWEB: 已取消 " + cancelled + " 个任务 runId=" + runId);
                 JSONObject out = new JSONObject();
                 out.put("ok", true);
                 out.put("runId", runId);
+                out.put("cancelled", cancelled);
                 return out.toJSONString();
             }
 
+            String owner = engineOwner(params == null ? "" : safeTrim(params.getString("runId")));
             if ("run".equals(action) || "resume".equals(action)) {
-                return runExisting(params, messenger).toJSONString();
+                return runOnEngine(owner, action, token -> runExisting(params, messenger, progress)).toJSONString();
             }
 
             if ("prepare".equals(action) || "prepare_and_run".equals(action)) {
-                RunSession session = prepare(params, messenger);
-                if ("prepare".equals(action)) {
-                    return buildPrepareOutput(session).toJSONString();
-                }
-                JSONObject runOut = runPrepared(session, params, messenger);
-                return runOut.toJSONString();
+                boolean pipelined = "prepare_and_run".equals(action) && params != null && params.getBooleanValue("pipelined");
+                boolean prepareOnly = "prepare".equals(action);
+                return runOnEngine(owner, action, token -> {
+                    RunSession session = prepare(params, messenger, progress, pipelined);
+                    if (prepareOnly) {
+                        return buildPrepareOutput(session);
+                    }
+                    return runWithReplayFallback(session, params, messenger, progress);
+                }).toJSONString();
             }
 
             throw new IllegalArgumentException("Unsupported action: " + action);
         } catch (Throwable t) {
             String msg = t.getMessage();
             if (msg == null || msg.trim().isEmpty()) msg = t.toString();
-            sendProgress(messenger, "AUTOWEB: 执行异常 action=" + action + " err=" + msg);
+            boolean cancelled = t instanceof CancellationException;
+            sendProgress(progress, "AUTOWEB: " + (cancelled ? "已取消" : "执行异常") + " action=" + action + " err=" + msg);
             JSONObject out = new JSONObject();
             out.put("ok", false);
             out.put("action", action);
             out.put("error", msg);
+            if (cancelled) out.put("cancelled", true);
             String runId = params == null ? "" : safeTrim(params.getString("runId"));
             if (!runId.isEmpty()) out.put("runId", runId);
             return out.toJSONString();
+        } finally {
+            progress.finish(null);
+        }
+    }
+
+    private static RunSessionStore<RunSession> newSessionStore(Path autowebDir) {
+        return new RunSessionStore<>(autowebDir, RunSession.class, s -> s.runId,
+                AppConfig.getInstance().getAutowebSessionMemoryMax(),
+                AppConfig.getInstance().getAutowebSessionIdleMs(),
+                AppConfig.getInstance().getAutowebSessionRetentionHours() * 3600_000L);
+    }
+
+    /**
+     * 会话与回放记录所在的 autoweb 目录，默认为工作目录下的 autoweb；传 null 恢复默认。供测试指向临时目录。
+     */
+    static void useAutowebDir(Path autowebDir) {
+        Path dir = autowebDir == null ? DEFAULT_AUTOWEB_DIR : autowebDir;
+        sessions = newSessionStore(dir);
+        replays = ReplayStore.forDir(dir);
+    }
+
+    static RunSessionStore<RunSession> sessions() {
+        return sessions;
+    }
+
+    private static String engineOwner(String runId) {
+        return runId == null || runId.isEmpty() ? "autoweb" : "autoweb:" + runId;
+    }
+
+    /**
+     * 准备/执行在 {@link AutoWebEngine} 中运行，调用方等待结果；同一 runId 的任务可通过 cancel 动作取消
+     * （不带 runId 发起的任务在准备阶段生成 runId 后同样可以，见 {@link #RUN_TOKENS}），调用方等待被中断时同样取消该任务。
+     */
+    private static JSONObject runOnEngine(String owner, String action, AutoWebEngine.Task<JSONObject> task) throws Exception {
+        AutoWebEngine.Job<JSONObject> job = AutoWebEngine.shared().submit(owner, "tool:" + action, null, token -> {
+            try {
+                return task.run(token);
+            } finally {
+                RUN_TOKENS.values().removeIf(t -> t == token);
+            }
+        });
+        try {
+            return job.await();
+        } catch (InterruptedException e) {
+            job.cancel("caller interrupted");
+            Thread.currentThread().interrupt();
+            throw e;
         }
     }
 
-    private static JSONObject runExisting(JSONObject params, ToolMessenger messenger) {
+    private static JSONObject runExisting(JSONObject params, ToolMessenger messenger, ToolProgress progress) {
         String runId = params == null ? "" : safeTrim(params.getString("runId"));
         if (runId.isEmpty()) {
             throw new IllegalArgumentException("runId is required for run/resume");
         }
-        RunSession session = SESSIONS.get(runId);
+        RunSession session = sessions.get(runId);
         if (session == null) {
             throw new IllegalArgumentException("Unknown runId: " + runId);
         }
-        return runPrepared(session, params, messenger);
+        return runWithReplayFallback(session, params, messenger, progress);
     }
 
-    private static RunSession prepare(JSONObject params, ToolMessenger messenger) {
+    /**
+     * 执行已准备的会话；若会话来自回放记录且执行失败，作废记录并重新生成计划与代码，但不自动重跑：
+     * 失败前已执行的步骤（提交、发送等）可能有副作用，返回失败结果与新的 runId，由调用方决定是否以及从哪一步重跑。
+     */
+    private static JSONObject runWithReplayFallback(RunSession session, JSONObject params, ToolMessenger messenger, ToolProgress progress) {
+        JSONObject out;
+        try {
+            out = runPrepared(session, params, messenger, progress);
+        } catch (RuntimeException e) {
+            rethrowIfCancelled(e);
+            if (!session.replayed) throw e;
+            out = new JSONObject();
+            out.put("ok", false);
+            out.put("failedReason", e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+        if (!session.replayed || out.getBooleanValue("ok")) return out;
+        CancellationToken.checkCurrent();
+
+        sendProgress(progress, "AUTOWEB: 回放失败 step=" + out.get("failedStep") + "，重新生成计划与代码");
+        replays.invalidate(session.userTask, session.entryUrl);
+        sessions.remove(session.runId);
+
+        JSONObject regenParams = params == null ? new JSONObject() : new JSONObject(params);
+        regenParams.put("entryUrl", session.entryUrl);
+        regenParams.put("userTask", session.userTask);
+        regenParams.put("model", session.modelKey);
+        regenParams.put("captureMode", session.captureMode == null ? "" : session.captureMode.name());
+        regenParams.put("replay", false);
+        RunSession fresh = prepare(regenParams, messenger, progress, session.pipelined);
+        out.put("replayFallback", true);
+        out.put("regeneratedRunId", fresh.runId);
+        out.put("regeneratedPlanText", fresh.planText);
+        out.put("regeneratedCode", fresh.code);
+        sendProgress(progress, "AUTOWEB: 已重新生成计划与代码 runId=" + fresh.runId + "，未自动重跑；确认后用 action=run 执行（可指定 fromStep）");
+        return out;
+    }
+
+    /**
+     * 生成计划并准备代码；pipelined 时只生成计划，各步代码在执行阶段由 {@link StepPipeline} 边执行边生成。
+     */
+    private static RunSession prepare(JSONObject params, ToolMessenger messenger, ToolProgress progress, boolean pipelined) {
         String entryUrl = params == null ? "" : safeTrim(params.getString("entryUrl"));
         String userTask = params == null ? "" : safeTrim(params.getString("userTask"));
         if (userTask.isEmpty()) throw new IllegalArgumentException("userTask is required");
@@ -111,52 +238,79 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         AutoWebAgent.HtmlCaptureMode captureMode = parseCaptureMode(params == null ? "" : safeTrim(params.getString("captureMode")));
 
         BufferingMessengerLogger logger = new BufferingMessengerLogger("[AUTOWEB] ", messenger, 200);
-        sendProgress(messenger, "AUTOWEB: 连接浏览器");
+        sendProgress(progress, "AUTOWEB: 连接浏览器");
         PlayWrightUtil.Connection connection = acquireConnection();
         if (entryUrl.isEmpty()) {
             entryUrl = safeTrim(tryGetLatestOpenedUrl(connection));
         }
         if (entryUrl.isEmpty()) throw new IllegalArgumentException("entryUrl is required");
 
+        // 回放默认关闭：记录只在调用方明确要求时复用
+        boolean replayAllowed = params != null && params.getBooleanValue("replay");
+
         PageHandle pageHandle = null;
         try {
             pageHandle = openPage(connection, entryUrl, logger);
             String prompt = buildPrompt(entryUrl, userTask);
             String currentUrl = safeTrim(pageHandle.page.url());
 
-            sendProgress(messenger, "AUTOWEB: 生成计划 model=" + modelKey);
-            String planPayload = AutoWebAgent.buildPlanOnlyPayload(currentUrl, prompt, entryUrl);
-            String planText = AutoWebAgent.generateGroovyScript(prompt, planPayload, logger, modelKey);
-            AutoWebAgent.PlanParseResult parsed = AutoWebAgent.parsePlanFromText(planText);
+            ReplayStore.Fingerprint fingerprint = null;
+            if (ReplayStore.isEnabled()) {
+                try {
+                    fingerprint = AutoWebAgent.capturePageFingerprint(chooseExecutionTarget(pageHandle.page, logger));
+                } catch (Exception e) {
+                    logger.accept("计算页面指纹失败，跳过回放: " + e.getMessage());
+                }
+            }
+            if (fingerprint != null && replayAllowed) {
+                ReplayStore.Record record = replays.find(userTask, entryUrl, fingerprint,
+                        AppConfig.getInstance().getAutowebReplayFingerprintThreshold(), logger);
+                AutoWebAgent.PlanParseResult replayPlan = record == null ? null : AutoWebAgent.parsePlanFromText(record.planText);
+                if (replayPlan != null && replayPlan.steps != null && !replayPlan.steps.isEmpty()) {
+                    RunSession session = newSession(entryUrl, userTask, prompt, modelKey, captureMode, record.planText, replayPlan.steps, record.code);
+                    session.replayed = true;
+                    session.fingerprint = fingerprint;
+                    sessions.put(session);
+                    sendPlanDetails(messenger, session);
+                    sendProgress(progress, "AUTOWEB: 命中回放记录，跳过计划与代码生成 runId=" + session.runId);
+                    return session;
+                }
+            }
+
+            sendProgress(progress, "AUTOWEB: 生成计划 model=" + modelKey);
+            AutoWebAgent.PlanParseResult parsed = AutoWebAgent.generatePlan(modelKey, prompt, currentUrl, entryUrl, null, logger);
+            String planText = parsed.planText;
             if (parsed == null || parsed.steps == null || parsed.steps.isEmpty()) {
                 throw new RuntimeException("未解析到任何步骤");
             }
 
-            sendProgress(messenger, "AUTOWEB: 采集页面 HTML，steps=" + parsed.steps.size());
-            List<AutoWebAgent.HtmlSnapshot> snapshots = AutoWebAgent.prepareStepHtmls(pageHandle.page, parsed.steps, logger, captureMode);
+            if (pipelined) {
+                RunSession session = newSession(entryUrl, userTask, prompt, modelKey, captureMode, planText, parsed.steps, "");
+                session.fingerprint = fingerprint;
+                session.pipelined = true;
+                sessions.put(session);
+                sendPlanDetails(messenger, session);
+                sendProgress(progress, "AUTOWEB: 已生成计划（流水线模式，代码随执行生成） runId=" + session.runId);
+                return session;
+            }
 
-            sendProgress(messenger, "AUTOWEB: 生成代码 model=" + modelKey);
-            String codePayload = AutoWebAgent.buildCodegenPayload(pageHandle.page, parsed.planText, snapshots);
-            String code = AutoWebAgent.generateGroovyScript(prompt, codePayload, logger, modelKey);
+            sendProgress(progress, "AUTOWEB: 采集页面 HTML 并生成代码 model=" + modelKey + ", steps=" + parsed.steps.size());
+            AutoWebAgent.ModelSession modelSession = new AutoWebAgent.ModelSession();
+            AutoWebAgent.applyPlan(modelSession, prompt, parsed);
+            Page page = pageHandle.page;
+            String code = AutoWebAgent.generateCode(modelKey, prompt, currentUrl, modelSession,
+                    reason -> page, captureMode, false, null, null, null, logger);
             code = code == null ? "" : code;
 
-            RunSession session = new RunSession();
-            session.runId = UUID.randomUUID().toString().replace("-", "");
-            session.entryUrl = entryUrl;
-            session.userTask = userTask;
-            session.prompt = prompt;
-            session.modelKey = modelKey;
-            session.captureMode = captureMode;
-            session.planText = planText == null ? "" : planText;
-            session.planSteps = parsed.steps;
-            session.code = code;
-            session.createdAt = System.currentTimeMillis();
-            SESSIONS.put(session.runId, session);
+            RunSession session = newSession(entryUrl, userTask, prompt, modelKey, captureMode, planText, parsed.steps, code);
+            session.fingerprint = fingerprint;
+            sessions.put(session);
 
             sendPlanDetails(messenger, session);
-            sendProgress(messenger, "AUTOWEB: 已完成准备 runId=" + session.runId);
+            sendProgress(progress, "AUTOWEB: 已完成准备 runId=" + session.runId);
             return session;
         } catch (Exception e) {
+            rethrowIfCancelled(e);
             throw new RuntimeException(e);
         } finally {
             if (pageHandle != null && pageHandle.page != null) {
@@ -168,10 +322,30 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         }
     }
 
+    private static RunSession newSession(String entryUrl, String userTask, String prompt, String modelKey,
+                                         AutoWebAgent.HtmlCaptureMode captureMode, String planText,
+                                         List<AutoWebAgent.PlanStep> planSteps, String code) {
+        RunSession session = new RunSession();
+        session.runId = UUID.randomUUID().toString().replace("-", "");
+        CancellationToken token = CancellationToken.current();
+        if (token != null) RUN_TOKENS.put(session.runId, token);
+        session.entryUrl = entryUrl;
+        session.userTask = userTask;
+        session.prompt = prompt;
+        session.modelKey = modelKey;
+        session.captureMode = captureMode;
+        session.planText = planText == null ? "" : planText;
+        session.planSteps = planSteps;
+        session.code = code;
+        session.createdAt = System.currentTimeMillis();
+        return session;
+    }
+
     private static JSONObject buildPrepareOutput(RunSession session) {
         JSONObject out = new JSONObject();
         out.put("ok", true);
         out.put("runId", session == null ? "" : session.runId);
+        out.put("replayed", session != null && session.replayed);
         out.put("model", session == null ? "" : session.modelKey);
         out.put("entryUrl", session == null ? "" : session.entryUrl);
         out.put("planText", session == null ? "" : session.planText);
@@ -194,21 +368,25 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return out;
     }
 
-    private static JSONObject runPrepared(RunSession session, JSONObject params, ToolMessenger messenger) {
+    private static JSONObject runPrepared(RunSession session, JSONObject params, ToolMessenger messenger, ToolProgress progress) {
         int fromStep = params == null ? 1 : Math.max(1, params.getIntValue("fromStep", 1));
         int maxSteps = params == null ? 0 : Math.max(0, params.getIntValue("maxSteps", 0));
         boolean autoRepair = params == null || !params.containsKey("autoRepair") || params.getBooleanValue("autoRepair");
+        // 回放失败不在原脚本上修补，由 runWithReplayFallback 整体重新生成
+        if (session.replayed) autoRepair = false;
         int maxRepairAttempts = params == null ? 1 : Math.max(0, params.getIntValue("maxRepairAttempts", 1));
 
         BufferingMessengerLogger logger = new BufferingMessengerLogger("[AUTOWEB] ", messenger, 200);
 
-        sendProgress(messenger, "AUTOWEB: 连接浏览器准备执行 runId=" + session.runId);
+        sendProgress(progress, "AUTOWEB: 连接浏览器准备执行 runId=" + session.runId);
         PlayWrightUtil.Connection connection = acquireConnection();
 
         PageHandle pageHandle = null;
+        StepPipeline pipeline = null;
         JSONObject out = new JSONObject();
         out.put("ok", false);
         out.put("runId", session.runId);
+        out.put("replayed", session.replayed);
         if (safeTrim(session.entryUrl).isEmpty()) {
             session.entryUrl = safeTrim(tryGetLatestOpenedUrl(connection));
         }
@@ -232,6 +410,11 @@ public class AutoWebTwoPhaseRunTool implements Tool {
             int boostedTimeoutMs = Math.max(60_000, baseTimeoutMs * 3);
             int baseMaxRetries = 3;
 
+            if (session.pipelined) {
+                pipeline = new StepPipeline(selectSteps(session, fromStep, maxSteps), existingStepCodes(session),
+                        new PipelineHooks(session, pageHandle.page, logger), AutoWebEngine.shared(), engineOwner(session.runId));
+            }
+
             int executed = 0;
             for (AutoWebAgent.PlanStep step : session.planSteps) {
                 if (step == null) continue;
@@ -239,7 +422,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                 if (idx < fromStep) continue;
                 if (maxSteps > 0 && executed >= maxSteps) break;
 
-                sendProgress(messenger, "AUTOWEB: 执行步骤 " + idx + " / " + session.planSteps.size());
+                sendProgress(progress, "AUTOWEB: 执行步骤 " + idx + " / " + session.planSteps.size());
                 long t0 = System.currentTimeMillis();
                 JSONObject sr = new JSONObject();
                 sr.put("stepIndex", idx);
@@ -248,13 +431,20 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                 sr.put("error", "");
                 sr.put("logTail", "");
 
-                String stepCode = extractStepCode(session.code, idx);
+                String stepCode;
+                if (pipeline != null) {
+                    // 取本步代码的同时开始准备下一步，下一步的采集与生成与本步执行并行
+                    stepCode = pipeline.codeFor(step);
+                    session.code = pipeline.assembledCode(session.planText);
+                } else {
+                    stepCode = extractStepCode(session.code, idx);
+                }
                 if (stepCode == null || stepCode.trim().isEmpty()) {
                     sr.put("ok", true);
                     sr.put("durationMs", System.currentTimeMillis() - t0);
                     sr.put("logTail", logger.tail());
                     results.add(sr);
-                    sendProgress(messenger, "AUTOWEB: 步骤成功 step=" + idx);
+                    sendProgress(progress, "AUTOWEB: 步骤成功 step=" + idx);
                     executed++;
                     continue;
                 }
@@ -265,6 +455,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                     try {
                         AutoWebAgent.executeWithGroovy(normalizedStepCode, executionTarget, logger, sharedBinding, baseTimeoutMs, baseMaxRetries);
                     } catch (Exception ex1) {
+                        rethrowIfCancelled(ex1);
                         if (isTimeoutException(ex1)) {
                             logger.accept("检测到超时，准备重试本步骤并提升默认超时到 " + boostedTimeoutMs + "ms");
                             try {
@@ -281,9 +472,11 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                     sr.put("durationMs", System.currentTimeMillis() - t0);
                     sr.put("logTail", logger.tail());
                     results.add(sr);
-                    sendProgress(messenger, "AUTOWEB: 步骤成功 step=" + idx);
+                    sendProgress(progress, "AUTOWEB: 步骤成功 step=" + idx);
                     executed++;
                 } catch (Exception ex) {
+                    // 取消不是步骤失败：不修复、不重试，直接结束本次执行
+                    rethrowIfCancelled(ex);
                     String reason = ex.getMessage();
                     if (reason == null || reason.trim().isEmpty()) reason = ex.toString();
 
@@ -291,7 +484,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                     if (autoRepair && maxRepairAttempts > 0) {
                         for (int attempt = 1; attempt <= maxRepairAttempts; attempt++) {
                             try {
-                                sendProgress(messenger, "AUTOWEB: 步骤失败，尝试修复并重试 step=" + idx + " attempt=" + attempt + "/" + maxRepairAttempts);
+                                sendProgress(progress, "AUTOWEB: 步骤失败，尝试修复并重试 step=" + idx + " attempt=" + attempt + "/" + maxRepairAttempts);
                                 Object repairTarget = chooseExecutionTarget(pageHandle.page, logger);
                                 String captured = AutoWebAgent.getPageContent(repairTarget, session.captureMode, true);
                                 String cleaned = AutoWebAgent.cleanCapturedContent(captured, session.captureMode);
@@ -307,11 +500,16 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                                 String normalizedRepairedStepCode = promoteTopLevelDefs(repairedStepCode, logger);
                                 Object executionTarget3 = chooseExecutionTarget(pageHandle.page, logger);
                                 AutoWebAgent.executeWithGroovy(normalizedRepairedStepCode, executionTarget3, logger, sharedBinding, baseTimeoutMs, baseMaxRetries);
+                                if (pipeline != null) {
+                                    pipeline.replace(idx, repairedStepCode);
+                                    session.code = pipeline.assembledCode(session.planText);
+                                }
                                 repairedOk = true;
                                 sr.put("repaired", true);
-                                sendProgress(messenger, "AUTOWEB: 修复成功 step=" + idx);
+                                sendProgress(progress, "AUTOWEB: 修复成功 step=" + idx);
                                 break;
                             } catch (Exception ex2) {
+                                rethrowIfCancelled(ex2);
                                 String r2 = ex2.getMessage();
                                 if (r2 == null || r2.trim().isEmpty()) r2 = ex2.toString();
                                 reason = r2;
@@ -333,7 +531,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
                     sr.put("durationMs", System.currentTimeMillis() - t0);
                     sr.put("logTail", logger.tail());
                     results.add(sr);
-                    sendProgress(messenger, "AUTOWEB: 步骤失败 step=" + idx + " err=" + reason);
+                    sendProgress(progress, "AUTOWEB: 步骤失败 step=" + idx + " err=" + reason);
                     out.put("ok", false);
                     out.put("failedStep", idx);
                     out.put("failedReason", reason);
@@ -344,22 +542,35 @@ public class AutoWebTwoPhaseRunTool implements Tool {
             }
 
             out.put("ok", true);
+            out.put("code", session.code);
+            out.put("executionSteps", buildExecutionSteps(session));
+            if (fromStep == 1 && maxSteps == 0) {
+                recordReplay(session, results, logger);
+            }
             Object clientResult = extractClientResult(sharedBinding);
             if (clientResult != null) {
                 Object normalized = normalizeClientResult(clientResult);
                 out.put("result", normalized);
-                sendProgress(messenger, "AUTOWEB: 全部步骤执行成功 runId=" + session.runId);
+                sendProgress(progress, "AUTOWEB: 全部步骤执行成功 runId=" + session.runId);
                 String preview = safeTrim(stringifyResultForMessage(normalized));
                 if (!preview.isEmpty()) {
-                    sendProgress(messenger, "AUTOWEB: 结果\n" + preview);
+                    sendText(messenger, "AUTOWEB: 结果\n" + preview);
                 }
             } else {
-                sendProgress(messenger, "AUTOWEB: 全部步骤执行成功 runId=" + session.runId);
+                sendProgress(progress, "AUTOWEB: 全部步骤执行成功 runId=" + session.runId);
             }
             return out;
         } catch (Exception e) {
+            rethrowIfCancelled(e);
             throw new RuntimeException(e);
         } finally {
+            if (pipeline != null) {
+                pipeline.close();
+                logger.accept("流水线统计: " + pipeline.stats());
+                out.put("pipeline", pipeline.stats());
+            }
+            // 执行过程中可能补全了 entryUrl、替换了修复后的代码，同步磁盘副本
+            sessions.put(session);
             if (pageHandle != null && pageHandle.page != null) {
                 try {
                     pageHandle.page.close();
@@ -369,6 +580,41 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         }
     }
 
+    /**
+     * 完整执行成功后更新回放记录：回放会话只刷新使用次数，新生成（含修复后）的会话覆盖保存计划与代码。
+     */
+    private static void recordReplay(RunSession session, JSONArray results, java.util.function.Consumer<String> logger) {
+        if (!ReplayStore.isEnabled()) return;
+        try {
+            if (session.replayed) {
+                replays.markReplayed(session.userTask, session.entryUrl);
+                return;
+            }
+            if (session.fingerprint == null) return;
+            ReplayStore.Record r = new ReplayStore.Record();
+            r.userTask = session.userTask;
+            r.entryUrl = session.entryUrl;
+            r.modelKey = session.modelKey;
+            r.captureMode = session.captureMode == null ? "" : session.captureMode.name();
+            r.planText = session.planText;
+            r.code = session.code;
+            r.fingerprint = session.fingerprint;
+            for (int i = 0; i < results.size(); i++) {
+                JSONObject sr = results.getJSONObject(i);
+                if (sr == null) continue;
+                ReplayStore.StepOutcome o = new ReplayStore.StepOutcome();
+                o.stepIndex = sr.getIntValue("stepIndex");
+                o.ok = sr.getBooleanValue("ok");
+                o.durationMs = sr.getLongValue("durationMs");
+                r.stepResults.add(o);
+            }
+            replays.save(r);
+            logger.accept("已保存回放记录，下次相同任务且页面结构未变化时直接执行");
+        } catch (Exception e) {
+            logger.accept("保存回放记录失败: " + e.getMessage());
+        }
+    }
+
     private static String buildPrompt(String entryUrl, String task) {
         String url = entryUrl == null ? "" : entryUrl.trim();
         String t = task == null ? "" : task.trim();
@@ -389,7 +635,15 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return s == null ? "" : s.trim();
     }
 
-    private static void sendProgress(ToolMessenger messenger, String msg) {
+    private static void sendProgress(ToolProgress progress, String msg) {
+        if (progress == null) return;
+        try {
+            progress.update(msg);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static void sendText(ToolMessenger messenger, String msg) {
         if (messenger == null) return;
         try {
             messenger.sendText(msg);
@@ -667,18 +921,12 @@ public class AutoWebTwoPhaseRunTool implements Tool {
     }
 
     private static PlayWrightUtil.Connection acquireConnection() {
-        PlayWrightUtil.Connection c = SHARED_CONNECTION;
-        if (c != null && c.browser != null) return c;
-        synchronized (CONNECTION_LOCK) {
-            c = SHARED_CONNECTION;
-            if (c != null && c.browser != null) return c;
-            c = PlayWrightUtil.connectAndAutomate();
-            if (c == null || c.browser == null) {
-                throw new RuntimeException("Failed to connect to browser.");
-            }
-            SHARED_CONNECTION = c;
-            return c;
+        // 使用浏览器会话池中的长期连接：断开后自动重连，多个 AutoWeb 工具共用一个 driver
+        PlayWrightUtil.Connection c = BrowserSessionPool.getInstance().sharedConnection();
+        if (c == null || c.browser == null) {
+            throw new RuntimeException("Failed to connect to browser.");
         }
+        return c;
     }
 
     private static String tryGetLatestOpenedUrl(PlayWrightUtil.Connection connection) {
@@ -733,7 +981,7 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return "";
     }
 
-    private static class RunSession {
+    static class RunSession {
         String runId;
         String entryUrl;
         String userTask;
@@ -745,6 +993,12 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         String code;
         long createdAt;
         boolean planNotified;
+        /** 计划与代码来自回放记录（未调用模型） */
+        boolean replayed;
+        /** 准备阶段入口页的结构指纹，执行成功后随记录保存 */
+        ReplayStore.Fingerprint fingerprint;
+        /** 流水线模式：代码在执行阶段逐步生成 */
+        boolean pipelined;
     }
 
     private static class PageHandle {
@@ -795,6 +1049,17 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return h;
     }
 
+    /**
+     * 任务已取消（异常链中有 {@link CancellationException}，或当前任务的取消标记已设置）时原样抛出取消，
+     * 调用方据此跳过修复、超时重试与回放回退，不把取消当作步骤失败。
+     */
+    private static void rethrowIfCancelled(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause() == c ? null : c.getCause()) {
+            if (c instanceof CancellationException) throw (CancellationException) c;
+        }
+        CancellationToken.checkCurrent();
+    }
+
     private static boolean isTimeoutException(Throwable t) {
         if (t == null) return false;
         if (t instanceof com.microsoft.playwright.TimeoutError) return true;
@@ -834,11 +1099,12 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return src;
     }
 
+    private static final Pattern STEP_HEADER = Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+).*$");
+
     private static String extractStepCode(String code, int stepIndex) {
         if (code == null || code.trim().isEmpty()) return "";
         String src = stripPlanBlock(code);
-        Pattern header = Pattern.compile("(?mi)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+).*$");
-        Matcher m = header.matcher(src);
+        Matcher m = STEP_HEADER.matcher(src);
         List<int[]> marks = new ArrayList<>();
         while (m.find()) {
             String g = m.group(1);
@@ -872,6 +1138,139 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         return block.trim();
     }
 
+    /**
+     * 本次要执行的步骤：从 fromStep 开始，最多 maxSteps 步（0 表示全部）。
+     */
+    private static List<AutoWebAgent.PlanStep> selectSteps(RunSession session, int fromStep, int maxSteps) {
+        List<AutoWebAgent.PlanStep> out = new ArrayList<>();
+        if (session.planSteps == null) return out;
+        for (AutoWebAgent.PlanStep s : session.planSteps) {
+            if (s == null || s.index < fromStep) continue;
+            if (maxSteps > 0 && out.size() >= maxSteps) break;
+            out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * 会话中已有的单步代码（resume 时复用）。
+     */
+    private static java.util.Map<Integer, String> existingStepCodes(RunSession session) {
+        java.util.Map<Integer, String> out = new java.util.HashMap<>();
+        if (session.planSteps == null || safeTrim(session.code).isEmpty()) return out;
+        for (AutoWebAgent.PlanStep s : session.planSteps) {
+            if (s == null) continue;
+            String c = extractStepCode(session.code, s.index);
+            if (!safeTrim(c).isEmpty()) out.put(s.index, c);
+        }
+        return out;
+    }
+
+    /**
+     * 流水线预生成代码是否仍可沿用：要求页面结构指纹完全一致。
+     * 不复用回放的相似度阈值——那个阈值用于容忍两次运行之间的漂移，而指纹是去重后的路径签名集合，
+     * 上一步打开的弹窗、搜索结果表格或展开行只增加少量路径，相似度仍在阈值之上，会沿用过期的推测代码。
+     */
+    static boolean pipelineFingerprintMatches(ReplayStore.Fingerprint speculative, ReplayStore.Fingerprint live) {
+        if (speculative == null) return true;
+        if (live == null || live.hash == null) return false;
+        return live.hash.equals(speculative.hash);
+    }
+
+    /**
+     * 流水线模式的浏览器与模型操作。
+     * 当前页面的采集与比对在执行线程进行；其它页面的采集在流水线预取子任务中进行，使用从 {@link BrowserSessionPool} 出借的连接
+     * （Playwright 不是线程安全的，不能与执行线程共用 AutoWeb 连接）；租约在流水线关闭时归还。
+     */
+    private static final class PipelineHooks implements StepPipeline.Hooks {
+        private final RunSession session;
+        private final Page rootPage;
+        private final java.util.function.Consumer<String> logger;
+        /** 只在预取子任务中使用（同一时刻最多一个） */
+        private BrowserSessionPool.Lease workerLease;
+
+        PipelineHooks(RunSession session, Page rootPage, java.util.function.Consumer<String> logger) {
+            this.session = session;
+            this.rootPage = rootPage;
+            this.logger = logger;
+        }
+
+        @Override
+        public boolean isCurrentPage(AutoWebAgent.PlanStep step) {
+            return AutoWebAgent.isCurrentPageStep(step, safeTrim(rootPage.url()));
+        }
+
+        @Override
+        public StepPipeline.Prepared captureCurrent(AutoWebAgent.PlanStep step) {
+            Object target = chooseExecutionTarget(rootPage, logger);
+            StepPipeline.Prepared p = new StepPipeline.Prepared();
+            p.snapshot = AutoWebAgent.captureLiveSnapshot(target, step, session.captureMode);
+            p.fingerprint = AutoWebAgent.capturePageFingerprint(target);
+            return p;
+        }
+
+        @Override
+        public StepPipeline.Prepared captureOther(AutoWebAgent.PlanStep step) {
+            if (workerLease == null) {
+                workerLease = BrowserSessionPool.getInstance().acquire();
+                if (workerLease == null) {
+                    throw new RuntimeException("No browser lease available for pipeline capture: " + BrowserSessionPool.getInstance().stats());
+                }
+            }
+            com.microsoft.playwright.BrowserContext ctx = workerLease.browser.contexts().isEmpty()
+                    ? workerLease.browser.newContext() : workerLease.browser.contexts().get(0);
+            Page page = ctx.newPage();
+            try {
+                List<AutoWebAgent.HtmlSnapshot> snaps = AutoWebAgent.prepareStepHtmls(page, java.util.Collections.singletonList(step), logger, session.captureMode);
+                if (snaps == null || snaps.isEmpty()) throw new RuntimeException("采集失败 step=" + step.index);
+                StepPipeline.Prepared p = new StepPipeline.Prepared();
+                p.snapshot = snaps.get(0);
+                return p;
+            } finally {
+                try {
+                    page.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        @Override
+        public String generate(AutoWebAgent.PlanStep step, AutoWebAgent.HtmlSnapshot snapshot, String previousCode) {
+            StringBuilder payload = new StringBuilder(AutoWebAgent.buildCodegenPayload(
+                    snapshot == null ? "" : snapshot.url, session.planText, java.util.Collections.singletonList(snapshot)));
+            payload.append("CODEGEN_STEP: ").append(step.index).append('\n');
+            if (!safeTrim(previousCode).isEmpty()) {
+                payload.append("PREVIOUS_STEPS_CODE:\n").append(previousCode).append('\n');
+            }
+            String resp = AutoWebAgent.generateGroovyScript(session.prompt, payload.toString(), logger, session.modelKey);
+            String code = extractStepCode(resp, step.index);
+            if (safeTrim(code).isEmpty() && resp != null && !STEP_HEADER.matcher(stripPlanBlock(resp)).find()) {
+                code = stripPlanBlock(resp);
+            }
+            if (safeTrim(code).isEmpty()) throw new RuntimeException("模型未生成 Step " + step.index + " 的代码");
+            return code;
+        }
+
+        @Override
+        public boolean stillMatches(StepPipeline.Prepared prepared) {
+            if (prepared.fingerprint == null) return true;
+            ReplayStore.Fingerprint live = AutoWebAgent.capturePageFingerprint(chooseExecutionTarget(rootPage, logger));
+            double sim = live.similarity(prepared.fingerprint);
+            boolean ok = pipelineFingerprintMatches(prepared.fingerprint, live);
+            logger.accept("流水线校验 Step " + prepared.snapshot.stepIndex + " 页面结构相似度=" + String.format("%.3f", sim)
+                    + (ok ? "，沿用预生成代码" : "，页面已变化，重新采集生成"));
+            return ok;
+        }
+
+        @Override
+        public void releaseWorker() {
+            if (workerLease == null) return;
+            // 归还租约：连接留在池中复用，不关闭 driver 与用户的 Chrome
+            workerLease.close();
+            workerLease = null;
+        }
+    }
+
     private static JSONArray buildExecutionSteps(RunSession session) {
         JSONArray arr = new JSONArray();
         if (session == null || session.planSteps == null) return arr;
@@ -900,14 +1299,14 @@ public class AutoWebTwoPhaseRunTool implements Tool {
         }
 
         @Override
-        public void accept(String s) {
+        public synchronized void accept(String s) {
             String v = s == null ? "" : s;
             String line = prefix.isEmpty() ? v : (prefix + v);
             tail.addLast(line);
             while (tail.size() > maxLines) tail.removeFirst();
         }
 
-        String tail() {
+        synchronized String tail() {
             return String.join("\n", tail);
         }
     }
@@ -0,0 +1,230 @@
+package com.qiyi.tools.autoweb;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.qiyi.util.AppLog;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 两阶段执行的会话存储：内存只保留最近使用的少量会话，全部会话落盘，按 runId 懒加载。
+ *
+ * <ul>
+ *     <li>写入（{@link #put}）即落盘：autoweb/sessions/&lt;runId&gt;.json.gz（gzip 压缩的 JSON），进程重启后 runId 仍可 resume</li>
+ *     <li>内存按访问顺序保留至多 maxInMemory 个，超过数量或空闲超过 idleMs 的会话移出内存（磁盘上仍有完整副本）</li>
+ *     <li>磁盘文件超过保留期删除，总数超过 {@link #MAX_ON_DISK} 时删除最旧的</li>
+ * </ul>
+ *
+ * <p>会话对象在内存中被修改（如自动修复后替换代码）后，需要再次 {@link #put} 才会更新磁盘副本。
+ * 目录不放在 autoweb/cache 下：启动时会清理 cache 目录。</p>
+ */
+final class RunSessionStore<T> {
+    static final String DIR_NAME = "sessions";
+    static final String SUFFIX = ".json.gz";
+    /** 磁盘会话文件数上限 */
+    static final int MAX_ON_DISK = 1000;
+    /** 两次磁盘清理的最小间隔 */
+    private static final long SWEEP_INTERVAL_MS = 3600_000L;
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path dir;
+    private final Class<T> type;
+    private final Function<T, String> idOf;
+    private final int maxInMemory;
+    private final long idleMs;
+    private final long retentionMs;
+
+    private final LinkedHashMap<String, Entry<T>> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long lastSweepAt;
+    private long diskLoads;
+    private long evictions;
+
+    private static final class Entry<T> {
+        final T value;
+        long lastAccessAt;
+
+        Entry(T value, long now) {
+            this.value = value;
+            this.lastAccessAt = now;
+        }
+    }
+
+    RunSessionStore(Path autowebDir, Class<T> type, Function<T, String> idOf, int maxInMemory, long idleMs, long retentionMs) {
+        this.dir = autowebDir.resolve(DIR_NAME);
+        this.type = type;
+        this.idOf = idOf;
+        this.maxInMemory = Math.max(1, maxInMemory);
+        this.idleMs = Math.max(1, idleMs);
+        this.retentionMs = Math.max(1, retentionMs);
+    }
+
+    /**
+     * 保存（覆盖）会话：写入磁盘并放入内存。
+     */
+    synchronized void put(T session) {
+        if (session == null) return;
+        String id = idOf.apply(session);
+        if (!isSafeId(id)) return;
+        long now = System.currentTimeMillis();
+        memory.put(id, new Entry<>(session, now));
+        write(id, session);
+        evictMemory(now);
+        sweepDiskIfDue(now);
+    }
+
+    /**
+     * 按 runId 取会话：内存未命中时从磁盘加载；不存在或已过保留期返回 null。
+     */
+    synchronized T get(String id) {
+        if (!isSafeId(id)) return null;
+        long now = System.currentTimeMillis();
+        Entry<T> e = memory.get(id);
+        if (e != null) {
+            e.lastAccessAt = now;
+            return e.value;
+        }
+        T loaded = read(id, now);
+        if (loaded == null) return null;
+        diskLoads++;
+        memory.put(id, new Entry<>(loaded, now));
+        evictMemory(now);
+        return loaded;
+    }
+
+    /**
+     * 删除会话（内存与磁盘）。
+     */
+    synchronized void remove(String id) {
+        if (!isSafeId(id)) return;
+        memory.remove(id);
+        try {
+            Files.deleteIfExists(fileOf(id));
+        } catch (IOException e) {
+            AppLog.warn("[autoweb-session] delete failed runId=" + id + ": " + e.getMessage());
+        }
+    }
+
+    synchronized int sizeInMemory() {
+        return memory.size();
+    }
+
+    synchronized String stats() {
+        return "inMemory=" + memory.size() + "/" + maxInMemory + ", diskLoads=" + diskLoads + ", evictions=" + evictions;
+    }
+
+    /**
+     * 删除过期与超量的磁盘会话文件。
+     */
+    synchronized void sweepDisk() {
+        long now = System.currentTimeMillis();
+        lastSweepAt = now;
+        if (!Files.isDirectory(dir)) return;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) files.add(p);
+        } catch (IOException e) {
+            AppLog.warn("[autoweb-session] list failed: " + e.getMessage());
+            return;
+        }
+        List<Path> kept = new ArrayList<>();
+        for (Path p : files) {
+            if (now - lastModified(p) > retentionMs) deleteQuietly(p);
+            else kept.add(p);
+        }
+        if (kept.size() <= MAX_ON_DISK) return;
+        kept.sort((a, b) -> Long.compare(lastModified(a), lastModified(b)));
+        for (int i = 0; i < kept.size() - MAX_ON_DISK; i++) deleteQuietly(kept.get(i));
+    }
+
+    private void evictMemory(long now) {
+        Iterator<Map.Entry<String, Entry<T>>> it = memory.entrySet().iterator();
+        int size = memory.size();
+        // 访问顺序：越靠前越久未使用
+        while (it.hasNext()) {
+            Map.Entry<String, Entry<T>> e = it.next();
+            boolean idle = now - e.getValue().lastAccessAt > idleMs;
+            if (size <= maxInMemory && !idle) break;
+            it.remove();
+            size--;
+            evictions++;
+        }
+    }
+
+    private void sweepDiskIfDue(long now) {
+        if (now - lastSweepAt < SWEEP_INTERVAL_MS) return;
+        sweepDisk();
+    }
+
+    private void write(String id, T session) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(id + SUFFIX + ".tmp");
+            try (Writer w = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8)) {
+                GSON.toJson(session, type, w);
+            }
+            Files.move(tmp, fileOf(id), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            AppLog.warn("[autoweb-session] persist failed runId=" + id + ": " + e.getMessage());
+        }
+    }
+
+    private T read(String id, long now) {
+        Path f = fileOf(id);
+        if (!Files.exists(f)) return null;
+        if (now - lastModified(f) > retentionMs) {
+            deleteQuietly(f);
+            return null;
+        }
+        try (Reader r = new InputStreamReader(new GZIPInputStream(Files.newInputStream(f)), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(r, type);
+        } catch (Exception e) {
+            AppLog.warn("[autoweb-session] load failed runId=" + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Path fileOf(String id) {
+        return dir.resolve(id + SUFFIX);
+    }
+
+    /**
+     * runId 来自工具参数，只允许字母数字，防止拼出目录外的路径。
+     */
+    private static boolean isSafeId(String id) {
+        return id != null && SAFE_ID.matcher(id).matches();
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.qiyi.tools.autoweb;
+
+import com.qiyi.service.autoweb.AutoWebAgent;
+import com.qiyi.service.autoweb.AutoWebEngine;
+import com.qiyi.service.autoweb.CancellationToken;
+import com.qiyi.service.autoweb.ReplayStore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 两阶段执行的流水线模式：第 N 步在浏览器中执行时，后台同时采集第 N+1 步页面并调用模型生成该步代码。
+ *
+ * <p>原流程先采集全部步骤、一次生成整份代码，再逐步执行，总耗时约为“采集 + 模型 + 执行”之和；
+ * 流水线下模型耗时与执行耗时重叠，多步任务的端到端耗时接近两者中较大的一方。</p>
+ *
+ * <ul>
+ *     <li>其它页面上的步骤（targetUrl 与当前页不同）：在引擎子任务中用会话池出借的连接打开新页面采集，不受当前步骤影响</li>
+ *     <li>当前页面上的步骤：只能拿到执行第 N 步之前的页面，先按此采集并生成代码（推测），
+ *     执行第 N+1 步前比对页面结构指纹，相似度低于阈值说明第 N 步改变了页面，丢弃推测结果，按现场重新采集生成（回滚）</li>
+ *     <li>步骤严格按顺序执行，最多只提前准备一步；每步代码生成时附带已确定的前序步骤代码，保持变量一致</li>
+ * </ul>
+ *
+ * <p>浏览器操作与模型调用通过 {@link Hooks} 注入：采集其它页面在预取子任务中执行（需使用与执行线程不同的 Playwright 连接），
+ * 采集当前页面与结构比对只在调用方线程（持有当前页面的线程）执行。</p>
+ *
+ * <p>预取子任务提交到 {@link AutoWebEngine}，绑定本次执行取消标记的子标记：执行被取消时预取随之停止，
+ * 关闭流水线只取消预取、不影响执行本身。同一时刻最多一个预取子任务，子任务之间不会并发使用预取连接。</p>
+ */
+final class StepPipeline implements AutoCloseable {
+
+    /**
+     * 一步准备结果：快照、（推测时）采集时的结构指纹与生成的代码。
+     */
+    static final class Prepared {
+        AutoWebAgent.HtmlSnapshot snapshot;
+        ReplayStore.Fingerprint fingerprint;
+        boolean speculative;
+        String code;
+    }
+
+    interface Hooks {
+        /** 是否为当前页面上的步骤（调用方线程） */
+        boolean isCurrentPage(AutoWebAgent.PlanStep step);
+
+        /** 采集当前页面并计算结构指纹（调用方线程） */
+        Prepared captureCurrent(AutoWebAgent.PlanStep step) throws Exception;
+
+        /** 打开新页面采集其它页面上的步骤（预取子任务） */
+        Prepared captureOther(AutoWebAgent.PlanStep step) throws Exception;
+
+        /** 按快照生成单步代码（模型调用，任意线程） */
+        String generate(AutoWebAgent.PlanStep step, AutoWebAgent.HtmlSnapshot snapshot, String previousCode) throws Exception;
+
+        /** 当前页面结构是否仍与推测采集时一致（调用方线程） */
+        boolean stillMatches(Prepared prepared);
+
+        /** 流水线关闭、预取子任务结束后释放预取使用的资源（如出借的浏览器连接；调用方线程） */
+        void releaseWorker();
+    }
+
+    /** 关闭时等待预取子任务退出的上限 */
+    private static final long CLOSE_WAIT_MS = 5000;
+
+    private static final Pattern STEP_HEADER = Pattern.compile("(?i)^\\s*(?:/\\*+\\s*)?(?:\\*+\\s*)?(?://\\s*)?(?:#+\\s*)?(?:[-–—*>•]+\\s*)?(?:Step|步骤)\\s*[:：#\\-]?\\s*(\\d+)");
+
+    private final List<AutoWebAgent.PlanStep> steps;
+    private final Hooks hooks;
+    private final AutoWebEngine engine;
+    private final String owner;
+    private final CancellationToken token;
+    private final Map<Integer, String> codes = new TreeMap<>();
+    private final Map<Integer, AutoWebEngine.Job<Prepared>> pending = new LinkedHashMap<>();
+
+    private int prefetched;
+    private int rollbacks;
+    private long waitMs;
+
+    /**
+     * @param steps 本次要执行的步骤（已按 fromStep/maxSteps 过滤，按执行顺序）
+     * @param existingCodes 已有的单步代码（resume 时复用，不再生成）
+     * @param owner 预取子任务在引擎中的归组（与本次执行相同，整组取消时一并取消）
+     */
+    StepPipeline(List<AutoWebAgent.PlanStep> steps, Map<Integer, String> existingCodes, Hooks hooks, AutoWebEngine engine, String owner) {
+        this.steps = steps == null ? new ArrayList<>() : new ArrayList<>(steps);
+        this.hooks = hooks;
+        this.engine = engine;
+        this.owner = owner;
+        CancellationToken run = CancellationToken.current();
+        this.token = run == null ? CancellationToken.create() : run.child();
+        if (existingCodes != null) {
+            for (Map.Entry<Integer, String> e : existingCodes.entrySet()) {
+                if (e.getValue() != null && !e.getValue().trim().isEmpty()) codes.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * 取第 N 步代码（必要时等待后台准备完成或当场准备），并在返回前开始准备下一步。
+     * 调用方拿到代码后立即执行本步，执行期间下一步在后台并行准备。
+     */
+    String codeFor(AutoWebAgent.PlanStep step) throws Exception {
+        int idx = step.index;
+        String code = codes.get(idx);
+        if (code == null) {
+            Prepared p = awaitPrepared(step);
+            if (p.speculative && !hooks.stillMatches(p)) {
+                // 前一步改变了页面：丢弃推测结果，按现场重新采集生成
+                rollbacks++;
+                Prepared live = hooks.captureCurrent(step);
+                live.code = hooks.generate(step, live.snapshot, previousCode(idx));
+                p = live;
+            }
+            code = p.code == null ? "" : p.code;
+            codes.put(idx, code);
+        }
+        prefetchAfter(step);
+        return code;
+    }
+
+    /**
+     * 修复成功后替换该步代码。
+     */
+    void replace(int stepIndex, String code) {
+        if (code != null) codes.put(stepIndex, code);
+    }
+
+    /**
+     * 按步骤顺序拼接已确定的代码（带 // Step N 标记），前面加上计划块注释，便于展示、回放与 resume。
+     */
+    String assembledCode(String planText) {
+        StringBuilder sb = new StringBuilder();
+        if (planText != null && !planText.trim().isEmpty()) sb.append(planText.trim()).append("\n\n");
+        for (Map.Entry<Integer, String> e : codes.entrySet()) {
+            sb.append("// Step ").append(e.getKey()).append('\n').append(stripMarker(e.getValue(), e.getKey())).append("\n\n");
+        }
+        return sb.toString().trim();
+    }
+
+    String stats() {
+        return "prefetched=" + prefetched + ", rollbacks=" + rollbacks + ", waitMs=" + waitMs;
+    }
+
+    int rollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * 取消未用上的预取并等其退出（模型调用与 DSL 检查点会及时响应取消），再释放预取连接。
+     */
+    @Override
+    public void close() {
+        token.cancel("pipeline closed");
+        for (AutoWebEngine.Job<Prepared> job : pending.values()) {
+            job.cancel("pipeline closed");
+            try {
+                job.await(CLOSE_WAIT_MS);
+            } catch (Exception ignored) {
+            }
+        }
+        pending.clear();
+        hooks.releaseWorker();
+    }
+
+    private Prepared awaitPrepared(AutoWebAgent.PlanStep step) throws Exception {
+        AutoWebEngine.Job<Prepared> job = pending.remove(step.index);
+        if (job == null) {
+            // 未提前准备（第一步或上一步刚修复过）：当场准备
+            if (hooks.isCurrentPage(step)) {
+                Prepared p = hooks.captureCurrent(step);
+                p.speculative = false;
+                p.code = hooks.generate(step, p.snapshot, previousCode(step.index));
+                return p;
+            }
+            String previous = previousCode(step.index);
+            job = submit(step, t -> prepareOther(step, previous));
+            if (job == null) {
+                // 引擎队列已满：在当前线程准备（预取连接同一时刻仍只有一个使用者）
+                return prepareOther(step, previous);
+            }
+        }
+        long begin = System.currentTimeMillis();
+        try {
+            // 仍在排队时由当前线程领取执行，不会因线程池被占满而一直等待
+            return job.join();
+        } finally {
+            waitMs += System.currentTimeMillis() - begin;
+        }
+    }
+
+    private AutoWebEngine.Job<Prepared> submit(AutoWebAgent.PlanStep step, AutoWebEngine.Task<Prepared> task) {
+        try {
+            return engine.submit(owner, "pipeline-prefetch:step" + step.index, token, task);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private void prefetchAfter(AutoWebAgent.PlanStep step) {
+        AutoWebAgent.PlanStep next = nextOf(step);
+        if (next == null || codes.containsKey(next.index) || pending.containsKey(next.index)) return;
+        String previous = previousCode(next.index);
+        AutoWebEngine.Job<Prepared> job;
+        if (hooks.isCurrentPage(next)) {
+            // 当前页面的下一步：此刻采集的是执行本步之前的页面，标记为推测，执行前再比对
+            Prepared p;
+            try {
+                p = hooks.captureCurrent(next);
+            } catch (Exception e) {
+                return;
+            }
+            p.speculative = true;
+            job = submit(next, t -> {
+                p.code = hooks.generate(next, p.snapshot, previous);
+                return p;
+            });
+        } else {
+            job = submit(next, t -> prepareOther(next, previous));
+        }
+        // 引擎队列已满时不预取，执行到该步再当场准备
+        if (job == null) return;
+        pending.put(next.index, job);
+        prefetched++;
+    }
+
+    private Prepared prepareOther(AutoWebAgent.PlanStep step, String previous) throws Exception {
+        Prepared p = hooks.captureOther(step);
+        p.speculative = false;
+        p.code = hooks.generate(step, p.snapshot, previous);
+        return p;
+    }
+
+    private AutoWebAgent.PlanStep nextOf(AutoWebAgent.PlanStep step) {
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.get(i) == step) return i + 1 < steps.size() ? steps.get(i + 1) : null;
+        }
+        return null;
+    }
+
+    private String previousCode(int stepIndex) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, String> e : codes.entrySet()) {
+            if (e.getKey() >= stepIndex) continue;
+            sb.append("// Step ").append(e.getKey()).append('\n').append(stripMarker(e.getValue(), e.getKey())).append('\n');
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * 去掉代码开头该步自己的 "Step N" 标记行，拼接时统一重新加标记，避免同一步出现两个标记。
+     */
+    private static String stripMarker(String code, int stepIndex) {
+        String c = code == null ? "" : code.trim();
+        int nl = c.indexOf('\n');
+        String first = nl < 0 ? c : c.substring(0, nl);
+        Matcher m = STEP_HEADER.matcher(first);
+        if (m.find() && String.valueOf(stepIndex).equals(m.group(1))) {
+            return nl < 0 ? "" : c.substring(nl + 1).trim();
+        }
+        return c;
+    }
+}
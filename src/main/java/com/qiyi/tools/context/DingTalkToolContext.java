@@ -2,7 +2,11 @@ package com.qiyi.tools.context;
 
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.tools.ToolProgress;
+import com.qiyi.config.AppConfig;
 import com.qiyi.service.dingtalk.DingTalkService;
+import com.qiyi.service.dingtalk.messaging.DingTalkProgressCard;
+import com.qiyi.service.dingtalk.messaging.DingTalkProgressCardSink;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -15,10 +19,12 @@ import com.qiyi.util.AppLog;
  * <ul>
  *     <li>同时实现 {@link ToolContext} 与 {@link ToolMessenger}：在钉钉场景下，执行上下文与消息回传通道天然绑定</li>
  *     <li>默认仅回传给指令发起人（sender）：避免将“规划回复/过程日志”推送给被通知目标用户</li>
+ *     <li>长任务进度通过互动卡片合并后原地更新（见 {@link #openProgress(String)}）</li>
  * </ul>
  */
 public class DingTalkToolContext implements ToolContext, ToolMessenger {
     private static final DingTalkService DING_TALK_SERVICE = DingTalkService.fromAppConfig();
+    private static final int PROGRESS_CARD_VISIBLE_LINES = 30;
 
     private final String senderId;
     private final List<String> mentionedUserIds;
@@ -90,6 +96,21 @@ public class DingTalkToolContext implements ToolContext, ToolMessenger {
         }
     }
 
+    @Override
+    public ToolProgress openProgress(String title) {
+        AppConfig config = AppConfig.getInstance();
+        if (senderId == null || !config.isDingTalkProgressCardEnabled()) {
+            return ToolProgress.lineByLine(this);
+        }
+        return new DingTalkProgressCard(
+                new DingTalkProgressCardSink(DING_TALK_SERVICE, senderId),
+                title,
+                this::sendText,
+                config.getDingTalkProgressFlushIntervalMs(),
+                PROGRESS_CARD_VISIBLE_LINES
+        );
+    }
+
     @Override
     public ToolMessenger withMentionedUserIds(List<String> mentionedUserIds) {
         return new DingTalkToolContext(this.senderId, this.enterpriseId, mentionedUserIds);
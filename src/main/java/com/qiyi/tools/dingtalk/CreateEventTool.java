@@ -4,6 +4,7 @@ import com.alibaba.fastjson2.JSONObject;
 import com.qiyi.service.dingtalk.DingTalkDepartment;
 import com.qiyi.service.dingtalk.DingTalkUser;
 import com.qiyi.service.dingtalk.DingTalkService;
+import com.qiyi.service.dingtalk.DingTalkUnionIdResolver;
 import com.qiyi.component.ComponentId;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolMessenger;
@@ -26,10 +27,16 @@ import java.util.Collections;
  * 钉钉日程创建工具。
  *
  * <p>核心流程：解析入参 → 解析参会人（姓名/uid）→ 调用 DingTalkService 创建日程 → 通知发起人/被 @ 的人。</p>
+ *
+ * <p>unionId 通过 {@link DingTalkUnionIdResolver} 批量解析并持久化缓存；多个时段（slots）共用同一批解析结果，
+ * 重复日程（repeat/repeatCount）通过一次 API 调用创建。</p>
+ *
+ * <p>checkAvailability=true 时先用一次闲忙查询覆盖所有时段与参与人，有人忙碌的时段不创建并回报忙碌人；
+ * 重复日程只检查首次。闲忙查询失败不阻塞创建。</p>
  */
 @Tool.Info(
         name = "create_event",
-        description = "Create a calendar event. Parameters: summary (string, mandatory), startTime (string, mandatory, yyyy-MM-dd HH:mm:ss), endTime (string, mandatory, yyyy-MM-dd HH:mm:ss), attendees (string/List, mandatory, names/userIds), description (string, optional), location (string, optional).",
+        description = "Create a calendar event. Parameters: summary (string, mandatory), startTime (string, mandatory, yyyy-MM-dd HH:mm:ss), endTime (string, mandatory, yyyy-MM-dd HH:mm:ss), attendees (string/List, mandatory, names/userIds), description (string, optional), location (string, optional). Optional batch forms: slots (List of {startTime, endTime}) creates one event per slot; repeat (daily/weekly) with repeatCount (int) creates a recurring event. checkAvailability (boolean, optional): look up attendees' free/busy first and skip slots where someone is busy.",
         requiredComponents = {ComponentId.DINGTALK}
 )
 public class CreateEventTool implements Tool {
@@ -43,9 +50,25 @@ public class CreateEventTool implements Tool {
         return DING_TALK_SERVICE.createCalendarEvent(unionId, summary, description, startTime, endTime, attendeeUserIds, location);
     }
 
+    protected String createRecurringCalendarEvent(String unionId, String summary, String description, String startTime, String endTime, String location, List<String> attendeeUserIds, String recurrenceType, int occurrences) throws Exception {
+        return DING_TALK_SERVICE.createRecurringCalendarEvent(unionId, summary, description, startTime, endTime, attendeeUserIds, location, recurrenceType, occurrences);
+    }
+
+    protected Map<String, List<long[]>> getBusyTimes(String operatorUnionId, List<String> unionIds, String startTime, String endTime) throws Exception {
+        return DING_TALK_SERVICE.getBusyTimes(operatorUnionId, unionIds, startTime, endTime);
+    }
+
     protected String getUnionIdByUserId(String userId) throws Exception {
         return DING_TALK_SERVICE.getUnionIdByUserId(userId);
     }
+
+    /**
+     * 批量解析 unionId：命中持久化缓存的直接返回，未命中的经 {@link #getUnionIdByUserId(String)} 并发查询。
+     */
+    protected Map<String, String> resolveUnionIds(Collection<String> userIds) {
+        return DingTalkUnionIdResolver.forApp(DING_TALK_SERVICE.getConfig().getRobotClientId())
+                .resolveAll(userIds, this::getUnionIdByUserId);
+    }
     
     protected void sendTextMessageToEmployees(List<String> userIds, String content) throws Exception {
         DING_TALK_SERVICE.sendTextMessageToEmployees(userIds, content);
@@ -157,34 +180,41 @@ public class CreateEventTool implements Tool {
             return "Error: No attendees";
         }
 
-        // 2. Validate Time
-        if (startTimeStr == null || endTimeStr == null) {
-            sendTextSafe(messenger, notifyUsers, "创建日程失败: 开始时间或结束时间缺失。");
-            return "Error: Missing time";
+        // 2. Validate Time：单个时段（startTime/endTime）或多个时段（slots）
+        List<String[]> slots = parseSlots(params.get("slots"));
+        if (slots.isEmpty()) {
+            if (startTimeStr == null || endTimeStr == null) {
+                sendTextSafe(messenger, notifyUsers, "创建日程失败: 开始时间或结束时间缺失。");
+                return "Error: Missing time";
+            }
+            slots.add(new String[]{startTimeStr, endTimeStr});
         }
 
         // 3. Convert Time to ISO 8601 (yyyy-MM-dd'T'HH:mm:ss+08:00)
-        String isoStartTime;
-        String isoEndTime;
+        List<String[]> isoSlots = new ArrayList<>();
         try {
-            DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            LocalDateTime localStart = LocalDateTime.parse(startTimeStr, inputFormatter);
-            LocalDateTime localEnd = LocalDateTime.parse(endTimeStr, inputFormatter);
-            
-            ZonedDateTime zonedStart = localStart.atZone(ZoneId.of("Asia/Shanghai"));
-            ZonedDateTime zonedEnd = localEnd.atZone(ZoneId.of("Asia/Shanghai"));
-            
-            isoStartTime = zonedStart.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-            isoEndTime = zonedEnd.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            for (String[] slot : slots) {
+                isoSlots.add(new String[]{toIsoTime(slot[0]), toIsoTime(slot[1])});
+            }
         } catch (Exception e) {
             sendTextSafe(messenger, notifyUsers, "创建日程失败: 时间格式错误 (" + e.getMessage() + ")");
             return "Error: Time format";
         }
 
+        String repeat = normalizeRepeat(params.getString("repeat"));
+        Integer repeatCountObj = params.getInteger("repeatCount");
+        int repeatCount = repeatCountObj == null ? 0 : repeatCountObj;
+
         // 4. Create Event
         try {
+            // 操作人与参与人一次性批量解析 unionId（持久化缓存命中时不产生 API 调用）
+            List<String> toResolve = new ArrayList<>();
+            if (senderId != null) toResolve.add(senderId);
+            toResolve.addAll(attendeeUserIds);
+            Map<String, String> unionIds = resolveUnionIds(toResolve);
+
             // Using senderId as the user to create event for
-            String unionId = getUnionIdByUserId(senderId);
+            String unionId = senderId == null ? null : unionIds.get(senderId);
             if (unionId == null) {
                  throw new RuntimeException("无法获取操作人的 UnionId，无法创建日程。UserId: " + senderId);
             }
@@ -193,16 +223,11 @@ public class CreateEventTool implements Tool {
             List<String> attendeeUnionIds = new ArrayList<>();
             List<String> failedConversionUsers = new ArrayList<>();
             for (String uid : attendeeUserIds) {
-                try {
-                    String uUnionId = getUnionIdByUserId(uid);
-                    if (uUnionId != null) {
-                        attendeeUnionIds.add(uUnionId);
-                    } else {
-                        failedConversionUsers.add(uid);
-                    }
-                } catch (Exception e) {
+                String uUnionId = unionIds.get(uid);
+                if (uUnionId != null) {
+                    attendeeUnionIds.add(uUnionId);
+                } else {
                     failedConversionUsers.add(uid);
-                    AppLog.error(e);
                 }
             }
             
@@ -213,13 +238,51 @@ public class CreateEventTool implements Tool {
             if (attendeeUnionIds.isEmpty() && !attendeeUserIds.isEmpty()) {
                  throw new RuntimeException("没有有效的参与人 (UnionId 获取失败)");
             }
-            
-            String eventId = createCalendarEvent(unionId, summary, description, isoStartTime, isoEndTime, location, attendeeUnionIds);
-            String successMsg = "日程创建成功！标题: " + summary + "，时间: " + startTimeStr + " - " + endTimeStr + "，参与人数: " + attendeeUnionIds.size();
+
+            List<Integer> slotIndexes = new ArrayList<>();
+            for (int i = 0; i < isoSlots.size(); i++) slotIndexes.add(i);
+            if (params.getBooleanValue("checkAvailability")) {
+                List<String> busySlots = new ArrayList<>();
+                slotIndexes = filterAvailableSlots(unionId, attendeeUnionIds, unionIds, slots, isoSlots, busySlots, messenger, notifyUsers);
+                if (!busySlots.isEmpty()) {
+                    sendTextSafe(messenger, notifyUsers, "以下时段有参与人忙碌，未创建: " + String.join("；", busySlots));
+                }
+                if (slotIndexes.isEmpty()) {
+                    return "Error: Attendees busy in all slots";
+                }
+            }
+
+            List<String> eventIds = new ArrayList<>();
+            List<String> failedSlots = new ArrayList<>();
+            for (int i : slotIndexes) {
+                String[] iso = isoSlots.get(i);
+                try {
+                    String eventId = repeat != null && repeatCount > 1
+                            ? createRecurringCalendarEvent(unionId, summary, description, iso[0], iso[1], location, attendeeUnionIds, repeat, repeatCount)
+                            : createCalendarEvent(unionId, summary, description, iso[0], iso[1], location, attendeeUnionIds);
+                    eventIds.add(eventId);
+                } catch (Exception e) {
+                    if (slotIndexes.size() == 1) throw e;
+                    AppLog.error(e);
+                    failedSlots.add(slots.get(i)[0] + " - " + slots.get(i)[1] + "（" + e.getMessage() + "）");
+                }
+            }
+            if (eventIds.isEmpty()) {
+                throw new RuntimeException("所有时段创建失败: " + String.join("；", failedSlots));
+            }
+
+            String timeText = isoSlots.size() == 1
+                    ? slots.get(0)[0] + " - " + slots.get(0)[1]
+                    : eventIds.size() + "/" + isoSlots.size() + " 个时段";
+            String repeatText = repeat != null && repeatCount > 1 ? "，重复: " + repeat + " x" + repeatCount : "";
+            String successMsg = "日程创建成功！标题: " + summary + "，时间: " + timeText + repeatText + "，参与人数: " + attendeeUnionIds.size();
             sendTextSafe(messenger, notifyUsers, successMsg);
+            if (!failedSlots.isEmpty()) {
+                sendTextSafe(messenger, notifyUsers, "以下时段创建失败: " + String.join("；", failedSlots));
+            }
 
-            AppLog.info("Event ID: " + eventId);
-            return successMsg + "，参与人: " + String.join(",", attendeeUserIds) + "，EventID: " + eventId;
+            AppLog.info("Event ID: " + String.join(",", eventIds));
+            return successMsg + "，参与人: " + String.join(",", attendeeUserIds) + "，EventID: " + String.join(",", eventIds);
         } catch (Exception e) {
             AppLog.error(e);
             sendTextSafe(messenger, notifyUsers, "创建日程失败: " + e.getMessage());
@@ -227,6 +290,97 @@ public class CreateEventTool implements Tool {
         }
     }
 
+    /**
+     * 一次闲忙查询覆盖全部时段（最早开始 ~ 最晚结束）与全部参与人（含发起人），返回无人忙碌的时段下标。
+     * 查询失败时提示并返回全部时段。
+     */
+    private List<Integer> filterAvailableSlots(String operatorUnionId, List<String> attendeeUnionIds, Map<String, String> unionIdsByUserId,
+                                               List<String[]> slots, List<String[]> isoSlots, List<String> busySlots,
+                                               ToolMessenger messenger, List<String> notifyUsers) {
+        List<Integer> available = new ArrayList<>();
+        long[][] ranges = new long[isoSlots.size()][];
+        int first = 0;
+        int last = 0;
+        for (int i = 0; i < isoSlots.size(); i++) {
+            available.add(i);
+            String[] iso = isoSlots.get(i);
+            ranges[i] = new long[]{ZonedDateTime.parse(iso[0]).toInstant().toEpochMilli(), ZonedDateTime.parse(iso[1]).toInstant().toEpochMilli()};
+            if (ranges[i][0] < ranges[first][0]) first = i;
+            if (ranges[i][1] > ranges[last][1]) last = i;
+        }
+
+        List<String> queryIds = new ArrayList<>();
+        queryIds.add(operatorUnionId);
+        for (String u : attendeeUnionIds) {
+            if (!queryIds.contains(u)) queryIds.add(u);
+        }
+        Map<String, List<long[]>> busy;
+        try {
+            busy = getBusyTimes(operatorUnionId, queryIds, isoSlots.get(first)[0], isoSlots.get(last)[1]);
+        } catch (Exception e) {
+            AppLog.error(e);
+            sendTextSafe(messenger, notifyUsers, "查询参与人闲忙失败，将直接创建日程: " + e.getMessage());
+            return available;
+        }
+
+        Map<String, String> userIdByUnionId = new HashMap<>();
+        for (Map.Entry<String, String> e : unionIdsByUserId.entrySet()) {
+            if (e.getValue() != null) userIdByUnionId.put(e.getValue(), e.getKey());
+        }
+        available.clear();
+        for (int i = 0; i < ranges.length; i++) {
+            List<String> busyUsers = new ArrayList<>();
+            for (String u : queryIds) {
+                List<long[]> items = busy == null ? null : busy.get(u);
+                if (items == null) continue;
+                for (long[] item : items) {
+                    if (item[0] < ranges[i][1] && item[1] > ranges[i][0]) {
+                        busyUsers.add(userIdByUnionId.getOrDefault(u, u));
+                        break;
+                    }
+                }
+            }
+            if (busyUsers.isEmpty()) {
+                available.add(i);
+            } else {
+                busySlots.add(slots.get(i)[0] + " - " + slots.get(i)[1] + "（忙碌: " + String.join(", ", busyUsers) + "）");
+            }
+        }
+        return available;
+    }
+
+    private static String toIsoTime(String time) {
+        DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        LocalDateTime local = LocalDateTime.parse(time, inputFormatter);
+        ZonedDateTime zoned = local.atZone(ZoneId.of("Asia/Shanghai"));
+        return zoned.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+    /**
+     * slots: [{"startTime": "...", "endTime": "..."}, ...]，缺项的时段直接忽略。
+     */
+    private static List<String[]> parseSlots(Object slotsObj) {
+        List<String[]> slots = new ArrayList<>();
+        if (!(slotsObj instanceof Collection)) return slots;
+        for (Object o : (Collection<?>) slotsObj) {
+            JSONObject slot = o instanceof JSONObject ? (JSONObject) o
+                    : (o instanceof Map ? new JSONObject((Map<?, ?>) o) : null);
+            if (slot == null) continue;
+            String start = slot.getString("startTime");
+            String end = slot.getString("endTime");
+            if (start != null && end != null) slots.add(new String[]{start, end});
+        }
+        return slots;
+    }
+
+    private static String normalizeRepeat(String repeat) {
+        if (repeat == null) return null;
+        String v = repeat.trim().toLowerCase();
+        if (v.equals("daily") || v.equals("每天") || v.equals("每日")) return "daily";
+        if (v.equals("weekly") || v.equals("每周")) return "weekly";
+        return null;
+    }
+
     private void sendTextSafe(ToolMessenger messenger, List<String> notifyUsers, String content) {
         if (messenger != null) {
             try {
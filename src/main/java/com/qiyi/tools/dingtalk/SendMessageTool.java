@@ -2,8 +2,10 @@ package com.qiyi.tools.dingtalk;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.qiyi.service.dingtalk.DingTalkDepartment;
-import com.qiyi.service.dingtalk.DingTalkUser;
+import com.qiyi.service.dingtalk.DingTalkDirectoryIndex;
 import com.qiyi.service.dingtalk.DingTalkService;
+import com.qiyi.service.dingtalk.messaging.DingTalkFanOutSender;
+import com.qiyi.service.dingtalk.messaging.FanOutReport;
 import com.qiyi.component.ComponentId;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolContext;
@@ -12,23 +14,27 @@ import com.qiyi.util.AppLog;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * 钉钉消息发送工具。
  *
  * <p>规划补参：从用户输入中提取收件人（names/departments）与默认 content={{PREV_RESULT}} 等常见模式。</p>
+ *
+ * <p>发送：收件人去重后交给 {@link DingTalkFanOutSender} 按接口上限分批、限速并发发送，
+ * 部分批次失败时向发起人回报成功/失败人数。</p>
  */
 @Tool.Info(
         name = "send_message",
-        description = "Send direct DingTalk text message to specific users. Parameters: content (string, mandatory). Choose ONE of: departments (string/List, names or IDs) OR names (string/List). If both provided, departments take precedence.",
+        description = "Send direct DingTalk text message to specific users. Parameters: content (string, mandatory). Choose ONE of: departments (string/List, names or IDs) OR names (string/List). If both provided, departments take precedence. Departments send to direct members only; set includeSubDepartments (boolean, optional, default false) to include all sub-departments.",
         requiredComponents = {ComponentId.DINGTALK}
 )
 public class SendMessageTool implements Tool {
     private static final DingTalkService DING_TALK_SERVICE = DingTalkService.fromAppConfig();
+    private static final DingTalkFanOutSender FAN_OUT_SENDER = new DingTalkFanOutSender();
 
     @Override
     public void enrichPlannedTask(String userText, JSONObject plannedTask) {
@@ -57,8 +63,22 @@ public class SendMessageTool implements Tool {
         return DING_TALK_SERVICE.getAllDepartments(true, true);
     }
 
+    /**
+     * 发送单个批次（不超过接口上限的 userId）；发送失败时抛出异常，由分发器记为失败批次。
+     *
+     * <p>批量发送接口自身的调用异常会被吞掉并返回 false，此时无法确认是否已投递，不重试；
+     * 从这里抛出的异常只可能来自配置校验、建客户端与获取 token，请求尚未发出，标记为可重试。</p>
+     */
     protected void sendTextMessageToEmployees(List<String> userIds, String content) throws Exception {
-        DING_TALK_SERVICE.sendTextMessageToEmployees(userIds, content);
+        boolean ok;
+        try {
+            ok = DING_TALK_SERVICE.sendTextMessageToEmployees(userIds, content);
+        } catch (Exception e) {
+            throw new DingTalkFanOutSender.NotDeliveredException("钉钉批量发送请求未发出: " + e.getMessage(), e);
+        }
+        if (!ok) {
+            throw new IllegalStateException("钉钉批量发送接口返回失败");
+        }
     }
 
     private static String tryExtractRecipientName(String text) {
@@ -95,57 +115,34 @@ public class SendMessageTool implements Tool {
         ToolMessenger senderMessenger = messenger != null ? messenger.withMentionedUserIds(Collections.emptyList()) : null;
 
         String content = params != null ? params.getString("content") : null;
-        List<String> recipients = new ArrayList<>();
+        // 收件人按出现顺序去重：部门之间、部门与 userIds/@ 之间的重叠只发送一次
+        Set<String> recipients = new LinkedHashSet<>();
         List<String> notFoundNames = new ArrayList<>();
         List<String> notFoundDepartments = new ArrayList<>();
+        List<String> emptyDepartments = new ArrayList<>();
+        boolean includeSubDepartments = params != null && params.getBooleanValue("includeSubDepartments");
         boolean usedDepartments = false;
+        DingTalkDirectoryIndex directory = null;
         
         if (params != null) {
-            // 1) 优先：按部门选择（若提供则部门优先于人）
+            // 1) 优先：按部门选择（若提供则部门优先于人），默认只发直属成员，includeSubDepartments=true 时展开全部子部门
             if (params.containsKey("departments")) {
-                List<String> deptKeys = new ArrayList<>();
-                Object depObj = params.get("departments");
-                if (depObj instanceof com.alibaba.fastjson2.JSONArray) {
-                    for (Object o : (com.alibaba.fastjson2.JSONArray) depObj) {
-                        if (o != null) deptKeys.add(String.valueOf(o));
-                    }
-                } else if (depObj instanceof Collection) {
-                    for (Object o : (Collection<?>) depObj) {
-                        if (o != null) deptKeys.add(String.valueOf(o));
-                    }
-                } else if (depObj instanceof String) {
-                    String s = (String) depObj;
-                    if (s != null && !s.trim().isEmpty()) {
-                        String[] parts = s.split("[,，\\s]+");
-                        for (String p : parts) {
-                            if (!p.trim().isEmpty()) deptKeys.add(p.trim());
-                        }
-                    }
-                }
+                List<String> deptKeys = parseStringList(params.get("departments"));
                 if (!deptKeys.isEmpty()) {
-                    try {
-                        List<DingTalkDepartment> departments = getAllDepartments();
-                        Map<String, DingTalkDepartment> deptById = new HashMap<>();
-                        Map<String, DingTalkDepartment> deptByName = new HashMap<>();
-                        for (DingTalkDepartment d : departments) {
-                            deptById.put(d.getDeptId(), d);
-                            deptByName.put(d.getName(), d);
-                        }
-                        List<String> deptRecipients = new ArrayList<>();
+                    directory = loadDirectory();
+                    if (directory != null) {
+                        Set<String> deptRecipients = new LinkedHashSet<>();
                         for (String key : deptKeys) {
-                            DingTalkDepartment dept = deptById.get(key);
+                            DingTalkDepartment dept = directory.findDepartment(key);
                             if (dept == null) {
-                                dept = deptByName.get(key);
+                                notFoundDepartments.add(key);
+                                continue;
                             }
-                            if (dept != null && dept.getUserList() != null) {
-                                for (DingTalkUser u : dept.getUserList()) {
-                                    String uid = u.getUserid();
-                                    if (uid != null && !uid.isEmpty() && !deptRecipients.contains(uid)) {
-                                        deptRecipients.add(uid);
-                                    }
-                                }
+                            Set<String> members = includeSubDepartments ? directory.expandDepartment(dept) : directory.directMembers(dept);
+                            if (members.isEmpty()) {
+                                emptyDepartments.add(key);
                             } else {
-                                notFoundDepartments.add(key);
+                                deptRecipients.addAll(members);
                             }
                         }
                         if (!deptRecipients.isEmpty()) {
@@ -153,94 +150,37 @@ public class SendMessageTool implements Tool {
                             recipients.addAll(deptRecipients);
                             usedDepartments = true;
                         }
-                    } catch (Exception e) {
-                        AppLog.error(e);
                     }
                 }
             }
 
             // 2) 非部门路径：按用户ID或姓名选择
             if (params.containsKey("userIds")) {
-                Object ids = params.get("userIds");
-                if (ids instanceof com.alibaba.fastjson2.JSONArray) {
-                    for (Object o : (com.alibaba.fastjson2.JSONArray) ids) {
-                        if (o != null) recipients.add(String.valueOf(o));
-                    }
-                } else if (ids instanceof Collection) {
-                    for (Object o : (Collection<?>) ids) {
-                        if (o != null) recipients.add(String.valueOf(o));
-                    }
-                } else if (ids instanceof String) {
-                    String s = (String) ids;
-                    if (s != null && !s.trim().isEmpty()) {
-                        String[] parts = s.split("[,，\\s]+");
-                        for (String p : parts) {
-                            if (!p.trim().isEmpty()) recipients.add(p.trim());
-                        }
-                    }
-                }
+                recipients.addAll(parseStringList(params.get("userIds")));
             }
             
             if (!usedDepartments && params.containsKey("names")) {
-                List<String> nameList = new ArrayList<>();
-                Object namesObj = params.get("names");
-                if (namesObj instanceof com.alibaba.fastjson2.JSONArray) {
-                    for (Object o : (com.alibaba.fastjson2.JSONArray) namesObj) {
-                        if (o != null) nameList.add(String.valueOf(o));
-                    }
-                } else if (namesObj instanceof Collection) {
-                    for (Object o : (Collection<?>) namesObj) {
-                        if (o != null) nameList.add(String.valueOf(o));
-                    }
-                } else if (namesObj instanceof String) {
-                    String s = (String) namesObj;
-                    if (s != null && !s.trim().isEmpty()) {
-                        String[] parts = s.split("[,，\\s]+");
-                        for (String p : parts) {
-                            if (!p.trim().isEmpty()) nameList.add(p.trim());
-                        }
-                    }
-                }
-
+                List<String> nameList = parseStringList(params.get("names"));
                 if (!nameList.isEmpty()) {
-                    try {
-                        List<DingTalkDepartment> departments = getAllDepartments();
-                        Map<String, String> userMap = new HashMap<>();
-                        for (DingTalkDepartment dept : departments) {
-                            if (dept.getUserList() != null) {
-                                for (DingTalkUser u : dept.getUserList()) {
-                                    userMap.put(u.getName(), u.getUserid());
-                                }
-                            }
-                        }
+                    if (directory == null) directory = loadDirectory();
+                    if (directory != null) {
                         for (String name : nameList) {
-                            String uid = userMap.get(name);
+                            String uid = directory.findUserIdByName(name);
                             if (uid != null) {
-                                if (!recipients.contains(uid)) {
-                                    recipients.add(uid);
-                                }
+                                recipients.add(uid);
                             } else {
                                 notFoundNames.add(name);
                             }
                         }
-                    } catch (Exception e) {
-                        AppLog.error(e);
                     }
                 }
             }
         }
 
         if (!usedDepartments && mentionedUserIds != null && !mentionedUserIds.isEmpty()) {
-            for (String uid : mentionedUserIds) {
-                if (!recipients.contains(uid)) {
-                    recipients.add(uid);
-                }
-            }
+            recipients.addAll(mentionedUserIds);
         }
         
-        // List<String> notifyUsers = new ArrayList<>();
-        // if (senderId != null) notifyUsers.add(senderId);
-        
         if (content == null || content.trim().isEmpty()) {
             try {
                 if (senderMessenger != null) senderMessenger.sendText("未提供消息内容，未执行发送。");
@@ -261,6 +201,19 @@ public class SendMessageTool implements Tool {
             }
         }
 
+        if (!emptyDepartments.isEmpty()) {
+            try {
+                if (senderMessenger != null) senderMessenger.sendText(includeSubDepartments
+                        ? "以下部门及其子部门没有成员: " + String.join("，", emptyDepartments) + "。"
+                        : "以下部门没有直属成员: " + String.join("，", emptyDepartments) + "。如需包含子部门成员，请设置 includeSubDepartments=true。");
+            } catch (Exception e) {
+                AppLog.error(e);
+            }
+            if (recipients.isEmpty()) {
+                return "Error: Dept has no members";
+            }
+        }
+
         if (!notFoundNames.isEmpty()) {
             try {
                 if (senderMessenger != null) senderMessenger.sendText("未找到以下用户: " + String.join("，", notFoundNames) + "。请确认姓名是否正确。");
@@ -281,38 +234,77 @@ public class SendMessageTool implements Tool {
             return "Error: No recipients";
         }
         
-        try {
-            String senderName = null;
+        String senderName = null;
+        if (senderId != null) {
+            if (directory == null) directory = loadDirectory();
+            if (directory != null) senderName = directory.findUserNameById(senderId);
+        }
+        String finalContent = (senderName != null && !senderName.trim().isEmpty())
+                ? ("【消息发起人：" + senderName + "】" + content)
+                : ("【消息发起人：" + (senderId != null ? senderId : "未知") + "】" + content);
+
+        FanOutReport report = FAN_OUT_SENDER.send(recipients, chunk -> {
+            sendTextMessageToEmployees(chunk, finalContent);
+            return true;
+        });
+        int sent = report.getSucceededUserIds().size();
+        int failed = report.getFailedUserIds().size();
+        List<FanOutReport.ChunkResult> failedChunks = report.getFailedChunks();
+
+        if (failed == 0) {
             try {
-                List<DingTalkDepartment> departments = getAllDepartments();
-                Map<String, String> idNameMap = new HashMap<>();
-                for (DingTalkDepartment dept : departments) {
-                    if (dept.getUserList() != null) {
-                        for (DingTalkUser user : dept.getUserList()) {
-                            idNameMap.put(user.getUserid(), user.getName());
-                        }
-                    }
-                }
-                if (senderId != null) {
-                    senderName = idNameMap.get(senderId);
-                }
+                if (senderMessenger != null) senderMessenger.sendText("已向 " + sent + " 位用户发送消息");
+            } catch (Exception e) {
+                AppLog.error(e);
+            }
+            return "Message Sent to " + sent + " users";
+        }
+
+        String firstError = failedChunks.isEmpty() ? null : failedChunks.get(0).getError();
+        if (sent == 0) {
+            try {
+                if (senderMessenger != null) senderMessenger.sendText("发送消息失败: " + firstError);
             } catch (Exception e) {
                 AppLog.error(e);
             }
-            String finalContent = (senderName != null && !senderName.trim().isEmpty())
-                    ? ("【消息发起人：" + senderName + "】" + content)
-                    : ("【消息发起人：" + (senderId != null ? senderId : "未知") + "】" + content);
-            sendTextMessageToEmployees(recipients, finalContent);
-            if (senderMessenger != null) senderMessenger.sendText("已向 " + recipients.size() + " 位用户发送消息");
-            return "Message Sent to " + recipients.size() + " users";
+            return "Error: " + firstError;
+        }
+
+        try {
+            if (senderMessenger != null) {
+                senderMessenger.sendText("已向 " + sent + " 位用户发送消息，" + failed + " 位发送失败（失败批次 "
+                        + failedChunks.size() + "/" + report.getChunks().size() + "，原因: " + firstError + "）");
+            }
         } catch (Exception e) {
             AppLog.error(e);
-            try {
-                if (senderMessenger != null) senderMessenger.sendText("发送消息失败: " + e.getMessage());
-            } catch (Exception ex) {
-                AppLog.error(ex);
+        }
+        return "Message Sent to " + sent + " users, failed " + failed + " users in " + failedChunks.size() + " of " + report.getChunks().size() + " batches";
+    }
+
+    private DingTalkDirectoryIndex loadDirectory() {
+        try {
+            return new DingTalkDirectoryIndex(getAllDepartments());
+        } catch (Exception e) {
+            AppLog.error(e);
+            return null;
+        }
+    }
+
+    private static List<String> parseStringList(Object value) {
+        List<String> list = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                if (o != null) list.add(String.valueOf(o));
+            }
+        } else if (value instanceof String) {
+            String s = (String) value;
+            if (!s.trim().isEmpty()) {
+                String[] parts = s.split("[,，\\s]+");
+                for (String p : parts) {
+                    if (!p.trim().isEmpty()) list.add(p.trim());
+                }
             }
-            return "Error: " + e.getMessage();
         }
+        return list;
     }
 }
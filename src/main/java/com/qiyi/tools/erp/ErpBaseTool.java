@@ -8,6 +8,7 @@ import com.qiyi.config.AppConfig;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.util.BrowserSessionPool;
 import com.qiyi.util.PlayWrightUtil;
 import com.qiyi.util.AppLog;
 
@@ -20,14 +21,18 @@ public abstract class ErpBaseTool implements Tool {
     protected static final ReentrantLock TOOL_LOCK = new ReentrantLock();
     protected final Map<String, String> capturedApiHeaders = new HashMap<>();
 
+    /**
+     * 从浏览器会话池租用连接（复用长期存活的 driver 与 CDP 连接），失败返回 null。
+     */
     protected PlayWrightUtil.Connection connectToBrowser() {
-        return PlayWrightUtil.connectAndAutomate();
+        return BrowserSessionPool.getInstance().acquire();
     }
 
+    /**
+     * 归还租约；不再断开连接或关闭 Chrome。
+     */
     protected void disconnectBrowser(PlayWrightUtil.Connection connection) {
-        if (connection != null) {
-            PlayWrightUtil.disconnectBrowser(connection.playwright, connection.browser);
-        }
+        BrowserSessionPool.releaseConnection(connection);
     }
 
     protected boolean ensureLogin(Page page, String targetUrl, ToolMessenger messenger) {
@@ -6,6 +6,7 @@ import com.qiyi.service.podcast.service.PodCastPostToWechat;
 import com.qiyi.tools.Tool;
 import com.qiyi.tools.ToolContext;
 import com.qiyi.tools.ToolMessenger;
+import com.qiyi.util.BrowserSessionPool;
 import com.qiyi.util.PlayWrightUtil;
 import com.qiyi.util.PodCastUtil;
 import com.qiyi.util.AppLog;
@@ -35,9 +36,7 @@ public class PublishWechatTool implements Tool {
     public static final boolean PUBLISH_IS_DRAFT = false;
 
     protected void disconnectBrowser(PlayWrightUtil.Connection connection) {
-        if (connection != null) {
-            PlayWrightUtil.disconnectBrowser(connection.playwright, connection.browser);
-        }
+        BrowserSessionPool.releaseConnection(connection);
     }
 
     /**
@@ -115,7 +114,7 @@ public class PublishWechatTool implements Tool {
     }
 
     protected PlayWrightUtil.Connection connectToBrowser() {
-        return PlayWrightUtil.connectAndAutomate();
+        return BrowserSessionPool.getInstance().acquire();
     }
 
     protected void stageFilesForPublishing(ToolMessenger messenger) {
@@ -0,0 +1,342 @@
+package com.qiyi.util;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.qiyi.config.AppConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 浏览器会话池：进程内保留长期存活的 Playwright driver 与 CDP 连接，按工具调用出借。
+ *
+ * <p>原先每次工具调用都走 {@link PlayWrightUtil#connectAndAutomate()}：新建 driver 进程、HTTP 查询 ws 地址、
+ * connectOverCDP，结束时 {@link PlayWrightUtil#disconnectBrowser} 还会杀掉 Chrome，单次调用要付出数秒启动开销，
+ * 并发工具之间也会互相关掉对方的浏览器。</p>
+ *
+ * <ul>
+ *     <li>{@link #acquire()}：出借一个 {@link Lease}，最多同时 {@code maxLeases} 个，超出时排队等待（超时返回 null）；
+ *     租约内通过 {@link Lease#newPage()} / {@link Lease#newIsolatedContext()} 打开的页面/上下文在归还时关闭</li>
+ *     <li>{@link #sharedConnection()}：AutoWeb 工具跨调用持有页面，使用独立于租约的第二条连接（调用方自行用 PLAYWRIGHT_LOCK 串行化）；
+ *     租约持有者（ERP/公众号工具）不拿该锁，两者若共用一条连接会并发调用同一个非线程安全的 Playwright 实例</li>
+ *     <li>健康检查：出借前与后台定时检查连接，断开后丢弃旧连接，下次使用时重连。
+ *     只有在没有其他租约使用租约连接时（持有全部名额）才向 driver 发请求探测；AutoWeb 连接可能正被持锁线程使用，
+ *     只读取本地的断开标记，不发请求</li>
+ *     <li>指标：出借次数、等待耗时（平均/最大）、等待超时、重连次数，见 {@link #stats()}</li>
+ * </ul>
+ *
+ * <p>注意：Playwright Java 不是线程安全的，同一连接上的调用需要串行，因此 maxLeases 默认 1（排队而不是抢同一个浏览器）。
+ * 两条连接各自有独立的 driver，连到同一个 Chrome，登录态共享。</p>
+ */
+public final class BrowserSessionPool {
+    private static volatile BrowserSessionPool instance;
+
+    private final Supplier<PlayWrightUtil.Connection> connector;
+    private final Consumer<PlayWrightUtil.Connection> closer;
+    private final int maxLeases;
+    private final long leaseTimeoutMs;
+    private final Semaphore permits;
+
+    /** 租约使用的连接 */
+    private PlayWrightUtil.Connection leaseConnection;
+    /** AutoWeb 工具使用的连接 */
+    private PlayWrightUtil.Connection autowebConnection;
+    private ScheduledExecutorService healthChecker;
+
+    private final AtomicInteger activeLeases = new AtomicInteger();
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong waitTotalMs = new AtomicLong();
+    private final AtomicLong waitMaxMs = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong healthFailures = new AtomicLong();
+
+    /**
+     * 一次出借：复用池内的 playwright/browser，可直接当作 {@link PlayWrightUtil.Connection} 传给原有代码。
+     */
+    public static final class Lease extends PlayWrightUtil.Connection implements AutoCloseable {
+        private final BrowserSessionPool pool;
+        private final long waitMs;
+        private final List<Page> pages = new ArrayList<>();
+        private final List<BrowserContext> contexts = new ArrayList<>();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        Lease(BrowserSessionPool pool, PlayWrightUtil.Connection c, long waitMs) {
+            this.pool = pool;
+            this.playwright = c.playwright;
+            this.browser = c.browser;
+            this.waitMs = waitMs;
+        }
+
+        /**
+         * 在默认上下文（共享登录态）中打开新页面，归还时关闭。
+         */
+        public Page newPage() {
+            BrowserContext ctx = browser.contexts().isEmpty() ? browser.newContext() : browser.contexts().get(0);
+            Page p = ctx.newPage();
+            pages.add(p);
+            return p;
+        }
+
+        /**
+         * 打开隔离的上下文（独立 cookie/storage），归还时关闭。
+         */
+        public BrowserContext newIsolatedContext() {
+            BrowserContext ctx = browser.newContext();
+            contexts.add(ctx);
+            return ctx;
+        }
+
+        /**
+         * 本次出借排队等待的毫秒数。
+         */
+        public long waitMs() {
+            return waitMs;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            for (Page p : pages) {
+                try { p.close(); } catch (Exception ignored) {}
+            }
+            for (BrowserContext ctx : contexts) {
+                try { ctx.close(); } catch (Exception ignored) {}
+            }
+            pages.clear();
+            contexts.clear();
+            pool.release();
+        }
+    }
+
+    BrowserSessionPool(Supplier<PlayWrightUtil.Connection> connector, Consumer<PlayWrightUtil.Connection> closer, int maxLeases, long leaseTimeoutMs) {
+        this.connector = connector;
+        this.closer = closer;
+        this.maxLeases = Math.max(1, maxLeases);
+        this.leaseTimeoutMs = Math.max(1, leaseTimeoutMs);
+        this.permits = new Semaphore(this.maxLeases, true);
+    }
+
+    public static BrowserSessionPool getInstance() {
+        BrowserSessionPool p = instance;
+        if (p == null) {
+            synchronized (BrowserSessionPool.class) {
+                p = instance;
+                if (p == null) {
+                    AppConfig cfg = AppConfig.getInstance();
+                    p = new BrowserSessionPool(PlayWrightUtil::connectAndAutomate, BrowserSessionPool::closeConnection,
+                            cfg.getBrowserPoolMaxLeases(), cfg.getBrowserPoolLeaseTimeoutMs());
+                    instance = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * 归还任意连接：租约走池归还，其它（旧式独占连接）按原方式断开。
+     */
+    public static void releaseConnection(PlayWrightUtil.Connection c) {
+        if (c == null) return;
+        if (c instanceof Lease) {
+            ((Lease) c).close();
+            return;
+        }
+        PlayWrightUtil.disconnectBrowser(c.playwright, c.browser);
+    }
+
+    /**
+     * 建立连接并启动后台健康检查；连接失败返回 false（之后出借时仍会重试）。
+     */
+    public boolean start(long healthIntervalMs) {
+        synchronized (this) {
+            if (healthChecker == null && healthIntervalMs > 0) {
+                healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "browser-pool-health");
+                    t.setDaemon(true);
+                    return t;
+                });
+                healthChecker.scheduleWithFixedDelay(this::checkHealth, healthIntervalMs, healthIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return leaseConnection() != null;
+    }
+
+    /**
+     * 停止健康检查并断开连接（只关闭 driver 与 CDP 连接，不关闭 Chrome）。
+     */
+    public void shutdown() {
+        ScheduledExecutorService hc;
+        PlayWrightUtil.Connection leased;
+        PlayWrightUtil.Connection autoweb;
+        synchronized (this) {
+            hc = healthChecker;
+            healthChecker = null;
+            leased = leaseConnection;
+            autoweb = autowebConnection;
+            leaseConnection = null;
+            autowebConnection = null;
+        }
+        if (hc != null) hc.shutdownNow();
+        if (leased != null) closer.accept(leased);
+        if (autoweb != null) closer.accept(autoweb);
+    }
+
+    /**
+     * 出借连接：排队最多 leaseTimeoutMs，超时或连接失败返回 null。
+     */
+    public Lease acquire() {
+        long begin = System.nanoTime();
+        boolean ok;
+        try {
+            ok = permits.tryAcquire(leaseTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long waited = (System.nanoTime() - begin) / 1_000_000;
+        if (!ok) {
+            timeouts.incrementAndGet();
+            AppLog.warn("[browser-pool] lease wait timeout, waitedMs=" + waited + ", " + stats());
+            return null;
+        }
+        PlayWrightUtil.Connection c;
+        try {
+            c = leaseConnection();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        if (c == null) {
+            permits.release();
+            return null;
+        }
+        acquires.incrementAndGet();
+        waitTotalMs.addAndGet(waited);
+        waitMaxMs.accumulateAndGet(waited, Math::max);
+        activeLeases.incrementAndGet();
+        if (waited >= 1000) AppLog.info("[browser-pool] lease acquired after waitMs=" + waited);
+        return new Lease(this, c, waited);
+    }
+
+    /**
+     * 返回 AutoWeb 工具使用的长期连接（必要时重连），连接失败返回 null。不占用租约名额，也不与租约共用连接。
+     */
+    public synchronized PlayWrightUtil.Connection sharedConnection() {
+        autowebConnection = ensureHealthy(autowebConnection, false);
+        return autowebConnection;
+    }
+
+    /**
+     * 调用方已持有一个名额；其余名额都空闲时才独占连接，可以向 driver 发请求探测。
+     */
+    private synchronized PlayWrightUtil.Connection leaseConnection() {
+        leaseConnection = ensureHealthy(leaseConnection, permits.availablePermits() == maxLeases - 1);
+        return leaseConnection;
+    }
+
+    private PlayWrightUtil.Connection ensureHealthy(PlayWrightUtil.Connection current, boolean exclusive) {
+        if (current != null) {
+            if (isHealthy(current, exclusive)) return current;
+            healthFailures.incrementAndGet();
+            AppLog.warn("[browser-pool] connection unhealthy, reconnecting");
+            closer.accept(current);
+            reconnects.incrementAndGet();
+        }
+        PlayWrightUtil.Connection c = connector.get();
+        if (c == null || c.browser == null) {
+            if (c != null) closer.accept(c);
+            return null;
+        }
+        connects.incrementAndGet();
+        return c;
+    }
+
+    /**
+     * 后台健康检查：连接已断开时丢弃，下次使用时重连。
+     * 租约连接只在拿到全部名额（无人使用）时探测并丢弃，不会关掉正在出借的连接；AutoWeb 连接只看断开标记。
+     */
+    synchronized void checkHealth() {
+        if (leaseConnection != null && permits.tryAcquire(maxLeases)) {
+            try {
+                if (!isHealthy(leaseConnection, true)) {
+                    healthFailures.incrementAndGet();
+                    AppLog.warn("[browser-pool] health check failed, dropping lease connection");
+                    closer.accept(leaseConnection);
+                    leaseConnection = null;
+                }
+            } finally {
+                permits.release(maxLeases);
+            }
+        }
+        if (autowebConnection != null && !isHealthy(autowebConnection, false)) {
+            healthFailures.incrementAndGet();
+            AppLog.warn("[browser-pool] health check failed, dropping autoweb connection");
+            closer.accept(autowebConnection);
+            autowebConnection = null;
+        }
+    }
+
+    public synchronized boolean isConnected() {
+        return (leaseConnection != null && isHealthy(leaseConnection, false)) || (autowebConnection != null && isHealthy(autowebConnection, false));
+    }
+
+    public int activeLeases() {
+        return activeLeases.get();
+    }
+
+    public int maxLeases() {
+        return maxLeases;
+    }
+
+    public String stats() {
+        long n = acquires.get();
+        long avg = n == 0 ? 0 : waitTotalMs.get() / n;
+        return "active=" + activeLeases.get() + "/" + maxLeases
+                + ", acquires=" + n
+                + ", avgWaitMs=" + avg
+                + ", maxWaitMs=" + waitMaxMs.get()
+                + ", waitTimeouts=" + timeouts.get()
+                + ", connects=" + connects.get()
+                + ", reconnects=" + reconnects.get()
+                + ", healthFailures=" + healthFailures.get();
+    }
+
+    private void release() {
+        activeLeases.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * @param exclusive 调用方独占该连接时才调用 contexts() 探测；否则只读取 isConnected() 标记，不与正在使用连接的线程并发发请求
+     */
+    static boolean isHealthy(PlayWrightUtil.Connection c, boolean exclusive) {
+        if (c == null || c.browser == null) return false;
+        try {
+            if (!c.browser.isConnected()) return false;
+            if (exclusive) c.browser.contexts();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void closeConnection(PlayWrightUtil.Connection c) {
+        if (c == null || c.playwright == null) return;
+        try {
+            c.playwright.close();
+        } catch (Exception e) {
+            AppLog.info("[browser-pool] close playwright failed: " + e.getMessage());
+        }
+    }
+}
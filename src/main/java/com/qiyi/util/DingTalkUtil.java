@@ -56,11 +56,20 @@ public class DingTalkUtil {
     public static class DingTalkSettings {
         public static String OAPI_BASE_URL = "https://oapi.dingtalk.com";
         public static String STREAM_CALLBACK_PATH = "/v1.0/im/bot/messages/get";
+        public static long STREAM_DEDUP_WINDOW_MILLIS = 10L * 60 * 1000;
+        public static int STREAM_DEDUP_MAX_ENTRIES = 5000;
+        public static int STREAM_INGESTION_WORKERS = 4;
+        public static int STREAM_INGESTION_QUEUE_CAPACITY = 200;
+        public static int BATCH_SEND_MAX_USERS = 20;
+        public static int FAN_OUT_CONCURRENCY = 4;
+        public static int FAN_OUT_MAX_CALLS_PER_SECOND = 10;
+        public static int FAN_OUT_CHUNK_RETRIES = 1;
         public static String DEFAULT_PROTOCOL = "https";
         public static String DEFAULT_REGION_ID = "central";
         public static String DEFAULT_LANGUAGE = "zh_CN";
         public static String DEFAULT_TIME_ZONE = "Asia/Shanghai";
         public static String DEFAULT_CALENDAR_ID = "primary";
+        public static int SCHEDULE_QUERY_MAX_USERS = 20;
         public static String ACCESS_TOKEN_CACHE_KEY_PREFIX = "dingtalk_access_token_";
         public static long ACCESS_TOKEN_CACHE_SECONDS = 3600;
         public static long PAGINATION_THROTTLE_MILLIS = 200;
@@ -71,7 +80,16 @@ public class DingTalkUtil {
         public static String CONTACTS_FILE_CACHE_SUFFIX = ".json";
         public static long DEPARTMENT_FILE_REFRESH_THRESHOLD_MILLIS = 24L * 3600 * 1000;
         public static long DEPARTMENT_MEMORY_CACHE_SECONDS = 30L * 60;
+        public static String UNION_ID_FILE_CACHE_PREFIX = "dingtalk_unionid_cache_";
+        public static int UNION_ID_LOOKUP_CONCURRENCY = 8;
         public static String ROOT_DEPARTMENT_ID = "1";
+        public static String INTERACTIVE_CARD_TEMPLATE_ID = "StandardCard";
+        public static String INTERACTIVE_CARD_LOGO = "@lALPDfJ6V_FPDmvNAfTNAfQ";
+        public static String MEDIA_CACHE_KEY_PREFIX = "dingtalk_media_";
+        public static long MEDIA_CACHE_SECONDS = 60L * 3600;
+        public static long MEDIA_COMPRESS_THRESHOLD_BYTES = 512L * 1024;
+        public static int MEDIA_MAX_DIMENSION = 1920;
+        public static float MEDIA_JPEG_QUALITY = 0.85f;
     }
 
     // 机器人配置信息（从配置文件加载）
@@ -236,6 +254,16 @@ public class DingTalkUtil {
     }
 
     public static String createCalendarEvent(String appKey, String appSecret, String userId, String summary, String description, String startTime, String endTime, List<String> attendeeUnionIds, String location) throws Exception {
+        return createCalendarEvent(appKey, appSecret, userId, summary, description, startTime, endTime, attendeeUnionIds, location, null, 0);
+    }
+
+    /**
+     * 创建日程，可选重复规则（一次 API 调用创建整组重复日程）。
+     *
+     * @param recurrenceType daily / weekly，为空表示不重复；weekly 按开始时间所在星期重复
+     * @param occurrences    重复次数（含首次），recurrenceType 非空时生效
+     */
+    public static String createCalendarEvent(String appKey, String appSecret, String userId, String summary, String description, String startTime, String endTime, List<String> attendeeUnionIds, String location, String recurrenceType, int occurrences) throws Exception {
         com.aliyun.dingtalkcalendar_1_0.Client client = createCalendarClient();
         com.aliyun.dingtalkcalendar_1_0.models.CreateEventHeaders headers = new com.aliyun.dingtalkcalendar_1_0.models.CreateEventHeaders();
         headers.xAcsDingtalkAccessToken = getDingTalkRobotAccessToken(appKey, appSecret);
@@ -256,6 +284,22 @@ public class DingTalkUtil {
         }
         request.setAttendees(attendees);
 
+        if (recurrenceType != null && !recurrenceType.isEmpty() && occurrences > 1) {
+            com.aliyun.dingtalkcalendar_1_0.models.CreateEventRequest.CreateEventRequestRecurrencePattern pattern =
+                    new com.aliyun.dingtalkcalendar_1_0.models.CreateEventRequest.CreateEventRequestRecurrencePattern()
+                            .setType(recurrenceType)
+                            .setInterval(1);
+            if ("weekly".equals(recurrenceType)) {
+                java.time.DayOfWeek day = java.time.OffsetDateTime.parse(startTime).getDayOfWeek();
+                pattern.setDaysOfWeek(day.name().toLowerCase());
+            }
+            request.setRecurrence(new com.aliyun.dingtalkcalendar_1_0.models.CreateEventRequest.CreateEventRequestRecurrence()
+                    .setPattern(pattern)
+                    .setRange(new com.aliyun.dingtalkcalendar_1_0.models.CreateEventRequest.CreateEventRequestRecurrenceRange()
+                            .setType("numbered")
+                            .setNumberOfOccurrences(occurrences)));
+        }
+
         // createEventWithOptions(userId, calendarId, request, headers, runtime)
         CreateEventResponse response = client.createEventWithOptions(userId, DingTalkSettings.DEFAULT_CALENDAR_ID, request, headers, new com.aliyun.teautil.models.RuntimeOptions());
         if (response.getBody() != null) {
@@ -263,6 +307,65 @@ public class DingTalkUtil {
         }
         return null;
     }
+    /**
+     * 查询多人闲忙（日历 getSchedule），返回 unionId → 忙碌时段列表 [startMillis, endMillis)。
+     * <p>
+     * 单次请求最多 {@link DingTalkSettings#SCHEDULE_QUERY_MAX_USERS} 人，超过时按批查询；全天日程按默认时区整天计算。
+     * </p>
+     *
+     * @param operatorUnionId 查询发起人的 unionId
+     * @param startTime       查询开始时间 (ISO 8601)
+     * @param endTime         查询结束时间 (ISO 8601)
+     */
+    public static java.util.Map<String, List<long[]>> getBusyTimes(String appKey, String appSecret, String operatorUnionId, List<String> unionIds, String startTime, String endTime) throws Exception {
+        java.util.Map<String, List<long[]>> busy = new java.util.HashMap<>();
+        if (unionIds == null || unionIds.isEmpty()) return busy;
+        com.aliyun.dingtalkcalendar_1_0.Client client = createCalendarClient();
+        GetScheduleHeaders headers = new GetScheduleHeaders();
+        headers.xAcsDingtalkAccessToken = getDingTalkRobotAccessToken(appKey, appSecret);
+        int batch = Math.max(1, DingTalkSettings.SCHEDULE_QUERY_MAX_USERS);
+        for (int from = 0; from < unionIds.size(); from += batch) {
+            GetScheduleRequest request = new GetScheduleRequest()
+                    .setUserIds(new ArrayList<>(unionIds.subList(from, Math.min(unionIds.size(), from + batch))))
+                    .setStartTime(startTime)
+                    .setEndTime(endTime);
+            GetScheduleResponse response = client.getScheduleWithOptions(operatorUnionId, request, headers, new com.aliyun.teautil.models.RuntimeOptions());
+            if (response.getBody() == null || response.getBody().getScheduleInformation() == null) continue;
+            for (GetScheduleResponseBody.GetScheduleResponseBodyScheduleInformation info : response.getBody().getScheduleInformation()) {
+                if (info == null || info.getUserId() == null) continue;
+                if (info.getError() != null && !info.getError().isEmpty()) {
+                    AppLog.warn("查询闲忙失败 userId=" + info.getUserId() + ", error=" + info.getError());
+                }
+                List<long[]> items = busy.computeIfAbsent(info.getUserId(), k -> new ArrayList<>());
+                if (info.getScheduleItems() == null) continue;
+                for (GetScheduleResponseBody.GetScheduleResponseBodyScheduleInformationScheduleItems item : info.getScheduleItems()) {
+                    if (item == null || "free".equalsIgnoreCase(item.getStatus())) continue;
+                    long start = item.getStart() == null ? -1 : scheduleMillis(item.getStart().getDateTime(), item.getStart().getDate(), false);
+                    long end = item.getEnd() == null ? -1 : scheduleMillis(item.getEnd().getDateTime(), item.getEnd().getDate(), true);
+                    if (start >= 0 && end > start) items.add(new long[]{start, end});
+                }
+            }
+        }
+        return busy;
+    }
+
+    private static long scheduleMillis(String dateTime, String date, boolean end) {
+        try {
+            if (dateTime != null && !dateTime.isEmpty()) {
+                return java.time.OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+            }
+            if (date != null && !date.isEmpty()) {
+                java.time.LocalDate d = java.time.LocalDate.parse(date);
+                // 全天日程的结束日期按当天结束计算
+                if (end) d = d.plusDays(1);
+                return d.atStartOfDay(java.time.ZoneId.of(DingTalkSettings.DEFAULT_TIME_ZONE)).toInstant().toEpochMilli();
+            }
+        } catch (Exception e) {
+            AppLog.warn("无法解析日程时间: " + (dateTime != null ? dateTime : date));
+        }
+        return -1;
+    }
+
     // =========================================================================
     // 异步消息发送队列支持
     // =========================================================================
@@ -362,7 +465,7 @@ public class DingTalkUtil {
         String accessToken = getDingTalkRobotAccessToken(appKey, appSecret);
         com.dingtalk.api.response.OapiMessageCorpconversationAsyncsendV2Response rsp = client.execute(req, accessToken);
         if (rsp.getErrcode() != 0) {
-             throw new RuntimeException("Send work notification image failed: " + rsp.getErrmsg());
+             throw new RuntimeException("Send work notification image failed: errcode=" + rsp.getErrcode() + ", " + rsp.getErrmsg());
         }
     }
 
@@ -402,6 +505,76 @@ public class DingTalkUtil {
         }
     }
 
+    // =========================================================================
+    // 机器人互动卡片（用于进度原地更新）
+    // =========================================================================
+
+    public static com.aliyun.dingtalkim_1_0.Client createImClient() throws Exception {
+        Config config = new Config();
+        config.protocol = DingTalkSettings.DEFAULT_PROTOCOL;
+        config.regionId = DingTalkSettings.DEFAULT_REGION_ID;
+        return new com.aliyun.dingtalkim_1_0.Client(config);
+    }
+
+    /**
+     * 构造 StandardCard 模板的卡片数据：标题 + 单个 markdown 内容块。
+     */
+    public static String buildMarkdownCardData(String title, String markdownText) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        com.fasterxml.jackson.databind.node.ObjectNode root = mapper.createObjectNode();
+        com.fasterxml.jackson.databind.node.ObjectNode cfg = root.putObject("config");
+        cfg.put("autoLayout", true);
+        cfg.put("enableForward", true);
+        com.fasterxml.jackson.databind.node.ObjectNode header = root.putObject("header");
+        com.fasterxml.jackson.databind.node.ObjectNode titleNode = header.putObject("title");
+        titleNode.put("type", "text");
+        titleNode.put("text", title == null ? "" : title);
+        header.put("logo", DingTalkSettings.INTERACTIVE_CARD_LOGO);
+        com.fasterxml.jackson.databind.node.ObjectNode content = root.putArray("contents").addObject();
+        content.put("type", "markdown");
+        content.put("text", markdownText == null ? "" : markdownText);
+        content.put("id", "markdown_progress");
+        return mapper.writeValueAsString(root);
+    }
+
+    /**
+     * 单聊发送机器人互动卡片。
+     * @param cardBizId 调用方生成的卡片唯一 ID，后续通过它原地更新卡片
+     * @return 发送成功返回 true
+     */
+    public static boolean sendRobotInteractiveCard(String appKey, String appSecret, String robotCode, String userId, String cardBizId, String cardData) throws Exception {
+        com.aliyun.dingtalkim_1_0.Client client = createImClient();
+        com.aliyun.dingtalkim_1_0.models.SendRobotInteractiveCardHeaders headers = new com.aliyun.dingtalkim_1_0.models.SendRobotInteractiveCardHeaders();
+        headers.xAcsDingtalkAccessToken = getDingTalkRobotAccessToken(appKey, appSecret);
+
+        com.aliyun.dingtalkim_1_0.models.SendRobotInteractiveCardRequest request = new com.aliyun.dingtalkim_1_0.models.SendRobotInteractiveCardRequest()
+                .setCardTemplateId(DingTalkSettings.INTERACTIVE_CARD_TEMPLATE_ID)
+                .setSingleChatReceiver("{\"userId\":\"" + escapeJson(userId) + "\"}")
+                .setCardBizId(cardBizId)
+                .setRobotCode(robotCode)
+                .setCardData(cardData)
+                .setPullStrategy(false);
+        client.sendRobotInteractiveCardWithOptions(request, headers, new RuntimeOptions());
+        return true;
+    }
+
+    /**
+     * 按 cardBizId 原地更新已发送的机器人互动卡片（整卡数据覆盖）。
+     */
+    public static boolean updateRobotInteractiveCard(String appKey, String appSecret, String cardBizId, String cardData) throws Exception {
+        com.aliyun.dingtalkim_1_0.Client client = createImClient();
+        com.aliyun.dingtalkim_1_0.models.UpdateRobotInteractiveCardHeaders headers = new com.aliyun.dingtalkim_1_0.models.UpdateRobotInteractiveCardHeaders();
+        headers.xAcsDingtalkAccessToken = getDingTalkRobotAccessToken(appKey, appSecret);
+
+        com.aliyun.dingtalkim_1_0.models.UpdateRobotInteractiveCardRequest request = new com.aliyun.dingtalkim_1_0.models.UpdateRobotInteractiveCardRequest()
+                .setCardBizId(cardBizId)
+                .setCardData(cardData)
+                .setUpdateOptions(new com.aliyun.dingtalkim_1_0.models.UpdateRobotInteractiveCardRequest.UpdateRobotInteractiveCardRequestUpdateOptions()
+                        .setUpdateCardDataByKey(false));
+        client.updateRobotInteractiveCardWithOptions(request, headers, new RuntimeOptions());
+        return true;
+    }
+
     public static com.aliyun.dingtalkrobot_1_0.Client createClient() throws Exception {
         Config config = new Config();
         config.protocol = DingTalkSettings.DEFAULT_PROTOCOL;
@@ -456,6 +629,10 @@ public class DingTalkUtil {
         dingTalkCache = cache;
     }
 
+    public static DingTalkCache getDingTalkCache() {
+        return dingTalkCache;
+    }
+
     public static String getDingTalkRobotAccessToken(String appKey,String appSecret) throws Exception
     {
         // 尝试从缓存获取
@@ -195,6 +195,8 @@ public class LLMUtil {
         }
 
         public LLMResult chat(String prompt, ModelType preferredModel) {
+            LLMProvider stub = stubProvider;
+            if (stub != null) return stub.chat(prompt);
             ModelType normalizedPreferred = normalize(preferredModel);
             AppConfig cfg = AppConfig.getInstance();
 
@@ -222,6 +224,8 @@ public class LLMUtil {
         }
 
         public LLMResult chat(List<io.github.pigmesh.ai.deepseek.core.chat.Message> messages, boolean isStreamingProcess, ModelType preferredModel) {
+            LLMProvider stub = stubProvider;
+            if (stub != null) return stub.chat(messages, isStreamingProcess);
             ModelType normalizedPreferred = normalize(preferredModel);
             AppConfig cfg = AppConfig.getInstance();
 
@@ -259,6 +263,20 @@ public class LLMUtil {
             new OllamaProvider()
     ));
 
+    /**
+     * 桩模型：设置后所有经路由的调用（chat/chatResult 及 chatWithDeepSeek 等）都交给它处理，不再访问真实模型。
+     * 只在测试与离线基准中通过测试代码里的 {@code LLMStubs} 设置，正常运行时为 null；不对生产代码开放。
+     */
+    private static volatile LLMProvider stubProvider;
+
+    static void installStubProvider(LLMProvider provider) {
+        stubProvider = provider;
+    }
+
+    static void clearStubProvider() {
+        stubProvider = null;
+    }
+
     private enum LogLevel {
         ERROR(1),
         WARN(2),
@@ -1019,10 +1037,12 @@ public class LLMUtil {
                 .apiKey(AppConfig.getInstance().getGeminiApiKey())
                 .build()) {
 
+            String name = imageFile.getName().toLowerCase(java.util.Locale.ROOT);
+            String mimeType = name.endsWith(".jpg") || name.endsWith(".jpeg") ? "image/jpeg" : "image/png";
             File uploadedFile = client.files.upload(
                     imageFile.getAbsolutePath(),
                     UploadFileConfig.builder()
-                            .mimeType("image/png")
+                            .mimeType(mimeType)
                             .build()
             );
 
@@ -0,0 +1,197 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AutoWebEngineTest {
+
+    @Test
+    public void submit_shouldRejectWhenQueueIsFull() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-full", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            AutoWebEngine.Job<Void> running = engine.submit("a", "running", null, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            AutoWebEngine.Job<String> queued = engine.submit("a", "queued", null, t -> "ok");
+            RejectedExecutionException ex = Assertions.assertThrows(RejectedExecutionException.class,
+                    () -> engine.submit("b", "overflow", null, t -> "no"));
+            Assertions.assertTrue(ex.getMessage().contains("overflow"), ex.getMessage());
+            Assertions.assertEquals(2, engine.jobs().size());
+
+            release.countDown();
+            running.await(5000);
+            Assertions.assertEquals("ok", queued.await(5000));
+            Assertions.assertTrue(engine.stats().contains("rejected=1"), engine.stats());
+        } finally {
+            release.countDown();
+            engine.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void cancelOwner_shouldDequeueWaitingJobAndStopRunningJobAtCheckpoint() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-cancel", 1, 4);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        try {
+            AutoWebEngine.Job<Integer> running = engine.submit("autoweb:r1", "loop", null, token -> {
+                started.countDown();
+                int steps = 0;
+                while (true) {
+                    // 模拟 DSL 动作之间的检查点
+                    CancellationToken.checkCurrent();
+                    steps++;
+                    Thread.sleep(5);
+                    if (steps > 2000) return steps;
+                }
+            });
+            AutoWebEngine.Job<Void> queued = engine.submit("autoweb:r1", "queued", null, () -> queuedRan.set(true));
+            AutoWebEngine.Job<String> other = engine.submit("autoweb:r2", "other", null, t -> "r2");
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Assertions.assertEquals(2, engine.cancelOwner("autoweb:r1", "用户中断"));
+            CancellationException ce = Assertions.assertThrows(CancellationException.class, () -> running.await(5000));
+            Assertions.assertTrue(ce.getMessage().contains("用户中断"), ce.getMessage());
+            Assertions.assertThrows(CancellationException.class, () -> queued.await(5000));
+            Assertions.assertEquals("r2", other.await(5000));
+            Assertions.assertFalse(queuedRan.get());
+            Assertions.assertNull(CancellationToken.current());
+        } finally {
+            engine.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void cancel_shouldNotDropJobThatAlreadyStarted() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-started", 1, 4);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // 任务体不经过检查点：取消只设置标记，任务仍在执行，不能被当作已出队
+            AutoWebEngine.Job<String> running = engine.submit("autoweb:r1", "busy", null, token -> {
+                started.countDown();
+                release.await();
+                return "done";
+            });
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            running.cancel("用户中断");
+            Assertions.assertTrue(running.isStarted());
+            Assertions.assertEquals(1, engine.jobs().size());
+            Assertions.assertThrows(TimeoutException.class, () -> running.await(100));
+
+            release.countDown();
+            Assertions.assertEquals("done", running.await(5000));
+            Assertions.assertTrue(engine.jobs().isEmpty());
+        } finally {
+            release.countDown();
+            engine.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void callBlocking_shouldStopWaitingWhenTokenIsCancelled() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-io", 1, 4);
+        CountDownLatch calling = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            // 模拟卡住的模型请求：只有被中断才返回
+            AutoWebEngine.Job<String> job = engine.submit("autoweb:r1", "llm", null, token -> engine.callBlocking("llm:stuck", () -> {
+                calling.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "late";
+            }, 0));
+            Assertions.assertTrue(calling.await(5, TimeUnit.SECONDS));
+            job.cancel("用户中断");
+            CancellationException ce = Assertions.assertThrows(CancellationException.class, () -> job.await(5000));
+            Assertions.assertTrue(ce.getMessage().contains("用户中断"), ce.getMessage());
+            Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "取消后应中断请求线程");
+
+            Assertions.assertThrows(TimeoutException.class,
+                    () -> engine.callBlocking("llm:slow", () -> { Thread.sleep(5000); return "x"; }, 100));
+            Assertions.assertEquals("ok", engine.callBlocking("llm:fast", () -> "ok", 1000));
+        } finally {
+            engine.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void executeWithGroovy_shouldStopAtCheckpointsBeforeAndAfterScript() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-exec", 1, 4);
+        try {
+            // 提交前已取消：脚本不执行
+            CancellationToken pre = CancellationToken.create();
+            pre.cancel("用户中断");
+            groovy.lang.Binding skipped = new groovy.lang.Binding();
+            AutoWebEngine.Job<Void> before = engine.submit("autoweb:r1", "exec", pre, token -> {
+                AutoWebAgent.executeWithGroovy("ran = true", null, null, skipped, null, null);
+                return null;
+            });
+            Assertions.assertThrows(CancellationException.class, () -> before.await(5000));
+            Assertions.assertFalse(skipped.hasVariable("ran"));
+
+            // 脚本执行期间取消、之后再无 DSL 动作：执行后的检查点仍按取消返回，不记为执行成功
+            List<String> logs = new ArrayList<>();
+            groovy.lang.Binding binding = new groovy.lang.Binding();
+            AutoWebEngine.Job<Void> after = engine.submit("autoweb:r2", "exec", null, token -> {
+                binding.setVariable("tk", token);
+                AutoWebAgent.executeWithGroovy("tk.cancel('用户中断')\nran = true", null, logs::add, binding, null, null);
+                return null;
+            });
+            CancellationException ce = Assertions.assertThrows(CancellationException.class, () -> after.await(5000));
+            Assertions.assertTrue(ce.getMessage().contains("用户中断"), ce.getMessage());
+            Assertions.assertEquals(Boolean.TRUE, binding.getVariable("ran"));
+            Assertions.assertFalse(logs.contains("Groovy script executed successfully."), logs.toString());
+        } finally {
+            engine.shutdown(5000);
+        }
+    }
+
+    @Test
+    public void fanOut_shouldNotDeadlockOnSaturatedPoolAndKeepOrder() throws Exception {
+        AutoWebEngine engine = new AutoWebEngine("t-fan", 1, 1);
+        try {
+            // 父任务占住唯一的线程，子任务排不进队列也由父任务线程自己执行
+            AutoWebEngine.Job<List<String>> parent = engine.submit("ui", "plan", null, token -> {
+                List<AutoWebEngine.Task<String>> tasks = new ArrayList<>();
+                for (String model : Arrays.asList("DEEPSEEK", "QWEN_MAX", "MOONSHOT", "GEMINI")) {
+                    tasks.add(t -> {
+                        if ("MOONSHOT".equals(model)) throw new IllegalStateException("boom");
+                        Assertions.assertSame(token, CancellationToken.current());
+                        return model;
+                    });
+                }
+                return engine.fanOut(token, tasks);
+            });
+            Assertions.assertEquals(Arrays.asList("DEEPSEEK", "QWEN_MAX", null, "GEMINI"), parent.await(5000));
+
+            List<String> seen = new ArrayList<>();
+            engine.runAll(null, Arrays.asList(() -> { synchronized (seen) { seen.add("a"); } }, () -> { synchronized (seen) { seen.add("b"); } }));
+            seen.sort(String::compareTo);
+            Assertions.assertEquals(Arrays.asList("a", "b"), seen);
+        } finally {
+            engine.shutdown(5000);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.qiyi.service.autoweb;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AxTreeEncoderTest {
+
+    private static JsonObject axValue(String type, Object value) {
+        JsonObject v = new JsonObject();
+        v.addProperty("type", type);
+        if (value instanceof Boolean) v.addProperty("value", (Boolean) value);
+        else if (value instanceof Number) v.addProperty("value", (Number) value);
+        else v.addProperty("value", String.valueOf(value));
+        return v;
+    }
+
+    private static JsonObject node(String id, String role, String name, String... childIds) {
+        JsonObject n = new JsonObject();
+        n.addProperty("nodeId", id);
+        n.addProperty("ignored", false);
+        n.add("role", axValue("role", role));
+        if (name != null) n.add("name", axValue("computedString", name));
+        JsonArray children = new JsonArray();
+        for (String c : childIds) children.add(c);
+        n.add("childIds", children);
+        n.addProperty("backendDOMNodeId", Integer.parseInt(id) + 1000);
+        return n;
+    }
+
+    private static void property(JsonObject n, String name, JsonObject value) {
+        JsonArray props = n.has("properties") ? n.getAsJsonArray("properties") : new JsonArray();
+        JsonObject p = new JsonObject();
+        p.addProperty("name", name);
+        p.add("value", value);
+        props.add(p);
+        n.add("properties", props);
+    }
+
+    private static JsonObject result(JsonObject... nodes) {
+        JsonArray arr = new JsonArray();
+        for (JsonObject n : nodes) arr.add(n);
+        JsonObject r = new JsonObject();
+        r.add("nodes", arr);
+        return r;
+    }
+
+    @Test
+    public void encode_writesIndentedLinesAndPrunesNoise() {
+        JsonObject root = node("1", "RootWebArea", "订单", "2", "6");
+        property(root, "url", axValue("string", "https://erp.example.com/orders"));
+        JsonObject generic = node("2", "generic", null, "3", "4");
+        JsonObject link = node("3", "link", "订单管理", "5");
+        property(link, "url", axValue("string", "https://erp.example.com/orders"));
+        JsonObject box = node("4", "checkbox", "全选");
+        property(box, "checked", axValue("tristate", "true"));
+        property(box, "disabled", axValue("boolean", false));
+        JsonObject linkText = node("5", "StaticText", "订单管理");
+        JsonObject ignored = node("6", "paragraph", "广告");
+        ignored.addProperty("ignored", true);
+
+        String text = AxTreeEncoder.encode(result(root, generic, link, box, linkText, ignored), "https://erp.example.com/orders");
+
+        Assertions.assertEquals(
+                "# AX https://erp.example.com/orders nodes=2/6\n" +
+                        "- link \"订单管理\" [url=https://erp.example.com/orders] [ref=e1]\n" +
+                        "- checkbox \"全选\" [checked] [ref=e2]\n",
+                text);
+    }
+
+    @Test
+    public void encode_prefersRootWebAreaMatchingExpectedUrl() {
+        JsonObject top = node("1", "RootWebArea", "外壳", "2", "3", "4", "5");
+        property(top, "url", axValue("string", "https://erp.example.com/shell"));
+        JsonObject a = node("2", "button", "菜单A");
+        JsonObject b = node("3", "button", "菜单B");
+        JsonObject c = node("4", "button", "菜单C");
+        JsonObject frame = node("5", "Iframe", null, "6");
+        JsonObject inner = node("6", "RootWebArea", "商品", "7");
+        property(inner, "url", axValue("string", "https://erp.example.com/goods?id=3"));
+        JsonObject input = node("7", "textbox", "商品名");
+        input.add("value", axValue("string", "手机"));
+
+        JsonObject r = result(top, a, b, c, frame, inner, input);
+        String matched = AxTreeEncoder.encode(r, "https://erp.example.com/goods");
+        Assertions.assertTrue(matched.startsWith("# AX https://erp.example.com/goods?id=3 nodes=1/7\n"), matched);
+        Assertions.assertTrue(matched.contains("- textbox \"商品名\": 手机 [ref=e1]"), matched);
+
+        // 无匹配时退回节点最多的根
+        String largest = AxTreeEncoder.encode(r, "https://other.example.com/");
+        Assertions.assertTrue(largest.startsWith("# AX https://erp.example.com/shell "), largest);
+        Assertions.assertTrue(largest.contains("- button \"菜单A\" [ref=e1]"), largest);
+    }
+
+    @Test
+    public void encode_isSeveralTimesSmallerThanPrettyJson() {
+        int rows = 200;
+        String[] rootChildren = new String[rows];
+        JsonArray nodes = new JsonArray();
+        for (int i = 0; i < rows; i++) rootChildren[i] = String.valueOf(10 + i * 3);
+        JsonObject root = node("1", "RootWebArea", "列表", rootChildren);
+        property(root, "url", axValue("string", "https://erp.example.com/list"));
+        nodes.add(root);
+        for (int i = 0; i < rows; i++) {
+            int id = 10 + i * 3;
+            JsonObject row = node(String.valueOf(id), "row", null, String.valueOf(id + 1), String.valueOf(id + 2));
+            JsonObject cell = node(String.valueOf(id + 1), "cell", "订单" + i);
+            JsonObject btn = node(String.valueOf(id + 2), "button", "详情");
+            property(btn, "focusable", axValue("booleanOrUndefined", true));
+            nodes.add(row);
+            nodes.add(cell);
+            nodes.add(btn);
+        }
+        JsonObject r = new JsonObject();
+        r.add("nodes", nodes);
+
+        String pretty = new GsonBuilder().setPrettyPrinting().create().toJson(JsonParser.parseString(r.toString()));
+        String compact = AxTreeEncoder.encode(r, "https://erp.example.com/list");
+
+        Assertions.assertTrue(compact.contains("- button \"详情\" [ref=e600]"), compact);
+        Assertions.assertTrue(pretty.length() > compact.length() * 5,
+                "pretty=" + pretty.length() + ", compact=" + compact.length());
+    }
+
+    @Test
+    public void wrapAsAxTreeText_embedsEncodedLinesWithoutJsonEscaping() {
+        JsonObject root = node("1", "RootWebArea", "订单", "2");
+        property(root, "url", axValue("string", "https://erp.example.com/orders"));
+        JsonObject btn = node("2", "button", "导出全部");
+        String text = AxTreeEncoder.encode(result(root, btn), "https://erp.example.com/orders");
+
+        String wrapped = AutoWebAgent.wrapAsAxTreeText(text);
+        Assertions.assertEquals(AutoWebAgent.AX_TREE_TEXT_HEADER + "\n" + text, wrapped);
+        Assertions.assertTrue(wrapped.contains("\n- button \"导出全部\" [ref=e1]\n"), wrapped);
+        Assertions.assertFalse(wrapped.contains("\\n") || wrapped.contains("\\\""), wrapped);
+    }
+}
@@ -0,0 +1,107 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Frame;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.TimeoutError;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FrameScannerTest {
+
+    private static Frame frame(String name, String url) {
+        Frame f = mock(Frame.class);
+        when(f.name()).thenReturn(name);
+        when(f.url()).thenReturn(url);
+        return f;
+    }
+
+    private static Map<String, Object> iframe(String name, String src, String href, double w, double h) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("name", name);
+        m.put("id", "");
+        m.put("src", src);
+        m.put("href", href);
+        m.put("x", 0);
+        m.put("y", 0);
+        m.put("w", w);
+        m.put("h", h);
+        return m;
+    }
+
+    @Test
+    public void readGeometryAndMatch_byNameThenUrl_leavesAmbiguousFramesUnmatched() {
+        Page page = mock(Page.class);
+        List<Object> raw = new ArrayList<>();
+        raw.add(iframe("content", "https://erp.example.com/blank", "https://erp.example.com/orders", 1200, 800));
+        raw.add(iframe("", "https://ads.example.com/a", "", 300, 0));
+        raw.add(iframe("dup", "https://erp.example.com/x", "", 10, 10));
+        raw.add(iframe("dup", "https://erp.example.com/y", "", 20, 20));
+        when(page.evaluate(anyString())).thenReturn(raw);
+
+        List<FrameScanner.Geometry> geos = FrameScanner.readGeometry(page);
+        Assertions.assertEquals(4, geos.size());
+        Assertions.assertTrue(geos.get(0).visible());
+        Assertions.assertFalse(geos.get(1).visible());
+
+        Frame content = frame("content", "https://erp.example.com/orders");
+        Frame ad = frame("", "https://ads.example.com/a");
+        Frame dup1 = frame("dup", "https://erp.example.com/x2");
+        Frame dup2 = frame("dup", "https://erp.example.com/y2");
+        Map<Frame, FrameScanner.Geometry> matched = FrameScanner.match(Arrays.asList(content, ad, dup1, dup2), geos);
+
+        Assertions.assertSame(geos.get(0), matched.get(content));
+        Assertions.assertSame(geos.get(1), matched.get(ad));
+        Assertions.assertNull(matched.get(dup1));
+        Assertions.assertNull(matched.get(dup2));
+    }
+
+    @Test
+    public void readGeometry_returnsEmptyWhenEvaluateFails() {
+        Page page = mock(Page.class);
+        when(page.evaluate(anyString())).thenThrow(new RuntimeException("Execution context was destroyed"));
+        Assertions.assertTrue(FrameScanner.readGeometry(page).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void watcher_wakesOnFrameEventInsteadOfWaitingFullInterval() {
+        Page page = mock(Page.class);
+        ArgumentCaptor<Consumer<Frame>> listener = ArgumentCaptor.forClass(Consumer.class);
+        FrameScanner.Watcher watcher = FrameScanner.Watcher.attach(page);
+        verify(page).onFrameAttached(listener.capture());
+
+        // waitForCondition 泵出一次 frame attach 事件
+        doAnswer(inv -> {
+            listener.getValue().accept(mock(Frame.class));
+            return null;
+        }).when(page).waitForCondition(any(), any(Page.WaitForConditionOptions.class));
+
+        int seen = watcher.version();
+        long begin = System.currentTimeMillis();
+        Assertions.assertTrue(watcher.awaitChange(seen, 5_000));
+        Assertions.assertTrue(System.currentTimeMillis() - begin < 1_000);
+
+        // 无事件：等满最长时间后返回 false
+        doThrow(new TimeoutError("timeout")).when(page).waitForCondition(any(), any(Page.WaitForConditionOptions.class));
+        Assertions.assertFalse(watcher.awaitChange(watcher.version(), 150));
+
+        watcher.close();
+        verify(page).offFrameAttached(listener.getValue());
+    }
+}
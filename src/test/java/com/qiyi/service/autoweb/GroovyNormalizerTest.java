@@ -0,0 +1,113 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class GroovyNormalizerTest {
+
+    private static List<String> corpus() {
+        List<String> out = new ArrayList<>();
+        out.add(HtmlFixtures.generatedGroovy(3));
+        out.add(HtmlFixtures.generatedGroovy(12));
+        out.add(HtmlFixtures.planText(4));
+        out.add(String.join("\n",
+                "/*",
+                "// PLAN_START",
+                "* Step 1:",
+                "* - Description: 进入订单管理页面",
+                "// PLAN_END",
+                "*/",
+                "PLAN_END",
+                "web.log(\"ok\")",
+                ""));
+        out.add(String.join("\n",
+                "web.click('text=\"资料已完善的平台\"')",
+                "web.wait(500)",
+                "// 在展开的下拉列表中选择“淘宝”",
+                "  web.click('div[role=\"listbox\"] >> text=\"淘宝\"')",
+                "web.click('text=\"状态\"')",
+                "web.click('#other')"));
+        out.add(String.join("\n",
+                "def rowCount = web.count('tr')",
+                "def allRowsOutput = []",
+                "allRowsOutput.each { println it }",
+                "String total = web.getText(\"#total\")",
+                "web.log(total)",
+                "web.getText('#sum')",
+                "  web.log( s )"));
+        out.add(String.join("\r\n",
+                "```groovy",
+                "import java.util.List",
+                "import static java.lang.Math.max",
+                "import groovy.json.JsonOutput",
+                "import java.time.format.DateTimeFormatter",
+                "def d = new Date().minus(3)",
+                "def e = d.plus(2)",
+                "println JsonOutput.prettyPrint(JsonOutput.toJson(rows))",
+                "println groovy.json.JsonBuilder.newInstance(rows)",
+                "def s = new Date().format('yyyy-MM-dd')",
+                "def t = LocalDate.now().format(DateTimeFormatter.ofPattern(\"yyyy\"))",
+                "```"));
+        out.add("groovy\nweb.log(\"price $ 100 ${x} $y \"\"\" $5\")\n\"\"\"a $ b\"\"\"");
+        out.add("  \n  PLAN: 先打开\n-\nplan b\n<plan>x</plan>\n\n<think>y</think>  \n思考: z\n[Plan] w\n * Plan c\n计划\n");
+        out.add("");
+        return out;
+    }
+
+    @Test
+    public void normalizeGenerated_shouldMatchLegacyOnCorpus() {
+        for (String code : corpus()) {
+            Assertions.assertEquals(LegacyGroovyNormalizer.normalizeGenerated(code), GroovyNormalizer.normalizeGenerated(code), code);
+            Assertions.assertEquals(LegacyGroovyNormalizer.forExecution(code), GroovyNormalizer.forExecution(code), code);
+        }
+        Assertions.assertNull(GroovyNormalizer.normalizeGenerated(null));
+        Assertions.assertEquals("", GroovyNormalizer.forExecution(null));
+    }
+
+    @Test
+    public void normalizeGenerated_shouldMatchLegacyOnRandomLineMixes() {
+        List<String> pieces = Arrays.asList(
+                "", "  ", "\t", "/*", "*/", "/* PLAN_START", "PLAN_START", "  PLAN_END */", "* // Step 1: a", "// PLAN_END",
+                "PLAN: x", " THINK: y", "REASONING:z", "思考过程", "计划如下", "- plan", "-", "plan", "* Plan", "[Plan] p",
+                "<plan>a</plan>", "<think>b</think>", "思考: c", "web.click('text=\"平台\"')", "web.wait(200)",
+                "web.click('[role=listbox] >> text=\"淘宝\"')", "def rowCount = web.count('tr')", "def rowTexts = []",
+                "def joinedRow = rowTexts.join(' ')", "web.log(joinedRow)", "def t = web.getText('#t')", "web.log(t)",
+                "import java.util.Map", "```", "println JsonOutput.toJson(m)", "def n = d.minus(1)", "LocalTime.now()",
+                "web.log(\"cost $ 3\")", "groovy", "java", "\r");
+        Random random = new Random(42);
+        for (int round = 0; round < 3000; round++) {
+            int n = 1 + random.nextInt(12);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+                sb.append(pieces.get(random.nextInt(pieces.size())));
+            }
+            String code = sb.toString();
+            Assertions.assertEquals(LegacyGroovyNormalizer.normalizeGenerated(code), GroovyNormalizer.normalizeGenerated(code), code);
+        }
+    }
+
+    @Test
+    public void normalizeGenerated_shouldCommentMarkersAndKeepPlanBlock() {
+        String code = String.join("\n",
+                "/*",
+                " * PLAN_START",
+                " * Step 1: 打开订单页",
+                " * PLAN_END",
+                " */",
+                "计划：直接筛选",
+                "PLAN_END",
+                "web.log(\"done $\")");
+        String normalized = GroovyNormalizer.normalizeGenerated(code);
+        Assertions.assertTrue(normalized.contains("\n PLAN_START\n"), normalized);
+        Assertions.assertFalse(normalized.contains("* PLAN_START"), normalized);
+        Assertions.assertTrue(normalized.contains("\n// 计划：直接筛选\n"), normalized);
+        Assertions.assertTrue(normalized.contains("\n// PLAN_END\n"), normalized);
+        Assertions.assertTrue(normalized.endsWith("web.log(\"done \\$\")"), normalized);
+    }
+}
@@ -0,0 +1,69 @@
+package com.qiyi.service.autoweb;
+
+import groovy.lang.Binding;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class GroovyScriptCacheTest {
+
+    @Test
+    public void lintAndRun_compileOnceAndReuseClass() {
+        GroovyScriptCache cache = new GroovyScriptCache(16);
+        String code = "def total = 0\n[1, 2, 3].each { total += it }\nresult = total * factor\n";
+
+        Assertions.assertTrue(cache.lint(code).isEmpty());
+        Class<?> first = cache.scriptClass(code);
+        Assertions.assertSame(first, cache.scriptClass(code));
+
+        Binding b1 = new Binding();
+        b1.setVariable("factor", 2);
+        cache.run(code, b1);
+        Binding b2 = new Binding();
+        b2.setVariable("factor", 10);
+        cache.run(code, b2);
+
+        Assertions.assertEquals(12, b1.getVariable("result"));
+        Assertions.assertEquals(60, b2.getVariable("result"));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void lint_reportsSecurityAndSyntaxErrorsAndCachesThem() {
+        GroovyScriptCache cache = new GroovyScriptCache(16);
+
+        List<String> unsafe = cache.lint("System.exit(0)");
+        Assertions.assertTrue(unsafe.stream().anyMatch(e -> e.startsWith("Security Error")), unsafe.toString());
+
+        String broken = "def x = {\n";
+        List<String> errors = cache.lint(broken);
+        Assertions.assertTrue(errors.stream().anyMatch(e -> e.startsWith("Syntax Error")), errors.toString());
+        Assertions.assertSame(errors, cache.lint(broken));
+        Assertions.assertThrows(Exception.class, () -> cache.scriptClass(broken));
+
+        // 安全编译配置：禁止的 import 在语法检查阶段即报错
+        List<String> imports = cache.lint("import java.io.File\nprintln 1");
+        Assertions.assertFalse(imports.isEmpty());
+    }
+
+    @Test
+    public void rotate_dropsOldGenerationClassesButKeepsLintResults() {
+        GroovyScriptCache cache = new GroovyScriptCache(2);
+        String a = "result = 'a'";
+        Class<?> ca = cache.scriptClass(a);
+        cache.scriptClass("result = 'b'");
+
+        Assertions.assertEquals(1, cache.generation());
+        Assertions.assertTrue(cache.lint(a).isEmpty());
+        Class<?> ca2 = cache.scriptClass(a);
+        Assertions.assertNotSame(ca, ca2);
+
+        Binding binding = new Binding();
+        cache.run(a, binding);
+        Assertions.assertEquals("a", binding.getVariable("result"));
+
+        for (int i = 0; i < 10; i++) cache.lint("result = " + i);
+        Assertions.assertTrue(cache.size() <= 2);
+    }
+}
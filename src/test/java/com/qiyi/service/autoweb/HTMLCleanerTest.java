@@ -0,0 +1,50 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HTMLCleanerTest {
+
+    private static int count(String s, String sub) {
+        int n = 0;
+        for (int i = s.indexOf(sub); i >= 0; i = s.indexOf(sub, i + 1)) n++;
+        return n;
+    }
+
+    @Test
+    public void streamingClean_matchesDomImplementation() {
+        for (int rows : new int[]{10, 60, 200}) {
+            String html = HtmlFixtures.adminPage(rows);
+            Assertions.assertEquals(HTMLCleaner.cleanWithDom(html), HTMLCleaner.clean(html, 0), "rows=" + rows);
+        }
+    }
+
+    /**
+     * 浏览器 page.content() 序列化的 DOM 总带有 tbody，这里与之保持一致。
+     */
+    @Test
+    public void streamingClean_handlesImpliedEndTagsAndFragments() {
+        String html = "<ul><li>a<li>b</ul><p>x<div class=\"c\">y</div><table><tbody><tr><td>1<td>2<tr><td>3</tbody></table>"
+                + "<select><option>o1<option>o2</select><div><span> </span></div>t<!-- c -->";
+        String cleaned = HTMLCleaner.clean(html, 0);
+        Assertions.assertEquals(HTMLCleaner.cleanWithDom(html), cleaned);
+        Assertions.assertTrue(cleaned.startsWith("<ul><li>a</li><li>b</li></ul><p>x</p><div class=\"c\">y</div>"), cleaned);
+    }
+
+    @Test
+    public void streamingClean_samplesRepeatedRowsOnceBudgetIsReached() {
+        String html = HtmlFixtures.adminPage(40);
+        String full = HTMLCleaner.clean(html, 0);
+        int budget = full.length() / StreamingHtmlCleaner.CHARS_PER_TOKEN / 2;
+
+        String budgeted = HTMLCleaner.clean(html, budget);
+
+        Assertions.assertTrue(budgeted.length() <= budget * StreamingHtmlCleaner.CHARS_PER_TOKEN + 200, "len=" + budgeted.length());
+        Assertions.assertTrue(count(full, "<tr class=\"ant-table-row") == 40);
+        int rows = count(budgeted, "<tr class=\"ant-table-row");
+        Assertions.assertTrue(rows >= StreamingHtmlCleaner.OVER_BUDGET_SAMPLES && rows < 40, "rows=" + rows);
+        // 预算内仍输出完整闭合的结构
+        Assertions.assertEquals(count(budgeted, "<table"), count(budgeted, "</table>"));
+        Assertions.assertTrue(budgeted.endsWith("</div></div>"), budgeted.substring(budgeted.length() - 50));
+    }
+}
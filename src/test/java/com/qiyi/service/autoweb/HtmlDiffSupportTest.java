@@ -0,0 +1,109 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HtmlDiffSupportTest {
+
+    private static String ordersPage(String status3, boolean withModal, int rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<div id=\"app\"><div class=\"menu\"><a href=\"/orders\">订单管理</a><a href=\"/goods\">商品管理</a></div>");
+        sb.append("<table id=\"orders\"><tbody>");
+        for (int i = 1; i <= rows; i++) {
+            String status = i == 3 ? status3 : "待发货";
+            sb.append("<tr><td>订单").append(i).append("</td><td>").append(status).append("</td><td><button>详情</button></td></tr>");
+        }
+        sb.append("</tbody></table></div>");
+        if (withModal) {
+            sb.append("<div class=\"ant-modal-root\"><div class=\"ant-modal-title\">订单详情</div><button>关闭</button></div>");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void diff_reportsAddedModalAndChangedCellWithPaths() {
+        HtmlDiffSupport.Diff d = HtmlDiffSupport.diff(ordersPage("待发货", false, 40), ordersPage("已发货", true, 40));
+
+        Assertions.assertEquals(1, d.count(HtmlDiffSupport.Kind.ADDED));
+        Assertions.assertEquals(1, d.count(HtmlDiffSupport.Kind.CHANGED));
+        Assertions.assertEquals(0, d.count(HtmlDiffSupport.Kind.REMOVED));
+        String text = d.render();
+        Assertions.assertTrue(text.contains("[ADDED] div.ant-modal-root"), text);
+        Assertions.assertTrue(text.contains("#orders > tbody > tr:nth-child(3) > td:nth-child(2)"), text);
+        Assertions.assertTrue(text.contains("text: \"待发货\" -> \"已发货\""), text);
+        Assertions.assertTrue(text.contains("after: <div id=\"app\">"), text);
+    }
+
+    @Test
+    public void diff_collapsesRerenderedTableAndDetectsIdentity() {
+        String before = ordersPage("待发货", false, 20);
+        StringBuilder after = new StringBuilder("<div id=\"app\"><div class=\"menu\"><a href=\"/orders\">订单管理</a><a href=\"/goods\">商品管理</a></div><table id=\"orders\"><tbody>");
+        for (int i = 1; i <= 20; i++) {
+            after.append("<tr><td>新订单").append(i).append("</td><td>已完成</td><td><button>详情</button></td></tr>");
+        }
+        after.append("</tbody></table></div>");
+
+        HtmlDiffSupport.Diff d = HtmlDiffSupport.diff(before, after.toString());
+        Assertions.assertEquals(1, d.changes.size());
+        Assertions.assertEquals(HtmlDiffSupport.Kind.REPLACED, d.changes.get(0).kind);
+        Assertions.assertTrue(d.render().contains("新订单20"));
+
+        Assertions.assertTrue(HtmlDiffSupport.diff(before, before).isEmpty());
+    }
+
+    @Test
+    public void buildRefinePayload_sendsDiffAgainstMatchingStepSnapshot() {
+        String baseline = ordersPage("待发货", false, 60);
+        String current = ordersPage("已发货", true, 60);
+        AutoWebAgent.HtmlSnapshot snap = new AutoWebAgent.HtmlSnapshot();
+        snap.stepIndex = 2;
+        snap.url = "https://erp.example.com/orders";
+        snap.entryAction = "Direct URL";
+        snap.cleanedHtml = baseline;
+        List<AutoWebAgent.HtmlSnapshot> snaps = new ArrayList<>();
+        snaps.add(snap);
+
+        String payload = PayloadSupport.buildRefinePayload("https://erp.example.com/orders?tab=1", "PLAN", snaps, current, "查询订单", "");
+
+        Assertions.assertTrue(payload.contains("CURRENT_PAGE_HTML_DIFF:\nBASELINE: [Step 2]"), payload);
+        Assertions.assertFalse(payload.contains("CURRENT_PAGE_HTML_CLEANED:"));
+        Assertions.assertTrue(payload.contains("STEP_HTMLS_CLEANED:\n[Step 2] URL: https://erp.example.com/orders"));
+        Assertions.assertTrue(payload.length() < baseline.length() + current.length() / 2);
+
+        // 当前页与快照结构完全不同时仍发送全文
+        String unrelated = "<div class=\"login\">" + baseline.replace("<tr>", "<li>").replace("</tr>", "</li>") + "</div>";
+        String full = PayloadSupport.buildRefinePayload("https://erp.example.com/orders", "PLAN", snaps, unrelated, "查询订单", "");
+        Assertions.assertTrue(full.contains("CURRENT_PAGE_HTML_CLEANED:\n" + unrelated));
+    }
+
+    @Test
+    public void buildRefinePayload_sendsFullHtmlWhenAddedSubtreeIsClipped() {
+        String baseline = ordersPage("待发货", false, 200);
+        StringBuilder modal = new StringBuilder("<div class=\"ant-modal-root\"><table id=\"detail\"><tbody>");
+        for (int i = 1; i <= 120; i++) {
+            modal.append("<tr><td>商品").append(i).append("</td><td>数量 ").append(i).append("</td></tr>");
+        }
+        modal.append("</tbody></table></div>");
+        String current = baseline + modal;
+        Assertions.assertTrue(modal.length() > HtmlDiffSupport.MAX_SUBTREE_CHARS);
+
+        HtmlDiffSupport.Diff d = HtmlDiffSupport.diff(baseline, current);
+        Assertions.assertEquals(1, d.count(HtmlDiffSupport.Kind.ADDED));
+        Assertions.assertTrue(d.clipped);
+        Assertions.assertTrue(d.render().length() < current.length() * 0.5, "diff 本身很短，比例兜底拦不住");
+        Assertions.assertFalse(HtmlDiffSupport.diff(ordersPage("待发货", false, 40), ordersPage("已发货", true, 40)).clipped);
+
+        AutoWebAgent.HtmlSnapshot snap = new AutoWebAgent.HtmlSnapshot();
+        snap.stepIndex = 1;
+        snap.url = "https://erp.example.com/orders";
+        snap.cleanedHtml = baseline;
+        List<AutoWebAgent.HtmlSnapshot> snaps = new ArrayList<>();
+        snaps.add(snap);
+        String payload = PayloadSupport.buildRefinePayload("https://erp.example.com/orders", "PLAN", snaps, current, "查询订单明细", "");
+        Assertions.assertFalse(payload.contains("CURRENT_PAGE_HTML_DIFF:"));
+        Assertions.assertTrue(payload.contains("CURRENT_PAGE_HTML_CLEANED:\n" + current));
+    }
+}
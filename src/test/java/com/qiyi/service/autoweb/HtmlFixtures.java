@@ -0,0 +1,114 @@
+package com.qiyi.service.autoweb;
+
+/**
+ * 测试与基准测试共用的页面样例：典型的后台列表页（菜单、搜索表单、下拉、大表格、弹层）。
+ */
+public final class HtmlFixtures {
+    private HtmlFixtures() {
+    }
+
+    /**
+     * @param rows 表格行数；行数越多页面越大（3000 行约 1.8MB）
+     */
+    public static String adminPage(int rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html><html lang=\"zh\"><head><meta charset=\"utf-8\"><title>订单管理</title>")
+                      .append("<link rel=\"stylesheet\" href=\"/a.css\"><style>.x{color:red}</style><script>var a = '<div>';</script></head>\n<body class=\"theme-light page\">\n");
+        sb.append("<!-- header --><div id=\"app\" style=\"height:100%\" data-v-123=\"\"><div class=\"ant-layout   main-layout  x4 extra\" onclick=\"f()\">");
+        sb.append("<nav role=\"navigation\" aria-label=\"主菜单\"><ul class=\"menu\">");
+        for (int i = 0; i < 12; i++) sb.append("<li class=\"menu-item\"><a href=\"/m/").append(i).append("?from=nav&amp;x=1\" title=\"菜单").append(i).append("\"><svg viewBox=\"0 0 10 10\"><path d=\"M0 0\"></path></svg><span>菜单 ").append(i).append("</span></a></li>\n");
+        sb.append("</ul></nav><div class=\"spacer\"></div><div></div><span>  </span>");
+        sb.append("<img src=\"data:image/png;base64,").append("A".repeat(400)).append("\" alt=\"logo\">");
+        sb.append("<form action=\"/search\" method=\"post\"><input type=\"text\" name=\"q\" placeholder=\"请输入订单号\" autocomplete=\"off\"><select name=\"status\">");
+        for (int i = 0; i < 120; i++) sb.append("<option value=\"").append(i).append("\">状态").append(i).append("</option>");
+        sb.append("</select><button type=\"submit\" class=\"ant-btn ant-btn-primary\"><span>查 询</span></button></form>");
+        sb.append("<p>").append("很长的说明文字。".repeat(120)).append("</p>");
+        sb.append("<table class=\"ant-table\"><thead><tr><th>订单号</th><th>状态</th><th>金额</th><th>操作</th></tr></thead><tbody class=\"ant-table-tbody\">\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("<tr class=\"ant-table-row row-").append(i).append("\" data-row-key=\"").append(i).append("\" style=\"color:red\">")
+                          .append("<td class=\"ant-table-cell\">NO").append(100000 + i).append("</td>")
+                          .append("<td class=\"ant-table-cell\"><span class=\"ant-tag\">待发货</span></td>")
+                          .append("<td class=\"ant-table-cell\" aria-describedby=\"").append("d".repeat(i % 3 == 0 ? 150 : 10)).append("\">¥").append(i).append(".00</td>")
+                          .append("<td class=\"ant-table-cell\"><a href=\"/order/detail?id=").append(i).append("&amp;token=").append("t".repeat(200)).append("\">详情</a> <button disabled>取消</button></td></tr>\n");
+        }
+        sb.append("</tbody></table>");
+        sb.append("<div class=\"modal\" data-info=\"").append("x".repeat(120)).append("\" data-huge=\"").append("y".repeat(250)).append("\"><iframe src=\"chrome-extension://abc/x.html\"></iframe><translate-tooltip-mtz>t</translate-tooltip-mtz><textarea name=\"memo\">备注 a &lt; b</textarea></div>");
+        sb.append("<ul>");
+        for (int i = 0; i < 40; i++) sb.append("<li><b>").append(i).append("</b> 条目 <i></i></li>");
+        sb.append("</ul>");
+        sb.append("</div></div><noscript><div>enable js</div></noscript></body></html>");
+        return sb.toString();
+    }
+
+    /**
+     * 不含 table 的卡片列表页（div 重复结构），走 PayloadSupport 的重复列表容器识别分支。
+     *
+     * @param items 卡片数量
+     */
+    public static String cardListPage(int items) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>商品列表</title></head><body><div id=\"root\">");
+        sb.append("<header class=\"top\"><div class=\"logo\">logo</div><div class=\"user\"><span>管理员</span></div></header>");
+        sb.append("<aside class=\"side\">");
+        for (int i = 0; i < 8; i++) sb.append("<div class=\"side-item\"><a href=\"/c/").append(i).append("\">分类 ").append(i).append("</a></div>");
+        sb.append("</aside><section class=\"content\"><div class=\"toolbar\"><input placeholder=\"搜索商品\"><button>搜索</button></div>");
+        sb.append("<div class=\"card-list virtual-list\" style=\"overflow:auto;height:800px\">");
+        for (int i = 0; i < items; i++) {
+            sb.append("<div class=\"card-item item-").append(i).append("\" data-id=\"").append(i).append("\">")
+                    .append("<div class=\"card-title\"><span>商品 ").append(i).append("</span></div>")
+                    .append("<div class=\"card-meta\"><span class=\"sku\">SKU").append(200000 + i).append("</span><span class=\"price\">¥").append(i % 97).append(".90</span></div>")
+                    .append("<div class=\"card-ops\"><button class=\"btn-edit\">编辑</button><button class=\"btn-off\">下架</button></div></div>\n");
+        }
+        sb.append("</div><div class=\"pager\"><a>上一页</a><a>下一页</a></div></section></div></body></html>");
+        return sb.toString();
+    }
+
+    /**
+     * 模型输出风格的计划块（PLAN_START~PLAN_END，每步含 Description/Target URL/Entry Point Action/Status）。
+     *
+     * @param steps 步骤数
+     */
+    public static String planText(int steps) {
+        return "好的，下面是执行计划：\n" + planBlock(steps);
+    }
+
+    private static String planBlock(int steps) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/*\nPLAN_START\n");
+        for (int i = 1; i <= steps; i++) {
+            sb.append("Step ").append(i).append(":\n")
+                    .append("- Description: 在订单管理页筛选第 ").append(i).append(" 批待发货订单并提取订单号、金额\n")
+                    .append("- Target URL: https://erp.example.com/order/list?page=").append(i).append("\n")
+                    .append("- Entry Point Action: 点击左侧菜单“订单管理”\n")
+                    .append("- Status: CONFIRMED\n");
+        }
+        sb.append("PLAN_END\n*/\n");
+        return sb.toString();
+    }
+
+    /**
+     * 模型输出风格的 Groovy 代码：带代码围栏、计划块与思考行，每步含筛选、表格提取与日志。
+     *
+     * @param steps 步骤数
+     */
+    public static String generatedGroovy(int steps) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("```groovy\n");
+        sb.append(planBlock(steps));
+        sb.append("思考: 先筛选再提取\n");
+        sb.append("def all = []\n");
+        for (int i = 1; i <= steps; i++) {
+            sb.append("// Step ").append(i).append("\n")
+                    .append("web.click(\"text=订单管理\")\n")
+                    .append("web.type(\"input[placeholder='请输入订单号']\", \"NO").append(100000 + i).append("\")\n")
+                    .append("web.selectOption(\"select[name='status']\", \"待发货\")\n")
+                    .append("web.click(\"button.ant-btn-primary\")\n")
+                    .append("web.waitFor(\"tbody.ant-table-tbody tr\")\n")
+                    .append("def rows").append(i).append(" = web.extractTableData(\".ant-table\", \"tbody tr\", 200, [\"订单号\": \"td:nth-child(1)\", \"金额\": \"td:nth-child(3)\"])\n")
+                    .append("all.addAll(rows").append(i).append(")\n")
+                    .append("web.log(\"step ").append(i).append(" rows=\" + rows").append(i).append(".size())\n\n");
+        }
+        sb.append("web.setResult(all)\n```\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class HtmlSnapshotStoreTest {
+
+    private static String bigHtml(String marker) {
+        StringBuilder sb = new StringBuilder("<html><body><table>");
+        for (int i = 0; i < 500; i++) {
+            sb.append("<tr><td>").append(marker).append("</td><td>row ").append(i).append("</td></tr>");
+        }
+        return sb.append("</table></body></html>").toString();
+    }
+
+    private static List<Path> blobs(Path cacheDir) throws Exception {
+        Path dir = cacheDir.resolve(HtmlSnapshotStore.DIR_NAME).resolve("blobs");
+        if (!Files.isDirectory(dir)) return Collections.emptyList();
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void write_deduplicatesAndCompressesContent() throws Exception {
+        Path tmp = Files.createTempDirectory("snapshot-store-test");
+        HtmlSnapshotStore store = new HtmlSnapshotStore(tmp, 64L * 1024 * 1024);
+        String html = bigHtml("订单");
+
+        store.write(Arrays.asList("exact", "shared"), "https://example.com/orders", "Direct URL", "RAW_HTML", html, html);
+        store.write(Collections.singletonList("other"), "https://example.com/orders", "From Menu", "RAW_HTML", html, html);
+
+        List<Path> blobs = blobs(tmp);
+        Assertions.assertEquals(1, blobs.size());
+        Assertions.assertTrue(Files.size(blobs.get(0)) < html.getBytes(StandardCharsets.UTF_8).length / 5);
+        Assertions.assertEquals(3, store.size());
+        Assertions.assertEquals(html, store.readCleaned("shared"));
+
+        // 索引落盘后新实例可直接读取（走磁盘解压）
+        HtmlSnapshotStore reopened = new HtmlSnapshotStore(tmp, 64L * 1024 * 1024);
+        Assertions.assertEquals(html, reopened.readCleaned("other"));
+    }
+
+    @Test
+    public void write_evictsLeastRecentlyUsedEntriesOverSizeLimit() throws Exception {
+        Path tmp = Files.createTempDirectory("snapshot-store-test");
+        HtmlSnapshotStore store = new HtmlSnapshotStore(tmp, 1);
+
+        store.write(Collections.singletonList("a"), "u1", "", "RAW_HTML", "", bigHtml("A"));
+        store.write(Collections.singletonList("b"), "u2", "", "RAW_HTML", "", bigHtml("B"));
+
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertNull(store.readCleaned("a"));
+        Assertions.assertEquals(bigHtml("B"), store.readCleaned("b"));
+        Assertions.assertEquals(2, blobs(tmp).size());
+    }
+
+    @Test
+    public void readCleaned_persistsAccessOrderAcrossRestartAndTracksBytes() throws Exception {
+        Path tmp = Files.createTempDirectory("snapshot-store-test");
+        HtmlSnapshotStore store = new HtmlSnapshotStore(tmp, 64L * 1024 * 1024, 0);
+        store.write(Arrays.asList("a", "a2"), "u1", "", "RAW_HTML", "", bigHtml("A"));
+        Thread.sleep(5);
+        store.write(Collections.singletonList("b"), "u2", "", "RAW_HTML", "", bigHtml("B"));
+        long afterTwo = store.totalBytes();
+        Thread.sleep(5);
+        // a 最近被读取：重启后应排在 b 之后淘汰
+        Assertions.assertNotNull(store.readCleaned("a"));
+
+        HtmlSnapshotStore reopened = new HtmlSnapshotStore(tmp, afterTwo, 0);
+        Assertions.assertEquals(afterTwo, reopened.totalBytes());
+        reopened.write(Collections.singletonList("c"), "u3", "", "RAW_HTML", "", bigHtml("C"));
+
+        Assertions.assertNull(reopened.readCleaned("b"));
+        Assertions.assertEquals(bigHtml("A"), reopened.readCleaned("a"));
+        Assertions.assertEquals(bigHtml("C"), reopened.readCleaned("c"));
+        // 共享 blob 的 a2 仍在时，删除 b 只释放 b 的字节
+        Assertions.assertTrue(reopened.totalBytes() <= afterTwo, "bytes=" + reopened.totalBytes());
+    }
+
+    @Test
+    public void readCleaned_missesWhenBlobFilesWereCleared() throws Exception {
+        Path tmp = Files.createTempDirectory("snapshot-store-test");
+        HtmlSnapshotStore store = new HtmlSnapshotStore(tmp, 64L * 1024 * 1024);
+        store.write(Collections.singletonList("k"), "u", "", "RAW_HTML", "<html>x</html>", "<html>x</html>");
+        Assertions.assertNotNull(store.readCleaned("k"));
+
+        // UI“清空”按钮直接删除 autoweb/cache 下的文件
+        for (Path p : blobs(tmp)) Files.delete(p);
+
+        Assertions.assertNull(store.readCleaned("k"));
+        Assertions.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void readCachedHtml_migratesLegacyFlatFiles() throws Exception {
+        String oldUserDir = System.getProperty("user.dir");
+        Path tmp = Files.createTempDirectory("autoweb-cache-test");
+        try {
+            System.setProperty("user.dir", tmp.toAbsolutePath().toString());
+            AutoWebAgent.HtmlSnapshot written = HtmlSnapshotDao.writeCachedHtml(
+                    1, "https://example.com/legacy", "Direct URL", AutoWebAgent.HtmlCaptureMode.RAW_HTML, false,
+                    "<html>raw</html>", "<html>cleaned</html>");
+            Assertions.assertNotNull(written);
+
+            // 模拟旧版本留下的平铺文件：清掉新存储，只保留 key.cleaned.html
+            Path cacheDir = tmp.resolve("autoweb").resolve("cache");
+            for (Path p : blobs(cacheDir)) Files.delete(p);
+            Path legacy = cacheDir.resolve(written.cacheKey + ".cleaned.html");
+            Files.write(legacy, "<html>legacy</html>".getBytes(StandardCharsets.UTF_8));
+
+            AutoWebAgent.HtmlSnapshot read = HtmlSnapshotDao.readCachedHtml(
+                    2, "https://example.com/legacy", "Direct URL", AutoWebAgent.HtmlCaptureMode.RAW_HTML, false);
+
+            Assertions.assertNotNull(read);
+            Assertions.assertEquals("<html>legacy</html>", read.cleanedHtml);
+            Assertions.assertFalse(Files.exists(legacy));
+            Assertions.assertEquals(1, blobs(cacheDir).size());
+        } finally {
+            System.setProperty("user.dir", oldUserDir == null ? "" : oldUserDir);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.qiyi.service.autoweb;
+
+/**
+ * 归一化的旧实现（逐条 replaceAll），仅作为 {@link GroovyNormalizer} 一致性测试与基准测试的对照，不进入运行时代码。
+ */
+final class LegacyGroovyNormalizer {
+
+    private LegacyGroovyNormalizer() {
+    }
+
+    static String normalizeGenerated(String code) {
+        if (code == null) return null;
+        String normalized = code;
+        normalized = normalizePlanBlockCommentFormat(normalized);
+        normalized = normalized.replaceAll("(?m)^(\\s*)(PLAN:|THINK:|ANALYSIS:|REASONING:|思考过程|计划|QUESTION:)\\b", "$1// $2");
+        normalized = commentPlanMarkersOutsideBlockComment(normalized);
+        normalized = normalized.replaceAll("(?m)^(\\s*)(-\\s*[Pp]lan\\b.*)", "$1// $2");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(\\*\\s*[Pp]lan\\b.*)", "$1// $2");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(\\[Plan\\].*)", "$1// $2");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(<plan>.*)</plan>\\s*$", "$1// $2");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(<think>.*)</think>\\s*$", "$1// $2");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(思考:.*)", "$1// $2");
+        normalized = normalizeClickListboxToSelectDropdown(normalized);
+
+        boolean applyNormalization =
+                normalized.contains("web.extractList(") ||
+                normalized.matches("(?s).*\\browCount\\b\\s*=\\s*web\\.count\\(.*") ||
+                normalized.contains("rowTexts") ||
+                normalized.contains("joinedRow");
+        if (applyNormalization) {
+            String replacement = "def rows = web.extractFirstPageRows(containerSelector, rowSelector, cellSelector)\n" +
+                    "rows.each { row -> web.log(row) }\n";
+            java.util.regex.Pattern blockPatternA = java.util.regex.Pattern.compile(
+                    "(?s)def\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?allRowsOutput\\.each\\s*\\{.*?\\}\\s*"
+            );
+            java.util.regex.Pattern blockPatternB = java.util.regex.Pattern.compile(
+                    "(?s)def\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()"
+            );
+            normalized = blockPatternA.matcher(normalized).replaceAll(replacement);
+            normalized = blockPatternB.matcher(normalized).replaceAll(replacement);
+            normalized = normalized.replaceAll("(?s)def\\s+rowTexts\\s*=\\s*\\[\\].*?def\\s+joinedRow\\s*=.*?web\\.log\\(joinedRow\\).*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()", "");
+            normalized = normalized.replaceAll("(?s)int\\s+rowCount\\s*=\\s*web\\.count\\([^\\n]*\\).*?for\\s*\\(\\s*int\\s+i\\s*=\\s*0;.*?\\)\\s*\\{.*?web\\.log\\(joinedRow\\)\\s*;?\\s*\\}.*?(?=def\\s+totalCountText|def\\s+totalText|web\\.getText\\()", replacement);
+
+            java.util.regex.Pattern getTextLogAssignPattern = java.util.regex.Pattern.compile("(?s)(?:String|def|var)?\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*=\\s*web\\.getText\\((\"|')(.*?)\\2\\)\\s*\\n\\s*web\\.log\\(\\1\\)");
+            java.util.regex.Matcher getTextLogAssignMatcher = getTextLogAssignPattern.matcher(normalized);
+            StringBuffer getTextLogAssignBuffer = new StringBuffer();
+            while (getTextLogAssignMatcher.find()) {
+                String varName = getTextLogAssignMatcher.group(1);
+                String sel = getTextLogAssignMatcher.group(3);
+                String replacementBlock = "def " + varName + " = web.getText(\"" + sel.replace("\"", "\\\"") + "\")\nweb.log(" + varName + ")";
+                getTextLogAssignMatcher.appendReplacement(getTextLogAssignBuffer, java.util.regex.Matcher.quoteReplacement(replacementBlock));
+            }
+            getTextLogAssignMatcher.appendTail(getTextLogAssignBuffer);
+            normalized = getTextLogAssignBuffer.toString();
+
+            java.util.regex.Pattern getTextLogPattern = java.util.regex.Pattern.compile("(?s)web\\.getText\\((\"|')(.*?)\\1\\)\\s*\\n\\s*web\\.log\\(([^\\)]+)\\)");
+            java.util.regex.Matcher getTextLogMatcher = getTextLogPattern.matcher(normalized);
+            StringBuffer getTextLogBuffer = new StringBuffer();
+            while (getTextLogMatcher.find()) {
+                String sel = getTextLogMatcher.group(2);
+                String varName = getTextLogMatcher.group(3).trim();
+                String replacementBlock = "def " + varName + " = web.getText(\"" + sel.replace("\"", "\\\"") + "\")\nweb.log(" + varName + ")";
+                getTextLogMatcher.appendReplacement(getTextLogBuffer, java.util.regex.Matcher.quoteReplacement(replacementBlock));
+            }
+            getTextLogMatcher.appendTail(getTextLogBuffer);
+            normalized = getTextLogBuffer.toString();
+        }
+        normalized = forExecution(normalized);
+        normalized = GroovyNormalizer.escapeNonInterpolatedDollar(normalized);
+        return normalized;
+    }
+
+    private static String normalizeClickListboxToSelectDropdown(String code) {
+        if (code == null || code.isEmpty()) return code;
+        String[] lines = code.split("\\n", -1);
+        java.util.List<String> out = new java.util.ArrayList<>();
+
+        java.util.regex.Pattern openByText = java.util.regex.Pattern.compile("^\\s*web\\.click\\(\\s*(['\"])text=\\\"([^\\\"]+)\\\"\\1\\s*\\)\\s*;?\\s*$");
+        java.util.regex.Pattern waitLine = java.util.regex.Pattern.compile("^\\s*web\\.wait\\(\\s*\\d+\\s*\\)\\s*;?\\s*$");
+        java.util.regex.Pattern logLine = java.util.regex.Pattern.compile("^\\s*web\\.log\\(.*\\)\\s*;?\\s*$");
+        java.util.regex.Pattern blankLine = java.util.regex.Pattern.compile("^\\s*$");
+        java.util.regex.Pattern lineComment = java.util.regex.Pattern.compile("^\\s*//.*$");
+        java.util.regex.Pattern selectFromListbox = java.util.regex.Pattern.compile("^\\s*web\\.click\\(\\s*(['\"])(?:div\\[role=\\\"listbox\\\"\\]|\\[role=\\\"listbox\\\"\\]|div\\[role=listbox\\]|\\[role=listbox\\])\\s*>>\\s*text=\\\"([^\\\"]+)\\\"\\1\\s*\\)\\s*;?\\s*$");
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            java.util.regex.Matcher mOpen = openByText.matcher(line);
+            if (!mOpen.matches()) {
+                out.add(line);
+                continue;
+            }
+            String label = mOpen.group(2);
+
+            int j = i + 1;
+            java.util.List<String> between = new java.util.ArrayList<>();
+            int scanLimit = 10;
+            while (j < lines.length && scanLimit-- > 0) {
+                String next = lines[j];
+                if (waitLine.matcher(next).matches() || logLine.matcher(next).matches() || blankLine.matcher(next).matches() || lineComment.matcher(next).matches()) {
+                    between.add(next);
+                    j++;
+                    continue;
+                }
+                break;
+            }
+
+            if (j < lines.length) {
+                java.util.regex.Matcher mPick = selectFromListbox.matcher(lines[j]);
+                if (mPick.matches()) {
+                    String option = mPick.group(2);
+                    String indent = "";
+                    int p = 0;
+                    while (p < line.length() && Character.isWhitespace(line.charAt(p))) p++;
+                    indent = line.substring(0, p);
+                    out.addAll(between);
+                    out.add(indent + "web.selectDropdown(\"" + label.replace("\\", "\\\\").replace("\"", "\\\"") + "\", \"" + option.replace("\\", "\\\\").replace("\"", "\\\"") + "\")");
+                    i = j;
+                    continue;
+                }
+            }
+
+            out.add(line);
+        }
+        return String.join("\n", out);
+    }
+
+    private static String normalizePlanBlockCommentFormat(String code) {
+        if (code == null) return null;
+        int ps = code.indexOf("PLAN_START");
+        int pe = code.indexOf("PLAN_END");
+        if (ps < 0 || pe < 0 || pe <= ps) return code;
+        int blockStart = code.lastIndexOf("/*", ps);
+        if (blockStart < 0) return code;
+        int blockEnd = code.indexOf("*/", pe);
+        if (blockEnd < 0) return code;
+
+        String before = code.substring(0, blockStart + 2);
+        String inside = code.substring(blockStart + 2, blockEnd);
+        String after = code.substring(blockEnd);
+
+        String[] lines = inside.split("\\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int p = 0;
+            while (p < line.length() && Character.isWhitespace(line.charAt(p))) p++;
+            String indent = line.substring(0, p);
+            String rest = line.substring(p);
+            if (rest.startsWith("*")) {
+                rest = rest.substring(1);
+                if (!rest.isEmpty() && rest.charAt(0) == ' ') rest = rest.substring(1);
+            }
+            if (rest.startsWith("//")) {
+                rest = rest.substring(2);
+                if (!rest.isEmpty() && rest.charAt(0) == ' ') rest = rest.substring(1);
+            }
+            lines[i] = indent + rest;
+        }
+        String rebuiltInside = String.join("\n", lines);
+        return before + rebuiltInside + after;
+    }
+
+    private static String commentPlanMarkersOutsideBlockComment(String code) {
+        if (code == null) return null;
+        String[] lines = code.split("\\n", -1);
+        boolean inBlock = false;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (!inBlock) {
+                String trimmed = line == null ? "" : line.trim();
+                if (trimmed.startsWith("PLAN_START") || trimmed.startsWith("PLAN_END")) {
+                    lines[i] = "// " + line;
+                }
+            }
+            inBlock = GroovyNormalizer.updateBlockCommentState(inBlock, line);
+        }
+        return String.join("\n", lines);
+    }
+
+    /**
+     * 执行前归一化的旧实现，对照 {@link GroovyNormalizer#forExecution}。
+     */
+    static String forExecution(String code) {
+        if (code == null) return "";
+        String out = code;
+        out = out.replaceAll("```groovy", "").replaceAll("```java", "").replaceAll("```", "");
+        out = out.replaceFirst("(?s)^\\s*(groovy|java)\\s*\\r?\\n", "");
+
+        out = out.replaceAll("(?m)^\\s*import\\s+static\\s+[^\\r\\n]+\\s*$", "");
+
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.util\\.[A-Za-z0-9_.$]+\\s*$", "import java.util.*");
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.math\\.[A-Za-z0-9_.$]+\\s*$", "import java.math.*");
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.time\\.[A-Za-z0-9_.$]+\\s*$", "import java.time.*");
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.time\\.format\\.[A-Za-z0-9_.$]+\\s*$", "");
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.text\\.[A-Za-z0-9_.$]+\\s*$", "import java.text.*");
+        out = out.replaceAll("(?m)^\\s*import\\s+java\\.util\\.regex\\.[A-Za-z0-9_.$]+\\s*$", "import java.util.regex.*");
+        out = out.replaceAll("(?m)^\\s*import\\s+com\\.google\\.gson\\.[A-Za-z0-9_.$]+\\s*$", "import com.google.gson.*");
+
+        out = out.replaceAll("(?m)^\\s*import\\s+groovy\\.json\\.(JsonOutput|JsonBuilder)\\s*$", "");
+
+        out = out.replaceAll("(?m)^\\s*println\\s+groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\(", "println new groovy.json.JsonBuilder(");
+        out = out.replaceAll("groovy\\.json\\.JsonBuilder\\.newInstance\\s*\\(", "new groovy.json.JsonBuilder(");
+
+        out = out.replaceAll("new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
+        out = out.replaceAll("groovy\\.json\\.JsonBuilder\\s*\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
+        out = out.replaceAll("println\\s+new\\s+groovy\\.json\\.JsonBuilder\\(([^\\)]*)\\)\\.toPrettyString\\(\\)", "println new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
+
+        out = out.replaceAll("JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)", "new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
+        out = out.replaceAll("println\\s+JsonOutput\\.prettyPrint\\(\\s*JsonOutput\\.toJson\\(([^\\)]*)\\)\\s*\\)", "println new com.google.gson.GsonBuilder().setPrettyPrinting().create().toJson($1)");
+        out = out.replaceAll("JsonOutput\\.toJson\\(([^\\)]*)\\)", "new com.google.gson.Gson().toJson($1)");
+
+        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)", "new java.text.SimpleDateFormat(\"$1\").format(new Date())");
+        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)", "new java.text.SimpleDateFormat('$1').format(new Date())");
+        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*\"([^\"]+)\"\\s*\\)", "new java.text.SimpleDateFormat(\"$2\").format($1)");
+        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*format\\(\\s*'([^']+)'\\s*\\)", "new java.text.SimpleDateFormat('$2').format($1)");
+
+        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).minus(java.time.Duration.ofDays($1L)).toEpochMilli())");
+        out = out.replaceAll("new\\s+Date\\(\\s*\\)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli(System.currentTimeMillis()).plus(java.time.Duration.ofDays($1L)).toEpochMilli())");
+        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*minus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli($1.getTime()).minus(java.time.Duration.ofDays($2L)).toEpochMilli())");
+        out = out.replaceAll("([A-Za-z_][A-Za-z0-9_]*)\\s*\\.\\s*plus\\(\\s*(\\d+)\\s*\\)", "new Date(java.time.Instant.ofEpochMilli($1.getTime()).plus(java.time.Duration.ofDays($2L)).toEpochMilli())");
+
+        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalDate\\b", "java.time.LocalDate");
+        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalDateTime\\b", "java.time.LocalDateTime");
+        out = out.replaceAll("(?<![A-Za-z0-9_\\.])LocalTime\\b", "java.time.LocalTime");
+        out = out.replaceAll("(?<![A-Za-z0-9_\\.])DateTimeFormatter\\b", "java.time.format.DateTimeFormatter");
+        out = out.replaceAll("(?<![A-Za-z0-9_\\.])DateTimeParseException\\b", "java.time.format.DateTimeParseException");
+
+        return out.trim();
+    }
+}
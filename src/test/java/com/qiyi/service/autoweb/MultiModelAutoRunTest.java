@@ -0,0 +1,120 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiModelAutoRunTest {
+
+    private static List<MultiModelAutoRun.CaseInput> cases(int n) {
+        List<MultiModelAutoRun.CaseInput> out = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            MultiModelAutoRun.CaseInput c = new MultiModelAutoRun.CaseInput();
+            c.id = String.valueOf(i);
+            c.entryUrl = "https://erp.example.com/" + i;
+            c.userTask = "task" + i;
+            out.add(c);
+        }
+        return out;
+    }
+
+    private static MultiModelAutoRun.ModelRunResult run(String model, int attempt) {
+        MultiModelAutoRun.ModelRunResult r = new MultiModelAutoRun.ModelRunResult();
+        r.model = model;
+        r.attemptIndex = attempt;
+        r.repairAttempt = attempt > 1;
+        return r;
+    }
+
+    private AutoWebEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        // 独立引擎：不与其他用例共用共享线程池，worker 数量与并发只由本用例决定
+        engine = new AutoWebEngine("t-e2e", 3, 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        engine.shutdown(5000);
+    }
+
+    @Test
+    public void runPairsConcurrently_overlapsPairsAndMergesInConfigOrder() throws Exception {
+        List<MultiModelAutoRun.CaseInput> cases = cases(4);
+        List<String> models = Arrays.asList("DEEPSEEK", "QWEN_MAX", "MOONSHOT");
+        // 前三个组合互相等待：只有三个 worker 同时在跑时才能全部通过
+        CountDownLatch firstRound = new CountDownLatch(3);
+        AtomicInteger started = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+        List<String> workersCreated = Collections.synchronizedList(new ArrayList<>());
+        List<String> workersClosed = Collections.synchronizedList(new ArrayList<>());
+
+        List<MultiModelAutoRun.CaseRunResult> merged = MultiModelAutoRun.runPairsConcurrently(engine, cases, models, 3,
+                () -> {
+                    String w = Thread.currentThread().getName();
+                    workersCreated.add(w);
+                    return w;
+                },
+                workersClosed::add,
+                (worker, c, model) -> {
+                    if (started.getAndIncrement() < 3) {
+                        firstRound.countDown();
+                        if (!firstRound.await(10, TimeUnit.SECONDS)) overlapped.set(false);
+                    }
+                    // 后面的组合先完成，验证合并顺序与完成顺序无关
+                    Thread.sleep(25 - Integer.parseInt(c.id) * 5L);
+                    List<MultiModelAutoRun.ModelRunResult> rs = new ArrayList<>();
+                    rs.add(run(model, 1));
+                    if ("QWEN_MAX".equals(model)) rs.add(run(model, 2));
+                    if ("3".equals(c.id) && "MOONSHOT".equals(model)) throw new IllegalStateException("boom");
+                    return rs;
+                },
+                null);
+
+        Assertions.assertTrue(overlapped.get(), "first three pairs did not run concurrently");
+        Assertions.assertEquals(3, workersCreated.size());
+        Assertions.assertEquals(workersCreated.size(), workersClosed.size());
+
+        Assertions.assertEquals(4, merged.size());
+        for (int ci = 0; ci < 4; ci++) {
+            MultiModelAutoRun.CaseRunResult cr = merged.get(ci);
+            Assertions.assertEquals(String.valueOf(ci + 1), cr.id);
+            List<String> order = new ArrayList<>();
+            for (MultiModelAutoRun.ModelRunResult r : cr.runs) {
+                order.add(r.model + "#" + r.attemptIndex);
+                Assertions.assertTrue(r.pairWallMs > 0, "pairWallMs missing for " + r.model);
+            }
+            Assertions.assertEquals(Arrays.asList("DEEPSEEK#1", "QWEN_MAX#1", "QWEN_MAX#2", "MOONSHOT#1"), order);
+        }
+        MultiModelAutoRun.ModelRunResult failed = merged.get(2).runs.get(3);
+        Assertions.assertTrue(failed.formattedErrors.get(0).startsWith("步骤: (runner), 出错信息: boom"));
+    }
+
+    @Test
+    public void runPairsConcurrently_fillsPairsWhenNoWorkerCanStart() throws Exception {
+        List<MultiModelAutoRun.CaseRunResult> merged = MultiModelAutoRun.runPairsConcurrently(engine, cases(2), Arrays.asList("A", "B"), 2,
+                () -> null,
+                w -> {},
+                (worker, c, model) -> {
+                    throw new AssertionError("should not run");
+                },
+                null);
+
+        Assertions.assertEquals(2, merged.size());
+        for (MultiModelAutoRun.CaseRunResult cr : merged) {
+            Assertions.assertEquals(2, cr.runs.size());
+            Assertions.assertTrue(cr.runs.get(0).formattedErrors.get(0).startsWith("步骤: (worker)"));
+        }
+    }
+}
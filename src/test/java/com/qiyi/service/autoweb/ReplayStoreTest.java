@@ -0,0 +1,71 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ReplayStoreTest {
+
+    private static ReplayStore.Record record(String task, String url, String html) {
+        ReplayStore.Record r = new ReplayStore.Record();
+        r.userTask = task;
+        r.entryUrl = url;
+        r.modelKey = "DEEPSEEK";
+        r.planText = "PLAN_START\nStep 1: 导出订单\nPLAN_END";
+        r.code = "web.click('导出')";
+        r.fingerprint = ReplayStore.Fingerprint.of(html);
+        return r;
+    }
+
+    @Test
+    public void fingerprint_ignoresDataButDetectsLayoutChange() {
+        String p1 = HtmlFixtures.adminPage(20);
+        String p2 = HtmlFixtures.adminPage(200).replace("订单", "单据");
+        ReplayStore.Fingerprint f1 = ReplayStore.Fingerprint.of(p1);
+        ReplayStore.Fingerprint f2 = ReplayStore.Fingerprint.of(p2);
+        Assertions.assertEquals(1.0, f1.similarity(f2), 0.001);
+
+        String login = "<div class=\"login-form\"><input name=\"user\"><input name=\"pwd\"><button class=\"btn-primary\">登录</button></div>";
+        Assertions.assertTrue(f1.similarity(ReplayStore.Fingerprint.of(login)) < 0.2);
+
+        String hashedClasses = p1.replace("class=\"ant-table-row", "class=\"css-1x9k2 ant-table-row");
+        Assertions.assertEquals(f1.hash, ReplayStore.Fingerprint.of(hashedClasses).hash);
+    }
+
+    @Test
+    public void find_returnsRecordOnlyForSameTaskAndMatchingFingerprint() throws Exception {
+        ReplayStore store = new ReplayStore(Files.createTempDirectory("replay-store-test"));
+        String page = HtmlFixtures.adminPage(30);
+        store.save(record("导出  今日订单\n", "https://erp.example.com/orders?page=1", page));
+
+        ReplayStore.Fingerprint now = ReplayStore.Fingerprint.of(HtmlFixtures.adminPage(5));
+        ReplayStore.Record hit = store.find("导出 今日订单", "https://erp.example.com/orders?page=2", now, 0.9, null);
+        Assertions.assertNotNull(hit);
+        Assertions.assertEquals("web.click('导出')", hit.code);
+
+        Assertions.assertNull(store.find("导出昨日订单", "https://erp.example.com/orders", now, 0.9, null));
+        ReplayStore.Fingerprint drifted = ReplayStore.Fingerprint.of("<div class=\"maintenance\"><p>系统维护中</p></div>");
+        Assertions.assertNull(store.find("导出 今日订单", "https://erp.example.com/orders", drifted, 0.9, null));
+
+        store.invalidate("导出 今日订单", "https://erp.example.com/orders");
+        Assertions.assertNull(store.find("导出 今日订单", "https://erp.example.com/orders", now, 0.9, null));
+    }
+
+    @Test
+    public void save_persistsAcrossInstancesAndCountsReplays() throws Exception {
+        Path tmp = Files.createTempDirectory("replay-store-test");
+        ReplayStore store = new ReplayStore(tmp);
+        String page = HtmlFixtures.adminPage(10);
+        store.save(record("每日报表", "https://erp.example.com/report", page));
+        store.markReplayed("每日报表", "https://erp.example.com/report");
+
+        // 记录落盘后新实例可直接读取
+        ReplayStore reloaded = new ReplayStore(tmp);
+        ReplayStore.Record r = reloaded.find("每日报表", "https://erp.example.com/report", ReplayStore.Fingerprint.of(page), 0.9, null);
+        Assertions.assertNotNull(r);
+        Assertions.assertEquals(1, r.replayCount);
+        Assertions.assertEquals(1, reloaded.size());
+    }
+}
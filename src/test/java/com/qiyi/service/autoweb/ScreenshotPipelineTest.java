@@ -0,0 +1,141 @@
+package com.qiyi.service.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ScreenshotPipelineTest {
+
+    /**
+     * 模拟后台页面截图：顶部导航、左侧菜单、表格行；noise 为像素级噪点（模拟抗锯齿/光标等细小差异）。
+     */
+    private static BufferedImage page(int w, int h, int tableRows, long noiseSeed) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+        g.setColor(new Color(30, 60, 120));
+        g.fillRect(0, 0, w, h / 12);
+        g.setColor(new Color(235, 235, 240));
+        g.fillRect(0, h / 12, w / 6, h);
+        for (int i = 0; i < tableRows; i++) {
+            g.setColor(i % 2 == 0 ? new Color(245, 247, 250) : new Color(210, 215, 225));
+            g.fillRect(w / 5, h / 8 + i * 40, w * 3 / 4, 36);
+            g.setColor(Color.DARK_GRAY);
+            for (int c = 0; c < 6; c++) g.drawString("cell-" + i + "-" + c, w / 5 + 10 + c * 140, h / 8 + i * 40 + 22);
+        }
+        g.dispose();
+        Random r = new Random(noiseSeed);
+        for (int i = 0; i < w * h / 50; i++) {
+            int x = r.nextInt(w);
+            int y = r.nextInt(h);
+            img.setRGB(x, y, 0xff000000 | r.nextInt(0xffffff));
+        }
+        return img;
+    }
+
+    private static File png(Path dir, String name, BufferedImage img) throws Exception {
+        File f = dir.resolve(name).toFile();
+        ImageIO.write(img, "png", f);
+        return f;
+    }
+
+    @Test
+    public void prepare_shouldDownscaleAndFitByteBudget() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-shot");
+        File src = png(dir, "visual_1.png", page(2560, 1600, 30, 1));
+        long budget = 150 * 1024;
+        Assertions.assertTrue(src.length() > budget, "raw=" + src.length());
+
+        ScreenshotPipeline.Prepared p = ScreenshotPipeline.prepare(src, 1280, budget);
+        Assertions.assertTrue(p.hashed);
+        Assertions.assertTrue(p.file.getName().endsWith("_vl.jpg"), p.file.getName());
+        Assertions.assertTrue(p.sentBytes <= budget, "sent=" + p.sentBytes);
+        Assertions.assertEquals(p.sentBytes, p.file.length());
+        Assertions.assertTrue(Math.max(p.width, p.height) <= 1280, p.width + "x" + p.height);
+        Assertions.assertTrue(src.exists());
+
+        File small = png(dir, "visual_2.png", page(640, 400, 5, 2));
+        ScreenshotPipeline.Prepared q = ScreenshotPipeline.prepare(small, 1280, 10L * 1024 * 1024);
+        Assertions.assertEquals(small, q.file);
+        Assertions.assertEquals(small.length(), q.sentBytes);
+
+        File notImage = dir.resolve("broken.png").toFile();
+        Files.writeString(notImage.toPath(), "not a png", StandardCharsets.UTF_8);
+        ScreenshotPipeline.Prepared b = ScreenshotPipeline.prepare(notImage, 1280, 1);
+        Assertions.assertFalse(b.hashed);
+        Assertions.assertEquals(notImage, b.file);
+    }
+
+    @Test
+    public void dHash_shouldTolerateNoiseAndScaleButSeparateLayouts() throws Exception {
+        long a = ScreenshotPipeline.dHash(page(1600, 1000, 20, 1));
+        long noisy = ScreenshotPipeline.dHash(page(1600, 1000, 20, 99));
+        Path dir = Files.createTempDirectory("autoweb-shot");
+        ScreenshotPipeline.Prepared scaled = ScreenshotPipeline.prepare(png(dir, "s.png", page(1600, 1000, 20, 1)), 800, 50 * 1024);
+        long afterScale = ScreenshotPipeline.dHash(ImageIO.read(scaled.file));
+        long other = ScreenshotPipeline.dHash(page(1600, 1000, 4, 1));
+
+        Assertions.assertTrue(ScreenshotPipeline.distance(a, noisy) <= 6, "noise=" + ScreenshotPipeline.distance(a, noisy));
+        Assertions.assertTrue(ScreenshotPipeline.distance(a, afterScale) <= 6, "scale=" + ScreenshotPipeline.distance(a, afterScale));
+        Assertions.assertTrue(ScreenshotPipeline.distance(a, other) > 6, "layout=" + ScreenshotPipeline.distance(a, other));
+    }
+
+    @Test
+    public void reuseDescription_shouldMatchByHashCountAndAge() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-shot");
+        Path desc = dir.resolve("visual_desc_k.txt");
+        Path hashes = dir.resolve("visual_desc_k.phash");
+        List<ScreenshotPipeline.Prepared> first = ScreenshotPipeline.hashAll(Arrays.asList(
+                png(dir, "a1.png", page(1200, 800, 12, 1)), png(dir, "a2.png", page(1200, 800, 18, 1))));
+        Files.writeString(desc, "顶部导航 + 订单表格", StandardCharsets.UTF_8);
+        ScreenshotPipeline.rememberHashes(hashes, first);
+
+        List<ScreenshotPipeline.Prepared> same = ScreenshotPipeline.hashAll(Arrays.asList(
+                png(dir, "b1.png", page(1200, 800, 12, 7)), png(dir, "b2.png", page(1200, 800, 18, 7))));
+        Assertions.assertEquals("顶部导航 + 订单表格", ScreenshotPipeline.reuseDescription(desc, hashes, same, 6, 60_000L));
+
+        List<ScreenshotPipeline.Prepared> changed = ScreenshotPipeline.hashAll(Arrays.asList(
+                png(dir, "c1.png", page(1200, 800, 2, 1)), png(dir, "c2.png", page(1200, 800, 18, 1))));
+        Assertions.assertNull(ScreenshotPipeline.reuseDescription(desc, hashes, changed, 6, 60_000L));
+        Assertions.assertNull(ScreenshotPipeline.reuseDescription(desc, hashes, Collections.singletonList(same.get(0)), 6, 60_000L));
+
+        Files.setLastModifiedTime(hashes, FileTime.fromMillis(System.currentTimeMillis() - 120_000L));
+        Assertions.assertNull(ScreenshotPipeline.reuseDescription(desc, hashes, same, 6, 60_000L));
+        Assertions.assertTrue(ScreenshotPipeline.stats().contains("reused="), ScreenshotPipeline.stats());
+    }
+
+    @Test
+    public void hashAll_shouldNotEncodeUntilVisionCallAndCleanupRemovesEncodedFiles() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-shot");
+        File src = png(dir, "big.png", page(2400, 1600, 30, 3));
+        List<ScreenshotPipeline.Prepared> hashed = ScreenshotPipeline.hashAll(Collections.singletonList(src));
+        Assertions.assertTrue(hashed.get(0).hashed);
+        Assertions.assertEquals(src, hashed.get(0).file);
+        Assertions.assertFalse(Files.exists(dir.resolve("big_vl.jpg")), "只算哈希时不应重编码");
+
+        ScreenshotPipeline.encodeAll(hashed, 1280, 200 * 1024);
+        File encoded = hashed.get(0).file;
+        Assertions.assertEquals("big_vl.jpg", encoded.getName());
+        Assertions.assertTrue(encoded.exists());
+        Assertions.assertNull(hashed.get(0).image);
+
+        ScreenshotPipeline.cleanup(hashed);
+        Assertions.assertFalse(encoded.exists());
+        Assertions.assertTrue(src.exists());
+        Assertions.assertEquals(src, hashed.get(0).file);
+    }
+}
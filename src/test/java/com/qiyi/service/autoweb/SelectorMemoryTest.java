@@ -0,0 +1,102 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Locator;
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SelectorMemoryTest {
+
+    @Test
+    public void pageKeyOf_normalizesIdsAndIgnoresQuery() {
+        String a = SelectorMemory.pageKeyOf("https://ERP.example.com/orders/10086/detail?tab=2");
+        String b = SelectorMemory.pageKeyOf("https://erp.example.com/orders/20001/detail");
+        Assertions.assertEquals("erp.example.com/orders/{n}/detail", a);
+        Assertions.assertEquals(a, b);
+        Assertions.assertEquals("erp.example.com#/goods/{n}", SelectorMemory.pageKeyOf("https://erp.example.com/#/goods/7?x=1"));
+        Assertions.assertNull(SelectorMemory.pageKeyOf("about:blank"));
+        Assertions.assertNull(SelectorMemory.pageKeyOf(""));
+    }
+
+    @Test
+    public void remember_replacesOnHealAndDropsAfterRepeatedMisses() throws Exception {
+        Path dir = Files.createTempDirectory("selector-memory");
+        SelectorMemory m = new SelectorMemory(dir);
+        String page = "erp.example.com/orders";
+
+        m.remember(page, "row", "tr.order", ".ant-table-row");
+        Assertions.assertEquals(".ant-table-row", m.recall(page, "row", "tr.order"));
+        Assertions.assertNull(m.recall(page, "checkbox", "tr.order"));
+
+        // 页面改版后兜底链命中了其他候选：直接替换
+        m.miss(page, "row", "tr.order");
+        m.remember(page, "row", "tr.order", ".el-table__row");
+        Assertions.assertEquals(".el-table__row", m.recall(page, "row", "tr.order"));
+
+        m.miss(page, "row", "tr.order");
+        Assertions.assertNotNull(m.recall(page, "row", "tr.order"));
+        m.miss(page, "row", "tr.order");
+        Assertions.assertNull(m.recall(page, "row", "tr.order"));
+    }
+
+    @Test
+    public void flush_persistsEntriesForNextRun() throws Exception {
+        Path dir = Files.createTempDirectory("selector-memory");
+        SelectorMemory m = new SelectorMemory(dir);
+        m.remember("erp.example.com/orders", "clickText", "导出", "text=\"导出\"");
+        m.hit("erp.example.com/orders", "clickText", "导出");
+        m.flush();
+
+        Assertions.assertTrue(Files.exists(dir.resolve(SelectorMemory.DIR_NAME).resolve(SelectorMemory.FILE_NAME)));
+        SelectorMemory reloaded = new SelectorMemory(dir);
+        Assertions.assertEquals(1, reloaded.size());
+        Assertions.assertEquals("text=\"导出\"", reloaded.recall("erp.example.com/orders", "clickText", "导出"));
+    }
+
+    @Test
+    public void detectRowSelector_shouldPreferCallerSelectorAndNotRememberGenericFallback(@TempDir Path dir) throws Exception {
+        String url = "https://erp.example.com/orders";
+        String pageKey = SelectorMemory.pageKeyOf(url);
+        SelectorMemory shared = SelectorMemory.forDir(dir);
+        Set<String> present = new HashSet<>();
+        Page page = Mockito.mock(Page.class);
+        Mockito.when(page.url()).thenReturn(url);
+        Mockito.when(page.locator(Mockito.anyString())).thenAnswer(inv -> {
+            Locator loc = Mockito.mock(Locator.class);
+            Mockito.when(loc.count()).thenReturn(present.contains((String) inv.getArgument(0)) ? 3 : 0);
+            return loc;
+        });
+        WebDSL web = new WebDSL(page, s -> {}).withSelectorMemory(shared);
+        Method detect = WebDSL.class.getDeclaredMethod("detectRowSelectorFallback", String.class);
+        detect.setAccessible(true);
+
+        // 表格尚未渲染：只有导航菜单的 li/a 能命中，当次返回但不记忆
+        present.add("li");
+        present.add("a");
+        Assertions.assertEquals("li", detect.invoke(web, "tr.order-row"));
+        Assertions.assertNull(shared.recall(pageKey, "row", "tr.order-row"));
+
+        // 旧记忆里的泛化候选也不会盖过调用方首选
+        shared.remember(pageKey, "row", "tr.order-row", "li");
+        present.add("tr.order-row");
+        Assertions.assertEquals("tr.order-row", detect.invoke(web, "tr.order-row"));
+        Assertions.assertNull(shared.recall(pageKey, "row", "tr.order-row"));
+
+        // 非泛化的兜底候选照常记忆，首选恢复命中后记忆被清除
+        present.remove("tr.order-row");
+        present.add(".ant-table-row");
+        Assertions.assertEquals(".ant-table-row", detect.invoke(web, "tr.order-row"));
+        Assertions.assertEquals(".ant-table-row", shared.recall(pageKey, "row", "tr.order-row"));
+        present.add("tr.order-row");
+        Assertions.assertEquals("tr.order-row", detect.invoke(web, "tr.order-row"));
+        Assertions.assertNull(shared.recall(pageKey, "row", "tr.order-row"));
+    }
+}
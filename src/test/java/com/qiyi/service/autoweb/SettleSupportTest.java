@@ -0,0 +1,116 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Locator;
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class SettleSupportTest {
+
+    @Test
+    public void stats_reportsSavedTimeAgainstFixedWaits() {
+        SettleSupport.Stats stats = new SettleSupport.Stats();
+        stats.record(new SettleSupport.Result(true, "rows-changed", 300, "rows:10"), 2000);
+        stats.record(new SettleSupport.Result(false, "timeout", 2500, "rows:10"), 2000);
+        stats.record(null, 2000);
+
+        Assertions.assertEquals(2, stats.getWaits());
+        Assertions.assertEquals(2800, stats.getWaitedMs());
+        Assertions.assertEquals(1200, stats.getSavedMs());
+        Assertions.assertEquals("300ms (reason=rows-changed, fixedWaitMs=2000, savedMs=1700)",
+                new SettleSupport.Result(true, "rows-changed", 300, null).describe(2000));
+    }
+
+    @Test
+    public void extractPagesTable_waitsForRowSetChangeInsteadOfFixedSleep() {
+        Page page = Mockito.mock(Page.class);
+        WebDSL web = new WebDSL(page, s -> {});
+
+        Locator loc = Mockito.mock(Locator.class);
+        Mockito.when(page.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.first()).thenReturn(loc);
+        Mockito.when(loc.nth(Mockito.anyInt())).thenReturn(loc);
+        Mockito.when(loc.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.count()).thenReturn(1);
+        Mockito.when(loc.isVisible()).thenReturn(true);
+
+        AtomicInteger pageNo = new AtomicInteger(1);
+        Mockito.when(loc.evaluateAll(eq(TableBulkExtractor.EXTRACT_ROWS_JS), any())).thenAnswer(inv -> {
+            Map<String, Object> values = new HashMap<>();
+            values.put("name", "订单" + pageNo.get());
+            Map<String, Object> row = new HashMap<>();
+            row.put("key", "rowkey:" + pageNo.get());
+            row.put("values", values);
+            List<Object> rows = new ArrayList<>();
+            rows.add(row);
+            Map<String, Object> r = new HashMap<>();
+            r.put("unsupported", new ArrayList<>());
+            r.put("rows", rows);
+            return r;
+        });
+        Mockito.when(loc.evaluate(eq(SettleSupport.SIGNATURE_JS), any())).thenAnswer(inv -> "rows:1|订单" + pageNo.get());
+        AtomicInteger paginationSettles = new AtomicInteger();
+        Mockito.when(loc.evaluate(eq(SettleSupport.SETTLE_JS), any())).thenAnswer(inv -> {
+            Map<?, ?> opts = inv.getArgument(1);
+            Map<String, Object> r = new HashMap<>();
+            if (opts.get("before") != null) {
+                paginationSettles.incrementAndGet();
+                r.put("reason", "rows-changed");
+                r.put("waitedMs", 180);
+            } else if (((Number) opts.get("scrollStep")).intValue() > 0) {
+                r.put("reason", "at-bottom");
+                r.put("atBottom", true);
+            } else {
+                r.put("reason", "no-change");
+                r.put("waitedMs", 20);
+            }
+            r.put("settled", true);
+            return r;
+        });
+        Mockito.doAnswer(inv -> {
+            pageNo.incrementAndGet();
+            return null;
+        }).when(loc).click();
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("name", "td:nth-child(1)");
+        List<Map<String, String>> data = web.extractPagesTable(".table-body", "tr", columns, ".next", 3);
+
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals("订单3", data.get(2).get("name"));
+        Assertions.assertEquals(2, paginationSettles.get());
+        Mockito.verify(page, Mockito.never()).waitForTimeout(2000);
+    }
+
+    @Test
+    public void settle_fallsBackToFixedWaitWhenScriptFails() {
+        Page page = Mockito.mock(Page.class);
+        WebDSL web = new WebDSL(page, s -> {});
+
+        Locator loc = Mockito.mock(Locator.class);
+        Mockito.when(page.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.first()).thenReturn(loc);
+        Mockito.when(loc.count()).thenReturn(1);
+        Mockito.when(loc.evaluate(eq(SettleSupport.SETTLE_JS), any()))
+                .thenThrow(new RuntimeException("Execution context was destroyed"));
+
+        long waited = web.settle(".table-body", 1200);
+
+        Assertions.assertEquals(500, waited);
+        Mockito.verify(page).waitForTimeout(500);
+        Mockito.verify(page, Mockito.times(1)).waitForTimeout(anyDouble());
+    }
+}
@@ -0,0 +1,80 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class StepCapturePoolTest {
+
+    @Test
+    public void run_navigatesWindowAheadAndFinishesInOrder() {
+        BrowserContext ctx = Mockito.mock(BrowserContext.class);
+        List<Page> created = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        Mockito.when(ctx.newPage()).thenAnswer(inv -> {
+            Page p = Mockito.mock(Page.class);
+            int id = created.size();
+            Mockito.when(p.navigate(anyString(), any(Page.NavigateOptions.class))).thenAnswer(n -> {
+                events.add("nav:" + n.getArgument(0) + "@p" + id);
+                return null;
+            });
+            created.add(p);
+            return p;
+        });
+
+        List<String> urls = Arrays.asList("u1", "u2", "u3", "u4", "u5");
+        try (StepCapturePool pool = new StepCapturePool(ctx, 2, s -> {})) {
+            pool.run(urls, u -> u, (u, page) -> {
+                events.add("finish:" + u + "@p" + created.indexOf(page));
+                return page;
+            }, () -> events.add("current"));
+        }
+
+        Assertions.assertEquals(Arrays.asList(
+                "nav:u1@p0", "nav:u2@p1", "current",
+                "finish:u1@p0", "nav:u3@p0",
+                "finish:u2@p1", "nav:u4@p1",
+                "finish:u3@p0", "nav:u5@p0",
+                "finish:u4@p1",
+                "finish:u5@p0"
+        ), events);
+        Assertions.assertEquals(2, created.size());
+        for (Page p : created) Mockito.verify(p).close();
+    }
+
+    @Test
+    public void run_closesReplacedPageAndKeepsGoingAfterFailure() {
+        BrowserContext ctx = Mockito.mock(BrowserContext.class);
+        Page first = Mockito.mock(Page.class);
+        Page second = Mockito.mock(Page.class);
+        Page popup = Mockito.mock(Page.class);
+        Mockito.when(ctx.newPage()).thenReturn(first, second);
+
+        List<String> finished = new ArrayList<>();
+        try (StepCapturePool pool = new StepCapturePool(ctx, 1, s -> {})) {
+            pool.run(Arrays.asList("a", "b", "c"), u -> u, (u, page) -> {
+                finished.add(u);
+                if ("a".equals(u)) return popup;
+                if ("b".equals(u)) throw new RuntimeException("boom");
+                return page;
+            }, null);
+        }
+
+        Assertions.assertEquals(Arrays.asList("a", "b", "c"), finished);
+        // a 的入口动作打开了新窗口：原 Page 关闭，新窗口复用去加载 b；b 失败后关闭，c 重新开页
+        Mockito.verify(first).close();
+        Mockito.verify(popup).navigate(Mockito.eq("b"), any(Page.NavigateOptions.class));
+        Mockito.verify(popup).close();
+        Mockito.verify(second).navigate(Mockito.eq("c"), any(Page.NavigateOptions.class));
+        Mockito.verify(second).close();
+    }
+}
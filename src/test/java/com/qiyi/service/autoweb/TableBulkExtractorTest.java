@@ -0,0 +1,184 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Locator;
+import com.microsoft.playwright.Mouse;
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class TableBulkExtractorTest {
+
+    @Test
+    public void columnSpec_mirrorsExtractCellValueRules() {
+        Assertions.assertEquals("text", TableBulkExtractor.columnSpec("a", "").get("kind"));
+        Assertions.assertEquals("text", TableBulkExtractor.columnSpec("a", "innerText").get("kind"));
+
+        Map<String, Object> attr = TableBulkExtractor.columnSpec("a", "attr:data-id");
+        Assertions.assertEquals("attr", attr.get("kind"));
+        Assertions.assertEquals("data-id", attr.get("attr"));
+        Assertions.assertEquals("href", TableBulkExtractor.columnSpec("a", "@href").get("attr"));
+
+        Map<String, Object> selAttr = TableBulkExtractor.columnSpec("a", "a.link@href");
+        Assertions.assertEquals("selAttr", selAttr.get("kind"));
+        Assertions.assertEquals("a.link", selAttr.get("sel"));
+        Assertions.assertEquals("href", selAttr.get("attr"));
+
+        Map<String, Object> css = TableBulkExtractor.columnSpec("a", "td:nth-child(2)");
+        Assertions.assertEquals("css", css.get("kind"));
+        Assertions.assertEquals("td:nth-child(2)", css.get("sel"));
+    }
+
+    @Test
+    public void extractTableData_usesOneEvaluatePerScrollStepAndDeduplicatesByPageKey() {
+        Page page = Mockito.mock(Page.class);
+        WebDSL web = new WebDSL(page, s -> {});
+
+        Locator loc = Mockito.mock(Locator.class);
+        Mockito.when(page.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.first()).thenReturn(loc);
+        Mockito.when(loc.nth(Mockito.anyInt())).thenReturn(loc);
+        Mockito.when(loc.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.count()).thenReturn(1);
+        Mockito.when(loc.isVisible()).thenReturn(true);
+
+        AtomicInteger scrolls = new AtomicInteger();
+        Mockito.when(loc.evaluate(eq(SettleSupport.SETTLE_JS), any())).thenAnswer(inv -> {
+            Map<?, ?> opts = inv.getArgument(1);
+            Map<String, Object> r = new HashMap<>();
+            r.put("settled", true);
+            if (((Number) opts.get("scrollStep")).intValue() > 0) {
+                // 滚动与等待渲染走同一个 settle 脚本
+                r.put("atBottom", scrolls.incrementAndGet() > 1);
+                r.put("reason", "dom-quiet");
+                r.put("waitedMs", 90);
+            } else {
+                r.put("reason", "no-change");
+                r.put("waitedMs", 20);
+            }
+            return r;
+        });
+        AtomicInteger extracts = new AtomicInteger();
+        Mockito.when(loc.evaluateAll(eq(TableBulkExtractor.EXTRACT_ROWS_JS), any())).thenAnswer(inv -> {
+            int step = extracts.incrementAndGet();
+            List<Object> rows = new ArrayList<>();
+            rows.add(row("rowkey:1", "订单A"));
+            rows.add(row("rowkey:2", "订单B"));
+            if (step > 1) rows.add(row("rowkey:3", "订单C"));
+            Map<String, Object> r = new HashMap<>();
+            r.put("unsupported", new ArrayList<>());
+            r.put("rows", rows);
+            return r;
+        });
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("name", "td:nth-child(1)");
+        List<Map<String, String>> data = web.extractTableData(".table-body", "tr", -1, columns);
+
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals(Arrays.asList("订单A", "订单B", "订单C"),
+                Arrays.asList(data.get(0).get("name"), data.get(1).get("name"), data.get(2).get("name")));
+        Assertions.assertEquals(2, extracts.get());
+        Assertions.assertEquals(2, scrolls.get());
+        // 只有表头解析会读取 innerText，逐行路径未被使用
+        Mockito.verify(loc, Mockito.atMost(1)).innerText();
+    }
+
+    @Test
+    public void extractTableData_bulkUsesFixedWaitWhenSettleScriptFails() {
+        Page page = Mockito.mock(Page.class);
+        WebDSL web = new WebDSL(page, s -> {});
+
+        Locator loc = Mockito.mock(Locator.class);
+        Mockito.when(page.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.first()).thenReturn(loc);
+        Mockito.when(loc.nth(Mockito.anyInt())).thenReturn(loc);
+        Mockito.when(loc.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.count()).thenReturn(1);
+        Mockito.when(loc.isVisible()).thenReturn(true);
+
+        Mockito.when(page.mouse()).thenReturn(Mockito.mock(Mouse.class));
+        Mockito.when(loc.evaluate(eq(SettleSupport.SETTLE_JS), any()))
+                .thenThrow(new RuntimeException("Execution context was destroyed"));
+        AtomicInteger scrolled = new AtomicInteger();
+        Mockito.when(loc.evaluate(anyString())).thenAnswer(inv -> {
+            String js = inv.getArgument(0);
+            if (js.contains("el.scrollTop +=")) {
+                scrolled.incrementAndGet();
+                return null;
+            }
+            if (js.equals("el => el.scrollTop")) return Math.min(scrolled.get(), 2) * 300;
+            if (js.equals("el => el.scrollHeight - el.clientHeight")) return 600;
+            return null;
+        });
+        AtomicInteger extracts = new AtomicInteger();
+        Mockito.when(loc.evaluateAll(eq(TableBulkExtractor.EXTRACT_ROWS_JS), any())).thenAnswer(inv -> {
+            List<Object> rows = new ArrayList<>();
+            // 没有行属性时按整行文本/单元格文本去重，与逐行模式的 md5 行键一致
+            rows.add(row("text:订单A", "订单A"));
+            rows.add(row("cells:B|1", "订单B"));
+            if (extracts.incrementAndGet() > 1) rows.add(row("text:订单C", "订单C"));
+            Map<String, Object> r = new HashMap<>();
+            r.put("unsupported", new ArrayList<>());
+            r.put("rows", rows);
+            return r;
+        });
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("name", "td:nth-child(1)");
+        List<Map<String, String>> data = web.extractTableData(".table-body", "tr", -1, columns);
+
+        Assertions.assertEquals(Arrays.asList("订单A", "订单B", "订单C"),
+                Arrays.asList(data.get(0).get("name"), data.get(1).get("name"), data.get(2).get("name")));
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertTrue(scrolled.get() >= 2, "scrolled=" + scrolled.get());
+        Mockito.verify(page, Mockito.atLeast(2)).waitForTimeout(1000);
+    }
+
+    @Test
+    public void extractTableData_fallsBackWhenColumnSelectorIsNotCss() {
+        Page page = Mockito.mock(Page.class);
+        WebDSL web = new WebDSL(page, s -> {});
+
+        Locator loc = Mockito.mock(Locator.class);
+        Mockito.when(page.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.first()).thenReturn(loc);
+        Mockito.when(loc.nth(Mockito.anyInt())).thenReturn(loc);
+        Mockito.when(loc.locator(anyString())).thenReturn(loc);
+        Mockito.when(loc.count()).thenReturn(1);
+        Mockito.when(loc.isVisible()).thenReturn(true);
+        Mockito.when(loc.innerText()).thenReturn("行文本");
+        Map<String, Object> unsupported = new HashMap<>();
+        unsupported.put("unsupported", Arrays.asList("name"));
+        unsupported.put("rows", new ArrayList<>());
+        Mockito.when(loc.evaluateAll(eq(TableBulkExtractor.EXTRACT_ROWS_JS), any())).thenReturn(unsupported);
+
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("name", "text=订单");
+        List<Map<String, String>> data = web.extractTableData(".table-body", "tr", 1, columns);
+
+        Assertions.assertEquals(1, data.size());
+        Mockito.verify(loc, Mockito.atLeastOnce()).innerText();
+    }
+
+    private static Map<String, Object> row(String key, String name) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("name", name);
+        Map<String, Object> row = new HashMap<>();
+        row.put("key", key);
+        row.put("values", values);
+        return row;
+    }
+}
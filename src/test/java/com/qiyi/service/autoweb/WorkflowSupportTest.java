@@ -0,0 +1,139 @@
+package com.qiyi.service.autoweb;
+
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class WorkflowSupportTest {
+
+    private static final String STEP_CODE = String.join("\n",
+            "def orders = []",
+            "// Step 1",
+            "web.log('打开订单页')",
+            "// Step 2",
+            "throw new IllegalStateException('按钮不存在')",
+            "// Step 3",
+            "// 本步无需操作");
+
+    private String oldUserDir;
+
+    @TempDir
+    Path workDir;
+
+    @BeforeEach
+    public void setUp() {
+        // 执行脚本时的调试落盘写到临时目录，不落到工作目录的 autoweb 下
+        oldUserDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", workDir.toAbsolutePath().toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.setProperty("user.dir", oldUserDir == null ? "" : oldUserDir);
+    }
+
+    private static AutoWebAgent.PlanStep step(int index) {
+        AutoWebAgent.PlanStep s = new AutoWebAgent.PlanStep();
+        s.index = index;
+        s.description = "步骤" + index;
+        return s;
+    }
+
+    private static Page page() {
+        Page page = mock(Page.class);
+        when(page.url()).thenReturn("https://erp.example.com/orders");
+        when(page.content()).thenReturn("<html><body><div id=\"app\">订单</div></body></html>");
+        return page;
+    }
+
+    /**
+     * 记录回调顺序，便于断言
+     */
+    private static class RecordingListener implements AutoWebAgent.StepExecutionListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onStepStart(List<AutoWebAgent.PlanStep> steps, int completed, boolean wholeScript) {
+            events.add("start:" + indexes(steps) + (wholeScript ? ":all" : ""));
+        }
+
+        @Override
+        public void onStepDone(List<AutoWebAgent.PlanStep> steps, int completed, boolean skipped) {
+            events.add((skipped ? "skip:" : "done:") + indexes(steps));
+        }
+
+        @Override
+        public void onStepFailed(List<AutoWebAgent.PlanStep> steps, String reason) {
+            events.add("fail:" + indexes(steps) + ":" + reason);
+        }
+
+        @Override
+        public void onStepFinished(List<AutoWebAgent.PlanStep> steps) {
+            events.add("end:" + indexes(steps));
+        }
+
+        private static String indexes(List<AutoWebAgent.PlanStep> steps) {
+            StringBuilder sb = new StringBuilder();
+            for (AutoWebAgent.PlanStep s : steps) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(s.index);
+            }
+            return sb.toString();
+        }
+    }
+
+    @Test
+    public void buildStepExecutionCode_shouldKeepPreludeAndSkipCommentOnlyStep() {
+        Assertions.assertTrue(WorkflowSupport.hasExplicitStepMarkers(STEP_CODE));
+        String step1 = WorkflowSupport.buildStepExecutionCode(STEP_CODE, 1);
+        Assertions.assertTrue(step1.startsWith("def orders = []\n"), step1);
+        Assertions.assertTrue(step1.contains("打开订单页"), step1);
+        Assertions.assertFalse(step1.contains("按钮不存在"), step1);
+        Assertions.assertEquals("", WorkflowSupport.buildStepExecutionCode(STEP_CODE, 3));
+        Assertions.assertEquals("", WorkflowSupport.buildStepExecutionCode(STEP_CODE, 9));
+        Assertions.assertFalse(WorkflowSupport.hasExplicitStepMarkers("web.log('no markers')"));
+    }
+
+    @Test
+    public void executeSteps_shouldContinueAfterFailedStepAndSkipEmptyStep() {
+        RecordingListener listener = new RecordingListener();
+        List<String> logs = Collections.synchronizedList(new ArrayList<>());
+        WorkflowSupport.executeSteps(STEP_CODE, Arrays.asList(step(1), step(2), step(3)), page(),
+                true, () -> false, listener, logs::add);
+
+        Assertions.assertEquals(Arrays.asList(
+                "start:1", "done:1", "end:1",
+                "start:2", "fail:2:按钮不存在", "end:2",
+                "skip:3", "end:3"), listener.events, logs.toString());
+    }
+
+    @Test
+    public void executeSteps_withoutMarkers_shouldRunWholeScriptOnce() {
+        RecordingListener listener = new RecordingListener();
+        WorkflowSupport.executeSteps("web.log('整段执行')", Arrays.asList(step(1), step(2)), page(),
+                false, () -> false, listener, null);
+
+        Assertions.assertEquals(Arrays.asList("start:1,2:all", "done:1,2", "end:1,2"), listener.events);
+    }
+
+    @Test
+    public void executeSteps_whenStopped_shouldNotStartAnyStep() {
+        RecordingListener listener = new RecordingListener();
+        WorkflowSupport.executeSteps(STEP_CODE, Arrays.asList(step(1), step(2)), page(),
+                false, () -> true, listener, null);
+
+        Assertions.assertTrue(listener.events.isEmpty(), listener.events.toString());
+    }
+}
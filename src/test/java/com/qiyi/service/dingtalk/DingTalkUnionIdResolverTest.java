@@ -0,0 +1,78 @@
+package com.qiyi.service.dingtalk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DingTalkUnionIdResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void resolvesMissesOnceAndPersistsAcrossInstances() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            File store = tempDir.resolve("unionid.json").toFile();
+            AtomicInteger calls = new AtomicInteger();
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 30; i++) ids.add("u" + i);
+
+            DingTalkUnionIdResolver first = new DingTalkUnionIdResolver(store, pool);
+            Map<String, String> resolved = first.resolveAll(ids, uid -> {
+                calls.incrementAndGet();
+                return "union_" + uid;
+            });
+            assertEquals(30, resolved.size());
+            assertEquals("union_u0", resolved.get("u0"));
+            assertEquals(Arrays.asList("u0", "u1", "u2"), new ArrayList<>(resolved.keySet()).subList(0, 3));
+            assertEquals(30, calls.get());
+
+            first.resolveAll(ids, uid -> {
+                calls.incrementAndGet();
+                return "union_" + uid;
+            });
+            assertEquals(30, calls.get());
+            assertTrue(store.isFile());
+
+            DingTalkUnionIdResolver reloaded = new DingTalkUnionIdResolver(store, pool);
+            Map<String, String> again = reloaded.resolveAll(ids, uid -> {
+                throw new AssertionError("should be served from persisted cache");
+            });
+            assertEquals(30, again.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLookupsAreOmittedAndRetriedLater() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            DingTalkUnionIdResolver resolver = new DingTalkUnionIdResolver(null, pool);
+            Map<String, String> resolved = resolver.resolveAll(Arrays.asList("ok", "missing", "boom"), uid -> {
+                if ("boom".equals(uid)) throw new IllegalStateException("api error");
+                return "missing".equals(uid) ? null : "union_" + uid;
+            });
+            assertEquals(1, resolved.size());
+            assertFalse(resolved.containsKey("boom"));
+
+            assertEquals("union_boom", resolver.resolve("boom", uid -> "union_" + uid));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
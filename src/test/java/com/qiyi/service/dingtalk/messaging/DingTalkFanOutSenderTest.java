@@ -0,0 +1,133 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DingTalkFanOutSenderTest {
+
+    private static List<String> users(int n) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < n; i++) ids.add("u" + i);
+        return ids;
+    }
+
+    @Test
+    public void splitDeduplicatesAndRespectsChunkSize() {
+        List<String> ids = new ArrayList<>(users(45));
+        ids.addAll(Arrays.asList("u1", "u2", " ", null, "u3"));
+
+        List<List<String>> chunks = DingTalkFanOutSender.split(ids, 20);
+
+        assertEquals(3, chunks.size());
+        assertEquals(20, chunks.get(0).size());
+        assertEquals(20, chunks.get(1).size());
+        assertEquals(5, chunks.get(2).size());
+        assertEquals("u0", chunks.get(0).get(0));
+        assertEquals("u44", chunks.get(2).get(4));
+    }
+
+    @Test
+    public void sendsAllChunksConcurrentlyAndReportsSuccess() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            DingTalkFanOutSender sender = new DingTalkFanOutSender(pool, new DingTalkFanOutSender.RateLimiter(0), 20, 1);
+            List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+            FanOutReport report = sender.send(users(2000), chunk -> {
+                assertTrue(chunk.size() <= 20);
+                sent.addAll(chunk);
+                return true;
+            });
+
+            assertTrue(report.isAllSucceeded());
+            assertEquals(100, report.getChunks().size());
+            assertEquals(2000, report.getTotalRecipients());
+            assertEquals(2000, sent.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retriesOnlyChunksKnownNotDelivered() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            DingTalkFanOutSender sender = new DingTalkFanOutSender(pool, new DingTalkFanOutSender.RateLimiter(0), 2, 3);
+            AtomicInteger tokenCalls = new AtomicInteger();
+            AtomicInteger unknownCalls = new AtomicInteger();
+            AtomicInteger falseCalls = new AtomicInteger();
+
+            FanOutReport report = sender.send(users(8), chunk -> {
+                if (chunk.contains("u0")) {
+                    // 请求未发出（如取 token 失败）：重试成功
+                    if (tokenCalls.incrementAndGet() == 1) {
+                        throw new DingTalkFanOutSender.NotDeliveredException("not sent", new IllegalStateException("token expired"));
+                    }
+                    return true;
+                }
+                if (chunk.contains("u4")) {
+                    // 无法确认是否已投递：不重试，避免重复发送
+                    unknownCalls.incrementAndGet();
+                    throw new IllegalStateException("quota exceeded");
+                }
+                if (chunk.contains("u6")) {
+                    falseCalls.incrementAndGet();
+                    return false;
+                }
+                return true;
+            });
+
+            assertFalse(report.isAllSucceeded());
+            assertEquals(4, report.getSucceededUserIds().size());
+            assertEquals(Arrays.asList("u4", "u5", "u6", "u7"), report.getFailedUserIds());
+            assertEquals(2, report.getChunks().get(0).getAttempts());
+            FanOutReport.ChunkResult failed = report.getFailedChunks().get(0);
+            assertEquals(2, failed.getIndex());
+            assertEquals(1, failed.getAttempts());
+            assertEquals("quota exceeded", failed.getError());
+            assertEquals(1, unknownCalls.get());
+            assertEquals(1, falseCalls.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stopsRetryingNotDeliveredChunkAfterMaxAttempts() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            DingTalkFanOutSender sender = new DingTalkFanOutSender(pool, new DingTalkFanOutSender.RateLimiter(0), 20, 2);
+            AtomicInteger calls = new AtomicInteger();
+
+            FanOutReport report = sender.send(users(3), chunk -> {
+                calls.incrementAndGet();
+                throw new DingTalkFanOutSender.NotDeliveredException("not sent", new IllegalStateException("token expired"));
+            });
+
+            assertEquals(2, calls.get());
+            assertEquals("token expired", report.getFailedChunks().get(0).getError());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rateLimiterSpacesCalls() throws Exception {
+        DingTalkFanOutSender.RateLimiter limiter = new DingTalkFanOutSender.RateLimiter(50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) limiter.acquire();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 90, "elapsed=" + elapsedMs);
+    }
+}
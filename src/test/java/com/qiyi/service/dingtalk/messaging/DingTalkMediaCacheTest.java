@@ -0,0 +1,161 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import com.qiyi.util.DingTalkUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DingTalkMediaCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final class MapCache implements DingTalkUtil.DingTalkCache {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final Map<String, Long> expireAt = new ConcurrentHashMap<>();
+
+        @Override
+        public String get(String key) {
+            Long exp = expireAt.get(key);
+            return exp != null && exp > System.currentTimeMillis() ? values.get(key) : null;
+        }
+
+        @Override
+        public void put(String key, String value, long expireSeconds) {
+            values.put(key, value);
+            expireAt.put(key, System.currentTimeMillis() + expireSeconds * 1000);
+        }
+    }
+
+    private File write(String name, String content) throws Exception {
+        Path p = tempDir.resolve(name);
+        Files.write(p, content.getBytes("UTF-8"));
+        return p.toFile();
+    }
+
+    @Test
+    public void identicalContentIsUploadedOnce() throws Exception {
+        DingTalkMediaCache cache = new DingTalkMediaCache(new MapCache());
+        AtomicInteger seq = new AtomicInteger();
+        File a = write("a.txt", "same-bytes");
+        File b = write("b.txt", "same-bytes");
+        File c = write("c.txt", "other-bytes");
+
+        String first = cache.getOrUpload("app", a, false, f -> "media-" + seq.incrementAndGet());
+        String second = cache.getOrUpload("app", b, false, f -> "media-" + seq.incrementAndGet());
+        String third = cache.getOrUpload("app", c, false, f -> "media-" + seq.incrementAndGet());
+
+        assertEquals(first, second);
+        assertNotEquals(first, third);
+        assertEquals(2, cache.getUploadCount());
+
+        cache.invalidate("app", a, false);
+        assertEquals("media-3", cache.getOrUpload("app", a, false, f -> "media-" + seq.incrementAndGet()));
+    }
+
+    @Test
+    public void reuploadsOnlyWhenCachedMediaIdIsRejected() throws Exception {
+        DingTalkMediaCache cache = new DingTalkMediaCache(new MapCache());
+        AtomicInteger seq = new AtomicInteger();
+        File file = write("shot.txt", "screenshot");
+        List<String> sent = new ArrayList<>();
+
+        // 刚上传的 mediaId 发送失败：不重新上传，错误直接抛出
+        RuntimeException fresh = assertThrows(RuntimeException.class, () -> cache.sendWithMedia("app", file, false,
+                f -> "media-" + seq.incrementAndGet(),
+                id -> { throw new RuntimeException("Send work notification image failed: errcode=40007, 不合法的media_id"); }));
+        assertTrue(fresh.getMessage().contains("40007"));
+        assertEquals(1, cache.getUploadCount());
+
+        // 缓存 mediaId 遇到与 mediaId 无关的错误：不重新上传
+        assertThrows(RuntimeException.class, () -> cache.sendWithMedia("app", file, false,
+                f -> "media-" + seq.incrementAndGet(),
+                id -> { throw new RuntimeException("Send work notification image failed: errcode=90018, 超过发送频率"); }));
+        assertEquals(1, cache.getUploadCount());
+
+        // 缓存 mediaId 被判定为无效：失效缓存、重新上传并重发一次
+        cache.sendWithMedia("app", file, false, f -> "media-" + seq.incrementAndGet(), id -> {
+            sent.add(id);
+            if ("media-1".equals(id)) throw new RuntimeException("Send work notification image failed: errcode=40007, 不合法的media_id");
+        });
+        assertEquals(java.util.Arrays.asList("media-1", "media-2"), sent);
+        assertEquals(2, cache.getUploadCount());
+    }
+
+    @Test
+    public void concurrentUploadsOfSameContentAreCoalesced() throws Exception {
+        DingTalkMediaCache cache = new DingTalkMediaCache(new MapCache());
+        File file = write("shot.txt", "screenshot");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> cache.getOrUpload("app", file, false, f -> {
+                    calls.incrementAndGet();
+                    release.await(5, TimeUnit.SECONDS);
+                    return "media-x";
+                })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> f : futures) {
+                assertEquals("media-x", f.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void largePngIsDownscaledBeforeUploadAndSmallPngIsKept() throws Exception {
+        Random random = new Random(42);
+        BufferedImage big = new BufferedImage(2600, 1400, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < big.getHeight(); y++) {
+            for (int x = 0; x < big.getWidth(); x++) {
+                big.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        File bigPng = tempDir.resolve("big.png").toFile();
+        ImageIO.write(big, "png", bigPng);
+        File smallPng = tempDir.resolve("small.png").toFile();
+        ImageIO.write(new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB), "png", smallPng);
+
+        DingTalkMediaCache cache = new DingTalkMediaCache(new MapCache());
+        List<long[]> uploaded = new ArrayList<>();
+        cache.getOrUpload("app", bigPng, true, f -> {
+            BufferedImage img = ImageIO.read(f);
+            uploaded.add(new long[]{f.length(), img.getWidth(), img.getHeight()});
+            return "media-big";
+        });
+        long[] info = uploaded.get(0);
+        assertTrue(info[0] < bigPng.length());
+        assertEquals(DingTalkUtil.DingTalkSettings.MEDIA_MAX_DIMENSION, info[1]);
+
+        assertSame(smallPng, MediaImageCompressor.prepare(smallPng));
+    }
+}
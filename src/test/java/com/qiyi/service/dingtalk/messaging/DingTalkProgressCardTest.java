@@ -0,0 +1,85 @@
+package com.qiyi.service.dingtalk.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DingTalkProgressCardTest {
+
+    @Test
+    public void testBurstOfUpdatesIsMergedIntoOneCard() {
+        LocalProgressCardSink sink = new LocalProgressCardSink();
+        List<String> fallback = new ArrayList<>();
+        DingTalkProgressCard card = new DingTalkProgressCard(sink, "AUTOWEB", fallback::add, 60_000, 10);
+
+        for (int i = 1; i <= 50; i++) {
+            card.update("step " + i);
+        }
+        card.finish("done");
+
+        assertEquals(1, sink.getCardCount());
+        assertEquals(1, sink.getTotalCalls());
+        assertTrue(fallback.isEmpty());
+        String content = sink.getContent(card.getCardId());
+        assertTrue(content.contains("done"));
+        assertTrue(content.contains("step 50"));
+        assertFalse(content.contains("step 1  \n"));
+        assertTrue(content.contains("已省略"));
+    }
+
+    @Test
+    public void testTimerFlushCreatesThenUpdatesSameCard() throws Exception {
+        LocalProgressCardSink sink = new LocalProgressCardSink();
+        DingTalkProgressCard card = new DingTalkProgressCard(sink, "ERP", null, 200, 10);
+
+        card.update("first");
+        waitUntil(() -> sink.getCreateCalls() == 1);
+        card.update("second");
+        card.update("third");
+        waitUntil(() -> sink.getUpdateCalls() == 1);
+        card.finish(null);
+
+        assertEquals(1, sink.getCardCount());
+        assertEquals(1, sink.getCreateCalls());
+        assertEquals(2, sink.getUpdateCalls());
+        assertTrue(sink.getContent(card.getCardId()).contains("third"));
+        assertEquals(3, card.getApiCalls());
+    }
+
+    @Test
+    public void testFallbackToBatchedTextWhenCardCreateFails() {
+        ProgressCardSink failing = new ProgressCardSink() {
+            @Override
+            public void create(String cardId, String title, String markdownText) throws Exception {
+                throw new Exception("card api unavailable");
+            }
+
+            @Override
+            public void update(String cardId, String title, String markdownText) {
+            }
+        };
+        List<String> fallback = new ArrayList<>();
+        DingTalkProgressCard card = new DingTalkProgressCard(failing, "PODCAST", fallback::add, 60_000, 10);
+
+        card.update("a");
+        card.update("b");
+        card.finish("c");
+        card.finish("ignored");
+
+        assertEquals(1, fallback.size());
+        assertEquals("a\nb\nc", fallback.get(0));
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,106 @@
+package com.qiyi.service.dingtalk.stream;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RobotMsgCallbackConsumerTest {
+
+    private static JSONObject message(String msgId, String content) {
+        JSONObject req = new JSONObject();
+        if (msgId != null) req.put("msgId", msgId);
+        req.put("senderStaffId", "user1");
+        req.put("createAt", "1700000000000");
+        JSONObject text = new JSONObject();
+        text.put("content", content);
+        req.put("text", text);
+        return req;
+    }
+
+    private static final class RecordingConsumer extends RobotMsgCallbackConsumer {
+        private final List<JSONObject> handled = new ArrayList<>();
+
+        RecordingConsumer(RecentMessageIds ids, java.util.concurrent.Executor executor) {
+            super(ids, executor);
+        }
+
+        @Override
+        protected void handle(JSONObject request) {
+            handled.add(request);
+        }
+    }
+
+    @Test
+    public void testRedeliveredMessageIsHandledOnce() {
+        RecordingConsumer consumer = new RecordingConsumer(new RecentMessageIds(60_000, 100), Runnable::run);
+
+        assertNotNull(consumer.execute(message("m1", "hello")));
+        assertNotNull(consumer.execute(message("m1", "hello")));
+        consumer.execute(message("m2", "world"));
+
+        assertEquals(2, consumer.handled.size());
+    }
+
+    @Test
+    public void testAckReturnedWithoutHandlingOnCallbackThread() {
+        List<Runnable> queued = new ArrayList<>();
+        RecordingConsumer consumer = new RecordingConsumer(new RecentMessageIds(60_000, 100), queued::add);
+
+        JSONObject ack = consumer.execute(message("m1", "hello"));
+
+        assertNotNull(ack);
+        assertTrue(consumer.handled.isEmpty());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, consumer.handled.size());
+    }
+
+    @Test
+    public void testRejectedIngestionStillAcks() {
+        RecordingConsumer consumer = new RecordingConsumer(new RecentMessageIds(60_000, 100), r -> {
+            throw new RejectedExecutionException("full");
+        });
+        JSONObject req = message("m1", "hello");
+        req.remove("senderStaffId");
+
+        assertNotNull(consumer.execute(req));
+        assertTrue(consumer.handled.isEmpty());
+    }
+
+    @Test
+    public void testResolveMessageIdFallback() {
+        assertEquals("m1", RobotMsgCallbackConsumer.resolveMessageId(message("m1", "hi")));
+        String fallback = RobotMsgCallbackConsumer.resolveMessageId(message(null, "hi"));
+        assertNotNull(fallback);
+        assertEquals(fallback, RobotMsgCallbackConsumer.resolveMessageId(message(null, "hi")));
+        assertNull(RobotMsgCallbackConsumer.resolveMessageId(new JSONObject()));
+    }
+
+    @Test
+    public void testRecentMessageIdsWindowAndCapacity() {
+        AtomicLong now = new AtomicLong(0);
+        RecentMessageIds ids = new RecentMessageIds(1_000, 3, now::get);
+
+        assertTrue(ids.markIfAbsent("a"));
+        assertFalse(ids.markIfAbsent("a"));
+
+        now.set(1_500);
+        assertTrue(ids.markIfAbsent("a"));
+
+        assertTrue(ids.markIfAbsent("b"));
+        assertTrue(ids.markIfAbsent("c"));
+        assertTrue(ids.markIfAbsent("d"));
+        assertEquals(3, ids.size());
+        assertTrue(ids.markIfAbsent("a"));
+    }
+}
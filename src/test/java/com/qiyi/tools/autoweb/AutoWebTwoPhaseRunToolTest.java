@@ -0,0 +1,215 @@
+package com.qiyi.tools.autoweb;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.qiyi.service.autoweb.AutoWebAgent;
+import com.qiyi.service.autoweb.ReplayStore;
+import com.qiyi.tools.ToolMessenger;
+import com.qiyi.util.BrowserSessionPool;
+import com.qiyi.util.PlayWrightUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AutoWebTwoPhaseRunToolTest {
+
+    private static final String ENTRY_URL = "https://erp.example.com/orders";
+    private static final String STEP_CODE = String.join("\n",
+            "web.log('导出订单')",
+            "for (int i = 0; i < 200; i++) {",
+            "    web.wait(50)",
+            "}");
+    private static final String PAGE_HTML = "<html><body><div id=\"app\"><div class=\"menu\"><a href=\"/orders\">订单管理</a></div>" +
+            "<table id=\"orders\"><tbody><tr><td>订单1</td><td>待发货</td><td><button>导出</button></td></tr></tbody></table></div></body></html>";
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch stepWaiting;
+    private Page page;
+    private Field sharedConnectionField;
+    private Object previousConnection;
+    private ToolMessenger messenger;
+
+    @TempDir
+    Path autowebDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // 会话与回放记录写到临时目录，不落到工作目录的 autoweb 下
+        AutoWebTwoPhaseRunTool.useAutowebDir(autowebDir);
+        page = mock(Page.class);
+        when(page.url()).thenReturn(ENTRY_URL);
+        when(page.content()).thenReturn(PAGE_HTML);
+        // 脚本里的 web.wait(50) 真实等待，让取消落在步骤执行中途
+        doAnswer(inv -> {
+            double ms = inv.getArgument(0);
+            if (ms == 50) stepWaiting.countDown();
+            Thread.sleep((long) Math.min(ms, 50));
+            return null;
+        }).when(page).waitForTimeout(anyDouble());
+        BrowserContext context = mock(BrowserContext.class);
+        when(context.newPage()).thenReturn(page);
+        Browser browser = mock(Browser.class);
+        when(browser.isConnected()).thenReturn(true);
+        when(browser.contexts()).thenReturn(Collections.singletonList(context));
+        PlayWrightUtil.Connection connection = new PlayWrightUtil.Connection();
+        connection.browser = browser;
+
+        sharedConnectionField = BrowserSessionPool.class.getDeclaredField("autowebConnection");
+        sharedConnectionField.setAccessible(true);
+        previousConnection = sharedConnectionField.get(BrowserSessionPool.getInstance());
+        sharedConnectionField.set(BrowserSessionPool.getInstance(), connection);
+
+        messenger = mock(ToolMessenger.class);
+        doAnswer(inv -> messages.add(inv.getArgument(0))).when(messenger).sendText(anyString());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        sharedConnectionField.set(BrowserSessionPool.getInstance(), previousConnection);
+        AutoWebTwoPhaseRunTool.useAutowebDir(null);
+    }
+
+    private static AutoWebTwoPhaseRunTool.RunSession session(boolean replayed) {
+        AutoWebAgent.PlanStep step = new AutoWebAgent.PlanStep();
+        step.index = 1;
+        step.description = "导出订单";
+        AutoWebTwoPhaseRunTool.RunSession s = new AutoWebTwoPhaseRunTool.RunSession();
+        s.runId = "cancel-test-" + replayed;
+        s.entryUrl = ENTRY_URL;
+        s.userTask = "导出订单";
+        s.prompt = "导出订单";
+        s.modelKey = "DEEPSEEK";
+        s.captureMode = AutoWebAgent.HtmlCaptureMode.RAW_HTML;
+        s.planText = "";
+        s.planSteps = Collections.singletonList(step);
+        s.code = STEP_CODE;
+        s.createdAt = System.currentTimeMillis();
+        s.replayed = replayed;
+        return s;
+    }
+
+    @Test
+    public void cancelMidStep_shouldNotRepairRetryOrRegenerate() throws Exception {
+        AutoWebTwoPhaseRunTool tool = new AutoWebTwoPhaseRunTool();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            // 新生成的会话会走自动修复；回放会话失败时会作废记录并重新生成
+            for (boolean replayed : new boolean[]{false, true}) {
+                messages.clear();
+                stepWaiting = new CountDownLatch(1);
+                AutoWebTwoPhaseRunTool.RunSession s = session(replayed);
+                AutoWebTwoPhaseRunTool.sessions().put(s);
+
+                JSONObject run = new JSONObject();
+                run.put("action", "run");
+                run.put("runId", s.runId);
+                run.put("autoRepair", true);
+                Future<String> pending = caller.submit(() -> tool.execute(run, null, messenger));
+                Assertions.assertTrue(stepWaiting.await(10, TimeUnit.SECONDS));
+
+                JSONObject cancel = new JSONObject();
+                cancel.put("action", "cancel");
+                cancel.put("runId", s.runId);
+                Assertions.assertEquals(1, JSON.parseObject(tool.execute(cancel, null, messenger)).getIntValue("cancelled"));
+
+                JSONObject out = JSON.parseObject(pending.get(10, TimeUnit.SECONDS));
+                Assertions.assertFalse(out.getBooleanValue("ok"), out.toJSONString());
+                Assertions.assertTrue(out.getBooleanValue("cancelled"), out.toJSONString());
+                Assertions.assertFalse(out.containsKey("replayFallback"), out.toJSONString());
+
+                AutoWebTwoPhaseRunTool.RunSession kept = AutoWebTwoPhaseRunTool.sessions().get(s.runId);
+                Assertions.assertNotNull(kept, "取消后会话不应被回放回退丢弃");
+                Assertions.assertEquals(STEP_CODE, kept.code);
+                synchronized (messages) {
+                    for (String m : messages) {
+                        Assertions.assertFalse(m.contains("尝试修复"), m);
+                        Assertions.assertFalse(m.contains("提升默认超时"), m);
+                        Assertions.assertFalse(m.contains("回放失败"), m);
+                    }
+                }
+            }
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void prepareAndRunWithoutRunId_shouldBeCancellableByReportedRunId() throws Exception {
+        String userTask = "导出订单";
+        ReplayStore.Record record = new ReplayStore.Record();
+        record.userTask = userTask;
+        record.entryUrl = ENTRY_URL;
+        record.modelKey = "DEEPSEEK";
+        record.captureMode = AutoWebAgent.HtmlCaptureMode.RAW_HTML.name();
+        record.planText = "/*\nPLAN_START\nStep 1:\n- Description: 导出订单\n- Target URL: CURRENT_PAGE\n- Entry Point Action: 无\n- Status: CONFIRMED\nPLAN_END\n*/\n";
+        record.code = STEP_CODE;
+        record.fingerprint = AutoWebAgent.capturePageFingerprint(page);
+        ReplayStore.forDir(autowebDir).save(record);
+
+        AutoWebTwoPhaseRunTool tool = new AutoWebTwoPhaseRunTool();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            stepWaiting = new CountDownLatch(1);
+            JSONObject run = new JSONObject();
+            run.put("action", "prepare_and_run");
+            run.put("entryUrl", ENTRY_URL);
+            run.put("userTask", userTask);
+            run.put("replay", true);
+            Future<String> pending = caller.submit(() -> tool.execute(run, null, messenger));
+            Assertions.assertTrue(stepWaiting.await(10, TimeUnit.SECONDS));
+
+            // 调用时没有 runId，准备阶段在进度消息里报告 runId；按该 runId 取消应命中正在执行的任务
+            Pattern p = Pattern.compile("runId=([0-9a-f]{32})");
+            String runId = "";
+            synchronized (messages) {
+                for (String m : messages) {
+                    Matcher matcher = p.matcher(m);
+                    if (matcher.find()) runId = matcher.group(1);
+                }
+            }
+            Assertions.assertFalse(runId.isEmpty(), messages.toString());
+            JSONObject cancel = new JSONObject();
+            cancel.put("action", "cancel");
+            cancel.put("runId", runId);
+            Assertions.assertEquals(1, JSON.parseObject(tool.execute(cancel, null, messenger)).getIntValue("cancelled"));
+
+            JSONObject out = JSON.parseObject(pending.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(out.getBooleanValue("cancelled"), out.toJSONString());
+            Assertions.assertNotNull(ReplayStore.forDir(autowebDir).find(userTask, ENTRY_URL, record.fingerprint, 0.9, null), "取消不应作废回放记录");
+            Assertions.assertEquals(0, JSON.parseObject(tool.execute(cancel, null, messenger)).getIntValue("cancelled"));
+
+            // 不带 runId 的 cancel 被拒绝，不会整组取消其他调用方的任务
+            JSONObject cancelAll = new JSONObject();
+            cancelAll.put("action", "cancel");
+            JSONObject rejected = JSON.parseObject(tool.execute(cancelAll, null, messenger));
+            Assertions.assertFalse(rejected.getBooleanValue("ok"), rejected.toJSONString());
+            Assertions.assertTrue(rejected.getString("error").contains("runId is required"), rejected.toJSONString());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+}
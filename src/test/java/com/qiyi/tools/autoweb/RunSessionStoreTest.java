@@ -0,0 +1,90 @@
+package com.qiyi.tools.autoweb;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RunSessionStoreTest {
+
+    static class Session {
+        String runId;
+        String code;
+        List<String> steps = new ArrayList<>();
+    }
+
+    private static Session session(String runId, String code) {
+        Session s = new Session();
+        s.runId = runId;
+        s.code = code;
+        s.steps.add("打开订单页");
+        return s;
+    }
+
+    private static RunSessionStore<Session> store(Path dir, int maxInMemory) {
+        return new RunSessionStore<>(dir, Session.class, s -> s.runId, maxInMemory, 600_000L, 3600_000L);
+    }
+
+    @Test
+    public void sessionsSurviveRestartAndReflectLaterPuts() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-sessions");
+        RunSessionStore<Session> first = store(dir, 4);
+        Session s = session("abc123", "web.click('#a')");
+        first.put(s);
+        s.code = "web.click('#b')";
+        first.put(s);
+        Assertions.assertTrue(Files.exists(dir.resolve(RunSessionStore.DIR_NAME).resolve("abc123" + RunSessionStore.SUFFIX)));
+
+        RunSessionStore<Session> restarted = store(dir, 4);
+        Session loaded = restarted.get("abc123");
+        Assertions.assertNotNull(loaded);
+        Assertions.assertEquals("web.click('#b')", loaded.code);
+        Assertions.assertEquals(1, loaded.steps.size());
+        Assertions.assertSame(loaded, restarted.get("abc123"));
+        Assertions.assertNull(restarted.get("missing"));
+    }
+
+    @Test
+    public void memoryIsBoundedAndEvictedSessionsLoadLazily() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-sessions");
+        RunSessionStore<Session> store = store(dir, 2);
+        store.put(session("r1", "a"));
+        store.put(session("r2", "b"));
+        store.put(session("r3", "c"));
+        Assertions.assertEquals(2, store.sizeInMemory());
+
+        Session r1 = store.get("r1");
+        Assertions.assertNotNull(r1);
+        Assertions.assertEquals("a", r1.code);
+        Assertions.assertEquals(2, store.sizeInMemory());
+        Assertions.assertTrue(store.stats().contains("diskLoads=1"), store.stats());
+    }
+
+    @Test
+    public void removeExpiredAndUnsafeIds() throws Exception {
+        Path dir = Files.createTempDirectory("autoweb-sessions");
+        RunSessionStore<Session> store = store(dir, 4);
+        store.put(session("old", "x"));
+        store.put(session("gone", "y"));
+        Path sessions = dir.resolve(RunSessionStore.DIR_NAME);
+
+        store.remove("gone");
+        Assertions.assertFalse(Files.exists(sessions.resolve("gone" + RunSessionStore.SUFFIX)));
+        Assertions.assertNull(store.get("gone"));
+
+        // 超过保留期：重启后不可恢复，清理时删除
+        Files.setLastModifiedTime(sessions.resolve("old" + RunSessionStore.SUFFIX),
+                FileTime.fromMillis(System.currentTimeMillis() - 2 * 3600_000L));
+        RunSessionStore<Session> restarted = store(dir, 4);
+        Assertions.assertNull(restarted.get("old"));
+        Assertions.assertFalse(Files.exists(sessions.resolve("old" + RunSessionStore.SUFFIX)));
+
+        Assertions.assertNull(restarted.get("../old"));
+        restarted.put(session("../escape", "z"));
+        Assertions.assertFalse(Files.exists(dir.resolve("escape" + RunSessionStore.SUFFIX)));
+    }
+}
@@ -0,0 +1,244 @@
+package com.qiyi.tools.autoweb;
+
+import com.qiyi.service.autoweb.AutoWebAgent;
+import com.qiyi.service.autoweb.AutoWebEngine;
+import com.qiyi.service.autoweb.CancellationToken;
+import com.qiyi.service.autoweb.ReplayStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StepPipelineTest {
+
+    private AutoWebEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        engine = new AutoWebEngine("t-pipeline", 2, 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        engine.shutdown(5000);
+    }
+
+    private StepPipeline pipeline(List<AutoWebAgent.PlanStep> steps, Map<Integer, String> existing, StepPipeline.Hooks hooks) {
+        return new StepPipeline(steps, existing, hooks, engine, "autoweb:test");
+    }
+
+    private static List<AutoWebAgent.PlanStep> steps(int n) {
+        List<AutoWebAgent.PlanStep> out = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            AutoWebAgent.PlanStep s = new AutoWebAgent.PlanStep();
+            s.index = i;
+            s.description = "step " + i;
+            out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * 假的浏览器/模型：生成耗时 generateMs；记录每步的生成次数、生成所在线程与收到的前序代码。
+     * blockStep 对应的步骤在生成时一直等到取消。
+     */
+    private static class FakeHooks implements StepPipeline.Hooks {
+        final long generateMs;
+        volatile int blockStep = -1;
+        final Map<Integer, AtomicInteger> generated = new ConcurrentHashMap<>();
+        final Map<Integer, CountDownLatch> generating = new ConcurrentHashMap<>();
+        final Map<Integer, String> generatorThread = new ConcurrentHashMap<>();
+        final Map<Integer, String> previous = new ConcurrentHashMap<>();
+        final List<String> captures = new CopyOnWriteArrayList<>();
+        volatile int pageVersion;
+        final AtomicInteger released = new AtomicInteger();
+
+        FakeHooks(long generateMs) {
+            this.generateMs = generateMs;
+        }
+
+        @Override
+        public boolean isCurrentPage(AutoWebAgent.PlanStep step) {
+            return step.index != 3;
+        }
+
+        @Override
+        public StepPipeline.Prepared captureCurrent(AutoWebAgent.PlanStep step) {
+            captures.add("current:" + step.index + "@v" + pageVersion);
+            StepPipeline.Prepared p = new StepPipeline.Prepared();
+            p.snapshot = new AutoWebAgent.HtmlSnapshot();
+            p.snapshot.stepIndex = step.index;
+            p.snapshot.cleanedHtml = "v" + pageVersion;
+            return p;
+        }
+
+        @Override
+        public StepPipeline.Prepared captureOther(AutoWebAgent.PlanStep step) {
+            captures.add("other:" + step.index);
+            StepPipeline.Prepared p = new StepPipeline.Prepared();
+            p.snapshot = new AutoWebAgent.HtmlSnapshot();
+            p.snapshot.stepIndex = step.index;
+            p.snapshot.cleanedHtml = "remote";
+            return p;
+        }
+
+        @Override
+        public String generate(AutoWebAgent.PlanStep step, AutoWebAgent.HtmlSnapshot snapshot, String previousCode) throws Exception {
+            generatorThread.put(step.index, Thread.currentThread().getName());
+            started(step.index).countDown();
+            while (step.index == blockStep) {
+                // 模拟卡住的模型请求：只在检查点响应取消
+                CancellationToken.checkCurrent();
+                Thread.sleep(5);
+            }
+            Thread.sleep(generateMs);
+            int n = generated.computeIfAbsent(step.index, k -> new AtomicInteger()).incrementAndGet();
+            previous.put(step.index, previousCode);
+            return "// Step " + step.index + "\nweb.log('s" + step.index + " " + snapshot.cleanedHtml + " #" + n + "')";
+        }
+
+        @Override
+        public boolean stillMatches(StepPipeline.Prepared prepared) {
+            return prepared.snapshot.cleanedHtml.equals("v" + pageVersion);
+        }
+
+        @Override
+        public void releaseWorker() {
+            released.incrementAndGet();
+        }
+
+        CountDownLatch started(int stepIndex) {
+            return generating.computeIfAbsent(stepIndex, k -> new CountDownLatch(1));
+        }
+    }
+
+    @Test
+    public void generationOverlapsExecutionAndStepsStayOrdered() throws Exception {
+        FakeHooks hooks = new FakeHooks(10);
+        List<AutoWebAgent.PlanStep> steps = steps(4);
+        List<Integer> executed = new ArrayList<>();
+        String caller = Thread.currentThread().getName();
+        try (StepPipeline pipeline = pipeline(steps, null, hooks)) {
+            for (AutoWebAgent.PlanStep s : steps) {
+                String code = pipeline.codeFor(s);
+                Assertions.assertTrue(code.contains("s" + s.index + " "), code);
+                // 执行本步期间：下一步已在引擎线程上开始生成，且本步尚未执行完
+                if (s.index < steps.size()) {
+                    Assertions.assertTrue(hooks.started(s.index + 1).await(5, TimeUnit.SECONDS), "step " + (s.index + 1) + " not prefetched");
+                    Assertions.assertNotEquals(caller, hooks.generatorThread.get(s.index + 1));
+                    Assertions.assertFalse(executed.contains(s.index));
+                }
+                executed.add(s.index);
+            }
+            Assertions.assertTrue(pipeline.stats().contains("prefetched=3"), pipeline.stats());
+            String assembled = pipeline.assembledCode("/* PLAN_START\nStep 1: a\nPLAN_END */");
+            Assertions.assertTrue(assembled.indexOf("// Step 1") < assembled.indexOf("// Step 4"), assembled);
+            Assertions.assertEquals(1, assembled.split("// Step 2\n", -1).length - 1, assembled);
+        }
+        Assertions.assertEquals(java.util.Arrays.asList(1, 2, 3, 4), executed);
+        Assertions.assertTrue(hooks.captures.contains("other:3"), hooks.captures.toString());
+        Assertions.assertTrue(hooks.previous.get(3).contains("// Step 2"), hooks.previous.get(3));
+    }
+
+    @Test
+    public void changedPageRollsBackSpeculativeStep() throws Exception {
+        FakeHooks hooks = new FakeHooks(10);
+        List<AutoWebAgent.PlanStep> steps = steps(2);
+        try (StepPipeline pipeline = pipeline(steps, null, hooks)) {
+            pipeline.codeFor(steps.get(0));
+            hooks.pageVersion = 1; // 第 1 步执行后页面变化（如弹窗打开）
+            String code2 = pipeline.codeFor(steps.get(1));
+            Assertions.assertTrue(code2.contains("v1 #2"), code2);
+            Assertions.assertEquals(1, pipeline.rollbacks());
+        }
+        Assertions.assertEquals(2, hooks.generated.get(2).get());
+        Assertions.assertEquals(Collections.singletonList("current:2@v1"),
+                hooks.captures.subList(2, 3));
+    }
+
+    @Test
+    public void existingCodeIsReusedAndWorkerIsReleased() throws Exception {
+        FakeHooks hooks = new FakeHooks(10);
+        List<AutoWebAgent.PlanStep> steps = steps(2);
+        Map<Integer, String> existing = new HashMap<>();
+        existing.put(1, "// Step 1: 打开页面\nweb.click('#a')");
+        StepPipeline pipeline = pipeline(steps, existing, hooks);
+        Assertions.assertEquals("// Step 1: 打开页面\nweb.click('#a')", pipeline.codeFor(steps.get(0)));
+        Assertions.assertNull(hooks.generated.get(1));
+        pipeline.replace(2, "web.click('#b')");
+        Assertions.assertEquals("web.click('#b')", pipeline.codeFor(steps.get(1)));
+        Assertions.assertEquals("// Step 1\nweb.click('#a')\n\n// Step 2\nweb.click('#b')", pipeline.assembledCode(""));
+        pipeline.close();
+        Assertions.assertEquals(1, hooks.released.get());
+    }
+
+    @Test
+    public void cancellingRunStopsPrefetchAndClosingPipelineKeepsRunToken() throws Exception {
+        FakeHooks hooks = new FakeHooks(0);
+        hooks.blockStep = 2;
+        List<AutoWebAgent.PlanStep> steps = steps(2);
+        CancellationToken run = CancellationToken.create();
+        AutoWebEngine.Job<String> job = engine.submit("autoweb:test", "run", run, token -> {
+            try (StepPipeline pipeline = pipeline(steps, null, hooks)) {
+                pipeline.codeFor(steps.get(0));
+                Assertions.assertTrue(hooks.started(2).await(5, TimeUnit.SECONDS));
+                // 预取卡在模型调用中：取消本次执行，预取子任务在检查点退出，等待第 2 步的调用方收到取消
+                run.cancel("用户中断");
+                return pipeline.codeFor(steps.get(1));
+            }
+        });
+        CancellationException ce = Assertions.assertThrows(CancellationException.class, () -> job.await(5000));
+        Assertions.assertTrue(ce.getMessage().contains("用户中断"), ce.getMessage());
+        Assertions.assertEquals(1, hooks.released.get());
+
+        // 关闭流水线只取消预取：执行本身的标记不受影响
+        FakeHooks idle = new FakeHooks(0);
+        idle.blockStep = 2;
+        CancellationToken second = CancellationToken.create();
+        AutoWebEngine.Job<Boolean> closed = engine.submit("autoweb:test", "run", second, token -> {
+            try (StepPipeline pipeline = pipeline(steps, null, idle)) {
+                pipeline.codeFor(steps.get(0));
+                Assertions.assertTrue(idle.started(2).await(5, TimeUnit.SECONDS));
+            }
+            return token.isCancelled();
+        });
+        Assertions.assertFalse(closed.await(10000));
+        Assertions.assertEquals(1, idle.released.get());
+    }
+
+    /** 指纹忽略含数字的 class，用字母生成互不相同的 class 名 */
+    private static String letters(int i) {
+        return "" + (char) ('a' + i % 26) + (char) ('a' + i / 26);
+    }
+
+    @Test
+    public void smallAddedSubtreeInvalidatesSpeculativeFingerprint() {
+        StringBuilder page = new StringBuilder("<div id=\"app\"><div class=\"menu\">");
+        for (int i = 0; i < 40; i++) page.append("<a class=\"nav-").append(letters(i)).append("\">菜单").append(i).append("</a>");
+        page.append("</div><form class=\"search\"><input name=\"kw\"><button>查询</button></form>");
+        for (int i = 0; i < 40; i++) page.append("<section class=\"card-").append(letters(i)).append("\"><h3>卡片</h3><p>说明</p></section>");
+        page.append("</div>");
+        String before = page.toString();
+        // 上一步打开了一个弹窗：只新增几个路径
+        String after = before + "<div class=\"ant-modal\"><div class=\"ant-modal-title\">订单详情</div><button>确定</button></div>";
+
+        ReplayStore.Fingerprint speculative = ReplayStore.Fingerprint.of(before);
+        ReplayStore.Fingerprint live = ReplayStore.Fingerprint.of(after);
+        Assertions.assertTrue(live.similarity(speculative) >= 0.9, "sim=" + live.similarity(speculative));
+        Assertions.assertFalse(AutoWebTwoPhaseRunTool.pipelineFingerprintMatches(speculative, live));
+        Assertions.assertTrue(AutoWebTwoPhaseRunTool.pipelineFingerprintMatches(speculative, ReplayStore.Fingerprint.of(before)));
+        Assertions.assertTrue(AutoWebTwoPhaseRunTool.pipelineFingerprintMatches(null, live));
+    }
+}
@@ -104,4 +104,92 @@ public class CreateEventToolTest {
         
         verify(tool).createCalendarEvent(eq("unionId_sender1"), eq("Meeting"), eq("Desc"), anyString(), anyString(), eq("Room 1"), anyList());
     }
+
+    @Test
+    public void testExecuteMultipleSlotsAndRecurring() throws Exception {
+        DingTalkDepartment dept = new DingTalkDepartment();
+        dept.setDeptId("1");
+        dept.setName("DeptA");
+        dept.setUserList(Collections.singletonList(new DingTalkUser("UserOne", "user1")));
+        doReturn(Collections.singletonList(dept)).when(tool).getAllDepartments();
+        doReturn("eventRecurring").when(tool).createRecurringCalendarEvent(anyString(), anyString(), any(), anyString(), anyString(), any(), anyList(), anyString(), anyInt());
+
+        JSONObject params = new JSONObject();
+        params.put("summary", "Sync");
+        params.put("attendees", "UserOne");
+        com.alibaba.fastjson2.JSONArray slots = new com.alibaba.fastjson2.JSONArray();
+        JSONObject s1 = new JSONObject();
+        s1.put("startTime", "2023-10-01 10:00:00");
+        s1.put("endTime", "2023-10-01 11:00:00");
+        JSONObject s2 = new JSONObject();
+        s2.put("startTime", "2023-10-02 10:00:00");
+        s2.put("endTime", "2023-10-02 11:00:00");
+        slots.add(s1);
+        slots.add(s2);
+        params.put("slots", slots);
+        params.put("description", "Desc");
+        params.put("location", "Room 1");
+
+        String result = tool.execute(params, context, messenger);
+        assertTrue(result.contains("2/2 个时段"), "Actual: " + result);
+        verify(tool, times(2)).createCalendarEvent(eq("unionId_sender1"), eq("Sync"), eq("Desc"), anyString(), anyString(), eq("Room 1"), anyList());
+
+        JSONObject recurring = new JSONObject();
+        recurring.put("summary", "Weekly");
+        recurring.put("attendees", "UserOne");
+        recurring.put("startTime", "2023-10-02 10:00:00");
+        recurring.put("endTime", "2023-10-02 11:00:00");
+        recurring.put("repeat", "每周");
+        recurring.put("repeatCount", 4);
+
+        result = tool.execute(recurring, context, messenger);
+        assertTrue(result.contains("EventID: eventRecurring"), "Actual: " + result);
+        verify(tool).createRecurringCalendarEvent(eq("unionId_sender1"), eq("Weekly"), any(), anyString(), anyString(), any(), anyList(), eq("weekly"), eq(4));
+    }
+
+    @Test
+    public void testCheckAvailabilitySkipsBusySlotsWithOneLookup() throws Exception {
+        DingTalkDepartment dept = new DingTalkDepartment();
+        dept.setDeptId("1");
+        dept.setName("DeptA");
+        dept.setUserList(Collections.singletonList(new DingTalkUser("UserOne", "user1")));
+        doReturn(Collections.singletonList(dept)).when(tool).getAllDepartments();
+        // user1 在 10-01 10:30 ~ 11:30 忙碌，只与第一个时段重叠
+        long busyStart = java.time.ZonedDateTime.parse("2023-10-01T10:30:00+08:00").toInstant().toEpochMilli();
+        long busyEnd = java.time.ZonedDateTime.parse("2023-10-01T11:30:00+08:00").toInstant().toEpochMilli();
+        java.util.Map<String, List<long[]>> busy = new java.util.HashMap<>();
+        busy.put("unionId_user1", Collections.singletonList(new long[]{busyStart, busyEnd}));
+        doReturn(busy).when(tool).getBusyTimes(anyString(), anyList(), anyString(), anyString());
+
+        JSONObject params = new JSONObject();
+        params.put("summary", "Sync");
+        params.put("attendees", "UserOne");
+        params.put("checkAvailability", true);
+        com.alibaba.fastjson2.JSONArray slots = new com.alibaba.fastjson2.JSONArray();
+        JSONObject s1 = new JSONObject();
+        s1.put("startTime", "2023-10-01 10:00:00");
+        s1.put("endTime", "2023-10-01 11:00:00");
+        JSONObject s2 = new JSONObject();
+        s2.put("startTime", "2023-10-02 10:00:00");
+        s2.put("endTime", "2023-10-02 11:00:00");
+        slots.add(s1);
+        slots.add(s2);
+        params.put("slots", slots);
+        params.put("description", "Desc");
+        params.put("location", "Room 1");
+
+        String result = tool.execute(params, context, messenger);
+
+        assertTrue(result.contains("1/2 个时段"), "Actual: " + result);
+        verify(tool, times(1)).getBusyTimes(eq("unionId_sender1"), argThat(ids -> ids.contains("unionId_user1")),
+                eq("2023-10-01T10:00:00+08:00"), eq("2023-10-02T11:00:00+08:00"));
+        verify(tool, times(1)).createCalendarEvent(eq("unionId_sender1"), eq("Sync"), eq("Desc"), eq("2023-10-02T10:00:00+08:00"), anyString(), eq("Room 1"), anyList());
+        verify(messenger).sendText(contains("忙碌: user1"));
+
+        // 所有时段都有人忙碌时不创建日程
+        s2.put("startTime", "2023-10-01 11:00:00");
+        s2.put("endTime", "2023-10-01 12:00:00");
+        assertEquals("Error: Attendees busy in all slots", tool.execute(params, context, messenger));
+        verify(tool, times(1)).createCalendarEvent(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyList());
+    }
 }
@@ -102,4 +102,87 @@ public class SendMessageToolTest {
         assertTrue(result.contains("Message Sent to 1 users"), "Result should contain success message. Actual: " + result);
         verify(tool).sendTextMessageToEmployees(argThat(list -> list.contains("user1")), contains("Hello"));
     }
+
+    @Test
+    public void testExecuteWithDepartmentsExpandsSubDepartmentsAndSendsInBatches() throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("content", "Hello");
+        params.put("departments", "Root");
+        params.put("includeSubDepartments", true);
+
+        DingTalkDepartment root = new DingTalkDepartment("10", "Root", "1");
+        DingTalkDepartment child = new DingTalkDepartment("11", "Child", "10");
+        List<DingTalkUser> rootUsers = new ArrayList<>();
+        List<DingTalkUser> childUsers = new ArrayList<>();
+        for (int i = 0; i < 30; i++) rootUsers.add(new DingTalkUser("R" + i, "u" + i));
+        for (int i = 20; i < 45; i++) childUsers.add(new DingTalkUser("C" + i, "u" + i));
+        root.setUserList(rootUsers);
+        child.setUserList(childUsers);
+
+        doReturn(java.util.Arrays.asList(root, child)).when(tool).getAllDepartments();
+
+        String result = tool.execute(params, context, messenger);
+
+        assertEquals("Message Sent to 45 users", result);
+        verify(tool, times(3)).sendTextMessageToEmployees(argThat(list -> list.size() <= 20), contains("Hello"));
+        verify(senderMessenger).sendText("已向 45 位用户发送消息");
+    }
+
+    @Test
+    public void testExecuteReportsPartialBatchFailure() throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("content", "Hello");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) ids.add("u" + i);
+        params.put("userIds", ids);
+
+        doReturn(Collections.emptyList()).when(tool).getAllDepartments();
+        doThrow(new IllegalStateException("quota")).when(tool)
+                .sendTextMessageToEmployees(argThat(list -> list != null && list.contains("u24")), anyString());
+
+        String result = tool.execute(params, context, messenger);
+
+        assertEquals("Message Sent to 20 users, failed 5 users in 1 of 2 batches", result);
+        verify(senderMessenger).sendText(contains("5 位发送失败"));
+    }
+
+    @Test
+    public void testExecuteWithDepartmentsSendsDirectMembersOnlyByDefault() throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("content", "Hello");
+        params.put("departments", "Root,Group");
+
+        DingTalkDepartment root = new DingTalkDepartment("10", "Root", "1");
+        DingTalkDepartment child = new DingTalkDepartment("11", "Child", "10");
+        // 只有子部门、自身没有成员列表的部门应识别为"已找到但没有直属成员"，而不是"未找到"
+        DingTalkDepartment group = new DingTalkDepartment("20", "Group", "1");
+        DingTalkDepartment team = new DingTalkDepartment("21", "Team", "20");
+        root.setUserList(Collections.singletonList(new DingTalkUser("R", "r1")));
+        child.setUserList(Collections.singletonList(new DingTalkUser("C", "c1")));
+        team.setUserList(Collections.singletonList(new DingTalkUser("T", "t1")));
+
+        doReturn(java.util.Arrays.asList(root, child, group, team)).when(tool).getAllDepartments();
+
+        String result = tool.execute(params, context, messenger);
+
+        assertEquals("Message Sent to 1 users", result);
+        verify(tool).sendTextMessageToEmployees(argThat(list -> list.size() == 1 && list.contains("r1")), contains("Hello"));
+        verify(senderMessenger).sendText(contains("以下部门没有直属成员: Group"));
+        verify(senderMessenger, never()).sendText(contains("未找到以下部门"));
+    }
+
+    @Test
+    public void testExecuteDoesNotResendBatchWhenDeliveryIsUnknown() throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("content", "Hello");
+        params.put("userIds", "u1");
+
+        doReturn(Collections.emptyList()).when(tool).getAllDepartments();
+        doThrow(new IllegalStateException("钉钉批量发送接口返回失败")).when(tool).sendTextMessageToEmployees(anyList(), anyString());
+
+        String result = tool.execute(params, context, messenger);
+
+        assertEquals("Error: 钉钉批量发送接口返回失败", result);
+        verify(tool, times(1)).sendTextMessageToEmployees(anyList(), anyString());
+    }
 }
@@ -0,0 +1,157 @@
+package com.qiyi.util;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrowserSessionPoolTest {
+
+    private static PlayWrightUtil.Connection connection(Browser browser) {
+        PlayWrightUtil.Connection c = new PlayWrightUtil.Connection();
+        c.browser = browser;
+        return c;
+    }
+
+    @Test
+    public void acquireReusesOneConnectionAndWaitsForFreeLease() {
+        Browser browser = mock(Browser.class);
+        when(browser.isConnected()).thenReturn(true);
+        AtomicInteger connects = new AtomicInteger();
+        BrowserSessionPool pool = new BrowserSessionPool(() -> {
+            connects.incrementAndGet();
+            return connection(browser);
+        }, c -> {}, 1, 100);
+
+        BrowserSessionPool.Lease first = pool.acquire();
+        assertNotNull(first);
+        assertSame(browser, first.browser);
+        assertEquals(1, pool.activeLeases());
+
+        // 名额已满：等待超时返回 null
+        assertNull(pool.acquire());
+        assertTrue(pool.stats().contains("waitTimeouts=1"), pool.stats());
+
+        BrowserSessionPool.releaseConnection(first);
+        first.close();
+        assertEquals(0, pool.activeLeases());
+
+        BrowserSessionPool.Lease second = pool.acquire();
+        assertNotNull(second);
+        second.close();
+        assertEquals(1, connects.get());
+        assertTrue(pool.stats().contains("acquires=2"), pool.stats());
+    }
+
+    @Test
+    public void sharedConnectionIsSeparateFromLeasedConnection() {
+        List<Browser> created = new ArrayList<>();
+        BrowserSessionPool pool = new BrowserSessionPool(() -> {
+            Browser b = mock(Browser.class);
+            when(b.isConnected()).thenReturn(true);
+            created.add(b);
+            return connection(b);
+        }, c -> {}, 1, 100);
+
+        // AutoWeb 只用 PLAYWRIGHT_LOCK 串行化，租约持有者不拿该锁：两者不能落在同一个 Playwright 实例上
+        PlayWrightUtil.Connection shared = pool.sharedConnection();
+        BrowserSessionPool.Lease lease = pool.acquire();
+        assertNotNull(lease);
+        assertNotSame(shared.browser, lease.browser);
+        assertSame(shared, pool.sharedConnection());
+        lease.close();
+
+        BrowserSessionPool.Lease again = pool.acquire();
+        assertSame(lease.browser, again.browser);
+        again.close();
+        assertEquals(2, created.size());
+        assertTrue(pool.stats().contains("connects=2"), pool.stats());
+    }
+
+    @Test
+    public void unhealthyConnectionIsDroppedAndReconnected() {
+        Browser dead = mock(Browser.class);
+        when(dead.isConnected()).thenReturn(false);
+        Browser fresh = mock(Browser.class);
+        when(fresh.isConnected()).thenReturn(true);
+        List<Browser> browsers = new ArrayList<>();
+        browsers.add(dead);
+        browsers.add(fresh);
+        List<PlayWrightUtil.Connection> closed = new ArrayList<>();
+        BrowserSessionPool pool = new BrowserSessionPool(() -> connection(browsers.remove(0)), closed::add, 2, 100);
+
+        assertSame(dead, pool.sharedConnection().browser);
+        pool.checkHealth();
+        assertEquals(1, closed.size());
+        assertTrue(pool.stats().contains("healthFailures=1"), pool.stats());
+
+        assertSame(fresh, pool.sharedConnection().browser);
+        assertTrue(pool.isConnected());
+    }
+
+    @Test
+    public void healthCheckDoesNotTouchConnectionsInUse() {
+        Browser browser = mock(Browser.class);
+        when(browser.isConnected()).thenReturn(true);
+        List<PlayWrightUtil.Connection> closed = new ArrayList<>();
+        BrowserSessionPool pool = new BrowserSessionPool(() -> connection(browser), closed::add, 1, 100);
+
+        // 出借中：后台检查不拿名额、不向 driver 发请求，断开也不关闭正在使用的连接
+        BrowserSessionPool.Lease lease = pool.acquire();
+        PlayWrightUtil.Connection shared = pool.sharedConnection();
+        pool.checkHealth();
+        verify(browser, never()).contexts();
+        when(browser.isConnected()).thenReturn(false);
+        pool.checkHealth();
+        assertEquals(1, closed.size());
+        assertSame(shared, closed.get(0));
+        lease.close();
+
+        // 归还后：后台检查独占连接，探测并丢弃断开的租约连接
+        pool.checkHealth();
+        assertEquals(2, closed.size());
+        assertEquals(0, pool.activeLeases());
+        assertNotNull(pool.acquire());
+    }
+
+    @Test
+    public void leaseClosesPagesAndContextsItOpened() {
+        Browser browser = mock(Browser.class);
+        BrowserContext defaultContext = mock(BrowserContext.class);
+        BrowserContext isolated = mock(BrowserContext.class);
+        Page page = mock(Page.class);
+        when(browser.isConnected()).thenReturn(true);
+        when(browser.contexts()).thenReturn(Collections.singletonList(defaultContext));
+        when(browser.newContext()).thenReturn(isolated);
+        when(defaultContext.newPage()).thenReturn(page);
+        BrowserSessionPool pool = new BrowserSessionPool(() -> connection(browser), c -> {}, 1, 100);
+
+        BrowserSessionPool.Lease lease = pool.acquire();
+        assertSame(page, lease.newPage());
+        assertSame(isolated, lease.newIsolatedContext());
+        lease.close();
+        lease.close();
+
+        verify(page, times(1)).close();
+        verify(isolated, times(1)).close();
+        verify(defaultContext, times(0)).close();
+        assertEquals(0, pool.activeLeases());
+    }
+}
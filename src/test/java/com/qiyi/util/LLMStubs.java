@@ -0,0 +1,19 @@
+package com.qiyi.util;
+
+/**
+ * 测试与离线基准使用的桩模型入口：安装后 LLMUtil 经路由的调用都交给桩处理，不访问真实模型。
+ * 只存在于测试源码中，生产代码无法替换模型；用完需调用 {@link #clear()}。
+ */
+public final class LLMStubs {
+
+    private LLMStubs() {
+    }
+
+    public static void install(LLMUtil.LLMProvider provider) {
+        LLMUtil.installStubProvider(provider);
+    }
+
+    public static void clear() {
+        LLMUtil.clearStubProvider();
+    }
+}
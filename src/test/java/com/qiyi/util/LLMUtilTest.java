@@ -2,11 +2,15 @@ package com.qiyi.util;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Assertions;
+
+import com.qiyi.config.AppConfig;
 
 import io.github.ollama4j.models.chat.OllamaChatResult;
 import io.github.ollama4j.models.generate.OllamaStreamHandler;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -61,6 +65,35 @@ public class LLMUtilTest {
         }
     }
 
+    @Test
+    public void testStubProviderReplacesRouting() {
+        List<String> prompts = new ArrayList<>();
+        LLMStubs.install(new LLMUtil.LLMProvider() {
+            @Override
+            public LLMUtil.ModelType type() {
+                return LLMUtil.ModelType.DEEPSEEK;
+            }
+
+            @Override
+            public boolean isConfigured(AppConfig cfg) {
+                return true;
+            }
+
+            @Override
+            public LLMUtil.LLMResult chat(String prompt) {
+                prompts.add(prompt);
+                return LLMUtil.LLMResult.ok("recorded:" + prompt, LLMUtil.ModelType.DEEPSEEK, "stub", null);
+            }
+        });
+        try {
+            Assertions.assertEquals("recorded:hi", LLMUtil.chatWithDeepSeek("hi"));
+            Assertions.assertEquals("recorded:yo", LLMUtil.chatWithGLM("yo"));
+            Assertions.assertEquals(Arrays.asList("hi", "yo"), prompts);
+        } finally {
+            LLMStubs.clear();
+        }
+    }
+
     @Test
     public void testChatWithOllamaTranslation() {
         Assumptions.assumeTrue(shouldRunOllamaTests());